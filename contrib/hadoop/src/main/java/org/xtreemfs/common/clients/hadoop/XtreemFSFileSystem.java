@@ -291,6 +291,15 @@ public class XtreemFSFileSystem extends FileSystem {
             }
         } else {
             clientType = ClientFactory.ClientType.JAVA;
+
+            if (conf.getBoolean("xtreemfs.readahead.enabled", false)) {
+                xtreemfsOptions.setEnableReadahead(true);
+            }
+
+            int readaheadObjects = conf.getInt("xtreemfs.readahead.objects", -1);
+            if (readaheadObjects > -1) {
+                xtreemfsOptions.setReadaheadObjects(readaheadObjects);
+            }
         }
         
         // Initialize XtreemFS Client
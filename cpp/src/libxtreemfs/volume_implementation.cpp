@@ -967,6 +967,15 @@ xtreemfs::pbrpc::DirectoryEntries* VolumeImplementation::ReadDir(
        current_offset < offset + count;
        current_offset += volume_options_.readdir_chunk_size) {
     rq.set_seen_directory_entries_count(current_offset);
+    // Let the MRC continue after the last entry of the previous chunk instead
+    // of skipping all entries seen so far.
+    if (result != NULL && result->entries_size() > 0) {
+      const string& last_name =
+          result->entries(result->entries_size() - 1).name();
+      if (last_name != "." && last_name != "..") {
+        rq.set_last_seen_file_name(last_name);
+      }
+    }
     // Read complete chunk or only remaining rest.
     rq.set_limit_directory_entries_count(static_cast<uint32_t>(
         current_offset > offset + count ?
@@ -8,28 +8,86 @@
 
 package org.xtreemfs.foundation.buffer;
 
+import java.lang.ref.Cleaner;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A concurrent pool for buffer recycling.
+ * <p>
+ * Buffers are pooled in size classes. Each thread keeps a small cache of free
+ * buffers per size class in front of the shared pools, so that a thread which
+ * frees and allocates buffers of the same class usually does not touch any
+ * shared data structure. Statistics are kept in striped counters.
+ * <p>
+ * The size classes and the maximum number of pooled buffers per class can be
+ * changed with the system properties {@value #PROP_BUFF_SIZES} and
+ * {@value #PROP_MAX_POOL_SIZES} (comma-separated lists of equal length, sizes
+ * in ascending order), the size of the per-thread caches with
+ * {@value #PROP_THREAD_CACHE_SIZE} (0 disables them). If
+ * {@value #PROP_DIRECT_OVERFLOW} is <code>true</code>, buffers requested from
+ * an exhausted size class are direct buffers as well, which are discarded
+ * when freed; otherwise, they are heap buffers.
+ * <p>
+ * Alternatively, a memory budget in bytes can be set with
+ * {@value #PROP_SLAB_BUDGET}. In this case, the maximum pool sizes are
+ * ignored; buffers are carved out of direct slabs of
+ * {@value #PROP_SLAB_SIZE} bytes, which are reserved on demand until the
+ * budget is exhausted, and are never discarded. Once the budget is exhausted,
+ * an allocation for which no free buffer is available gets a heap buffer,
+ * which is discarded when freed, and all threads are asked to return the
+ * buffers in their caches to the shared pools. Buffers larger than the
+ * largest size class are heap buffers in any case.
+ * <p>
+ * For leak detection, the stack traces of a fraction of all allocations,
+ * given by {@value #PROP_LEAK_SAMPLE_RATE}, are recorded and logged if the
+ * buffer is garbage collected without having been freed.
  *
  * @author bjko
  */
 public final class BufferPool {
 
+    public static final String  PROP_BUFF_SIZES        = "xtreemfs.bufferpool.sizes";
+
+    public static final String  PROP_MAX_POOL_SIZES    = "xtreemfs.bufferpool.maxPoolSizes";
+
+    public static final String  PROP_THREAD_CACHE_SIZE = "xtreemfs.bufferpool.threadCacheSize";
+
+    public static final String  PROP_DIRECT_OVERFLOW   = "xtreemfs.bufferpool.directOverflow";
+
+    public static final String  PROP_SLAB_BUDGET       = "xtreemfs.bufferpool.slabBudget";
+
+    public static final String  PROP_SLAB_SIZE         = "xtreemfs.bufferpool.slabSize";
+
+    public static final String  PROP_LEAK_SAMPLE_RATE  = "xtreemfs.bufferpool.leakSampleRate";
+
     /**
      * size of buffers for each class.
      */
-    public static final int[] BUFF_SIZES = {8192, 65536, 131072, 524288,
-            2097152};
+    public static final int[] BUFF_SIZES = getIntList(PROP_BUFF_SIZES, new int[] { 8192, 65536, 131072, 524288,
+            2097152 });
 
     /**
      * max pool size for each class
      */
-    public static final int[] MAX_POOL_SIZES = {2000, 200, 100, 10, 5};
+    public static final int[] MAX_POOL_SIZES = getIntList(PROP_MAX_POOL_SIZES, new int[] { 2000, 200, 100, 10, 5 });
+
+    /**
+     * max number of buffers per class cached by a thread; a thread never
+     * caches more than an eighth of the buffers of a class
+     */
+    public static final int   THREAD_CACHE_SIZE = Integer.getInteger(PROP_THREAD_CACHE_SIZE, 16);
+
+    private static final boolean directOverflow = Boolean.getBoolean(PROP_DIRECT_OVERFLOW);
+
+    /**
+     * fraction of allocations whose stack traces are recorded
+     */
+    private static final double  leakSampleRate = Double.parseDouble(System.getProperty(PROP_LEAK_SAMPLE_RATE, "0"));
 
     /**
      * queues to store buffers in
@@ -37,14 +95,51 @@ public final class BufferPool {
     private final ConcurrentLinkedQueue<ByteBuffer>[] pools;
 
     /**
-     * pool sizes to avoid counting elements on each access
+     * number of free buffers per class, including the ones cached by threads
+     */
+    private final LongAdder[] poolSizes;
+
+    /**
+     * number of direct buffers per class that have been created and not been
+     * discarded yet
      */
-    private final AtomicInteger[] poolSizes;
+    private final AtomicInteger[] numDirect;
 
     /**
      * stats for num requests and creates of buffers per class
      */
-    private final AtomicLong[] requests, creates, deletes;
+    private final LongAdder[] requests, creates, deletes, threadCacheHits;
+
+    /**
+     * number of allocations that got a heap buffer because the slab budget
+     * was exhausted, and of buffers that were garbage collected without having
+     * been freed
+     */
+    private final LongAdder   slabOverflows, leaks;
+
+    /**
+     * source of new buffers if a memory budget is set, <code>null</code>
+     * otherwise
+     */
+    private final SlabAllocator slabs;
+
+    /**
+     * incremented to make all threads return the buffers in their caches to
+     * the shared pools
+     */
+    private final AtomicLong  drainRequests;
+
+    /**
+     * capacity of the per-thread caches for each class
+     */
+    private final int[] threadCacheCapacities;
+
+    private final ThreadLocal<ThreadCache> threadCaches;
+
+    /**
+     * returns the buffers cached by terminated threads to the pools
+     */
+    private final Cleaner cleaner;
 
     /**
      * singleton pattern.
@@ -63,24 +158,139 @@ public final class BufferPool {
     @SuppressWarnings("unchecked")
     private BufferPool() {
 
+        if (BUFF_SIZES.length == 0 || BUFF_SIZES.length != MAX_POOL_SIZES.length)
+            throw new IllegalArgumentException(PROP_BUFF_SIZES + " and " + PROP_MAX_POOL_SIZES
+                    + " must have the same number of entries");
+        for (int i = 0; i < BUFF_SIZES.length; i++) {
+            if (BUFF_SIZES[i] <= 0 || (i > 0 && BUFF_SIZES[i] <= BUFF_SIZES[i - 1]))
+                throw new IllegalArgumentException(PROP_BUFF_SIZES + " must be positive and in ascending order");
+            if (MAX_POOL_SIZES[i] < 0)
+                throw new IllegalArgumentException(PROP_MAX_POOL_SIZES + " must not be negative");
+        }
+
         pools = new ConcurrentLinkedQueue[BUFF_SIZES.length];
 
-        creates = new AtomicLong[BUFF_SIZES.length];
+        creates = new LongAdder[BUFF_SIZES.length];
+        threadCacheHits = new LongAdder[BUFF_SIZES.length];
+        numDirect = new AtomicInteger[BUFF_SIZES.length];
+        threadCacheCapacities = new int[BUFF_SIZES.length];
         for (int i = 0; i < creates.length; i++) {
-            creates[i] = new AtomicLong();
+            creates[i] = new LongAdder();
+            threadCacheHits[i] = new LongAdder();
+            numDirect[i] = new AtomicInteger();
+            threadCacheCapacities[i] = Math.max(0, Math.min(THREAD_CACHE_SIZE, MAX_POOL_SIZES[i] / 8));
         }
 
-        requests = new AtomicLong[BUFF_SIZES.length + 1];
-        deletes = new AtomicLong[BUFF_SIZES.length + 1];
+        requests = new LongAdder[BUFF_SIZES.length + 1];
+        deletes = new LongAdder[BUFF_SIZES.length + 1];
         for (int i = 0; i < BUFF_SIZES.length + 1; i++) {
-            requests[i] = new AtomicLong();
-            deletes[i] = new AtomicLong();
+            requests[i] = new LongAdder();
+            deletes[i] = new LongAdder();
         }
 
-        poolSizes = new AtomicInteger[BUFF_SIZES.length];
+        poolSizes = new LongAdder[BUFF_SIZES.length];
         for (int i = 0; i < BUFF_SIZES.length; i++) {
             pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
-            poolSizes[i] = new AtomicInteger(0);
+            poolSizes[i] = new LongAdder();
+        }
+
+        slabOverflows = new LongAdder();
+        leaks = new LongAdder();
+        drainRequests = new AtomicLong();
+
+        final long slabBudget = Long.getLong(PROP_SLAB_BUDGET, 0);
+        if (slabBudget > 0) {
+            final int slabSize = Math.max(Integer.getInteger(PROP_SLAB_SIZE, 16 * 1024 * 1024),
+                    BUFF_SIZES[BUFF_SIZES.length - 1]);
+            slabs = new SlabAllocator(slabBudget, slabSize, BUFF_SIZES);
+        } else {
+            slabs = null;
+        }
+
+        cleaner = Cleaner.create();
+        threadCaches = new ThreadLocal<ThreadCache>() {
+            @Override
+            protected ThreadCache initialValue() {
+                ThreadCache cache = new ThreadCache(threadCacheCapacities);
+                cleaner.register(cache, new ThreadCacheDrain(BufferPool.this, cache.stacks));
+                return cache;
+            }
+        };
+    }
+
+    /**
+     * The free buffers cached by a thread.
+     */
+    private static final class ThreadCache {
+
+        final Stack[] stacks;
+
+        /**
+         * the last drain request that has been handled
+         */
+        long          drainRequest;
+
+        ThreadCache(int[] capacities) {
+            stacks = new Stack[capacities.length];
+            for (int i = 0; i < capacities.length; i++)
+                stacks[i] = new Stack(capacities[i]);
+        }
+    }
+
+    private static final class Stack {
+
+        final ByteBuffer[] buffers;
+
+        int                count;
+
+        Stack(int capacity) {
+            buffers = new ByteBuffer[capacity];
+        }
+    }
+
+    /**
+     * Returns the buffers cached by a terminated thread to the shared pools.
+     * Must not refer to the {@link ThreadCache} itself, since it would never
+     * become unreachable otherwise.
+     */
+    private static final class ThreadCacheDrain implements Runnable {
+
+        private final BufferPool pool;
+
+        private final Stack[]    stacks;
+
+        ThreadCacheDrain(BufferPool pool, Stack[] stacks) {
+            this.pool = pool;
+            this.stacks = stacks;
+        }
+
+        @Override
+        public void run() {
+            pool.drain(stacks);
+        }
+    }
+
+    /**
+     * Returns the current thread's cache, after having returned its buffers
+     * to the shared pools if a drain has been requested since the last call.
+     */
+    private ThreadCache getThreadCache() {
+        final ThreadCache cache = threadCaches.get();
+        final long request = drainRequests.get();
+        if (cache.drainRequest != request) {
+            cache.drainRequest = request;
+            drain(cache.stacks);
+        }
+        return cache;
+    }
+
+    private void drain(Stack[] stacks) {
+        for (int i = 0; i < stacks.length; i++) {
+            final Stack stack = stacks[i];
+            while (stack.count > 0) {
+                pools[i].add(stack.buffers[--stack.count]);
+                stack.buffers[stack.count] = null;
+            }
         }
     }
 
@@ -96,7 +306,8 @@ public final class BufferPool {
         ReusableBuffer tmp = instance.getNewBuffer(size);
         assert (tmp.refCount.get() == 1) : "newly allocated buffer has invalid reference count: " + tmp.refCount.get();
 
-        if (recordStackTraces) {
+        if (recordStackTraces
+                || (leakSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < leakSampleRate)) {
             tmp.allocStack = "\n";
             for (StackTraceElement elem : new Exception().getStackTrace())
                 tmp.allocStack += elem.toString() + "\n";
@@ -130,7 +341,21 @@ public final class BufferPool {
 
                 if (size <= BUFF_SIZES[i]) {
 
-                    ByteBuffer buf = pools[i].poll();
+                    requests[i].increment();
+
+                    // take a buffer from the thread's cache ...
+                    final Stack stack = threadCacheCapacities[i] > 0 ? getThreadCache().stacks[i] : null;
+                    ByteBuffer buf = null;
+                    if (stack != null && stack.count > 0) {
+                        buf = stack.buffers[--stack.count];
+                        stack.buffers[stack.count] = null;
+                        threadCacheHits[i].increment();
+                    }
+
+                    // ... or from the shared pool
+                    else {
+                        buf = pools[i].poll();
+                    }
 
                     // if no free buffer is available in the pool ...
                     if (buf == null) {
@@ -138,7 +363,8 @@ public final class BufferPool {
                         /*
                         ... create
                         - a direct buffer if the pool is not full yet,
-                        - a non-direct buffer if the pool is full
+                        - a non-direct buffer if the pool is full, unless
+                          direct overflow buffers have been enabled
 
                         Thus, the first MAX_POOL_SIZES[i] buffers will be
                         pooled, whereas any additional buffers will be
@@ -146,18 +372,25 @@ public final class BufferPool {
                         collector.
                         */
 
-                        buf = creates[i].get() < MAX_POOL_SIZES[i] ? ByteBuffer.allocateDirect(BUFF_SIZES[i])
-                                : ByteBuffer.allocate(BUFF_SIZES[i]);
-                        creates[i].incrementAndGet();
+                        if (slabs != null) {
+                            buf = slabs.carve(BUFF_SIZES[i]);
+                            if (buf == null)
+                                return new ReusableBuffer(overflow(i), size);
+                        } else if (numDirect[i].incrementAndGet() <= MAX_POOL_SIZES[i] || directOverflow) {
+                            buf = ByteBuffer.allocateDirect(BUFF_SIZES[i]);
+                        } else {
+                            numDirect[i].decrementAndGet();
+                            buf = ByteBuffer.allocate(BUFF_SIZES[i]);
+                        }
+                        creates[i].increment();
                     }
 
                     // otherwise, decrement the pool size to indicate that the
                     // pooled buffer was handed out to the application
                     else {
-                        poolSizes[i].decrementAndGet();
+                        poolSizes[i].decrement();
                     }
 
-                    requests[i].incrementAndGet();
                     return new ReusableBuffer(buf, size);
 
                 }
@@ -165,7 +398,7 @@ public final class BufferPool {
             }
 
             // ... otherwise, create an unpooled buffer
-            requests[BUFF_SIZES.length].incrementAndGet();
+            requests[BUFF_SIZES.length].increment();
 
             ByteBuffer buf = ByteBuffer.allocate(size);
             return new ReusableBuffer(buf, size);
@@ -240,17 +473,33 @@ public final class BufferPool {
 
                 if (buf.capacity() == BUFF_SIZES[i]) {
 
-                    // return direct buffers to the pool
+                    // return direct buffers to the pool, unless they
+                    // exceed its maximum size
                     if (buf.isDirect()) {
 
-                        poolSizes[i].incrementAndGet();
-                        pools[i].add(buf);
-                        
-                        /*
-                        since only direct buffers will be returned to the
-                        pool, which have been counted on allocation, there is
-                        no need to check the pool size here
-                        */
+                        if (slabs == null && directOverflow && numDirect[i].get() > MAX_POOL_SIZES[i]) {
+                            numDirect[i].decrementAndGet();
+                            deletes[i].increment();
+                            return;
+                        }
+
+                        poolSizes[i].increment();
+
+                        // put the buffer into the thread's cache; if the
+                        // cache is full, move half of it to the shared pool
+                        if (threadCacheCapacities[i] > 0) {
+                            final Stack stack = getThreadCache().stacks[i];
+                            if (stack.count == stack.buffers.length) {
+                                final int keep = stack.buffers.length / 2;
+                                while (stack.count > keep) {
+                                    pools[i].add(stack.buffers[--stack.count]);
+                                    stack.buffers[stack.count] = null;
+                                }
+                            }
+                            stack.buffers[stack.count++] = buf;
+                        } else {
+                            pools[i].add(buf);
+                        }
 
                         return;
                     }
@@ -261,7 +510,7 @@ public final class BufferPool {
                     collection
                     */
                     else {
-                        deletes[i].incrementAndGet();
+                        deletes[i].increment();
                         return;
                     }
 
@@ -276,11 +525,34 @@ public final class BufferPool {
             if the buffer did not fit in any of the pools,
             increment the delete counter for the unpooled buffers
             */
-            deletes[deletes.length - 1].incrementAndGet();
+            deletes[deletes.length - 1].increment();
 
         }
     }
 
+    /**
+     * Creates a heap buffer of the given class, after the slab budget has been
+     * exhausted. If there are free buffers of the class in the threads'
+     * caches, the threads are asked to return them to the shared pool, so that
+     * subsequent allocations can use them.
+     */
+    private ByteBuffer overflow(int sizeClass) {
+
+        slabOverflows.increment();
+        if (poolSizes[sizeClass].sum() > 0)
+            drainRequests.incrementAndGet();
+
+        return ByteBuffer.allocate(BUFF_SIZES[sizeClass]);
+    }
+
+    /**
+     * Records that a buffer has been garbage collected without having been
+     * freed.
+     */
+    static void leakDetected() {
+        instance.leaks.increment();
+    }
+
     /**
      * Get the current pool size for a specific buffer size.
      *
@@ -289,7 +561,7 @@ public final class BufferPool {
     public static int getPoolSize(int bufferSize) {
         for (int i = 0; i < BUFF_SIZES.length; i++) {
             if (BUFF_SIZES[i] == bufferSize) {
-                return instance.poolSizes[i].get();
+                return (int) instance.poolSizes[i].sum();
             }
         }
         throw new IllegalArgumentException("Specified buffer size is not pooled. Check BufferPool configuration.");
@@ -305,13 +577,19 @@ public final class BufferPool {
         String str = "";
         for (int i = 0; i < BUFF_SIZES.length; i++) {
             str += String.format(
-                    "%8d:      poolSize = %5d    numRequests = %8d    creates = %8d   deletes = %8d\n",
-                    BUFF_SIZES[i], instance.poolSizes[i].get(), instance.requests[i].get(), instance.creates[i]
-                            .get(), instance.deletes[i].get());
+                    "%8d:      poolSize = %5d    numRequests = %8d    threadCacheHits = %8d    creates = %8d   deletes = %8d\n",
+                    BUFF_SIZES[i], instance.poolSizes[i].sum(), instance.requests[i].sum(),
+                    instance.threadCacheHits[i].sum(), instance.creates[i].sum(), instance.deletes[i].sum());
         }
         str += String.format("unpooled (> %8d)    numRequests = creates = %8d   deletes = %8d",
-                BUFF_SIZES[BUFF_SIZES.length - 1], instance.requests[instance.requests.length - 1].get(),
-                instance.deletes[instance.deletes.length - 1].get());
+                BUFF_SIZES[BUFF_SIZES.length - 1], instance.requests[instance.requests.length - 1].sum(),
+                instance.deletes[instance.deletes.length - 1].sum());
+        if (instance.slabs != null) {
+            str += String.format("\nslabs = %d    reserved = %d of %d bytes    carved = %d bytes    overflows = %d",
+                    instance.slabs.getNumSlabs(), instance.slabs.getReservedBytes(), instance.slabs.getBudget(),
+                    instance.slabs.getCarvedBytes(), instance.slabOverflows.sum());
+        }
+        str += String.format("\nleaked buffers = %d", instance.leaks.sum());
         return str;
     }
 
@@ -324,4 +602,19 @@ public final class BufferPool {
         recordStackTraces = record;
     }
 
+    /**
+     * Parses a comma-separated list of integers from a system property.
+     */
+    private static int[] getIntList(String property, int[] defaultValue) {
+        final String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+
+        final String[] items = value.split(",");
+        final int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++)
+            result[i] = Integer.parseInt(items[i].trim());
+        return result;
+    }
+
 }
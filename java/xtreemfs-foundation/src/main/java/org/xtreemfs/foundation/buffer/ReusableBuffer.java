@@ -667,6 +667,7 @@ public final class ReusableBuffer {
 
             Logging.logMessage(Logging.LEVEL_WARN, Category.buffer, this,
                     "buffer was finalized but not freed before! buffer = %s, refCount=%d", this.toString(), getRefCount());
+            BufferPool.leakDetected();
 
             if (allocStack != null) {
 
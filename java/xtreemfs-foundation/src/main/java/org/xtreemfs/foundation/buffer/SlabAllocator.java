@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carves buffers of a fixed set of sizes out of large direct slabs, which are
+ * reserved on demand up to a fixed memory budget.
+ * <p>
+ * Buffers are never given back to the allocator; once carved, they are meant
+ * to be recycled by the {@link BufferPool}. Hence, the direct memory used for
+ * buffers never exceeds the budget, and no direct buffer ever has to be
+ * cleaned up by the garbage collector.
+ * <p>
+ * If a buffer does not fit into the rest of the current slab, the rest is
+ * split into spare buffers of the largest sizes that fit, which are handed out
+ * before any new memory is reserved. Spare buffers that are larger than
+ * requested are split as well.
+ */
+final class SlabAllocator {
+
+    private final long                         budget;
+
+    private final int                          slabSize;
+
+    /**
+     * buffer sizes in ascending order
+     */
+    private final int[]                        sizes;
+
+    // JCIP @GuardedBy("this")
+    private final List<ByteBuffer>             slabs;
+
+    /**
+     * spare buffers for each size
+     */
+    // JCIP @GuardedBy("this")
+    private final List<ArrayDeque<ByteBuffer>> spares;
+
+    // JCIP @GuardedBy("this")
+    private ByteBuffer                         currentSlab;
+
+    // JCIP @GuardedBy("this")
+    private long                               reserved;
+
+    // JCIP @GuardedBy("this")
+    private long                               carved;
+
+    /**
+     * @param budget
+     *            max number of bytes reserved for slabs
+     * @param slabSize
+     *            size of a single slab; must not be smaller than the largest
+     *            buffer size
+     * @param sizes
+     *            the sizes of buffers that are carved, in ascending order
+     */
+    SlabAllocator(long budget, int slabSize, int[] sizes) {
+        this.budget = budget;
+        this.slabSize = slabSize;
+        this.sizes = sizes.clone();
+        this.slabs = new ArrayList<ByteBuffer>();
+        this.spares = new ArrayList<ArrayDeque<ByteBuffer>>(sizes.length);
+        for (int i = 0; i < sizes.length; i++)
+            spares.add(new ArrayDeque<ByteBuffer>());
+    }
+
+    /**
+     * Carves a new buffer, preferably from the spare buffers or the current
+     * slab. A new slab is only reserved if no larger spare buffer can be split
+     * either.
+     *
+     * @param size
+     *            one of the buffer sizes
+     * @return a direct buffer with the given capacity, or <code>null</code> if
+     *         the budget is exhausted
+     */
+    synchronized ByteBuffer carve(int size) {
+
+        int sizeIndex = 0;
+        while (sizeIndex < sizes.length && sizes[sizeIndex] != size)
+            sizeIndex++;
+        assert (sizeIndex < sizes.length) : "unknown buffer size: " + size;
+
+        ByteBuffer buf = spares.get(sizeIndex).poll();
+
+        if (buf == null && currentSlab != null && currentSlab.remaining() >= size)
+            buf = slice(currentSlab, size);
+
+        for (int i = sizeIndex + 1; buf == null && i < sizes.length; i++) {
+            final ByteBuffer spare = spares.get(i).poll();
+            if (spare != null) {
+                buf = slice(spare, size);
+                addSpares(spare);
+            }
+        }
+
+        if (buf == null) {
+            final int newSlabSize = (int) Math.min(slabSize, budget - reserved);
+            if (newSlabSize < size)
+                return null;
+
+            if (currentSlab != null)
+                addSpares(currentSlab);
+            currentSlab = ByteBuffer.allocateDirect(newSlabSize);
+            slabs.add(currentSlab);
+            reserved += newSlabSize;
+            buf = slice(currentSlab, size);
+        }
+
+        carved += size;
+        return buf;
+    }
+
+    /**
+     * Cuts a buffer of the given size from the start of the remaining part of
+     * the source.
+     */
+    private static ByteBuffer slice(ByteBuffer source, int size) {
+        final int pos = source.position();
+        final int limit = source.limit();
+        source.limit(pos + size);
+        final ByteBuffer buf = source.slice();
+        source.limit(limit);
+        source.position(pos + size);
+        return buf;
+    }
+
+    /**
+     * Splits the remaining part of the source into spare buffers of the
+     * largest sizes that fit. A rest that is smaller than the smallest size
+     * remains unused.
+     */
+    private void addSpares(ByteBuffer source) {
+        for (int i = sizes.length - 1; i >= 0; i--)
+            while (source.remaining() >= sizes[i])
+                spares.get(i).add(slice(source, sizes[i]));
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    synchronized long getReservedBytes() {
+        return reserved;
+    }
+
+    synchronized long getCarvedBytes() {
+        return carved;
+    }
+
+    synchronized int getNumSlabs() {
+        return slabs.size();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.checksums.algorithms;
+
+/**
+ * The CRC32C (Castagnoli) algorithm. It uses the Java internal
+ * implementation, which is hardware-accelerated on most platforms.
+ */
+public class CRC32C extends JavaChecksumAlgorithm<java.util.zip.CRC32C> {
+    
+	public CRC32C() {
+		super(new java.util.zip.CRC32C(), "CRC32C");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.xtreemfs.common.checksum.ChecksumAlgorithm#clone()
+	 */
+	@Override
+	public CRC32C clone() {
+		return new CRC32C();
+	}
+}
@@ -40,21 +40,15 @@ abstract public class JavaChecksumAlgorithm<RealJavaAlgorithm extends Checksum>
 	 * 
 	 * @see org.xtreemfs.common.checksum.ChecksumAlgorithm#digest(java.nio.ByteBuffer)
 	 */
+	/**
+	 * Updates the checksum with the bytes between position and limit of the
+	 * given buffer. The bytes are passed to the Java implementation without
+	 * copying them, which also allows for hardware-accelerated processing of
+	 * direct buffers. The position of the buffer is not changed.
+	 */
 	@Override
 	public void update(ByteBuffer data) {
-		byte[] array;
-
-		if (data.hasArray()) {
-			array = data.array();
-		} else {
-			array = new byte[data.capacity()];
-			final int oldPos = data.position();
-			data.position(0);
-			data.get(array);
-			data.position(oldPos);
-		}
-
-		realAlgorithm.update(array, 0, array.length);
+		realAlgorithm.update(data.duplicate());
 	}
 
 	/*
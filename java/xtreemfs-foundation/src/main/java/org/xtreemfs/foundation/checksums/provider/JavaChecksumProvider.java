@@ -12,7 +12,7 @@ import org.xtreemfs.foundation.checksums.ChecksumProvider;
 
 /**
  * A provider for Java internal checksums. offers the following algorithms:
- * Adler32, CRC32, MD5, Java-Hash
+ * Adler32, CRC32, CRC32C, Java-Hash
  * 
  * 19.08.2008
  * 
@@ -29,6 +29,7 @@ public class JavaChecksumProvider extends ChecksumProvider {
 
 		addAlgorithm(new org.xtreemfs.foundation.checksums.algorithms.Adler32());
 		addAlgorithm(new org.xtreemfs.foundation.checksums.algorithms.CRC32());
+		addAlgorithm(new org.xtreemfs.foundation.checksums.algorithms.CRC32C());
 		/*try {
 			addAlgorithm(new org.xtreemfs.foundation.checksums.algorithms.JavaMessageDigestAlgorithm(
 					"MD5", "MD5"));
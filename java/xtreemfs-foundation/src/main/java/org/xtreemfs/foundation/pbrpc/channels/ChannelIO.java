@@ -65,6 +65,14 @@ public class ChannelIO {
             return channel.read(dst);
     }
 
+    /**
+     * scattering read into the given buffers
+     * @see java.nio.channels.ScatteringByteChannel#read(ByteBuffer[], int, int)
+     */
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException, NotYetConnectedException {
+            return channel.read(dsts, offset, length);
+    }
+
     public SelectionKey register(Selector sel, int ops, Object att)
                     throws ClosedChannelException {
             return channel.register(sel, ops, att);
@@ -229,6 +229,27 @@ public class SSLChannelIO extends ChannelIO {
         return returnValue;
     }
 
+    /**
+     * {@inheritDoc} The buffers are filled one after another by means of
+     * {@link #read(ByteBuffer)}, since the decrypted data has to be copied
+     * anyway.
+     */
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long returnValue = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final int numBytesRead = read(dsts[i]);
+            if (numBytesRead == -1) {
+                return returnValue == 0 ? -1 : returnValue;
+            }
+            returnValue += numBytesRead;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return returnValue;
+    }
+
     /**
      * {@inheritDoc} warning: maybe more bytes would be consumed from src-buffer
      * than will be written to channel (returned value)
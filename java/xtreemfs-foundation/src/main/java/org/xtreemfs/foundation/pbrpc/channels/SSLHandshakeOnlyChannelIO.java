@@ -158,6 +158,20 @@ public class SSLHandshakeOnlyChannelIO extends ChannelIO {
         return returnValue;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long returnValue = 0;
+        if (!shutdownInProgress) {
+            if (handshakeComplete) {
+                returnValue = channel.read(dsts, offset, length);
+            }
+        }
+        return returnValue;
+    }
+
     /**
      * {@inheritDoc} warning: maybe more bytes would be consumed from src-buffer
      * than will be written to channel (returned value)
@@ -16,13 +16,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.xtreemfs.foundation.TimeSync;
-import org.xtreemfs.foundation.buffer.BufferPool;
-import org.xtreemfs.foundation.buffer.ReusableBuffer;
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.logging.Logging.Category;
 import org.xtreemfs.foundation.pbrpc.channels.ChannelIO;
-import org.xtreemfs.foundation.pbrpc.server.RPCNIOSocketServerConnection.ReceiveState;
 import org.xtreemfs.foundation.pbrpc.utils.RecordMarker;
+import org.xtreemfs.foundation.pbrpc.utils.RecordReader;
 
 /**
  *
@@ -49,15 +47,11 @@ public class RPCClientConnection {
 
     private final ByteBuffer     requestRecordMarker;
 
-    private final ByteBuffer     responseRecordMarker;
-
-    private ReusableBuffer[]     responseBuffers;
+    private final RecordReader   recordReader;
 
     private ByteBuffer[]         requestBuffers;
 
     private RPCClientRequest	 pendingRequest;
-    
-    private ReceiveState         receiveState;
 
     private final InetSocketAddress    endpoint;
 
@@ -71,18 +65,14 @@ public class RPCClientConnection {
         nextReconnectTime = 0;
         sendQueue = new LinkedList<RPCClientRequest>();
         requestRecordMarker = ByteBuffer.allocateDirect(RecordMarker.HDR_SIZE);
-        responseRecordMarker = ByteBuffer.allocateDirect(RecordMarker.HDR_SIZE);
+        recordReader = new RecordReader();
         this.endpoint = endpoint;
-        receiveState = ReceiveState.RECORD_MARKER;
         bytesTX = 0;
         bytesRX = 0;
     }
 
     public void freeBuffers() {
-        if (responseBuffers != null) {
-            for (ReusableBuffer buf: responseBuffers)
-                BufferPool.free(buf);
-        }
+        recordReader.freeBuffers();
         for (RPCClientRequest rq : sendQueue) {
             rq.freeBuffers();
         }
@@ -161,10 +151,10 @@ public class RPCClientConnection {
     }
 
     /**
-     * @return the responseFragHdr
+     * @return the reader that reassembles the received responses
      */
-    ByteBuffer getResponseRecordMarker() {
-        return responseRecordMarker;
+    RecordReader getRecordReader() {
+        return recordReader;
     }
 
     public String getEndpointString() {
@@ -198,33 +188,5 @@ public class RPCClientConnection {
     public void setPendingRequest(RPCClientRequest pendingRequest) {
     	this.pendingRequest = pendingRequest;
     }
-    
-    /**
-     * @return the receiveState
-     */
-    public ReceiveState getReceiveState() {
-        return receiveState;
-    }
-
-    /**
-     * @param receiveState the receiveState to set
-     */
-    public void setReceiveState(ReceiveState receiveState) {
-        this.receiveState = receiveState;
-    }
-
-    /**
-     * @return the responseBuffers
-     */
-    public ReusableBuffer[] getResponseBuffers() {
-        return responseBuffers;
-    }
-
-    /**
-     * @param responseBuffers the responseBuffers to set
-     */
-    public void setResponseBuffers(ReusableBuffer[] responseBuffers) {
-        this.responseBuffers = responseBuffers;
-    }
 
 }
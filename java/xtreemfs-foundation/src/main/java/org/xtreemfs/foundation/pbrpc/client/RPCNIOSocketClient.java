@@ -21,15 +21,14 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.xtreemfs.foundation.LifeCycleThread;
 import org.xtreemfs.foundation.SSLOptions;
@@ -43,14 +42,27 @@ import org.xtreemfs.foundation.pbrpc.channels.SSLHandshakeOnlyChannelIO;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.Auth;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.UserCredentials;
-import org.xtreemfs.foundation.pbrpc.server.RPCNIOSocketServer;
-import org.xtreemfs.foundation.pbrpc.server.RPCNIOSocketServerConnection;
+import org.xtreemfs.foundation.pbrpc.utils.RecordReader;
 import org.xtreemfs.foundation.pbrpc.utils.ReusableBufferInputStream;
 import org.xtreemfs.foundation.util.OutputUtils;
 
 import com.google.protobuf.Message;
 
 /**
+ * A PBRPC client based on non-blocking I/O.
+ * <p>
+ * The connections of the client are partitioned into shards by the address of
+ * the server. Each shard has its own selector and is processed by its own
+ * thread, so that the I/O of clients that talk to many servers is not
+ * serialized on a single thread. The first shard is processed by the client
+ * thread itself, which also waits for the other shard threads on shutdown.
+ * <p>
+ * By default, all requests to a server are sent over a single connection.
+ * Optionally, requests that carry bulk data can be spread across several
+ * connections to the server, and requests without bulk data can be sent over
+ * a separate connection, so that they are not delayed by large transfers (see
+ * {@link #setConnectionsPerServer(int, boolean)}).
+ *
  * @author bjko
  */
 public class RPCNIOSocketClient extends LifeCycleThread {
@@ -62,30 +74,35 @@ public class RPCNIOSocketClient extends LifeCycleThread {
      */
     public static final int TIMEOUT_GRANULARITY = 250;
 
-    private final Map<InetSocketAddress, RPCClientConnection> connections;
+    private final Shard[] shards;
 
     private final int requestTimeout;
 
     private final int connectionTimeout;
 
-    private AtomicLong lastCheck;
-
-    private final Selector selector;
-
     private volatile boolean quit;
 
     private final SSLOptions sslOptions;
 
     private final AtomicInteger transactionId;
 
-    private final ConcurrentLinkedQueue<RPCClientConnection> toBeEstablished;
-
     private final int sendBufferSize;
 
     private final int receiveBufferSize;
 
     private final SocketAddress localBindPoint;
 
+    /**
+     * number of connections per server over which requests with bulk data are
+     * spread
+     */
+    private volatile int bulkConnectionsPerServer;
+
+    /**
+     * if <code>true</code>, requests without bulk data are sent over a
+     * separate connection
+     */
+    private volatile boolean lowLatencyConnection;
 
     /**
      * on some platforms (e.g. FreeBSD 7.2 with openjdk6) Selector.select(int timeout)
@@ -120,6 +137,20 @@ public class RPCNIOSocketClient extends LifeCycleThread {
 
     public RPCNIOSocketClient(SSLOptions sslOptions, int requestTimeout, int connectionTimeout,
                               int sendBufferSize, int receiveBufferSize, SocketAddress localBindPoint, String threadName, boolean startAsDaemon) throws IOException {
+        this(sslOptions, requestTimeout, connectionTimeout, sendBufferSize, receiveBufferSize, localBindPoint, threadName, startAsDaemon, 1);
+    }
+
+    /**
+     * Creates a new client.
+     *
+     * @param numSelectorThreads
+     *            number of threads that process the I/O of the connections;
+     *            each thread processes the connections to a subset of the
+     *            servers
+     */
+    public RPCNIOSocketClient(SSLOptions sslOptions, int requestTimeout, int connectionTimeout,
+                              int sendBufferSize, int receiveBufferSize, SocketAddress localBindPoint, String threadName, boolean startAsDaemon,
+                              int numSelectorThreads) throws IOException {
         super(threadName);
         setDaemon(startAsDaemon);
         if (requestTimeout >= connectionTimeout - TIMEOUT_GRANULARITY * 2) {
@@ -127,18 +158,19 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                     "request timeout must be smaller than connection timeout less " + TIMEOUT_GRANULARITY * 2
                             + "ms");
         }
-        this.lastCheck = new AtomicLong();
         this.requestTimeout = requestTimeout;
         this.connectionTimeout = connectionTimeout;
         this.sendBufferSize = sendBufferSize;
         this.receiveBufferSize = receiveBufferSize;
         this.localBindPoint = localBindPoint;
-        connections = new HashMap<InetSocketAddress, RPCClientConnection>();
-        selector = Selector.open();
+        shards = new Shard[Math.max(1, numSelectorThreads)];
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Shard();
         this.sslOptions = sslOptions;
+        this.bulkConnectionsPerServer = 1;
+        this.lowLatencyConnection = false;
         quit = false;
         transactionId = new AtomicInteger((int) (Math.random() * 1e6 + 1.0));
-        toBeEstablished = new ConcurrentLinkedQueue<RPCClientConnection>();
 
         if (this.localBindPoint != null && Logging.isDebug()) {
             Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
@@ -164,14 +196,32 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                     .toString(), transactionId.get());
         }
         // get connection
-        RPCClientConnection con = null;
-        synchronized (connections) {
-            con = connections.get(server);
-            if (con == null) {
-                con = new RPCClientConnection(server);
-                connections.put(server, con);
+        final Shard shard = getShard(server);
+        for (;;) {
+            ConnectionPool pool = shard.connections.get(server);
+            if (pool == null) {
+                final ConnectionPool newPool = new ConnectionPool(server, bulkConnectionsPerServer, lowLatencyConnection);
+                pool = shard.connections.putIfAbsent(server, newPool);
+                if (pool == null)
+                    pool = newPool;
             }
+
+            // the pool is locked, so that it cannot be closed due to
+            // inactivity while the request is queued
+            synchronized (pool) {
+                if (!pool.closed) {
+                    queueRequest(server, pool.getConnection(request.dataLen > 0), request, highPriority, shard);
+                    return;
+                }
+            }
+
+            // the pool has been closed concurrently, retry with a new one
+            shard.connections.remove(server, pool);
         }
+    }
+
+    private void queueRequest(InetSocketAddress server, RPCClientConnection con, RPCClientRequest request,
+            boolean highPriority, Shard shard) {
         synchronized (con) {
             boolean isEmpty = con.getSendQueue().isEmpty();
             request.queued();
@@ -182,10 +232,11 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                 con.getSendQueue().add(request);
 
             if (!con.isConnected()) {
-                establishConnection(server, con);
+                establishConnection(server, con, shard);
 
             } else {
                 if (isEmpty) {
+                    final Selector selector = shard.selector;
                     final SelectionKey key = con.getChannel().keyFor(selector);
                     if (key != null) {
                         try {
@@ -218,14 +269,53 @@ public class RPCNIOSocketClient extends LifeCycleThread {
             Logging.logMessage(Logging.LEVEL_DEBUG, this,"could not check Selector for broken select(int timeout): "+th);
         }*/
 
+        // the first shard is processed by this thread
+        ShardThread[] shardThreads = new ShardThread[shards.length - 1];
+        for (int i = 0; i < shardThreads.length; i++) {
+            shardThreads[i] = new ShardThread(shards[i + 1], getName() + "-" + (i + 1));
+            shardThreads[i].setDaemon(isDaemon());
+            shardThreads[i].start();
+        }
+
         notifyStarted();
-        lastCheck.set(System.currentTimeMillis());
+
+        try {
+            processShard(shards[0]);
+        } catch (Throwable thr) {
+            Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this, "PBRPC Client CRASHED!");
+            notifyCrashed(thr);
+        }
+
+        // the client thread is interrupted on shutdown, so the join has to be
+        // retried
+        for (ShardThread th : shardThreads) {
+            th.shard.selector.wakeup();
+            while (th.isAlive()) {
+                try {
+                    th.join();
+                } catch (InterruptedException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        notifyStopped();
+    }
+
+    /**
+     * Processes the I/O and timers of the connections in a shard until the
+     * client is shut down, and cancels all pending requests afterwards.
+     */
+    private void processShard(Shard shard) throws IOException {
+
+        final Selector selector = shard.selector;
+        shard.lastCheck = System.currentTimeMillis();
 
         try {
             while (!quit) {
-                if (!toBeEstablished.isEmpty()) {
+                if (!shard.toBeEstablished.isEmpty()) {
                     while (true) {
-                        RPCClientConnection con = toBeEstablished.poll();
+                        RPCClientConnection con = shard.toBeEstablished.poll();
                         if (con == null) {
                             break;
                         }
@@ -236,7 +326,7 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                             closeConnection(con.getChannel().keyFor(selector), ex.toString());
                         }
                     }
-                    toBeEstablished.clear();
+                    shard.toBeEstablished.clear();
                 }
 
                 int numKeys = 0;
@@ -268,10 +358,10 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                                 connectConnection(key);
                             }
                             if (key.isReadable()) {
-                                readConnection(key);
+                                readConnection(key, shard);
                             }
                             if (key.isWritable()) {
-                                writeConnection(key);
+                                writeConnection(key, shard);
                             }
                         } catch (CancelledKeyException ex) {
                         }
@@ -287,42 +377,39 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                     }
                 }
                 try {
-                    checkForTimers();
+                    checkForTimers(shard);
                 } catch (ConcurrentModificationException ce) {
                     Logging.logMessage(Logging.LEVEL_CRIT, this,
                             OutputUtils.getThreadDump());
                 }
             }
-        } catch (Throwable thr) {
-            Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this, "PBRPC Client CRASHED!");
-            notifyCrashed(thr);
-        }
-
-        synchronized (connections) {
-            for (RPCClientConnection con : connections.values()) {
-                synchronized (con) {
-                    for (RPCClientRequest rq : con.getSendQueue()) {
-                        rq.getResponse().requestFailed("RPC cancelled due to client shutdown");
-                        rq.freeBuffers();
-                    }
-                    for (RPCClientRequest rq : con.getRequests().values()) {
-                        rq.getResponse().requestFailed("RPC cancelled due to client shutdown");
-                        rq.freeBuffers();
-                    }
-                    try {
-                        if (con.getChannel() != null)
-                            con.getChannel().close();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
+        } finally {
+            for (ConnectionPool pool : shard.connections.values()) {
+                for (RPCClientConnection con : pool.connections) {
+                    synchronized (con) {
+                        for (RPCClientRequest rq : con.getSendQueue()) {
+                            rq.getResponse().requestFailed("RPC cancelled due to client shutdown");
+                            rq.freeBuffers();
+                        }
+                        for (RPCClientRequest rq : con.getRequests().values()) {
+                            rq.getResponse().requestFailed("RPC cancelled due to client shutdown");
+                            rq.freeBuffers();
+                        }
+                        try {
+                            if (con.getChannel() != null)
+                                con.getChannel().close();
+                        } catch (Exception ex) {
+                            ex.printStackTrace();
+                        }
+                        con.getRecordReader().freeBuffers();
                     }
                 }
             }
+            selector.close();
         }
-
-        notifyStopped();
     }
 
-    private void establishConnection(InetSocketAddress server, RPCClientConnection con) {
+    private void establishConnection(InetSocketAddress server, RPCClientConnection con, Shard shard) {
 
         if (con.canReconnect()) {
             if (Logging.isDebug()) {
@@ -367,8 +454,8 @@ public class RPCNIOSocketClient extends LifeCycleThread {
 
                 channel.connect(server);
                 con.setChannel(channel);
-                toBeEstablished.add(con);
-                selector.wakeup();
+                shard.toBeEstablished.add(con);
+                shard.selector.wakeup();
                 if (Logging.isDebug()) {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this, "connection created");
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this, "socket send buffer size: %d",
@@ -416,7 +503,7 @@ public class RPCNIOSocketClient extends LifeCycleThread {
 
     }
 
-    private void readConnection(SelectionKey key) {
+    private void readConnection(SelectionKey key, Shard shard) {
         final RPCClientConnection con = (RPCClientConnection) key.attachment();
         final ChannelIO channel = con.getChannel();
 
@@ -425,29 +512,38 @@ public class RPCNIOSocketClient extends LifeCycleThread {
             if (!channel.isShutdownInProgress()) {
                 if (channel.doHandshake(key)) {
 
+                    final RecordReader reader = con.getRecordReader();
+                    reader.readable();
                     while (true) {
-                        ByteBuffer buf = null;
-                        switch (con.getReceiveState()) {
-                            case RECORD_MARKER: {
-                                buf = con.getResponseRecordMarker();
-                                break;
-                            }
-                            case RPC_MESSAGE: {
-                                buf = con.getResponseBuffers()[1].getBuffer();
-                                break;
-                            }
-                            case RPC_HEADER: {
-                                buf = con.getResponseBuffers()[0].getBuffer();
-                                break;
-                            }
-                            case DATA: {
-                                buf = con.getResponseBuffers()[2].getBuffer();
-                                break;
-                            }
+
+                        // process all responses that have been received
+                        // completely before reading further
+                        ReusableBuffer[] record;
+                        try {
+                            record = reader.nextRecord();
+                        } catch (IOException ex) {
+                            Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this,
+                                    "%s, closing connection to server %s", ex.getMessage(), channel.socket()
+                                            .getRemoteSocketAddress().toString());
+                            closeConnection(key, "received invalid record marker from server (" + channel.socket()
+                                    .getRemoteSocketAddress().toString() + "), closed connection");
+                            return;
+                        }
+
+                        if (record != null) {
+                            //assemble response...
+                            if (!assembleResponse(key, con, record))
+                                return;
+                            continue;
+                        }
+
+                        if (!reader.isMoreDataAvailable()) {
+                            // the socket has been drained
+                            break;
                         }
 
-                        // read fragment header
-                        final int numBytesRead = RPCNIOSocketServer.readData(key, channel, buf);
+                        // read as much as possible with a single call
+                        final long numBytesRead = reader.read(channel);
                         if (numBytesRead == -1) {
                             // connection closed
                             if (Logging.isInfo()) {
@@ -459,67 +555,13 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                                     .getRemoteSocketAddress().toString() + ") closed connection");
                             return;
                         }
-                        if (buf.hasRemaining()) {
+                        // only the shard thread updates the counters
+                        con.bytesRX += numBytesRead;
+                        shard.bytesRX += numBytesRead;
+                        if (numBytesRead == 0) {
                             // not enough data...
                             break;
                         }
-
-                        switch (con.getReceiveState()) {
-                            case RECORD_MARKER: {
-                                buf.position(0);
-                                final int hdrLen = buf.getInt();
-                                final int msgLen = buf.getInt();
-                                final int dataLen = buf.getInt();
-
-                                if ((hdrLen <= 0) || (hdrLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)
-                                        || (msgLen < 0) || (msgLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)
-                                        || (dataLen < 0) || (dataLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)) {
-                                    Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this,
-                                            "invalid record marker size (%d/%d/%d) received, closing connection to client %s",
-                                            hdrLen, msgLen, dataLen, channel.socket()
-                                                    .getRemoteSocketAddress().toString());
-                                    closeConnection(key, "received invalid record marker from server (" + channel.socket()
-                                            .getRemoteSocketAddress().toString() + "), closed connection");
-                                    return;
-                                }
-                                final ReusableBuffer[] buffers = new ReusableBuffer[]{BufferPool.allocate(hdrLen),
-                                        ((msgLen > 0) ? BufferPool.allocate(msgLen) : null),
-                                        ((dataLen > 0) ? BufferPool.allocate(dataLen) : null)};
-                                con.setResponseBuffers(buffers);
-                                con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RPC_HEADER);
-                                continue;
-                            }
-
-                            case RPC_HEADER: {
-                                if (con.getResponseBuffers()[1] != null) {
-                                    con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RPC_MESSAGE);
-                                    continue;
-                                } else if (con.getResponseBuffers()[2] != null) {
-                                    // this is necessary, because we may receive some default 
-                                    // instance of a message (empty) with data attached BUG #188
-                                    con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.DATA);
-                                    continue;
-                                } else {
-                                    break;
-                                }
-                            }
-                            case RPC_MESSAGE: {
-                                if (con.getResponseBuffers()[2] != null) {
-                                    con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.DATA);
-                                    continue;
-                                } else {
-                                    break;
-                                }
-
-                            }
-                        }
-
-                        //assemble ServerRequest
-                        con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RECORD_MARKER);
-                        con.getResponseRecordMarker().clear();
-
-                        //assemble response...
-                        assembleResponse(key, con);
                     }
                 }
             }
@@ -539,17 +581,12 @@ public class RPCNIOSocketClient extends LifeCycleThread {
         }
     }
 
-    private void assembleResponse(SelectionKey key, RPCClientConnection con) throws IOException {
+    /**
+     * @return <code>false</code>, if the connection has been closed
+     */
+    private boolean assembleResponse(SelectionKey key, RPCClientConnection con, ReusableBuffer[] receiveBuffers) {
 
         try {
-            ReusableBuffer[] receiveBuffers = con.getResponseBuffers();
-            receiveBuffers[0].flip();
-            if (receiveBuffers[1] != null)
-                receiveBuffers[1].flip();
-            if (receiveBuffers[2] != null)
-                receiveBuffers[2].flip();
-
-
             ReusableBufferInputStream rbis = new ReusableBufferInputStream(receiveBuffers[0]);
             final RPC.RPCHeader header = RPC.RPCHeader.parseFrom(rbis);
             BufferPool.free(receiveBuffers[0]);
@@ -560,24 +597,27 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                 // sent.
                 BufferPool.free(receiveBuffers[1]);
                 BufferPool.free(receiveBuffers[2]);
-                con.setResponseBuffers(null);
                 Logging.logMessage(Logging.LEVEL_WARN, Category.net, this,
                         "received response for unknown request callId=%d",
                         header.getCallId());
-                return;
+                return true;
             }
             RPCResponse response = rq.getResponse();
             rq.setResponseHeader(header);
-            con.setResponseBuffers(null);
 
             response.responseAvailable(rq, receiveBuffers[1], receiveBuffers[2]);
+            return true;
         } catch (IOException ex) {
+            BufferPool.free(receiveBuffers[0]);
+            BufferPool.free(receiveBuffers[1]);
+            BufferPool.free(receiveBuffers[2]);
             closeConnection(key, "invalid response received: " + ex);
+            return false;
         }
 
     }
 
-    private void writeConnection(SelectionKey key) {
+    private void writeConnection(SelectionKey key, Shard shard) {
         final RPCClientConnection con = (RPCClientConnection) key.attachment();
         final ChannelIO channel = con.getChannel();
 
@@ -618,6 +658,9 @@ public class RPCNIOSocketClient extends LifeCycleThread {
                             closeConnection(key, "server unexpectedly closed connection (EOF)");
                             return;
                         }
+                        con.bytesTX += numBytesWritten;
+                        shard.bytesTX += numBytesWritten;
+
                         // Detect if the client writes outside of the fragment.
                         send.recordBytesWritten(numBytesWritten);
 
@@ -711,6 +754,9 @@ public class RPCNIOSocketClient extends LifeCycleThread {
             con.setChannel(null);
         }
 
+        // discard partially received responses
+        con.getRecordReader().freeBuffers();
+
         // notify listeners
         for (RPCClientRequest rq : cancelRq) {
             rq.getResponse().requestFailed("sending RPC failed: " + errorMessage);
@@ -723,67 +769,80 @@ public class RPCNIOSocketClient extends LifeCycleThread {
         }
     }
 
-    private void checkForTimers() {
+    private void checkForTimers(Shard shard) {
         // poor man's timer
         long now = System.currentTimeMillis();
-        if (now >= lastCheck.get() + TIMEOUT_GRANULARITY) {
+        if (now >= shard.lastCheck + TIMEOUT_GRANULARITY) {
             // check for timed out requests
-            synchronized (connections) {
-                Iterator<RPCClientConnection> conIter = connections.values().iterator();
-                while (conIter.hasNext()) {
-                    final RPCClientConnection con = conIter.next();
-
-                    if (con.getLastUsed() < (now - connectionTimeout)) {
-                        if (Logging.isDebug()) {
-                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
-                                    "removing idle connection");
-                        }
+            for (Map.Entry<InetSocketAddress, ConnectionPool> e : shard.connections.entrySet()) {
+                final ConnectionPool pool = e.getValue();
+
+                // senders hold the lock of the pool while queuing requests,
+                // so that no request can be queued at a closed pool
+                boolean idle;
+                synchronized (pool) {
+                    idle = pool.getLastUsed() < (now - connectionTimeout);
+                    if (idle)
+                        pool.closed = true;
+                }
+
+                if (idle) {
+                    if (Logging.isDebug()) {
+                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
+                                "removing idle connection");
+                    }
+                    shard.connections.remove(e.getKey(), pool);
+                    for (RPCClientConnection con : pool.connections) {
                         try {
-                            conIter.remove();
-                            closeConnection(con.getChannel().keyFor(selector), null);
+                            closeConnection(con.getChannel().keyFor(shard.selector), null);
                         } catch (Exception ex) {
                         }
-                    } else {
-                        // check for request timeout
-                        List<RPCClientRequest> cancelRq = new LinkedList<RPCClientRequest>();
-                        synchronized (con) {
-                            Iterator<RPCClientRequest> iter = con.getRequests().values().iterator();
-                            while (iter.hasNext()) {
-                                final RPCClientRequest rq = iter.next();
-                                if (rq.getTimeQueued() + requestTimeout < now) {
-                                    cancelRq.add(rq);
-                                    iter.remove();
-                                }
-                            }
-                            iter = con.getSendQueue().iterator();
-                            while (iter.hasNext()) {
-                                final RPCClientRequest rq = iter.next();
-                                if (rq.getTimeQueued() + requestTimeout < now) {
-                                    cancelRq.add(rq);
-                                    iter.remove();
-                                } else {
-                                    // requests are ordered :-)
-                                    break;
-                                }
-                            }
-                        }
-                        for (RPCClientRequest rq : cancelRq) {
-                            rq.getResponse().requestFailed("sending RPC failed: request timed out");
-                            rq.freeBuffers();
-                        }
-
                     }
+                } else {
+                    for (RPCClientConnection con : pool.connections)
+                        checkForTimedOutRequests(con, now);
                 }
+            }
+
+            shard.lastCheck = now;
+        }
+    }
 
-                lastCheck.set(now);
+    private void checkForTimedOutRequests(RPCClientConnection con, long now) {
+        List<RPCClientRequest> cancelRq = new LinkedList<RPCClientRequest>();
+        synchronized (con) {
+            Iterator<RPCClientRequest> iter = con.getRequests().values().iterator();
+            while (iter.hasNext()) {
+                final RPCClientRequest rq = iter.next();
+                if (rq.getTimeQueued() + requestTimeout < now) {
+                    cancelRq.add(rq);
+                    iter.remove();
+                }
+            }
+            iter = con.getSendQueue().iterator();
+            while (iter.hasNext()) {
+                final RPCClientRequest rq = iter.next();
+                if (rq.getTimeQueued() + requestTimeout < now) {
+                    cancelRq.add(rq);
+                    iter.remove();
+                } else {
+                    // requests are ordered :-)
+                    break;
+                }
             }
         }
+        for (RPCClientRequest rq : cancelRq) {
+            rq.getResponse().requestFailed("sending RPC failed: request timed out");
+            rq.freeBuffers();
+        }
     }
 
     @Override
     public void shutdown() {
         this.quit = true;
         this.interrupt();
+        for (Shard shard : shards)
+            shard.selector.wakeup();
     }
 
     /**
@@ -792,13 +851,195 @@ public class RPCNIOSocketClient extends LifeCycleThread {
      * @return an array with the number of bytes received [0] and sent [1]
      */
     public long[] getTransferStats(InetSocketAddress server) {
-        RPCClientConnection con = null;
-        synchronized (connections) {
-            con = connections.get(server);
-        }
-        if (con == null)
+        ConnectionPool pool = getShard(server).connections.get(server);
+        if (pool == null)
             return null;
-        else
-            return new long[]{con.bytesRX, con.bytesTX};
+
+        long[] stats = new long[2];
+        for (RPCClientConnection con : pool.connections) {
+            stats[0] += con.bytesRX;
+            stats[1] += con.bytesTX;
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the number of bytes received and transferred by each shard of
+     * the client, including the traffic of connections that have been closed
+     * in the meantime.
+     *
+     * @return an array with the number of bytes received [i][0] and sent
+     *         [i][1] by shard i
+     */
+    public long[][] getTransferStats() {
+        long[][] stats = new long[shards.length][];
+        for (int i = 0; i < shards.length; i++)
+            stats[i] = new long[]{shards[i].bytesRX, shards[i].bytesTX};
+        return stats;
+    }
+
+    /**
+     * Returns the number of read calls issued on the connections of the client
+     * and the number of responses received over them.
+     *
+     * @return an array with the number of reads [0] and responses [1]
+     */
+    public long[] getReceiveStats() {
+        long[] stats = new long[2];
+        for (Shard shard : shards)
+            for (ConnectionPool pool : shard.connections.values())
+                for (RPCClientConnection con : pool.connections) {
+                    stats[0] += con.getRecordReader().getNumReads();
+                    stats[1] += con.getRecordReader().getNumRecords();
+                }
+        return stats;
+    }
+
+    /**
+     * @return the number of open connections of each shard
+     */
+    public int[] getNumConnectionsPerShard() {
+        int[] result = new int[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            for (ConnectionPool pool : shards[i].connections.values())
+                for (RPCClientConnection con : pool.connections)
+                    if (con.isConnected())
+                        result[i]++;
+        return result;
+    }
+
+    /**
+     * Sets the number of connections that are opened to each server. Only
+     * affects servers that are contacted for the first time or after their
+     * connections have been closed due to inactivity.
+     *
+     * @param bulkConnections
+     *            number of connections over which requests with bulk data are
+     *            spread in a round-robin fashion
+     * @param lowLatencyConnection
+     *            if <code>true</code>, requests without bulk data are sent
+     *            over an additional connection; otherwise, they are spread
+     *            across the bulk connections as well
+     */
+    public void setConnectionsPerServer(int bulkConnections, boolean lowLatencyConnection) {
+        if (bulkConnections < 1)
+            throw new IllegalArgumentException("at least one connection per server is required");
+        this.bulkConnectionsPerServer = bulkConnections;
+        this.lowLatencyConnection = lowLatencyConnection;
+    }
+
+    private Shard getShard(InetSocketAddress server) {
+        if (shards.length == 1)
+            return shards[0];
+        return shards[(server.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /**
+     * The connections to a subset of the servers and the selector they are
+     * registered with.
+     */
+    private static final class Shard {
+
+        final Selector                                                 selector;
+
+        final ConcurrentHashMap<InetSocketAddress, ConnectionPool>      connections;
+
+        final ConcurrentLinkedQueue<RPCClientConnection>                toBeEstablished;
+
+        /**
+         * time of the last timeout check; only accessed by the shard thread
+         */
+        long                                                           lastCheck;
+
+        /**
+         * bytes received and sent; only updated by the shard thread
+         */
+        volatile long                                                  bytesRX, bytesTX;
+
+        Shard() throws IOException {
+            selector = Selector.open();
+            connections = new ConcurrentHashMap<InetSocketAddress, ConnectionPool>();
+            toBeEstablished = new ConcurrentLinkedQueue<RPCClientConnection>();
+        }
+    }
+
+    /**
+     * The connections to a server.
+     */
+    private static final class ConnectionPool {
+
+        /**
+         * all connections to the server; the first one is the low-latency
+         * connection, if there is one
+         */
+        final RPCClientConnection[] connections;
+
+        /**
+         * number of leading connections reserved for requests without bulk
+         * data (0 or 1)
+         */
+        private final int           numLowLatency;
+
+        private final AtomicInteger nextConnection;
+
+        /**
+         * set when the pool is closed due to inactivity; requests must not be
+         * queued at closed pools
+         */
+        // JCIP @GuardedBy("this")
+        boolean                     closed;
+
+        ConnectionPool(InetSocketAddress server, int bulkConnections, boolean lowLatencyConnection) {
+            numLowLatency = lowLatencyConnection ? 1 : 0;
+            connections = new RPCClientConnection[bulkConnections + numLowLatency];
+            for (int i = 0; i < connections.length; i++)
+                connections[i] = new RPCClientConnection(server);
+            nextConnection = new AtomicInteger();
+        }
+
+        /**
+         * Returns the connection a request is sent over.
+         *
+         * @param bulk
+         *            <code>true</code>, if the request carries bulk data
+         */
+        RPCClientConnection getConnection(boolean bulk) {
+            if (!bulk && numLowLatency > 0)
+                return connections[0];
+            final int numBulk = connections.length - numLowLatency;
+            if (numBulk == 1)
+                return connections[numLowLatency];
+            return connections[numLowLatency + (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % numBulk];
+        }
+
+        long getLastUsed() {
+            long lastUsed = 0;
+            for (RPCClientConnection con : connections)
+                lastUsed = Math.max(lastUsed, con.getLastUsed());
+            return lastUsed;
+        }
+    }
+
+    /**
+     * Processes a shard other than the first one.
+     */
+    private final class ShardThread extends Thread {
+
+        final Shard shard;
+
+        ShardThread(Shard shard, String name) {
+            super(name);
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+            try {
+                processShard(shard);
+            } catch (Throwable thr) {
+                Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this, "PBRPC Client CRASHED!");
+                notifyCrashed(thr);
+            }
+        }
     }
 }
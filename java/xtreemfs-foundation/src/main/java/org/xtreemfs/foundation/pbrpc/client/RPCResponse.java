@@ -107,7 +107,7 @@ public class RPCResponse<V extends Message> implements RPCResponseListener<V> {
 
     public void waitForResult() throws InterruptedException {
         synchronized (this) {
-            if (request == null && !failed)
+            while (request == null && !failed)
                 this.wait();
         }
     }
@@ -134,7 +134,7 @@ public class RPCResponse<V extends Message> implements RPCResponseListener<V> {
             this.request = request;
             if (listener != null)
                 listener.responseAvailable(this);
-            this.notify();
+            this.notifyAll();
         }
     }
 
@@ -145,7 +145,7 @@ public class RPCResponse<V extends Message> implements RPCResponseListener<V> {
             this.errorMessage = errorMessage;
             if (listener != null)
                 listener.responseAvailable(this);
-            this.notify();
+            this.notifyAll();
         }
     }
 
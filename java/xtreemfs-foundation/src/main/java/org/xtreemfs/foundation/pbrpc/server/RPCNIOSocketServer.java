@@ -21,11 +21,14 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xtreemfs.foundation.LifeCycleThread;
 import org.xtreemfs.foundation.SSLOptions;
@@ -36,13 +39,34 @@ import org.xtreemfs.foundation.logging.Logging.Category;
 import org.xtreemfs.foundation.pbrpc.channels.ChannelIO;
 import org.xtreemfs.foundation.pbrpc.channels.SSLChannelIO;
 import org.xtreemfs.foundation.pbrpc.channels.SSLHandshakeOnlyChannelIO;
+import org.xtreemfs.foundation.pbrpc.utils.RecordReader;
 import org.xtreemfs.foundation.util.OutputUtils;
 
 /**
+ * A PBRPC server based on non-blocking I/O.
+ * <p>
+ * By default, a single thread accepts connections and processes all I/O on them. Alternatively, the server can be
+ * configured with a number of I/O selector threads. In this case, the server thread only accepts connections and
+ * assigns each of them to one of the selector threads, which processes all further I/O on the connection.
+ * 
  * @author bjko
  */
 public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInterface {
 
+    /**
+     * Determines how connections are distributed among the I/O selector threads.
+     */
+    public static enum ConnectionAssignment {
+        /**
+         * connections are assigned to the selector threads in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * a connection is assigned to the selector thread that currently serves the fewest connections
+         */
+        LEAST_CONNECTIONS
+    }
+
     /**
      * Maximum fragment size to accept. If the size is larger, the connection is
      * closed.
@@ -55,10 +79,25 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     private final ServerSocketChannel socket;
 
     /**
-     * Selector for server socket
+     * Selector for server socket, which is also used for all connections if
+     * there are no I/O selector threads
      */
     private final Selector selector;
 
+    /**
+     * threads that process the I/O on accepted connections; empty if all
+     * connections are processed by the server thread
+     */
+    private final SelectorThread[] selectorThreads;
+
+    private final ConnectionAssignment connectionAssignment;
+
+    /**
+     * the selector thread the next connection is assigned to in round-robin
+     * mode; only accessed by the server thread
+     */
+    private int nextSelectorThread;
+
     /**
      * If set to true the main loop will exit upon next invocation
      */
@@ -82,14 +121,14 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     /**
      * Number of requests received but not answered
      */
-    private long pendingRequests;
+    private final AtomicLong pendingRequests;
 
     /**
      * Port on which the server listens for incoming connections.
      */
     private final int bindPort;
 
-    private final List<RPCNIOSocketServerConnection> connections;
+    private final Set<RPCNIOSocketServerConnection> connections;
 
     /**
      * maximum number of pending client requests to allow
@@ -122,6 +161,25 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     public RPCNIOSocketServer(int bindPort, InetAddress bindAddr, RPCServerRequestListener rl,
                               SSLOptions sslOptions, int bindRetries, int receiveBufferSize,
                               int maxClientQLength) throws IOException {
+        this(bindPort, bindAddr, rl, sslOptions, bindRetries, receiveBufferSize, maxClientQLength, 0,
+                ConnectionAssignment.LEAST_CONNECTIONS);
+    }
+
+    /**
+     * Creates a new server.
+     *
+     * @param numSelectorThreads
+     *            number of threads that process the I/O on accepted
+     *            connections; if 0, all connections are processed by the
+     *            server thread
+     * @param connectionAssignment
+     *            determines how connections are assigned to the selector
+     *            threads
+     */
+    public RPCNIOSocketServer(int bindPort, InetAddress bindAddr, RPCServerRequestListener rl,
+                              SSLOptions sslOptions, int bindRetries, int receiveBufferSize,
+                              int maxClientQLength, int numSelectorThreads,
+                              ConnectionAssignment connectionAssignment) throws IOException {
         super("PBRPCSrv@" + bindPort);
 
         // open server socket
@@ -187,6 +245,11 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
         selector = Selector.open();
         socket.register(selector, SelectionKey.OP_ACCEPT);
 
+        selectorThreads = new SelectorThread[Math.max(0, numSelectorThreads)];
+        for (int i = 0; i < selectorThreads.length; i++)
+            selectorThreads[i] = new SelectorThread(i);
+        this.connectionAssignment = connectionAssignment;
+
         // server is ready to accept connections now
 
         this.receiver = rl;
@@ -195,7 +258,10 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
 
         this.numConnections = new AtomicInteger(0);
 
-        this.connections = new LinkedList<RPCNIOSocketServerConnection>();
+        this.connections = Collections
+                .newSetFromMap(new ConcurrentHashMap<RPCNIOSocketServerConnection, Boolean>());
+
+        this.pendingRequests = new AtomicLong();
 
         this.maxClientQLength = maxClientQLength;
         this.clientQThreshold = (maxClientQLength / 2 >= 0) ? maxClientQLength / 2 : 0;
@@ -211,6 +277,8 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     public void shutdown() {
         this.quit = true;
         this.interrupt();
+        for (SelectorThread th : selectorThreads)
+            th.selector.wakeup();
     }
 
     /**
@@ -239,7 +307,8 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                 boolean isEmpty = connection.getPendingResponses().isEmpty();
                 connection.addPendingResponse(response);
                 if (isEmpty) {
-                    final SelectionKey key = connection.getChannel().keyFor(selector);
+                    final Selector conSelector = connection.getSelector();
+                    final SelectionKey key = connection.getChannel().keyFor(conSelector);
                     if (key != null) {
                         try {
                             key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
@@ -247,7 +316,7 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                             // Ignore it since the timeout mechanism will deal with it.
                         }
                     }
-                    selector.wakeup();
+                    conSelector.wakeup();
                 }
             }
         } else {
@@ -259,6 +328,9 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     @Override
     public void run() {
 
+        for (SelectorThread th : selectorThreads)
+            th.start();
+
         notifyStarted();
 
         if (Logging.isInfo()) {
@@ -271,48 +343,27 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                 }
             }
             Logging.logMessage(Logging.LEVEL_INFO, Category.net, this, "PBRPC Srv %d ready %s", bindPort, sslMode);
+            if (selectorThreads.length > 0)
+                Logging.logMessage(Logging.LEVEL_INFO, Category.net, this,
+                        "PBRPC Srv %d uses %d selector threads (%s)", bindPort, selectorThreads.length,
+                        connectionAssignment);
         }
 
         try {
             while (!quit) {
-                // try to select events...
-                int numKeys = 0;
-                try {
-                    numKeys = selector.select();
-                } catch (CancelledKeyException ex) {
-                    // who cares
-                } catch (IOException ex) {
-                    Logging.logMessage(Logging.LEVEL_WARN, Category.net, this,
-                            "Exception while selecting: %s", ex.toString());
-                    continue;
-                }
-
-                if (numKeys > 0) {
-                    // fetch events
-                    Set<SelectionKey> keys = selector.selectedKeys();
-                    Iterator<SelectionKey> iter = keys.iterator();
-
-                    // process all events
-                    while (iter.hasNext()) {
-                        SelectionKey key = iter.next();
-
-                        // remove key from the list
-                        iter.remove();
-                        try {
+                processEvents(selector);
+            }
 
-                            if (key.isAcceptable()) {
-                                acceptConnection();
-                            }
-                            if (key.isReadable()) {
-                                readConnection(key);
-                            }
-                            if (key.isWritable()) {
-                                writeConnection(key);
-                            }
-                        } catch (CancelledKeyException ex) {
-                            // nobody cares...
-                            continue;
-                        }
+            // wait for the selector threads to release their connections; the
+            // server thread is interrupted on shutdown, so the join has to be
+            // retried
+            for (SelectorThread th : selectorThreads) {
+                th.selector.wakeup();
+                while (th.isAlive()) {
+                    try {
+                        th.join();
+                    } catch (InterruptedException ex) {
+                        // ignore
                     }
                 }
             }
@@ -327,6 +378,8 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
 
             // close socket
             selector.close();
+            for (SelectorThread th : selectorThreads)
+                th.selector.close();
             socket.close();
 
             if (Logging.isInfo())
@@ -341,6 +394,55 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
 
     }
 
+    /**
+     * Waits for events on a selector and processes them.
+     *
+     * @param sel the selector
+     */
+    private void processEvents(Selector sel) throws IOException {
+
+        // try to select events...
+        int numKeys = 0;
+        try {
+            numKeys = sel.select();
+        } catch (CancelledKeyException ex) {
+            // who cares
+        } catch (IOException ex) {
+            Logging.logMessage(Logging.LEVEL_WARN, Category.net, this,
+                    "Exception while selecting: %s", ex.toString());
+            return;
+        }
+
+        if (numKeys > 0) {
+            // fetch events
+            Set<SelectionKey> keys = sel.selectedKeys();
+            Iterator<SelectionKey> iter = keys.iterator();
+
+            // process all events
+            while (iter.hasNext()) {
+                SelectionKey key = iter.next();
+
+                // remove key from the list
+                iter.remove();
+                try {
+
+                    if (key.isAcceptable()) {
+                        acceptConnection();
+                    }
+                    if (key.isReadable()) {
+                        readConnection(key);
+                    }
+                    if (key.isWritable()) {
+                        writeConnection(key);
+                    }
+                } catch (CancelledKeyException ex) {
+                    // nobody cares...
+                    continue;
+                }
+            }
+        }
+    }
+
     /**
      * read data from a readable connection
      *
@@ -355,7 +457,13 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
 
             if (!channel.isShutdownInProgress()) {
                 if (channel.doHandshake(key)) {
+                    final RecordReader reader = con.getRecordReader();
+                    reader.readable();
                     while (true) {
+
+                        // the queue limit also applies to requests that have
+                        // already been received; they remain staged until the
+                        // client is allowed to send requests again
                         if (con.getOpenRequests().get() > maxClientQLength) {
                             key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
                             Logging.logMessage(Logging.LEVEL_WARN, Category.net, this,
@@ -364,28 +472,60 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                             return;
                         }
 
-                        ByteBuffer buf = null;
-                        switch (con.getReceiveState()) {
-                            case RECORD_MARKER: {
-                                buf = con.getReceiveRecordMarker();
-                                break;
-                            }
-                            case RPC_HEADER: {
-                                buf = con.getReceiveBuffers()[0].getBuffer();
-                                break;
+                        // dispatch all requests that have been received
+                        // completely before reading further
+                        ReusableBuffer[] record;
+                        try {
+                            record = reader.nextRecord();
+                        } catch (IOException ex) {
+                            Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this,
+                                    "%s, closing connection to client %s", ex.getMessage(), channel.socket()
+                                            .getRemoteSocketAddress().toString());
+                            closeConnection(key);
+                            return;
+                        }
+
+                        if (record != null) {
+                            RPCServerRequest rq = null;
+                            try {
+                                rq = new RPCServerRequest(con, record[0], record[1], record[2]);
+                            } catch (IOException ex) {
+                                // close connection if the header cannot be parsed
+                                Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this, "invalid PBRPC header received: " + ex);
+                                if (Logging.isDebug()) {
+                                    Logging.logError(Logging.LEVEL_DEBUG, this, ex);
+                                }
+                                closeConnection(key);
+                                BufferPool.free(record[1]);
+                                BufferPool.free(record[2]);
+                                return;
                             }
-                            case RPC_MESSAGE: {
-                                buf = con.getReceiveBuffers()[1].getBuffer();
-                                break;
+                            // request is
+                            // complete... send to receiver
+                            if (Logging.isDebug()) {
+                                Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this, rq
+                                        .toString());
                             }
-                            case DATA: {
-                                buf = con.getReceiveBuffers()[2].getBuffer();
-                                break;
+                            con.getOpenRequests().incrementAndGet();
+                            if (Logging.isDebug())
+                                Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
+                                        "request received (request %s)",
+                                                   rq.getHeader().getCallId());
+                            pendingRequests.incrementAndGet();
+                            if (!receiveRequest(rq, con)) {
+                                closeConnection(key);
+                                return;
                             }
+                            continue;
                         }
 
-                        // read fragment header
-                        final int numBytesRead = readData(key, channel, buf);
+                        if (!reader.isMoreDataAvailable()) {
+                            // the socket has been drained
+                            break;
+                        }
+
+                        // read as much as possible with a single call
+                        final long numBytesRead = reader.read(channel);
                         if (numBytesRead == -1) {
                             // connection closed
                             if (Logging.isInfo()) {
@@ -396,102 +536,10 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                             closeConnection(key);
                             return;
                         }
-                        if (buf.hasRemaining()) {
+                        if (numBytesRead == 0) {
                             // not enough data...
                             break;
                         }
-
-                        switch (con.getReceiveState()) {
-                            case RECORD_MARKER: {
-                                buf.position(0);
-                                final int hdrLen = buf.getInt();
-                                final int msgLen = buf.getInt();
-                                final int dataLen = buf.getInt();
-
-                                if ((hdrLen <= 0) || (hdrLen >= MAX_FRAGMENT_SIZE)
-                                        || (msgLen < 0) || (msgLen >= MAX_FRAGMENT_SIZE)
-                                        || (dataLen < 0) || (dataLen >= MAX_FRAGMENT_SIZE)) {
-                                    Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this,
-                                            "invalid record marker size (%d/%d/%d) received, closing connection to client %s",
-                                            hdrLen, msgLen, dataLen, channel.socket()
-                                                    .getRemoteSocketAddress().toString());
-                                    closeConnection(key);
-                                    return;
-                                }
-                                final ReusableBuffer[] buffers = new ReusableBuffer[]{BufferPool.allocate(hdrLen),
-                                        ((msgLen > 0) ? BufferPool.allocate(msgLen) : null),
-                                        ((dataLen > 0) ? BufferPool.allocate(dataLen) : null)};
-                                con.setReceiveBuffers(buffers);
-                                con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RPC_HEADER);
-                                continue;
-                            }
-
-                            case RPC_HEADER: {
-                                if (con.getReceiveBuffers()[1] != null) {
-                                    con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RPC_MESSAGE);
-                                    continue;
-                                } else {
-                                    if (con.getReceiveBuffers()[2] != null) {
-                                        con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.DATA);
-                                        continue;
-                                    } else {
-                                        break;
-                                    }
-                                }
-                            }
-                            case RPC_MESSAGE: {
-                                if (con.getReceiveBuffers()[2] != null) {
-                                    con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.DATA);
-                                    continue;
-                                } else {
-                                    break;
-                                }
-
-                            }
-                        }
-
-                        //assemble ServerRequest
-                        con.setReceiveState(RPCNIOSocketServerConnection.ReceiveState.RECORD_MARKER);
-                        con.getReceiveRecordMarker().clear();
-
-                        ReusableBuffer[] receiveBuffers = con.getReceiveBuffers();
-                        receiveBuffers[0].flip();
-                        if (receiveBuffers[1] != null)
-                            receiveBuffers[1].flip();
-                        if (receiveBuffers[2] != null)
-                            receiveBuffers[2].flip();
-                        con.setReceiveBuffers(null);
-
-                        RPCServerRequest rq = null;
-                        try {
-                            rq = new RPCServerRequest(con, receiveBuffers[0], receiveBuffers[1], receiveBuffers[2]);
-                        } catch (IOException ex) {
-                            // close connection if the header cannot be parsed
-                            Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this, "invalid PBRPC header received: " + ex);
-                            if (Logging.isDebug()) {
-                                Logging.logError(Logging.LEVEL_DEBUG, this, ex);
-                            }
-                            closeConnection(key);
-                            BufferPool.free(receiveBuffers[1]);
-                            BufferPool.free(receiveBuffers[2]);
-                            return;
-                        }
-                        // request is 
-                        // complete... send to receiver
-                        if (Logging.isDebug()) {
-                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this, rq
-                                    .toString());
-                        }
-                        con.getOpenRequests().incrementAndGet();
-                        if (Logging.isDebug())
-                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
-                                    "request received (request %s)",
-                                               rq.getHeader().getCallId());
-                        pendingRequests++;
-                        if (!receiveRequest(rq, con)) {
-                            closeConnection(key);
-                            return;
-                        }
                     }
                 }
             }
@@ -539,6 +587,7 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
             if (!channel.isShutdownInProgress()) {
                 if (channel.doHandshake(key)) {
 
+                    boolean resumed = false;
                     while (true) {
 
                         // final ByteBuffer fragmentHeader =
@@ -592,7 +641,7 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                         con.checkEnoughBytesSent();
                         // finished sending fragment
                         // clean up :-) request finished
-                        pendingRequests--;
+                        pendingRequests.decrementAndGet();
                         RPCServerResponse rq = con.getPendingResponses().poll();
                         if (Logging.isDebug()) {
                             Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
@@ -607,12 +656,18 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
                             if (numRq < clientQThreshold) {
                                 // read from client again
                                 key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                                resumed = true;
                                 Logging.logMessage(Logging.LEVEL_WARN, Category.net, this,
                                         "client allowed to send data again: %s, q=%d", con.getChannel().socket()
                                                 .getRemoteSocketAddress().toString(), numRq);
                             }
                         }
                     }
+
+                    // requests that have been received before the client was
+                    // stopped are dispatched even if no further data arrives
+                    if (resumed)
+                        readConnection(key);
                 }
             }
         } catch (CancelledKeyException ex) {
@@ -689,6 +744,9 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
         } finally {
             // adjust connection count and make sure buffers are freed
             numConnections.decrementAndGet();
+            for (SelectorThread th : selectorThreads)
+                if (th.selector == key.selector())
+                    th.numConnections.decrementAndGet();
             con.freeBuffers();
         }
 
@@ -726,13 +784,21 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
             // and configure it to be non blocking
             // IMPORTANT!
             client.configureBlocking(false);
-            client.register(selector, SelectionKey.OP_READ, con);
             client.socket().setTcpNoDelay(true);
 
             numConnections.incrementAndGet();
 
             this.connections.add(con);
 
+            if (selectorThreads.length == 0) {
+                con.setSelector(selector);
+                client.register(selector, SelectionKey.OP_READ, con);
+            } else {
+                // the selector thread registers the connection itself, as
+                // registering blocks while the thread is selecting
+                getSelectorThread().addConnection(con);
+            }
+
             if (Logging.isDebug()) {
                 Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this, "connect from client at %s",
                         client.socket().getRemoteSocketAddress().toString());
@@ -784,6 +850,114 @@ public class RPCNIOSocketServer extends LifeCycleThread implements RPCServerInte
     }
 
     public long getPendingRequests() {
-        return this.pendingRequests;
+        return this.pendingRequests.get();
+    }
+
+    /**
+     * Returns the number of read calls issued on the currently open connections
+     * and the number of requests received over them.
+     *
+     * @return an array with the number of reads [0] and requests [1]
+     */
+    public long[] getReceiveStats() {
+        long[] stats = new long[2];
+        for (RPCNIOSocketServerConnection con : connections) {
+            stats[0] += con.getRecordReader().getNumReads();
+            stats[1] += con.getRecordReader().getNumRecords();
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of connections served by each I/O selector thread;
+     *         empty if all connections are served by the server thread
+     */
+    public int[] getNumConnectionsPerSelector() {
+        int[] result = new int[selectorThreads.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = selectorThreads[i].numConnections.get();
+        return result;
+    }
+
+    /**
+     * Returns the selector thread a newly accepted connection is assigned to.
+     */
+    private SelectorThread getSelectorThread() {
+
+        if (connectionAssignment == ConnectionAssignment.ROUND_ROBIN) {
+            nextSelectorThread = (nextSelectorThread + 1) % selectorThreads.length;
+            return selectorThreads[nextSelectorThread];
+        }
+
+        SelectorThread result = selectorThreads[0];
+        for (SelectorThread th : selectorThreads)
+            if (th.numConnections.get() < result.numConnections.get())
+                result = th;
+        return result;
+    }
+
+    /**
+     * A thread that processes the I/O on a subset of the connections.
+     */
+    private final class SelectorThread extends Thread {
+
+        final Selector                                   selector;
+
+        /**
+         * number of connections assigned to this thread
+         */
+        final AtomicInteger                              numConnections;
+
+        /**
+         * connections that have been assigned to this thread but not
+         * registered with its selector yet
+         */
+        private final Queue<RPCNIOSocketServerConnection> newConnections;
+
+        SelectorThread(int id) throws IOException {
+            super("PBRPCSrv@" + bindPort + "-" + id);
+            this.selector = Selector.open();
+            this.numConnections = new AtomicInteger();
+            this.newConnections = new ConcurrentLinkedQueue<RPCNIOSocketServerConnection>();
+        }
+
+        void addConnection(RPCNIOSocketServerConnection con) {
+            con.setSelector(selector);
+            numConnections.incrementAndGet();
+            newConnections.add(con);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!quit) {
+                    registerNewConnections();
+                    processEvents(selector);
+                }
+            } catch (Throwable thr) {
+                Logging.logMessage(Logging.LEVEL_ERROR, Category.net, this,
+                        "PBRPC Server %d selector thread CRASHED!", bindPort);
+                notifyCrashed(thr);
+            }
+        }
+
+        private void registerNewConnections() {
+            RPCNIOSocketServerConnection con;
+            while ((con = newConnections.poll()) != null) {
+                try {
+                    con.getChannel().register(selector, SelectionKey.OP_READ, con);
+                } catch (ClosedChannelException ex) {
+                    if (Logging.isDebug())
+                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
+                                "client closed connection before it was registered");
+                    connections.remove(con);
+                    con.setConnectionClosed(true);
+                    RPCNIOSocketServer.this.numConnections.decrementAndGet();
+                    numConnections.decrementAndGet();
+                    con.freeBuffers();
+                }
+            }
+        }
     }
 }
@@ -10,15 +10,15 @@ package org.xtreemfs.foundation.pbrpc.server;
 
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.xtreemfs.foundation.buffer.BufferPool;
-import org.xtreemfs.foundation.buffer.ReusableBuffer;
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.pbrpc.channels.ChannelIO;
 import org.xtreemfs.foundation.pbrpc.utils.RecordMarker;
+import org.xtreemfs.foundation.pbrpc.utils.RecordReader;
 
 /**
  *
@@ -26,26 +26,15 @@ import org.xtreemfs.foundation.pbrpc.utils.RecordMarker;
  */
 public class RPCNIOSocketServerConnection implements RPCServerConnectionInterface {
 
-    public enum ReceiveState {
-        RECORD_MARKER,
-        RPC_HEADER,
-        RPC_MESSAGE,
-        DATA
-    };
-
     private final AtomicInteger openRequests;
 
     private Queue<RPCServerResponse>   pendingResponses;
 
     private final ChannelIO     channel;
 
-    private final ByteBuffer    receiveRecordMarker;
-
     private final ByteBuffer    sendFragHdr;
 
-    private ReusableBuffer[]    receiveBuffers;
-
-    private ReceiveState        receiveState;
+    private final RecordReader  recordReader;
 
     private ByteBuffer[]        sendBuffers;
 
@@ -58,6 +47,11 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
     private long                bytesSent;
     
     private int                 expectedRecordSize;
+    
+    /**
+     * the selector the connection is registered with
+     */
+    private volatile Selector   selector;
 
     public RPCNIOSocketServerConnection(RPCServerInterface server, ChannelIO channel) {
         assert(server != null);
@@ -66,9 +60,8 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
         this.openRequests = new AtomicInteger(0);
         this.pendingResponses = new ConcurrentLinkedQueue<RPCServerResponse>();
         this.connectionClosed = false;
-        this.receiveRecordMarker = ByteBuffer.allocate(RecordMarker.HDR_SIZE);
         this.sendFragHdr = ByteBuffer.allocate(RecordMarker.HDR_SIZE);
-        this.receiveState = ReceiveState.RECORD_MARKER;
+        this.recordReader = new RecordReader();
         this.server = server;
         try {
             this.clientAddress = channel.socket().getRemoteSocketAddress();
@@ -76,20 +69,6 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
         }
     }
 
-    /**
-     * @return the receiveState
-     */
-    public ReceiveState getReceiveState() {
-        return receiveState;
-    }
-
-    /**
-     * @param receiveState the receiveState to set
-     */
-    public void setReceiveState(ReceiveState receiveState) {
-        this.receiveState = receiveState;
-    }
-
     @Override
     public RPCServerInterface getServer() {
         return server;
@@ -101,10 +80,7 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
     }
 
     public void freeBuffers() {
-        if (receiveBuffers != null) {
-            for (ReusableBuffer buffer : receiveBuffers)
-                BufferPool.free(buffer);
-        }
+        recordReader.freeBuffers();
         for (RPCServerResponse r : pendingResponses) {
             r.freeBuffers();
         }
@@ -151,13 +127,6 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
         this.pendingResponses.add(rq);
     }
 
-    /**
-     * @return the fragmentHeader
-     */
-    ByteBuffer getReceiveRecordMarker() {
-        return receiveRecordMarker;
-    }
-
     /**
      * @return the fragmentHeader
      */
@@ -166,17 +135,10 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
     }
 
     /**
-     * @return the receive
-     */
-    ReusableBuffer[] getReceiveBuffers() {
-        return receiveBuffers;
-    }
-
-    /**
-     * @param receive the receive to set
+     * @return the reader that reassembles the received requests
      */
-    void setReceiveBuffers(ReusableBuffer[] receive) {
-        this.receiveBuffers = receive;
+    RecordReader getRecordReader() {
+        return recordReader;
     }
 
     /**
@@ -194,6 +156,20 @@ public class RPCNIOSocketServerConnection implements RPCServerConnectionInterfac
     }
 
 
+    /**
+     * @return the selector the connection is registered with
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * @param selector the selector the connection is registered with
+     */
+    void setSelector(Selector selector) {
+        this.selector = selector;
+    }
+
     /**
      * @return the clientAddress
      */
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.pbrpc.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.pbrpc.channels.ChannelIO;
+import org.xtreemfs.foundation.pbrpc.server.RPCNIOSocketServer;
+
+/**
+ * Reassembles the records received on a connection.
+ * <p>
+ * Incoming bytes are read into a pooled staging buffer as far as it has space,
+ * so that a single read usually retrieves the record marker, RPC header and
+ * message of a record, or even several small records. Header and message are
+ * handed out as view buffers of the staging buffer. Once the staging buffer is
+ * full, a new one is allocated; the old one is returned to the pool when all
+ * views of it have been freed. Data is read directly into a pooled buffer of
+ * the data length by means of scattering reads, which also fill the staging
+ * buffer with the bytes that follow the record.
+ * <p>
+ * Instances are not thread-safe; they are meant to be used by the thread that
+ * processes the I/O of the connection.
+ */
+public final class RecordReader {
+
+    /**
+     * size of the staging buffers
+     */
+    public static final int  STAGING_BUFFER_SIZE = BufferPool.BUFF_SIZES[0];
+
+    private ReusableBuffer   staging;
+
+    /**
+     * offset in the staging buffer up to which bytes have been assigned to
+     * records; may exceed the number of bytes received if header and message
+     * of the current record are still incomplete
+     */
+    private int              consumed;
+
+    /**
+     * lengths of the current record; hdrLen is -1 if its record marker has
+     * not been received yet
+     */
+    private int              hdrLen = -1, msgLen, dataLen;
+
+    /**
+     * offset of the current record's header in the staging buffer, if the
+     * header is received there
+     */
+    private int              hdrOffset;
+
+    /**
+     * buffer for header and message of the current record if they do not fit
+     * into a staging buffer, <code>null</code> otherwise
+     */
+    private ReusableBuffer   hdrMsg;
+
+    private ReusableBuffer   data;
+
+    /**
+     * <code>true</code>, if the last read filled all buffers it was given
+     */
+    private boolean          moreDataAvailable = true;
+
+    private final ByteBuffer[] readBuffers = new ByteBuffer[3];
+
+    private volatile long    numReads;
+
+    private volatile long    numRecords;
+
+    /**
+     * Returns the next record that has been received completely.
+     *
+     * @return an array with the RPC header, message (or <code>null</code>) and
+     *         data (or <code>null</code>), or <code>null</code> if more bytes
+     *         have to be read first
+     * @throws IOException
+     *             if an invalid record marker has been received
+     */
+    public ReusableBuffer[] nextRecord() throws IOException {
+
+        if (staging == null)
+            return null;
+
+        ByteBuffer buf = staging.getBuffer();
+
+        if (hdrLen == -1) {
+            if (buf.position() - consumed < RecordMarker.HDR_SIZE)
+                return null;
+
+            hdrLen = buf.getInt(consumed);
+            msgLen = buf.getInt(consumed + 4);
+            dataLen = buf.getInt(consumed + 8);
+            if ((hdrLen <= 0) || (hdrLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)
+                    || (msgLen < 0) || (msgLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)
+                    || (dataLen < 0) || (dataLen >= RPCNIOSocketServer.MAX_FRAGMENT_SIZE)) {
+                throw new IOException("invalid record marker size (" + hdrLen + "/" + msgLen + "/" + dataLen
+                        + ") received");
+            }
+            consumed += RecordMarker.HDR_SIZE;
+
+            final int hdrMsgLen = hdrLen + msgLen;
+            if (hdrMsgLen > buf.capacity() - consumed) {
+                if (hdrMsgLen <= STAGING_BUFFER_SIZE) {
+                    // header and message fit into a new staging buffer
+                    renewStagingBuffer();
+                } else {
+                    // move the bytes received so far to a dedicated buffer
+                    hdrMsg = BufferPool.allocate(hdrMsgLen);
+                    copyStaged(hdrMsg.getBuffer(), buf.position() - consumed);
+                }
+                buf = staging.getBuffer();
+            }
+            if (hdrMsg == null) {
+                hdrOffset = consumed;
+                consumed += hdrMsgLen;
+            }
+            if (dataLen > 0)
+                data = BufferPool.allocate(dataLen);
+        }
+
+        if (hdrMsg != null ? hdrMsg.hasRemaining() : buf.position() < consumed)
+            return null;
+
+        if (data != null && data.hasRemaining()) {
+            // move data that has been read into the staging buffer to the
+            // data buffer
+            copyStaged(data.getBuffer(), Math.min(buf.position() - consumed, data.remaining()));
+            if (data.hasRemaining())
+                return null;
+        }
+
+        final ReusableBuffer[] record = new ReusableBuffer[3];
+        if (hdrMsg != null) {
+            record[0] = slice(hdrMsg, 0, hdrLen);
+            record[1] = msgLen > 0 ? slice(hdrMsg, hdrLen, msgLen) : null;
+            BufferPool.free(hdrMsg);
+            hdrMsg = null;
+        } else {
+            record[0] = slice(staging, hdrOffset, hdrLen);
+            record[1] = msgLen > 0 ? slice(staging, hdrOffset + hdrLen, msgLen) : null;
+        }
+        if (data != null) {
+            data.flip();
+            record[2] = data;
+            data = null;
+        }
+        hdrLen = -1;
+        numRecords++;
+
+        return record;
+    }
+
+    /**
+     * Reads as many bytes from the channel as fit into the buffers of the
+     * current record and the staging buffer, with a single read call.
+     *
+     * @return the number of bytes read, -1 on EOF
+     */
+    public long read(ChannelIO channel) throws IOException {
+
+        if (staging == null) {
+            staging = BufferPool.allocate(STAGING_BUFFER_SIZE);
+            consumed = 0;
+        } else if (staging.getBuffer().position() == staging.capacity() && (hdrLen == -1 || hdrMsg != null)) {
+            // if the header of the current record resides in the staging
+            // buffer, it is complete, and only its data has to be read before
+            // the staging buffer may be replaced
+            renewStagingBuffer();
+        }
+
+        final ByteBuffer buf = staging.getBuffer();
+        int numBuffers = 0;
+        ByteBuffer hdrMsgPart = null;
+        ByteBuffer tail = buf;
+
+        if (hdrLen != -1) {
+            // header and message, followed by data and the next record
+            if (hdrMsg != null) {
+                if (hdrMsg.hasRemaining())
+                    readBuffers[numBuffers++] = hdrMsg.getBuffer();
+            } else if (buf.position() < consumed) {
+                hdrMsgPart = buf.duplicate();
+                hdrMsgPart.limit(consumed);
+                readBuffers[numBuffers++] = hdrMsgPart;
+                tail = buf.duplicate();
+                tail.position(consumed);
+            }
+            if (data != null && data.hasRemaining())
+                readBuffers[numBuffers++] = data.getBuffer();
+        }
+        if (tail.hasRemaining() || numBuffers == 0)
+            readBuffers[numBuffers++] = tail;
+
+        long offered = 0;
+        for (int i = 0; i < numBuffers; i++)
+            offered += readBuffers[i].remaining();
+
+        final long numBytesRead = numBuffers == 1 ? channel.read(readBuffers[0]) : channel.read(readBuffers, 0,
+                numBuffers);
+        numReads++;
+
+        // advance the position of the staging buffer
+        if (hdrMsgPart != null)
+            buf.position(tail.position() > consumed ? tail.position() : hdrMsgPart.position());
+
+        for (int i = 0; i < readBuffers.length; i++)
+            readBuffers[i] = null;
+
+        moreDataAvailable = numBytesRead == offered;
+        return numBytesRead;
+    }
+
+    /**
+     * @return <code>true</code>, if the last read filled all buffers, i.e.
+     *         further bytes may be available without waiting
+     */
+    public boolean isMoreDataAvailable() {
+        return moreDataAvailable;
+    }
+
+    /**
+     * Must be invoked when the connection becomes readable again after
+     * {@link #isMoreDataAvailable()} has returned <code>false</code>.
+     */
+    public void readable() {
+        moreDataAvailable = true;
+    }
+
+    /**
+     * @return the number of read calls
+     */
+    public long getNumReads() {
+        return numReads;
+    }
+
+    /**
+     * @return the number of records received
+     */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Frees all buffers and discards partially received records.
+     */
+    public void freeBuffers() {
+        BufferPool.free(staging);
+        BufferPool.free(hdrMsg);
+        BufferPool.free(data);
+        staging = null;
+        hdrMsg = null;
+        data = null;
+        hdrLen = -1;
+        moreDataAvailable = true;
+    }
+
+    /**
+     * Replaces the staging buffer by a new one, to which the received bytes
+     * that have not been assigned to a record are copied.
+     */
+    private void renewStagingBuffer() {
+        final ReusableBuffer old = staging;
+        final ByteBuffer oldBuf = old.getBuffer();
+
+        staging = BufferPool.allocate(STAGING_BUFFER_SIZE);
+        final int unconsumed = oldBuf.position() - consumed;
+        if (unconsumed > 0) {
+            final ByteBuffer src = oldBuf.duplicate();
+            src.position(consumed);
+            staging.getBuffer().put(src);
+        }
+        consumed = 0;
+
+        // views of the old staging buffer keep it from being returned to the
+        // pool until they are freed
+        BufferPool.free(old);
+    }
+
+    /**
+     * Moves bytes received into the staging buffer to another buffer.
+     */
+    private void copyStaged(ByteBuffer dst, int length) {
+        if (length <= 0)
+            return;
+        final ByteBuffer src = staging.getBuffer().duplicate();
+        src.position(consumed);
+        src.limit(consumed + length);
+        dst.put(src);
+        consumed += length;
+    }
+
+    private static ReusableBuffer slice(ReusableBuffer buf, int offset, int length) {
+        final ReusableBuffer view = buf.createViewBuffer();
+        view.range(offset, length);
+        return view;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.buffer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Measures the allocation throughput of the {@link BufferPool} with many threads, each of which repeatedly allocates
+ * a few buffers of different size classes and frees them again. Not part of the regular test suite; run it manually,
+ * e.g. with -Dxtreemfs.bufferpool.threadCacheSize=0 to compare the results without per-thread caches.
+ */
+public class BufferPoolBenchmark {
+
+    private static final int    NUM_THREADS     = 64;
+
+    private static final int    BUFFERS_PER_OP  = 4;
+
+    private static final long   WARMUP_MILLIS   = 2000;
+
+    private static final long   MEASURE_MILLIS  = 5000;
+
+    private static final int[]  SIZES           = { 8192, 8192, 65536, 131072 };
+
+    @Test
+    public void benchmarkAllocateAndFree() throws Exception {
+
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(NUM_THREADS);
+        final long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+        final long end = warmupEnd + MEASURE_MILLIS;
+
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    ReusableBuffer[] bufs = new ReusableBuffer[BUFFERS_PER_OP];
+                    long count = 0;
+                    started.countDown();
+                    for (;;) {
+                        long now = System.currentTimeMillis();
+                        if (now >= end)
+                            break;
+                        boolean measuring = now >= warmupEnd;
+                        for (int n = 0; n < 1000; n++) {
+                            for (int j = 0; j < BUFFERS_PER_OP; j++)
+                                bufs[j] = BufferPool.allocate(SIZES[j]);
+                            for (int j = 0; j < BUFFERS_PER_OP; j++)
+                                BufferPool.free(bufs[j]);
+                        }
+                        if (measuring)
+                            count += 1000;
+                    }
+                    ops.addAndGet(count);
+                }
+            };
+            threads[i].start();
+        }
+        started.await();
+        for (Thread th : threads)
+            th.join();
+
+        System.out.println(String.format("%d threads, thread cache size %d: %,d allocations per second",
+                NUM_THREADS, BufferPool.THREAD_CACHE_SIZE, ops.get() * BUFFERS_PER_OP * 1000 / MEASURE_MILLIS));
+        System.out.println(BufferPool.getStatus());
+    }
+}
@@ -9,6 +9,8 @@ package org.xtreemfs.foundation.buffer;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 
 /**
@@ -100,6 +102,30 @@ public class BufferPoolTest {
                 BufferPool.getPoolSize(TEST_BUFFER_SIZE));
     }
 
+    @Test
+    public final void testThreadCache() throws Exception {
+        // A buffer freed by a thread is handed out to the same thread again.
+        ReusableBuffer buf = BufferPool.allocate(TEST_BUFFER_SIZE);
+        final ByteBuffer parent = buf.getParent();
+        BufferPool.free(buf);
+
+        buf = BufferPool.allocate(TEST_BUFFER_SIZE);
+        assertSame(parent, buf.getParent());
+
+        // Buffers cached by another thread are counted as pooled.
+        final ReusableBuffer otherBuf = buf;
+        final int currentPoolSize = BufferPool.getPoolSize(TEST_BUFFER_SIZE);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                BufferPool.free(otherBuf);
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals(currentPoolSize + 1, BufferPool.getPoolSize(TEST_BUFFER_SIZE));
+    }
+
     private void assertThatAssertionsAreEnabled() {
         boolean assertOn = false;
         // *assigns* true if assertions are on.
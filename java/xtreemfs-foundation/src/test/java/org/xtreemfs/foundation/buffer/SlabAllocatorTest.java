@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.buffer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SlabAllocatorTest {
+
+    private static final int[] SIZES = new int[] { 8192, 65536 };
+
+    @Test
+    public final void testCarve() {
+        SlabAllocator slabs = new SlabAllocator(3 * 65536, 65536, SIZES);
+
+        ByteBuffer a = slabs.carve(8192);
+        ByteBuffer b = slabs.carve(8192);
+        assertTrue(a.isDirect());
+        assertEquals(8192, a.capacity());
+        assertEquals(0, a.position());
+        assertEquals(8192, a.limit());
+        assertEquals(1, slabs.getNumSlabs());
+
+        // buffers must not overlap
+        a.put(0, (byte) 1);
+        b.put(0, (byte) 2);
+        assertEquals(1, a.get(0));
+        assertEquals(2, b.get(0));
+
+        // a buffer that does not fit into the rest of the slab starts a new one
+        ByteBuffer c = slabs.carve(65536);
+        assertEquals(65536, c.capacity());
+        assertEquals(2, slabs.getNumSlabs());
+        assertEquals(2 * 65536, slabs.getReservedBytes());
+        assertEquals(2 * 8192 + 65536, slabs.getCarvedBytes());
+
+        // the rest of the first slab is used before a new slab is reserved
+        for (int i = 0; i < 6; i++)
+            assertNotNull(slabs.carve(8192));
+        assertEquals(2, slabs.getNumSlabs());
+        assertEquals(8 * 8192 + 65536, slabs.getCarvedBytes());
+    }
+
+    @Test
+    public final void testSplitSpares() {
+        SlabAllocator slabs = new SlabAllocator(2 * 262144, 262144, new int[] { 8192, 65536, 131072 });
+
+        assertNotNull(slabs.carve(8192));
+        assertNotNull(slabs.carve(131072));
+
+        // the rest of the first slab becomes one 64k and seven 8k buffers
+        assertNotNull(slabs.carve(131072));
+        assertNotNull(slabs.carve(131072));
+        assertEquals(2, slabs.getNumSlabs());
+        assertNull(slabs.carve(131072));
+
+        // once the small spares are used up, the large one is split
+        for (int i = 0; i < 15; i++)
+            assertNotNull(slabs.carve(8192));
+        assertNull(slabs.carve(8192));
+        assertNull(slabs.carve(65536));
+
+        // no memory is left unused
+        assertEquals(2 * 262144, slabs.getReservedBytes());
+        assertEquals(2 * 262144, slabs.getCarvedBytes());
+    }
+
+    @Test
+    public final void testBudget() {
+        SlabAllocator slabs = new SlabAllocator(65536 + 16384, 65536, SIZES);
+
+        assertNotNull(slabs.carve(65536));
+
+        // the last slab is cut to the rest of the budget
+        assertNotNull(slabs.carve(8192));
+        assertNotNull(slabs.carve(8192));
+        assertNull(slabs.carve(8192));
+        assertEquals(65536 + 16384, slabs.getReservedBytes());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.foundation.checksums;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.xtreemfs.foundation.checksums.provider.JavaChecksumProvider;
+
+/**
+ * Measures the throughput of the checksum algorithms over heap and direct buffers of the size of a typical object. Not
+ * part of the regular test suite; run it manually.
+ */
+public class ChecksumBenchmark {
+
+    private static final int      BUFFER_SIZE    = 128 * 1024;
+
+    private static final long     WARMUP_MILLIS  = 1000;
+
+    private static final long     MEASURE_MILLIS = 3000;
+
+    private static final String[] ALGORITHMS     = { "Adler32", "CRC32", "CRC32C" };
+
+    @Test
+    public void benchmarkChecksums() throws Exception {
+
+        ChecksumFactory factory = ChecksumFactory.getInstance();
+        factory.addProvider(new JavaChecksumProvider());
+
+        ByteBuffer heap = ByteBuffer.wrap(ChecksumFactoryTest.generateRandomBytes(BUFFER_SIZE));
+        ByteBuffer direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        direct.put(heap.duplicate());
+        direct.flip();
+
+        for (String name : ALGORITHMS) {
+            ChecksumAlgorithm algorithm = factory.getAlgorithm(name);
+            System.out.println(String.format("%-8s heap: %8.1f MB/s  direct: %8.1f MB/s", name, measure(algorithm,
+                    heap), measure(algorithm, direct)));
+            factory.returnAlgorithm(algorithm);
+        }
+    }
+
+    private static double measure(ChecksumAlgorithm algorithm, ByteBuffer data) {
+        final long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+        while (System.currentTimeMillis() < warmupEnd) {
+            algorithm.update(data);
+            algorithm.getValue();
+        }
+
+        long bytes = 0;
+        final long start = System.nanoTime();
+        final long end = start + MEASURE_MILLIS * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                algorithm.update(data);
+                algorithm.getValue();
+            }
+            bytes += 100L * data.remaining();
+            now = System.nanoTime();
+        } while (now < end);
+
+        return bytes / ((now - start) / 1e9) / (1024 * 1024);
+    }
+}
@@ -20,6 +20,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Adler32;
+import java.util.zip.CRC32C;
 import java.util.zip.Checksum;
 
 import org.junit.After;
@@ -93,6 +94,51 @@ public class ChecksumFactoryTest {
         assertEquals(javaValue, xtreemfsValue);
     }
 
+    /**
+     * tests, if only the bytes between position and limit are used, and if direct buffers deliver the same checksums
+     * as heap buffers
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPositionAndLimit() throws Exception {
+        final byte[] bytes = data.array();
+        final int offset = 100;
+        final int length = 4096;
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.position(offset);
+        direct.limit(offset + length);
+
+        for (String name : new String[] { "Adler32", "CRC32", "CRC32C" }) {
+            ChecksumAlgorithm algorithm = factory.getAlgorithm(name);
+
+            algorithm.update(ByteBuffer.wrap(bytes, offset, length).slice());
+            long expected = algorithm.getValue();
+
+            algorithm.update(direct);
+            assertEquals(name, expected, algorithm.getValue());
+            assertEquals(offset, direct.position());
+
+            ByteBuffer heap = ByteBuffer.wrap(bytes);
+            heap.position(offset);
+            heap.limit(offset + length);
+            algorithm.update(heap);
+            assertEquals(name, expected, algorithm.getValue());
+
+            factory.returnAlgorithm(algorithm);
+        }
+
+        // compare CRC32C with the java API
+        CRC32C javaAlgorithm = new CRC32C();
+        javaAlgorithm.update(bytes, offset, length);
+        ChecksumAlgorithm algorithm = factory.getAlgorithm("CRC32C");
+        algorithm.update(direct);
+        assertEquals(javaAlgorithm.getValue(), algorithm.getValue());
+        factory.returnAlgorithm(algorithm);
+    }
+
     // /**
     // * tests the internal java message digest algorithms
     // * @throws Exception
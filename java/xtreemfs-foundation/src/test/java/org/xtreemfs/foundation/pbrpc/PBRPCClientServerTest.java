@@ -22,6 +22,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.xtreemfs.foundation.SSLOptions;
@@ -221,6 +225,413 @@ public class PBRPCClientServerTest {
 
     }
 
+    @Test
+    public void testSelectorThreads() throws Exception {
+        ResponseCreator creator = new ResponseCreator() {
+            @Override
+            public void answer(RPCServerRequest rq, PingRequest pRq) throws Exception {
+                Ping.PingResponse.PingResult result = Ping.PingResponse.PingResult.newBuilder().setText(pRq.getText()).build();
+                Ping.PingResponse resp = Ping.PingResponse.newBuilder().setResult(result).build();
+
+                ReusableBuffer data = null;
+                if (rq.getData() != null) {
+                    data = rq.getData().createViewBuffer();
+                    data.limit(data.capacity());
+                    data.position(data.capacity());
+                }
+
+                rq.sendResponse(resp, data);
+            }
+        };
+
+        final SSLOptions[] clientSSL = new SSLOptions[1];
+        TestExecutor exec = new TestExecutor() {
+
+            @Override
+            public void execTest(RPCNIOSocketClient client) throws Exception {
+                RPC.UserCredentials userCred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("tester").build();
+
+                // each client opens its own connection, which is assigned to
+                // one of the selector threads
+                RPCNIOSocketClient[] clients = new RPCNIOSocketClient[4];
+                clients[0] = client;
+                for (int i = 1; i < clients.length; i++) {
+                    clients[i] = new RPCNIOSocketClient(clientSSL[0], 5000, 5*60*1000, "testSelectorThreads" + i);
+                    clients[i].start();
+                    clients[i].waitForStartup();
+                }
+
+                try {
+                    for (int round = 0; round < 3; round++) {
+                        @SuppressWarnings("unchecked")
+                        RPCResponse<PingResponse>[] responses = new RPCResponse[clients.length];
+                        for (int i = 0; i < clients.length; i++) {
+                            PingServiceClient psClient = new PingServiceClient(clients[i], null);
+                            byte[] arr = new byte[1024 * (i + 1)];
+                            for (int j = 0; j < arr.length; j++)
+                                arr[j] = (byte) i;
+                            responses[i] = psClient.doPing(new InetSocketAddress("localhost", TEST_PORT), RPCAuthentication.authNone, userCred, "client " + i, false, ReusableBuffer.wrap(arr));
+                        }
+
+                        for (int i = 0; i < clients.length; i++) {
+                            assertEquals("client " + i, responses[i].get().getResult().getText());
+                            ReusableBuffer recdata = responses[i].getData();
+                            assertEquals(1024 * (i + 1), recdata.remaining());
+                            while (recdata.hasRemaining())
+                                assertEquals((byte) i, recdata.get());
+                            responses[i].freeBuffers();
+                        }
+                    }
+                } finally {
+                    for (int i = 1; i < clients.length; i++) {
+                        clients[i].shutdown();
+                        clients[i].waitForShutdown();
+                    }
+                }
+            }
+        };
+        for (String scheme: schemes) {
+            clientSSL[0] = getClientSSLOptions(scheme);
+            runTest(scheme, creator, exec, 2);
+        }
+
+    }
+
+    @Test
+    public void testShardedClient() throws Exception {
+        ResponseCreator creator = new ResponseCreator() {
+            @Override
+            public void answer(RPCServerRequest rq, PingRequest pRq) throws Exception {
+                Ping.PingResponse.PingResult result = Ping.PingResponse.PingResult.newBuilder().setText(pRq.getText()).build();
+                Ping.PingResponse resp = Ping.PingResponse.newBuilder().setResult(result).build();
+
+                rq.sendResponse(resp, null);
+            }
+        };
+
+        final int numServers = 4;
+        RPCNIOSocketServer[] servers = new RPCNIOSocketServer[numServers];
+        RPCNIOSocketClient client = null;
+        try {
+            for (int i = 0; i < numServers; i++) {
+                servers[i] = getServer(creator, null, 0, TEST_PORT + i);
+                servers[i].start();
+                servers[i].waitForStartup();
+            }
+
+            client = new RPCNIOSocketClient(null, 5000, 5*60*1000, -1, -1, null, "testShardedClient", false, 3);
+            client.start();
+            client.waitForStartup();
+
+            PingServiceClient psClient = new PingServiceClient(client, null);
+            RPC.UserCredentials userCred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("tester").build();
+
+            @SuppressWarnings("unchecked")
+            RPCResponse<PingResponse>[] responses = new RPCResponse[numServers];
+            for (int i = 0; i < numServers; i++)
+                responses[i] = psClient.doPing(new InetSocketAddress("localhost", TEST_PORT + i), RPCAuthentication.authNone, userCred, "server " + i, false, null);
+            for (int i = 0; i < numServers; i++) {
+                assertEquals("server " + i, responses[i].get().getResult().getText());
+                responses[i].freeBuffers();
+            }
+
+            // the traffic of all connections is accounted to their shards
+            long rx = 0, tx = 0;
+            for (int i = 0; i < numServers; i++) {
+                long[] stats = client.getTransferStats(new InetSocketAddress("localhost", TEST_PORT + i));
+                assertTrue(stats[0] > 0);
+                assertTrue(stats[1] > 0);
+                rx += stats[0];
+                tx += stats[1];
+            }
+            long[][] shardStats = client.getTransferStats();
+            assertEquals(3, shardStats.length);
+            long shardRx = 0, shardTx = 0;
+            for (long[] stats : shardStats) {
+                shardRx += stats[0];
+                shardTx += stats[1];
+            }
+            assertEquals(rx, shardRx);
+            assertEquals(tx, shardTx);
+
+            int numConnections = 0;
+            for (int n : client.getNumConnectionsPerShard())
+                numConnections += n;
+            assertEquals(numServers, numConnections);
+
+        } finally {
+            if (client != null) {
+                client.shutdown();
+                client.waitForShutdown();
+            }
+            for (RPCNIOSocketServer server : servers) {
+                if (server != null) {
+                    server.shutdown();
+                    server.waitForShutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIdleConnections() throws Exception {
+        ResponseCreator creator = new ResponseCreator() {
+            @Override
+            public void answer(RPCServerRequest rq, PingRequest pRq) throws Exception {
+                Ping.PingResponse.PingResult result = Ping.PingResponse.PingResult.newBuilder().setText(pRq.getText()).build();
+                Ping.PingResponse resp = Ping.PingResponse.newBuilder().setResult(result).build();
+
+                rq.sendResponse(resp, null);
+            }
+        };
+
+        RPCNIOSocketServer server = null;
+        RPCNIOSocketClient client = null;
+        try {
+            server = getServer(creator, null, 0);
+            server.start();
+            server.waitForStartup();
+
+            final int connectionTimeout = 1000;
+            client = new RPCNIOSocketClient(null, 400, connectionTimeout, "testIdleConnections");
+            client.start();
+            client.waitForStartup();
+
+            final PingServiceClient psClient = new PingServiceClient(client, null);
+            final RPC.UserCredentials userCred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("tester").build();
+            final InetSocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+
+            RPCResponse<PingResponse> response = psClient.doPing(address, RPCAuthentication.authNone, userCred, "first", false, null);
+            assertEquals("first", response.get().getResult().getText());
+            response.freeBuffers();
+
+            // the idle connection is closed and a new one is opened with the
+            // next request
+            Thread.sleep(connectionTimeout + RPCNIOSocketClient.TIMEOUT_GRANULARITY * 3);
+            assertEquals(0, client.getNumConnectionsPerShard()[0]);
+
+            response = psClient.doPing(address, RPCAuthentication.authNone, userCred, "second", false, null);
+            assertEquals("second", response.get().getResult().getText());
+            response.freeBuffers();
+            assertEquals(1, client.getNumConnectionsPerShard()[0]);
+
+            // requests that are sent while idle connections are closed must
+            // either be answered or fail, but never get lost
+            Thread[] senders = new Thread[4];
+            final Throwable[] errors = new Throwable[senders.length];
+            for (int i = 0; i < senders.length; i++) {
+                final int senderNo = i;
+                senders[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < 4; j++) {
+                                Thread.sleep(connectionTimeout + (senderNo * 97 + j * 31) % 200 - 100);
+                                RPCResponse<PingResponse> r = psClient.doPing(address, RPCAuthentication.authNone,
+                                        userCred, "ping", false, null);
+                                try {
+                                    r.get();
+                                } catch (IOException ex) {
+                                    // request timed out or connection closed
+                                } finally {
+                                    r.freeBuffers();
+                                }
+                            }
+                        } catch (Throwable th) {
+                            errors[senderNo] = th;
+                        }
+                    }
+                };
+                senders[i].start();
+            }
+            for (int i = 0; i < senders.length; i++) {
+                senders[i].join(connectionTimeout * 10);
+                assertFalse("requests of sender " + i + " got lost", senders[i].isAlive());
+                assertNull(errors[i]);
+            }
+
+        } finally {
+            if (client != null) {
+                client.shutdown();
+                client.waitForShutdown();
+            }
+            if (server != null) {
+                server.shutdown();
+                server.waitForShutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionsPerServer() throws Exception {
+        final Set<SocketAddress> bulkSenders = Collections.newSetFromMap(new ConcurrentHashMap<SocketAddress, Boolean>());
+        final Set<SocketAddress> smallSenders = Collections.newSetFromMap(new ConcurrentHashMap<SocketAddress, Boolean>());
+
+        ResponseCreator creator = new ResponseCreator() {
+            @Override
+            public void answer(RPCServerRequest rq, PingRequest pRq) throws Exception {
+                if (rq.getData() != null)
+                    bulkSenders.add(rq.getSenderAddress());
+                else
+                    smallSenders.add(rq.getSenderAddress());
+
+                Ping.PingResponse.PingResult result = Ping.PingResponse.PingResult.newBuilder().setText(pRq.getText()).build();
+                Ping.PingResponse resp = Ping.PingResponse.newBuilder().setResult(result).build();
+
+                rq.sendResponse(resp, null);
+            }
+        };
+
+        RPCNIOSocketServer server = null;
+        RPCNIOSocketClient client = null;
+        try {
+            server = getServer(creator, null, 0);
+            server.start();
+            server.waitForStartup();
+
+            client = new RPCNIOSocketClient(null, 5000, 5*60*1000, "testConnectionsPerServer");
+            client.setConnectionsPerServer(3, true);
+            client.start();
+            client.waitForStartup();
+
+            PingServiceClient psClient = new PingServiceClient(client, null);
+            RPC.UserCredentials userCred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("tester").build();
+            InetSocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+
+            @SuppressWarnings("unchecked")
+            RPCResponse<PingResponse>[] responses = new RPCResponse[9];
+            for (int i = 0; i < responses.length; i++) {
+                ReusableBuffer data = i % 3 == 0 ? null : ReusableBuffer.wrap(new byte[4096]);
+                responses[i] = psClient.doPing(address, RPCAuthentication.authNone, userCred, "request " + i, false, data);
+            }
+            for (int i = 0; i < responses.length; i++) {
+                assertEquals("request " + i, responses[i].get().getResult().getText());
+                responses[i].freeBuffers();
+            }
+
+            // requests with data are spread across the bulk connections, the
+            // others use the low-latency connection
+            assertEquals(3, bulkSenders.size());
+            assertEquals(1, smallSenders.size());
+            assertFalse(bulkSenders.containsAll(smallSenders));
+            assertEquals(4, client.getNumConnectionsPerShard()[0]);
+
+        } finally {
+            if (client != null) {
+                client.shutdown();
+                client.waitForShutdown();
+            }
+            if (server != null) {
+                server.shutdown();
+                server.waitForShutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testReadsPerRecord() throws Exception {
+        ResponseCreator creator = new ResponseCreator() {
+            @Override
+            public void answer(RPCServerRequest rq, PingRequest pRq) throws Exception {
+                Ping.PingResponse.PingResult result = Ping.PingResponse.PingResult.newBuilder().setText(pRq.getText()).build();
+                Ping.PingResponse resp = Ping.PingResponse.newBuilder().setResult(result).build();
+
+                ReusableBuffer data = null;
+                if (rq.getData() != null) {
+                    data = rq.getData().createViewBuffer();
+                    data.limit(data.capacity());
+                    data.position(data.capacity());
+                }
+
+                rq.sendResponse(resp, data);
+            }
+        };
+
+        final int numPings = 2000;
+        final int batchSize = 100;
+
+        RPCNIOSocketServer server = null;
+        RPCNIOSocketClient client = null;
+        try {
+            server = getServer(creator, null, 0);
+            server.start();
+            server.waitForStartup();
+
+            client = new RPCNIOSocketClient(null, 5000, 5*60*1000, "testReadsPerRecord");
+            client.start();
+            client.waitForStartup();
+
+            PingServiceClient psClient = new PingServiceClient(client, null);
+            RPC.UserCredentials userCred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("tester").build();
+            InetSocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+
+            // small requests, one at a time
+            long t0 = System.nanoTime();
+            for (int i = 0; i < numPings; i++) {
+                RPCResponse<PingResponse> response = psClient.doPing(address, RPCAuthentication.authNone, userCred, "ping " + i, false, null);
+                assertEquals("ping " + i, response.get().getResult().getText());
+                response.freeBuffers();
+            }
+            long sequentialNanos = System.nanoTime() - t0;
+            long[] srvSequential = server.getReceiveStats();
+            long[] clSequential = client.getReceiveStats();
+
+            // small requests, pipelined
+            t0 = System.nanoTime();
+            @SuppressWarnings("unchecked")
+            RPCResponse<PingResponse>[] responses = new RPCResponse[batchSize];
+            for (int i = 0; i < numPings; i += batchSize) {
+                for (int j = 0; j < batchSize; j++)
+                    responses[j] = psClient.doPing(address, RPCAuthentication.authNone, userCred, "ping " + (i + j), false, null);
+                for (int j = 0; j < batchSize; j++) {
+                    assertEquals("ping " + (i + j), responses[j].get().getResult().getText());
+                    responses[j].freeBuffers();
+                }
+            }
+            long pipelinedNanos = System.nanoTime() - t0;
+            long[] srvTotal = server.getReceiveStats();
+            long[] clTotal = client.getReceiveStats();
+
+            // requests with data that exceeds a staging buffer
+            byte[] arr = new byte[200000];
+            for (int i = 0; i < arr.length; i++)
+                arr[i] = (byte) i;
+            for (int i = 0; i < 10; i++) {
+                RPCResponse<PingResponse> response = psClient.doPing(address, RPCAuthentication.authNone, userCred, "data " + i, false, ReusableBuffer.wrap(arr));
+                assertEquals("data " + i, response.get().getResult().getText());
+                ReusableBuffer recdata = response.getData();
+                assertEquals(arr.length, recdata.remaining());
+                for (int j = 0; j < arr.length; j++)
+                    assertEquals(arr[j], recdata.get());
+                response.freeBuffers();
+            }
+
+            System.out.println(String.format("sequential: %.1f us per ping, reads per request (server) %.2f, per response (client) %.2f",
+                    sequentialNanos / 1000.0 / numPings, (double) srvSequential[0] / srvSequential[1],
+                    (double) clSequential[0] / clSequential[1]));
+            System.out.println(String.format("pipelined:  %.1f us per ping, reads per request (server) %.2f, per response (client) %.2f",
+                    pipelinedNanos / 1000.0 / numPings, (double) (srvTotal[0] - srvSequential[0]) / (srvTotal[1] - srvSequential[1]),
+                    (double) (clTotal[0] - clSequential[0]) / (clTotal[1] - clSequential[1])));
+
+            // marker, header and message of a small record are retrieved with
+            // a single read, instead of one read each
+            assertEquals(numPings, srvSequential[1]);
+            assertTrue(srvSequential[0] < 2 * srvSequential[1]);
+            assertTrue(clSequential[0] < 2 * clSequential[1]);
+            assertTrue(srvTotal[0] - srvSequential[0] < 2 * (srvTotal[1] - srvSequential[1]));
+
+        } finally {
+            if (client != null) {
+                client.shutdown();
+                client.waitForShutdown();
+            }
+            if (server != null) {
+                server.shutdown();
+                server.waitForShutdown();
+            }
+        }
+    }
+
     @Test
     public void testTimeout() throws Exception {
         ResponseCreator creator = new ResponseCreator() {
@@ -255,6 +666,10 @@ public class PBRPCClientServerTest {
     }
 
     public void runTest(String pbrpcScheme, ResponseCreator creator, TestExecutor exec) throws Exception {
+        runTest(pbrpcScheme, creator, exec, 0);
+    }
+
+    public void runTest(String pbrpcScheme, ResponseCreator creator, TestExecutor exec, int numSelectorThreads) throws Exception {
         RPCNIOSocketClient client = null;
         RPCNIOSocketServer server = null;
 
@@ -266,15 +681,14 @@ public class PBRPCClientServerTest {
             srvSSL = createSSLOptions("DIR.p12", "passphrase", SSLOptions.PKCS12_CONTAINER,
                     "trusted.jks", "passphrase", SSLOptions.JKS_CONTAINER, pbrpcScheme.equals(Schemes.SCHEME_PBRPCG), null);
 
-            clientSSL= createSSLOptions("Client.p12", "passphrase",
-                SSLOptions.PKCS12_CONTAINER, "trusted.jks", "passphrase", SSLOptions.JKS_CONTAINER, pbrpcScheme.equals(Schemes.SCHEME_PBRPCG), null);
+            clientSSL = getClientSSLOptions(pbrpcScheme);
         }
 
         // System.out.println("setup done");
 
         try {
 
-            server = getServer(creator,srvSSL);
+            server = getServer(creator,srvSSL,numSelectorThreads);
 
             server.start();
             server.waitForStartup();
@@ -298,8 +712,19 @@ public class PBRPCClientServerTest {
         }
     }
     
-    private RPCNIOSocketServer getServer(final ResponseCreator creator, SSLOptions sslOpt) throws IOException {
-        return new RPCNIOSocketServer(TEST_PORT, null, new RPCServerRequestListener() {
+    private SSLOptions getClientSSLOptions(String pbrpcScheme) throws IOException {
+        if (!pbrpcScheme.equals(Schemes.SCHEME_PBRPCS) && !pbrpcScheme.equals(Schemes.SCHEME_PBRPCG))
+            return null;
+        return createSSLOptions("Client.p12", "passphrase",
+            SSLOptions.PKCS12_CONTAINER, "trusted.jks", "passphrase", SSLOptions.JKS_CONTAINER, pbrpcScheme.equals(Schemes.SCHEME_PBRPCG), null);
+    }
+
+    private RPCNIOSocketServer getServer(final ResponseCreator creator, SSLOptions sslOpt, int numSelectorThreads) throws IOException {
+        return getServer(creator, sslOpt, numSelectorThreads, TEST_PORT);
+    }
+
+    private RPCNIOSocketServer getServer(final ResponseCreator creator, SSLOptions sslOpt, int numSelectorThreads, int port) throws IOException {
+        return new RPCNIOSocketServer(port, null, new RPCServerRequestListener() {
 
                 @Override
                 public void receiveRecord(RPCServerRequest rq) {
@@ -316,7 +741,8 @@ public class PBRPCClientServerTest {
 
                     }
                 }
-            }, sslOpt);
+            }, sslOpt, 0, -1, RPCNIOSocketServer.DEFAULT_MAX_CLIENT_Q_LENGTH, numSelectorThreads,
+                    RPCNIOSocketServer.ConnectionAssignment.ROUND_ROBIN);
     }
 
     private SSLOptions createSSLOptions(String keyStoreName, String ksPassphrase,
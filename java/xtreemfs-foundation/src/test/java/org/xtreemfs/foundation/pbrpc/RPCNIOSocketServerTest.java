@@ -8,6 +8,7 @@
 
 package org.xtreemfs.foundation.pbrpc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import org.xtreemfs.foundation.util.OutputUtils;
 import org.xtreemfs.foundation.buffer.ReusableBuffer;
@@ -16,6 +17,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC;
 import org.junit.After;
 import org.junit.Before;
@@ -374,4 +377,65 @@ public class RPCNIOSocketServerTest {
         server.waitForShutdown();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testClientQueueLimit() throws Exception {
+
+        final int TEST_PORT = 9991;
+        final int MAX_CLIENT_Q_LENGTH = 4;
+        final int NUM_REQUESTS = 20;
+
+        // requests are answered by the test, one at a time
+        final LinkedBlockingQueue<RPCServerRequest> received = new LinkedBlockingQueue<RPCServerRequest>();
+        server = new RPCNIOSocketServer(TEST_PORT, null, new RPCServerRequestListener() {
+
+            @Override
+            public void receiveRecord(RPCServerRequest rq) {
+                received.add(rq);
+            }
+        }, null, 0, -1, MAX_CLIENT_Q_LENGTH);
+
+        server.start();
+        server.waitForStartup();
+
+        RPC.Auth auth = RPC.Auth.newBuilder().setAuthType(RPC.AuthType.AUTH_NONE).build();
+        RPC.UserCredentials ucred = RPC.UserCredentials.newBuilder().setUsername("test").addGroups("user").build();
+        RPC.RPCHeader.RequestHeader rqHdr = RPC.RPCHeader.RequestHeader.newBuilder().setAuthData(auth).setUserCreds(ucred).setProcId(2).setInterfaceId(2).build();
+
+        // send all requests at once, so that they are received with a
+        // single read
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            byte[] header = RPC.RPCHeader.newBuilder().setCallId(i).setMessageType(RPC.MessageType.RPC_REQUEST)
+                    .setRequestHeader(rqHdr).build().toByteArray();
+            ByteBuffer recordMarker = ByteBuffer.allocate(RecordMarker.HDR_SIZE);
+            recordMarker.putInt(header.length);
+            recordMarker.putInt(0);
+            recordMarker.putInt(0);
+            records.write(recordMarker.array());
+            records.write(header);
+        }
+
+        Socket sock = new Socket("localhost", TEST_PORT);
+        sock.getOutputStream().write(records.toByteArray());
+
+        // requests beyond the limit are not dispatched before others have
+        // been answered
+        Thread.sleep(500);
+        assertTrue("dispatched " + received.size() + " requests", received.size() <= MAX_CLIENT_Q_LENGTH + 1);
+
+        // the remaining requests are dispatched once the client may send
+        // again, although no further data arrives
+        RPC.UserCredentials msg = RPC.UserCredentials.newBuilder().setUsername("test").build();
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            RPCServerRequest rq = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull("request " + i + " has not been dispatched", rq);
+            assertEquals(i, rq.getHeader().getCallId());
+            rq.sendResponse(msg, null);
+        }
+
+        sock.close();
+        server.shutdown();
+        server.waitForShutdown();
+    }
+
+}
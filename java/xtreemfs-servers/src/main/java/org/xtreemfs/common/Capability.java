@@ -8,8 +8,13 @@
 
 package org.xtreemfs.common;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.xtreemfs.common.quota.QuotaConstants;
 import org.xtreemfs.foundation.TimeSync;
@@ -18,6 +23,7 @@ import org.xtreemfs.foundation.util.OutputUtils;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SnapConfig;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.TraceConfig;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XCap;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XCapOrBuilder;
 
 
 /**
@@ -38,12 +44,58 @@ import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XCap;
  * string containing data that can be used to verify the client identity, as
  * well as a signature added by the MRC.
  * 
+ * Signatures are either HMAC-SHA256 codes of the binary encoded capability
+ * fields, which are prefixed with {@value #HMAC_SHA256_PREFIX}, or MD5 hashes
+ * of the fields and the secret, as issued by earlier versions. The scheme of a
+ * signature is recognized when it is verified, so that the MRC can switch to
+ * HMAC-SHA256 once all OSDs accept it. MD5 signatures may be rejected as soon
+ * as all capabilities issued with them have expired.
+ * 
  * 
  * @author stender
  * 
  */
 public class Capability {
     
+    public static enum SignatureScheme {
+        MD5("md5"), HMAC_SHA256("hmac-sha256");
+        
+        private final String name;
+        
+        private SignatureScheme(String name) {
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public static SignatureScheme fromName(String name) {
+            for (SignatureScheme scheme : values())
+                if (scheme.name.equalsIgnoreCase(name))
+                    return scheme;
+            throw new IllegalArgumentException("unknown capability signature scheme: " + name);
+        }
+    }
+    
+    public static final String                   HMAC_SHA256_PREFIX = "hmac-sha256:";
+    
+    private static final Charset                 UTF8               = Charset.forName("UTF-8");
+    
+    /**
+     * the scheme of newly issued signatures
+     */
+    private static volatile SignatureScheme      signatureScheme    = SignatureScheme.MD5;
+    
+    private static volatile boolean              md5Accepted        = true;
+    
+    private static final ThreadLocal<Signer>     signers            = new ThreadLocal<Signer>() {
+                                                                        @Override
+                                                                        protected Signer initialValue() {
+                                                                            return new Signer();
+                                                                        }
+                                                                    };
+    
     private final XCap         xcap;
     
     private final String sharedSecret;
@@ -121,7 +173,8 @@ public class Capability {
             builder.setTraceConfig(traceConfigBuilder.build());
         }
 
-        final String sig = calcSignature(builder);
+        final String sig = signatureScheme == SignatureScheme.HMAC_SHA256 ? calcHMACSignature(builder)
+            : calcSignature(builder);
         builder.setServerSignature(sig);
         xcap=builder.build();
     }
@@ -206,7 +259,13 @@ public class Capability {
      *         otherwise
      */
     public boolean hasValidSignature() {
-        return xcap.getServerSignature().equals(calcSignature(xcap.toBuilder()));
+        final String signature = xcap.getServerSignature();
+        if (signature.startsWith(HMAC_SHA256_PREFIX)) {
+            byte[] mac = signers.get().hmac(xcap, sharedSecret);
+            return mac != null && equalsHex(signature, HMAC_SHA256_PREFIX.length(), mac);
+        }
+        
+        return md5Accepted && signature.equals(calcSignature(xcap));
     }
     
     public boolean isReplicateOnClose() {
@@ -243,7 +302,7 @@ public class Capability {
         return xcap.toString();
     }
     
-    protected String calcSignature(XCap.Builder builder) {
+    protected String calcSignature(XCapOrBuilder builder) {
         
         // right now, we use a shared secret between MRC and OSDs
         // as soon as we have a Public Key Infrastructure, signatures
@@ -255,15 +314,153 @@ public class Capability {
             + Long.toString(builder.getSnapConfig().getNumber()) + Long.toString(builder.getSnapTimestamp())
             + Long.toString(builder.getVoucherSize()) + Long.toString(builder.getExpireTimeMs()) + sharedSecret;
         
-        try {
-            MessageDigest md5 = MessageDigest.getInstance("MD5");
-            md5.update(plainText.getBytes());
-            byte[] digest = md5.digest();
-            
-            return OutputUtils.byteArrayToHexString(digest);
-        } catch (NoSuchAlgorithmException exc) {
-            Logging.logError(Logging.LEVEL_ERROR, this, exc);
+        MessageDigest md5 = signers.get().getMD5();
+        if (md5 == null)
             return null;
+        
+        md5.update(plainText.getBytes());
+        byte[] digest = md5.digest();
+        
+        return OutputUtils.byteArrayToHexString(digest);
+    }
+    
+    protected String calcHMACSignature(XCapOrBuilder builder) {
+        byte[] mac = signers.get().hmac(builder, sharedSecret);
+        return mac == null ? null : HMAC_SHA256_PREFIX + OutputUtils.byteArrayToHexString(mac);
+    }
+    
+    /**
+     * Sets the scheme of the signatures of newly created capabilities. Signatures of both schemes are verified
+     * regardless of this setting.
+     */
+    public static void setSignatureScheme(SignatureScheme scheme) {
+        signatureScheme = scheme;
+    }
+    
+    public static SignatureScheme getSignatureScheme() {
+        return signatureScheme;
+    }
+    
+    /**
+     * Determines whether capabilities with MD5 signatures are still valid.
+     */
+    public static void setMD5SignaturesAccepted(boolean accepted) {
+        md5Accepted = accepted;
+    }
+    
+    public static boolean isMD5SignaturesAccepted() {
+        return md5Accepted;
+    }
+    
+    /**
+     * Compares a hex string at the given offset with a byte array. The time it takes does not depend on the position
+     * of the first difference.
+     */
+    private static boolean equalsHex(String hex, int offset, byte[] bytes) {
+        if (hex.length() - offset != 2 * bytes.length)
+            return false;
+        
+        int diff = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            diff |= Character.toUpperCase(hex.charAt(offset + 2 * i)) ^ OutputUtils.trHex[(bytes[i] >> 4) & 0x0F];
+            diff |= Character.toUpperCase(hex.charAt(offset + 2 * i + 1)) ^ OutputUtils.trHex[bytes[i] & 0x0F];
+        }
+        return diff == 0;
+    }
+    
+    /**
+     * Computes signatures for the capabilities of a thread. The MAC, the message digest and the buffer for the
+     * encoded capability fields are reused.
+     */
+    private static final class Signer {
+        
+        private static final String HMAC_SHA256 = "HmacSHA256";
+        
+        private Mac                 mac;
+        
+        private String              macSecret;
+        
+        private MessageDigest       md5;
+        
+        private ByteBuffer          buf = ByteBuffer.allocate(256);
+        
+        private final byte[]        result = new byte[32];
+        
+        MessageDigest getMD5() {
+            if (md5 == null) {
+                try {
+                    md5 = MessageDigest.getInstance("MD5");
+                } catch (GeneralSecurityException exc) {
+                    Logging.logError(Logging.LEVEL_ERROR, this, exc);
+                }
+            }
+            return md5;
+        }
+        
+        /**
+         * Computes the HMAC-SHA256 code of the capability fields that were also covered by the MD5 signature.
+         * 
+         * @return the code, which is overwritten by the next call of the thread, or <code>null</code> if HMAC-SHA256
+         *         is not supported
+         */
+        byte[] hmac(XCapOrBuilder cap, String secret) {
+            try {
+                if (mac == null || !secret.equals(macSecret)) {
+                    if (mac == null)
+                        mac = Mac.getInstance(HMAC_SHA256);
+                    mac.init(new SecretKeySpec(secret.getBytes(UTF8), HMAC_SHA256));
+                    macSecret = secret;
+                }
+                
+                buf.clear();
+                putString(cap.getFileId());
+                ensureCapacity(4 + 8 + 4 + 4 + 8 + 8 + 8);
+                buf.putInt(cap.getAccessMode());
+                buf.putLong(cap.getExpireTimeS());
+                buf.putInt(cap.getTruncateEpoch());
+                buf.putInt(cap.getSnapConfig().getNumber());
+                buf.putLong(cap.getSnapTimestamp());
+                buf.putLong(cap.getVoucherSize());
+                buf.putLong(cap.getExpireTimeMs());
+                
+                mac.update(buf.array(), 0, buf.position());
+                mac.doFinal(result, 0);
+                return result;
+                
+            } catch (GeneralSecurityException exc) {
+                Logging.logError(Logging.LEVEL_ERROR, this, exc);
+                return null;
+            }
+        }
+        
+        private void putString(String s) {
+            final int len = s.length();
+            ensureCapacity(4 + len);
+            
+            int lenPos = buf.position();
+            buf.putInt(len);
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    // non-ASCII strings are encoded as a whole
+                    byte[] bytes = s.getBytes(UTF8);
+                    buf.position(lenPos);
+                    ensureCapacity(4 + bytes.length);
+                    buf.putInt(bytes.length);
+                    buf.put(bytes);
+                    return;
+                }
+                buf.put((byte) c);
+            }
+        }
+        
+        private void ensureCapacity(int bytes) {
+            if (buf.remaining() < bytes) {
+                ByteBuffer newBuf = ByteBuffer.allocate(Math.max(2 * buf.capacity(), buf.position() + bytes));
+                buf.flip();
+                newBuf.put(buf);
+                buf = newBuf;
+            }
         }
     }
     
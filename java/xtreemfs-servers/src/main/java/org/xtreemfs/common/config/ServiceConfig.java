@@ -68,6 +68,7 @@ public class ServiceConfig extends Config {
         FAILOVER_MAX_RETRIES("failover.retries", 15, Integer.class, false),
         FAILOVER_WAIT("failover.wait_ms", 15 * 1000, Integer.class, false),
         MAX_CLIENT_Q("max_client_queue", 100, Integer.class, false),
+        LISTEN_SELECTOR_THREADS("listen.selector_threads", 0, Integer.class, false),
         MAX_REQUEST_QUEUE_LENGTH("max_requests_queue_length", 1000, Integer.class, false),
         USE_MULTIHOMING("multihoming.enabled", false, Boolean.class, false),
         USE_RENEWAL_SIGNAL("multihoming.renewal_signal", false, Boolean.class, false ),
@@ -98,7 +99,14 @@ public class ServiceConfig extends Config {
         AUTHENTICATION_PROVIDER_PROPERTIES("authentication_provider.properties", null, String.class, false),
         CAPABILITY_SECRET("capability_secret", null, String.class, true),
         CAPABILITY_TIMEOUT("capability_timeout", 600, Integer.class, false),
+        /** Scheme of the signatures of capabilities issued by the MRC ("md5" or "hmac-sha256"). */
+        CAPABILITY_SIGNATURE("capability_signature", "md5", String.class, false),
+        /** Accept capabilities with MD5 signatures, as issued by earlier versions or before switching to HMAC-SHA256. */
+        CAPABILITY_SIGNATURE_ACCEPT_MD5("capability_signature.accept_md5", true, Boolean.class, false),
         RENEW_TIMED_OUT_CAPS("renew_to_caps", false, Boolean.class, false),
+        PROCESSING_THREADS("processing_threads", 1, Integer.class, false),
+        /** Memory budget in bytes of the MRC's cache for resolved directory entries; 0 disables the cache. */
+        DENTRY_CACHE_SIZE("dentry_cache.size", 0L, Long.class, false),
 
         /*
          * OSD specific configuration parameter
@@ -107,7 +115,11 @@ public class ServiceConfig extends Config {
         REPORT_FREE_SPACE("report_free_space", null, Boolean.class, true),
         CHECKSUM_ENABLED("checksums.enabled", false, Boolean.class, false),
         CHECKSUM_PROVIDER("checksums.algorithm", null, String.class, false),
+        /** Size of the blocks that are checksummed individually (HashStorageLayout only); 0 means one checksum per object. */
+        CHECKSUM_BLOCK_SIZE("checksums.block_size", 0, Integer.class, false),
         STORAGE_LAYOUT("storage_layout", "HashStorageLayout", String.class, false),
+        /** Maintain a persistent per-file index of the object files to avoid directory scans when opening files. */
+        OBJECT_INDEX_ENABLED("object_index.enabled", false, Boolean.class, false),
         IGNORE_CAPABILITIES("ignore_capabilities", false, Boolean.class, false),
         /** Maximum assumed drift between two server clocks. If the drift is higher, the system may not function properly. */
         FLEASE_DMAX_MS("flease.dmax_ms", 1000, Integer.class, false),
@@ -117,6 +129,12 @@ public class ServiceConfig extends Config {
         FLEASE_RETRIES("flease.retries", 3, Integer.class, false),
         SOCKET_SEND_BUFFER_SIZE("socket.send_buffer_size", -1, Integer.class, false),
         SOCKET_RECEIVE_BUFFER_SIZE("socket.recv_buffer_size", -1, Integer.class, false),
+        /** Number of threads that process the I/O of outgoing connections, which are distributed among them by server address. */
+        RPC_CLIENT_SELECTOR_THREADS("rpc_client.selector_threads", 1, Integer.class, false),
+        /** Number of connections to each server over which requests with bulk data are spread. */
+        RPC_CLIENT_CONNECTIONS_PER_SERVER("rpc_client.connections_per_server", 1, Integer.class, false),
+        /** Sends requests without bulk data over a separate connection to each server. */
+        RPC_CLIENT_LOW_LATENCY_CONNECTION("rpc_client.low_latency_connection", false, Boolean.class, false),
         VIVALDI_RECALCULATION_INTERVAL_IN_MS("vivaldi.recalculation_interval_ms", 300000, Integer.class, false),
         VIVALDI_RECALCULATION_EPSILON_IN_MS("vivaldi.recalculation_epsilon_ms", 30000, Integer.class, false),
         VIVALDI_ITERATIONS_BEFORE_UPDATING("vivaldi.iterations_before_updating", 12, Integer.class, false),
@@ -124,6 +142,24 @@ public class ServiceConfig extends Config {
         VIVALDI_MAX_REQUEST_TIMEOUT_IN_MS("vivaldi.max_request_timeout_ms", 10000, Integer.class, false),
         VIVALDI_TIMER_INTERVAL_IN_MS("vivaldi.timer_interval_ms", 60000, Integer.class, false),
         STORAGE_THREADS("storage_threads", 1, Integer.class, false),
+        /** Number of threads which authenticate OSD requests and track open files, partitioned by file ID. */
+        PREPROC_THREADS("preproc_threads", 1, Integer.class, false),
+        /** Allows reads to be executed by idle storage threads other than the one responsible for the file. */
+        STORAGE_THREADS_OFFLOAD_READS("storage_threads.offload_reads", false, Boolean.class, false),
+        /** Memory budget of the OSD's file metadata cache in bytes; 0 disables the limit. */
+        METADATA_CACHE_SIZE("metadata_cache_size", 128L * 1024 * 1024, Long.class, false),
+        /** Maximum number of object files kept open by the OSD's storage threads; 0 disables caching. */
+        FILE_HANDLE_CACHE_SIZE("file_handle_cache_size", 256, Integer.class, false),
+        /** Memory budget in bytes of the memory-mapped object files kept by the OSD; 0 disables mapping. */
+        MAPPED_OBJECT_CACHE_SIZE("mapped_object_cache.size", 0L, Long.class, false),
+        /** Maximum size in bytes of object files that are memory-mapped. */
+        MAPPED_OBJECT_CACHE_MAX_OBJECT_SIZE("mapped_object_cache.max_object_size", 128 * 1024, Integer.class, false),
+        /** Memory budget in bytes of the OSD's cache for the data of frequently read objects; 0 disables the cache. */
+        OBJECT_CACHE_SIZE("object_cache.size", 0L, Long.class, false),
+        /** Maximum number of synchronous writes per storage thread that are made durable together; 0 or 1 disables group commit. */
+        GROUP_COMMIT_MAX_BATCH_SIZE("group_commit.max_batch_size", 0, Integer.class, false),
+        /** Maximum time in ms a synchronous write is delayed to be committed together with further writes. */
+        GROUP_COMMIT_MAX_DELAY_MS("group_commit.max_delay_ms", 0, Integer.class, false),
         HEALTH_CHECK("health_check", "", String.class, false),
 
         /*
@@ -707,6 +743,10 @@ public class ServiceConfig extends Config {
         return (Integer) parameter.get(Parameter.MAX_CLIENT_Q);
     }
 
+    public int getListenSelectorThreads() {
+        return (Integer) parameter.get(Parameter.LISTEN_SELECTOR_THREADS);
+    }
+
     public InetSocketAddress getDirectoryService() {
         return (InetSocketAddress) parameter.get(Parameter.DIRECTORY_SERVICE);
     }
@@ -219,6 +219,8 @@ public class AsyncWriteHandler {
 
                     } finally {
                         r.freeBuffers();
+                        // Drop objects which were read ahead while the write was in flight.
+                        fileInfo.invalidateReadahead();
                     }
                 }
             });
@@ -162,7 +162,10 @@ public class ClientImplementation implements UUIDResolver, Client, AdminClient {
         
         this.startThreadsAsDaemons = startThreadsAsDaemons;
         this.networkClient = new RPCNIOSocketClient(this.dirServiceSSLOptions,
-                this.options.getRequestTimeout_s() * 1000, this.options.getLingerTimeout_s() * 1000, "Client", startThreadsAsDaemons);
+                this.options.getRequestTimeout_s() * 1000, this.options.getLingerTimeout_s() * 1000, -1, -1, null,
+                "Client", startThreadsAsDaemons, this.options.getNetworkThreads());
+        this.networkClient.setConnectionsPerServer(this.options.getConnectionsPerServer(),
+                this.options.isLowLatencyConnection());
         this.networkClient.start();
         this.networkClient.waitForStartup();
 
@@ -8,6 +8,7 @@ package org.xtreemfs.common.libxtreemfs;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
@@ -22,6 +23,7 @@ import org.xtreemfs.common.libxtreemfs.exceptions.PosixErrorException;
 import org.xtreemfs.common.libxtreemfs.exceptions.UUIDIteratorListIsEmpyException;
 import org.xtreemfs.common.libxtreemfs.exceptions.UUIDNotInXlocSetException;
 import org.xtreemfs.common.libxtreemfs.exceptions.XtreemFSException;
+import org.xtreemfs.foundation.buffer.BufferPool;
 import org.xtreemfs.foundation.buffer.ReusableBuffer;
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.logging.Logging.Category;
@@ -153,6 +155,11 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
 
     final private Options                           volumeOptions;
 
+    /**
+     * Prefetches objects for sequential reads. Null if readahead is disabled.
+     */
+    final private ReadaheadHandler                  readaheadHandler;
+
     /**
      * Auth needed for ServiceClients. Always set to AUTH_NONE by Volume.
      */
@@ -185,6 +192,13 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
 
         xcapRenewalPending = false;
         xcapRenewalPendingLock = new Object();
+
+        if (options.isEnableReadahead()) {
+            readaheadHandler = new ReadaheadHandler(this, options.getReadaheadObjects(),
+                    options.getMaxReadaheadBytes());
+        } else {
+            readaheadHandler = null;
+        }
     }
 
     /**
@@ -290,64 +304,207 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
         Vector<ReadOperation> operations = new Vector<ReadOperation>();
         translator.translateReadRequest(count, offset, policy, operations);
 
-        UUIDIterator tempUuidIteratorForStriping = new UUIDIterator();
-        // Read all objects
-        for (int j = 0; j < operations.size(); j++) {
-            readRequest.Builder readRqBuilder = readRequest.newBuilder();
-
-            readRqBuilder.setFileCredentials(fc);
-            readRqBuilder.setFileId(fc.getXcap().getFileId());
-            readRqBuilder.setObjectNumber(operations.get(j).getObjNumber());
-            readRqBuilder.setObjectVersion(0);
-            readRqBuilder.setOffset(operations.get(j).getReqOffset());
-            readRqBuilder.setLength(operations.get(j).getReqSize());
-
-            // Differ between striping and the rest (replication, no replication).
-            UUIDIterator uuidIterator;
-            if (readRqBuilder.getFileCredentials().getXlocs().getReplicas(0).getOsdUuidsCount() > 1) {
-                // Replica is striped. Pick UUID from xlocset.
-                tempUuidIteratorForStriping.clear();
-                
-                // Replicas may have different stripe widths. However, the current Java client
-                // StripeTranslator code only supports the same stripe width as the first replica has.
-                int stripeWidthFirstReplica = fc.getXlocs().getReplicas(0).getStripingPolicy().getWidth();
-
-                for (int replicaIdx = 0; replicaIdx < fc.getXlocs().getReplicasCount(); replicaIdx++) {
-                    if (fc.getXlocs().getReplicas(replicaIdx).getStripingPolicy().getWidth() == stripeWidthFirstReplica) {
-                        tempUuidIteratorForStriping.addUUID(Helper.getOSDUUIDFromXlocSet(fc.getXlocs(),
-                                                            replicaIdx,
-                                                            operations.get(j).getOsdOffset()));
-                    }
+        // Serve prefetched objects first.
+        List<ReadOperation> missingOperations = operations;
+        if (readaheadHandler != null) {
+            missingOperations = new Vector<ReadOperation>();
+            for (ReadOperation operation : operations) {
+                int received = readaheadHandler.read(operation, buf);
+                if (received < 0) {
+                    missingOperations.add(operation);
+                } else {
+                    receivedData += received;
                 }
-                
-                uuidIterator = tempUuidIteratorForStriping;
-            } else {
-                // TODO(mberlin): Enhance UUIDIterator to read from different replicas.
-                uuidIterator = osdUuidIterator;
             }
+        }
+
+        int maxParallelReads = volumeOptions.getMaxParallelReads();
+        if (maxParallelReads > 1 && missingOperations.size() > 1) {
+            receivedData += readObjectsParallel(fc, missingOperations, buf, maxParallelReads);
+        } else {
+            // Read all objects one after another.
+            for (int j = 0; j < missingOperations.size(); j++) {
+                receivedData += readObjectSync(fc, missingOperations.get(j),
+                        getUUIDIteratorForRead(fc, missingOperations.get(j)), buf);
+            }
+        }
 
-            buf.position(operations.get(j).getBufferStart());
-            // If synccall gets a buffer it fill it with data from the response.
-            ObjectData objectData = RPCCaller.<readRequest, ObjectData> syncCall(SERVICES.OSD, userCredentialsBogus,
-                    authBogus, volumeOptions, uuidResolver, uuidIterator, false, readRqBuilder.build(), buf,
-                    new CallGenerator<readRequest, ObjectData>() {
+        if (readaheadHandler != null) {
+            readaheadHandler.readFinished(fc, policy, translator, offset, count, receivedData);
+        }
+        return receivedData;
+    }
 
-                        @Override
-                        public RPCResponse<ObjectData> executeCall(InetSocketAddress server, Auth auth,
-                                UserCredentials userCreds, readRequest callRequest) throws IOException {
-                            return osdServiceClient.read(server, auth, userCreds, callRequest);
+    /**
+     * Sends the read requests of all operations without waiting for the previous responses. At most
+     * maxParallelReads requests are in flight at the same time. The responses are copied into buf in the order of
+     * the operations.<br>
+     * If a request fails, the object is read again by {@link #readObjectSync} which applies the usual retry and
+     * redirect handling. An {@link InvalidViewException} is passed on to the caller which renews the view.
+     */
+    private int readObjectsParallel(FileCredentials fc, List<ReadOperation> operations, ReusableBuffer buf,
+            int maxParallelReads) throws IOException, PosixErrorException, AddressToUUIDNotFoundException {
+        int numOperations = operations.size();
+        UUIDIterator[] uuidIterators = new UUIDIterator[numOperations];
+        List<RPCResponse<ObjectData>> responses = new ArrayList<RPCResponse<ObjectData>>(numOperations);
+        int receivedData = 0;
+        int sent = 0;
 
+        try {
+            for (int j = 0; j < numOperations; j++) {
+                // Keep the pipeline filled.
+                for (; sent < numOperations && sent < j + maxParallelReads; sent++) {
+                    uuidIterators[sent] = getUUIDIteratorForRead(fc, operations.get(sent));
+                    responses.add(sendReadRequest(fc, operations.get(sent), uuidIterators[sent]));
+                }
+
+                ReadOperation operation = operations.get(j);
+                int received = -1;
+                if (responses.get(j) != null) {
+                    try {
+                        ObjectData objectData = responses.get(j).get();
+                        buf.position(operation.getBufferStart());
+                        ReusableBuffer data = responses.get(j).getData();
+                        if (data != null) {
+                            buf.put(data);
+                            BufferPool.free(data);
+                        }
+                        // if zeropadding > 0, put zeros at the end of the buffer.
+                        for (int i = 0; i < objectData.getZeroPadding(); i++) {
+                            buf.put((byte) 0);
+                        }
+                        received = buf.position() - operation.getBufferStart();
+                    } catch (IOException e) {
+                        if (Logging.isDebug()) {
+                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                                    "parallel read of object %d of file %s failed (%s), retrying",
+                                    operation.getObjNumber(), fileInfo.getPath(), e.getMessage());
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IOException("Caught interrupt while waiting for a read response, aborting read");
+                    } finally {
+                        responses.get(j).freeBuffers();
+                        responses.set(j, null);
+                    }
+                }
+
+                if (received < 0) {
+                    // Sending or receiving failed, fall back to the synchronous read with retries.
+                    received = readObjectSync(fc, operation, uuidIterators[j], buf);
+                }
+                receivedData += received;
+            }
+        } finally {
+            // Release the responses which were not processed due to an error.
+            for (int j = 0; j < sent; j++) {
+                if (responses.get(j) != null) {
+                    responses.get(j).registerListener(new RPCResponseAvailableListener<ObjectData>() {
+                        @Override
+                        public void responseAvailable(RPCResponse<ObjectData> r) {
+                            try {
+                                BufferPool.free(r.getData());
+                            } catch (InterruptedException e) {
+                                // Cannot happen as the response is already available.
+                            } finally {
+                                r.freeBuffers();
+                            }
                         }
                     });
-            // if zeropadding > 0, put zeros at the end of the buffer.
-            for (int i = 0; i < objectData.getZeroPadding(); i++) {
-                buf.put((byte) 0);
+                }
             }
-            receivedData += buf.position() - operations.get(j).getBufferStart();
         }
         return receivedData;
     }
 
+    /**
+     * Sends the read request for a single object asynchronously.
+     * 
+     * @return The pending response or null if the request could not be sent.
+     */
+    RPCResponse<ObjectData> sendReadRequest(FileCredentials fc, ReadOperation operation,
+            UUIDIterator uuidIterator) throws AddressToUUIDNotFoundException {
+        String osdUuid;
+        try {
+            osdUuid = uuidIterator.getUUID();
+        } catch (UUIDIteratorListIsEmpyException e) {
+            return null;
+        }
+        InetSocketAddress server = RPCCaller.getInetSocketAddressFromAddress(uuidResolver.uuidToAddress(osdUuid),
+                SERVICES.OSD);
+        try {
+            return osdServiceClient.read(server, authBogus, userCredentialsBogus, createReadRequest(fc, operation));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a single object synchronously and copies the data (plus zero padding) into buf at the position given by
+     * operation.
+     * 
+     * @return Number of bytes written to buf.
+     */
+    private int readObjectSync(FileCredentials fc, ReadOperation operation, UUIDIterator uuidIterator,
+            ReusableBuffer buf) throws IOException, PosixErrorException, AddressToUUIDNotFoundException {
+        buf.position(operation.getBufferStart());
+        // If synccall gets a buffer it fill it with data from the response.
+        ObjectData objectData = RPCCaller.<readRequest, ObjectData> syncCall(SERVICES.OSD, userCredentialsBogus,
+                authBogus, volumeOptions, uuidResolver, uuidIterator, false, createReadRequest(fc, operation), buf,
+                new CallGenerator<readRequest, ObjectData>() {
+
+                    @Override
+                    public RPCResponse<ObjectData> executeCall(InetSocketAddress server, Auth auth,
+                            UserCredentials userCreds, readRequest callRequest) throws IOException {
+                        return osdServiceClient.read(server, auth, userCreds, callRequest);
+
+                    }
+                });
+        // if zeropadding > 0, put zeros at the end of the buffer.
+        for (int i = 0; i < objectData.getZeroPadding(); i++) {
+            buf.put((byte) 0);
+        }
+        return buf.position() - operation.getBufferStart();
+    }
+
+    private readRequest createReadRequest(FileCredentials fc, ReadOperation operation) {
+        readRequest.Builder readRqBuilder = readRequest.newBuilder();
+
+        readRqBuilder.setFileCredentials(fc);
+        readRqBuilder.setFileId(fc.getXcap().getFileId());
+        readRqBuilder.setObjectNumber(operation.getObjNumber());
+        readRqBuilder.setObjectVersion(0);
+        readRqBuilder.setOffset(operation.getReqOffset());
+        readRqBuilder.setLength(operation.getReqSize());
+        return readRqBuilder.build();
+    }
+
+    /**
+     * Returns the UUIDIterator which has to be used to read the object of operation.
+     */
+    UUIDIterator getUUIDIteratorForRead(FileCredentials fc, ReadOperation operation) {
+        // Differ between striping and the rest (replication, no replication).
+        if (fc.getXlocs().getReplicas(0).getOsdUuidsCount() > 1) {
+            // Replica is striped. Pick UUID from xlocset.
+            UUIDIterator uuidIteratorForStriping = new UUIDIterator();
+
+            // Replicas may have different stripe widths. However, the current Java client
+            // StripeTranslator code only supports the same stripe width as the first replica has.
+            int stripeWidthFirstReplica = fc.getXlocs().getReplicas(0).getStripingPolicy().getWidth();
+
+            for (int replicaIdx = 0; replicaIdx < fc.getXlocs().getReplicasCount(); replicaIdx++) {
+                if (fc.getXlocs().getReplicas(replicaIdx).getStripingPolicy().getWidth() == stripeWidthFirstReplica) {
+                    uuidIteratorForStriping.addUUID(Helper.getOSDUUIDFromXlocSet(fc.getXlocs(), replicaIdx,
+                            operation.getOsdOffset()));
+                }
+            }
+
+            return uuidIteratorForStriping;
+        } else {
+            // TODO(mberlin): Enhance UUIDIterator to read from different replicas.
+            return osdUuidIterator;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -383,11 +540,18 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
                 return doWrite(userCredentials, buffer, count, offset);
             }
         };
-        return operation.execute();
+        try {
+            return operation.execute();
+        } finally {
+            // Drop objects which were read ahead while the write was in flight. Asynchronous writes are handled
+            // once they have completed.
+            fileInfo.invalidateReadahead();
+        }
     }
 
     private int doWrite(UserCredentials userCredentials, ReusableBuffer buffer, int count, long offset)
             throws IOException, PosixErrorException, AddressToUUIDNotFoundException {
+        fileInfo.invalidateReadahead();
         FileCredentials.Builder fcBuilder = FileCredentials.newBuilder();
         synchronized (this) {
             if (asyncWritesFailed) {
@@ -615,7 +779,12 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
                 return null;
             }
         };
-        operation.execute();
+        try {
+            operation.execute();
+        } finally {
+            // Drop objects which were read ahead while the truncate was in flight.
+            fileInfo.invalidateReadahead();
+        }
     }
 
     protected void doTruncatePhaseTwoAndThree(UserCredentials userCredentials, long newFileSize, boolean updateOnlyMRC)
@@ -623,6 +792,7 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
 
         OSDWriteResponse response = null;
 
+        fileInfo.invalidateReadahead();
         XCap xCapCopy = getXcap();
 
         if (!updateOnlyMRC) {
@@ -1008,10 +1178,22 @@ public class FileHandleImplementation implements FileHandle, AdminFileHandle {
             // TODO: handle exception
             e.printStackTrace();
         } finally {
+            if (readaheadHandler != null) {
+                readaheadHandler.close();
+            }
             fileInfo.closeFileHandle(this);
         }
     }
 
+    /**
+     * Marks all objects which were read ahead as outdated. Called by FileInfo before and after the file is modified.
+     */
+    protected void invalidateReadahead() {
+        if (readaheadHandler != null) {
+            readaheadHandler.invalidate();
+        }
+    }
+
     protected void writeBackFileSizeAsync() throws IOException, PosixErrorException, AddressToUUIDNotFoundException {
         xtreemfs_update_file_sizeRequest.Builder rqBuilder = xtreemfs_update_file_sizeRequest.newBuilder();
 
@@ -409,6 +409,17 @@ public class FileInfo {
         }
     }
 
+    /**
+     * Marks the objects read ahead by all file handles of this file as outdated. Called before a modification of the
+     * file is sent and after it has completed.
+     */
+    protected void invalidateReadahead() {
+        Iterator<FileHandleImplementation> fhiIterator = openFileHandles.iterator();
+        while (fhiIterator.hasNext()) {
+            fhiIterator.next().invalidateReadahead();
+        }
+    }
+
     /**
      * Releases all locks of processId using fileHandle to issue ReleaseLock().
      */
@@ -7,13 +7,13 @@
 package org.xtreemfs.common.libxtreemfs;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.logging.Logging.Category;
@@ -26,39 +26,58 @@ import org.xtreemfs.pbrpc.generatedinterfaces.MRC.listxattrResponse;
 
 /**
  * Caches metadata for libxtreemfs.
+ * 
+ * Lookups do not acquire any lock. Modifications of a path are serialized by one of {@value #NUM_LOCK_STRIPES}
+ * locks which is selected by the hash of the path; operations on a whole subtree (invalidatePrefix(),
+ * renamePrefix()) acquire all of them. If the cache is full, entries are evicted by the CLOCK algorithm, an
+ * approximation of LRU.
  */
 public class MetadataCache {
 
-    private final long                                maxNumberOfEntries;
+    /**
+     * Number of locks which guard modifications of "cache" and "pathIndex". Has to be a power of two.
+     */
+    private static final int                                       NUM_LOCK_STRIPES = 16;
 
-    private final long                                ttlS;
+    private final long                                             maxNumberOfEntries;
 
-    private boolean                                   enabled;
+    private final long                                             ttlS;
+
+    private boolean                                                enabled;
 
     /**
-     * A map containing all {@link MetadataCacheEntry} in insertion order. Also it is possible to access an
-     * entry in a hashmap like way in time O(1).
+     * A map containing all {@link MetadataCacheEntry} objects.
      */
-    private final LinkedHashMap<String, MetadataCacheEntry> cache;
+    private final ConcurrentHashMap<String, MetadataCacheEntry>    cache;
 
     /**
-     * A map sorted by the path. This is used to iterate recursively over a path when a directory is
+     * A set sorted by the path. This is used to iterate recursively over a path when a directory is
      * invalidated to delete all subdirectories and files belonging to the invalidated directory from the
      * cache.
      */
-    private final SortedSet<String>                         pathIndex;
+    private final ConcurrentSkipListSet<String>                    pathIndex;
 
-    private final ReadWriteLock                             readWriteLock;
+    /**
+     * Locks which have to be held when writing to "pathIndex" and "cache" together. The lock for a path is
+     * returned by {@link #getLock(String)}.
+     */
+    private final ReentrantLock[]                                  locks;
 
     /**
-     * Lock that is used when writing to the "pathIndex" and "cache" together.
+     * Entries in the order in which they are visited by the clock hand. May contain entries which were
+     * already removed from "cache"; they are dropped when the clock hand reaches them.
      */
-    private final Lock                                      writeLock;
+    private final ConcurrentLinkedQueue<MetadataCacheEntry>        evictionQueue;
 
     /**
-     * Lock that is used when reading "pathIndex" and "cache" together.
+     * Number of elements in "evictionQueue".
      */
-    private final Lock                                      readLock;
+    private final AtomicInteger                                    evictionQueueLength;
+
+    /**
+     * Serializes the eviction and renamePrefix(). Must not be acquired while holding one of "locks".
+     */
+    private final ReentrantLock                                    evictionLock;
 
     /**
      * MetadataCache for Stat, listxattrResponse and XAttr objects per path.
@@ -70,12 +89,17 @@ public class MetadataCache {
 
         enabled = maxNumberOfEntries > 0 ? true : false;
 
-        cache = new LinkedHashMap<String, MetadataCacheEntry>();
-        pathIndex = new TreeSet<String>();
+        cache = new ConcurrentHashMap<String, MetadataCacheEntry>();
+        pathIndex = new ConcurrentSkipListSet<String>();
+
+        locks = new ReentrantLock[NUM_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
 
-        readWriteLock = new ReentrantReadWriteLock();
-        writeLock = readWriteLock.writeLock();
-        readLock = readWriteLock.readLock();
+        evictionQueue = new ConcurrentLinkedQueue<MetadataCacheEntry>();
+        evictionQueueLength = new AtomicInteger(0);
+        evictionLock = new ReentrantLock();
     }
 
     /**
@@ -89,12 +113,13 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             cache.remove(path);
             pathIndex.remove(path);
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -111,7 +136,7 @@ public class MetadataCache {
         // collect all entries that should be removed from pathIndex to remove them at the end.
         List<String> indicesToRemove = new ArrayList<String>();
 
-        writeLock.lock();
+        lockAll();
         try {
             // At first, delete "path" from "cache" and "pathIndex"
             cache.remove(path);
@@ -133,10 +158,10 @@ public class MetadataCache {
                 cache.remove(deletePath);
                 indicesToRemove.add(deletePath);
             }
-            // do the removing after looping over "pathIndex" to avoid ConcurrentModificationException
+            // do the removing after looping over "pathIndex" to keep the iteration simple
             pathIndex.removeAll(indicesToRemove);
         } finally {
-            writeLock.unlock();
+            unlockAll();
         }
     }
 
@@ -152,14 +177,21 @@ public class MetadataCache {
         if (path.isEmpty() || !enabled) {
             return;
         }
-        // Temporary TreeSet to store the new paths
-        TreeSet<String> tempPaths = new TreeSet<String>();
+        // Temporary list to store the old paths
+        List<String> oldPaths = new ArrayList<String>();
 
-        writeLock.lock();
+        // The eviction relies on the paths of the queued entries, so it must not run concurrently.
+        evictionLock.lock();
+        lockAll();
         try {
             // At first, rename the directory itself.
             MetadataCacheEntry entry = cache.remove(path);
-            cache.put(newPath, entry);
+            if (entry != null) {
+                pathIndex.remove(path);
+                entry.setPath(newPath);
+                cache.put(newPath, entry);
+                pathIndex.add(newPath);
+            }
 
             // Seconde, rename all entries with prefix that matches "path" respectively "path+'/'"
             if (!path.endsWith("/"))
@@ -173,24 +205,23 @@ public class MetadataCache {
                 if (!renamePath.startsWith(path)) {
                     break;
                 }
-
-                // delete object from cache and insert it with new path
-                entry = cache.remove(renamePath);
-                cache.put(renamePath.replaceFirst(path, newPath), entry);
-
-                // add the oldPath to the "tempPaths" in order to remove them later from "pathIndex"
-                // and add them with the new path
-                tempPaths.add(renamePath.replaceFirst(path, newPath));
+                oldPaths.add(renamePath);
             }
 
-            // remove all collected tempPaths to the "pathIndex" and readd them with the correct new
-            // path
-            for (String tmpPath : tempPaths) {
-                pathIndex.remove(tmpPath);
-                pathIndex.add(tmpPath.replace(path, newPath));
+            // delete objects from cache and "pathIndex" and insert them with the new path
+            for (String oldPath : oldPaths) {
+                String renamedPath = newPath + oldPath.substring(path.length());
+                entry = cache.remove(oldPath);
+                pathIndex.remove(oldPath);
+                if (entry != null) {
+                    entry.setPath(renamedPath);
+                    cache.put(renamedPath, entry);
+                    pathIndex.add(renamedPath);
+                }
             }
         } finally {
-            writeLock.unlock();
+            unlockAll();
+            evictionLock.unlock();
         }
     }
 
@@ -206,40 +237,32 @@ public class MetadataCache {
             return null;
         }
 
-        writeLock.lock();
-        try {
-            MetadataCacheEntry entry = cache.get(path);
-            if (entry != null) { // cache hit
-                // We must never have cached a hard link.
-                assert (entry.getStat() == null || entry.getStat().getNlink() == 1);
-
-                long currentTimeS = System.currentTimeMillis() / 1000;
-                if (entry.getStatTimeoutS() >= currentTimeS) { // Stat object is still valid
-                    return entry.getStat();
-                } else { // Stat object is expired => delete it from cache
+        MetadataCacheEntry entry = cache.get(path);
+        if (entry != null) { // cache hit
+            Stat stat = entry.getStat();
+            // We must never have cached a hard link.
+            assert (stat == null || stat.getNlink() == 1);
 
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache getStat expired: %s", path);
-                    }
+            long currentTimeS = System.currentTimeMillis() / 1000;
+            if (stat != null && entry.getStatTimeoutS() >= currentTimeS) { // Stat object is still valid
+                markReferenced(entry);
+                return stat;
+            } else { // Stat object is expired => delete it from cache
 
-                    // Only delete object, if the maximum timeout of all three objects is
-                    // reached.
-                    if (entry.getTimeoutS() < currentTimeS) {
-                        // Free MetadataCacheEntry and delete from Index. This increases the
-                        // run time of GetStat() roughly by factor 3.
-                        cache.remove(path);
-                        pathIndex.remove(path);
-                    }
-                }
-            } else { // cache miss
                 if (Logging.isDebug()) {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                            "MetadataCache getStat miss: ", cache.size());
+                            "MetadataCache getStat expired: %s", path);
                 }
+
+                // Only delete object, if the maximum timeout of all three objects is
+                // reached.
+                removeIfExpired(path, entry, currentTimeS);
+            }
+        } else { // cache miss
+            if (Logging.isDebug()) {
+                Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                        "MetadataCache getStat miss: ", cache.size());
             }
-        } finally {
-            writeLock.unlock();
         }
         return null;
     }
@@ -257,21 +280,24 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        if (!cache.containsKey(path)) {
+            evict();
+        }
+
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
-            // remove entry if it exists in the cache
-            MetadataCacheEntry entry = cache.remove(path);
-            if (entry == null) { // cache miss. entry has to be created
+            MetadataCacheEntry entry = cache.get(path);
+            boolean created = false;
 
+            if (entry == null) { // cache miss. entry has to be created
                 if (Logging.isDebug()) {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
                             "MetadataCache: registering %s", path);
                 }
                 entry = new MetadataCacheEntry();
-
-                // entry doesn't exists yet in cache => there is no entry "pathIndex" for it. We
-                // have to create one.
-                pathIndex.add(path);
+                entry.setPath(path);
+                created = true;
             }
 
             // set net stat object and update timeouts
@@ -279,12 +305,13 @@ public class MetadataCache {
             entry.setStatTimeoutS(System.currentTimeMillis() / 1000 + ttlS);
             entry.setTimeoutS(entry.getStatTimeoutS());
 
-            // (re-)add entry to "cache"
-            evictUnmutexed(1);
-            cache.put(path, entry);
-
+            if (created) {
+                insertUnmutexed(path, entry);
+            } else {
+                entry.setReferenced(true);
+            }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -306,7 +333,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
 
@@ -337,12 +365,10 @@ public class MetadataCache {
                 entry.setStatTimeoutS(System.currentTimeMillis() / 1000 + ttlS);
                 entry.setTimeoutS(entry.getStatTimeoutS());
 
-                // readd the entry in the cache
-                cache.remove(path);
-                cache.put(path, entry);
+                entry.setReferenced(true);
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -361,7 +387,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
 
@@ -433,12 +460,10 @@ public class MetadataCache {
                 entry.setStat(statBuilder.build());
                 entry.setStatTimeoutS(System.currentTimeMillis() / 1000 + ttlS);
                 entry.setTimeoutS(entry.getStatTimeoutS());
-
-                cache.remove(path);
-                cache.put(path, entry);
+                entry.setReferenced(true);
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -455,7 +480,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             if (entry != null) {
@@ -474,7 +500,7 @@ public class MetadataCache {
                 }
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -495,50 +521,44 @@ public class MetadataCache {
             return null;
         }
 
-        writeLock.lock();
-        try {
-            MetadataCacheEntry entry = cache.get(path);
-            if (entry != null && entry.getDirectoryEntries() != null) {
-                long currentTimeS = System.currentTimeMillis() / 1000;
-                if (entry.getDirectoryEntriesTimeoutS() >= currentTimeS) { // entry is valid => use it
+        MetadataCacheEntry entry = cache.get(path);
+        DirectoryEntries dirEntries = entry == null ? null : entry.getDirectoryEntries();
+        if (dirEntries != null) {
+            long currentTimeS = System.currentTimeMillis() / 1000;
+            if (entry.getDirectoryEntriesTimeoutS() >= currentTimeS) { // entry is valid => use it
 
-                    DirectoryEntries.Builder result;
+                DirectoryEntries.Builder result;
 
-                    // copy all entries from cache
-                    if (offset == 0 && count >= entry.getDirectoryEntries().getEntriesCount()) {
-                        if (Logging.isDebug()) {
-                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                    "MetadataCache getDirEntries() hit: %s [%s]", path, cache.size());
-                        }
-                        result = entry.getDirectoryEntries().toBuilder();
-                    } else { // copy just the selected entries from cache
-                        if (Logging.isDebug()) {
-                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                    "MetadataCache getDirectoryEntries() hit (partial copy): "
-                                            + "%s [%s] offset: %s", path, cache.size(), offset);
-                        }
-                        result = DirectoryEntries.newBuilder();
-                        for (int i = offset; i < offset + count; i++) {
-                            result.addEntries(entry.getDirectoryEntries().getEntries(i));
-                        }
+                // copy all entries from cache
+                if (offset == 0 && count >= dirEntries.getEntriesCount()) {
+                    if (Logging.isDebug()) {
+                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                                "MetadataCache getDirEntries() hit: %s [%s]", path, cache.size());
                     }
-                    return result.build();
-                } else { // Expired! => remove from cache
+                    result = dirEntries.toBuilder();
+                } else { // copy just the selected entries from cache
                     if (Logging.isDebug()) {
                         Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache entry expired: %s", path);
+                                "MetadataCache getDirectoryEntries() hit (partial copy): "
+                                        + "%s [%s] offset: %s", path, cache.size(), offset);
                     }
-
-                    // Only delete object, if the maximum timeout is reached.
-                    if (entry.getTimeoutS() < currentTimeS) {
-                        cache.remove(path);
-                        pathIndex.remove(path);
+                    result = DirectoryEntries.newBuilder();
+                    for (int i = offset; i < offset + count; i++) {
+                        result.addEntries(dirEntries.getEntries(i));
                     }
-                    return null;
                 }
+                markReferenced(entry);
+                return result.build();
+            } else { // Expired! => remove from cache
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache entry expired: %s", path);
+                }
+
+                // Only delete object, if the maximum timeout is reached.
+                removeIfExpired(path, entry, currentTimeS);
+                return null;
             }
-        } finally {
-            writeLock.unlock();
         }
 
         if (Logging.isDebug()) {
@@ -559,7 +579,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             if (entry != null) {
@@ -567,7 +588,7 @@ public class MetadataCache {
                 entry.setStatTimeoutS(0);
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -587,7 +608,12 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        if (!cache.containsKey(path)) {
+            evict();
+        }
+
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             boolean created = false;
@@ -607,15 +633,12 @@ public class MetadataCache {
             entry.setTimeoutS(entry.getDirectoryEntriesTimeoutS());
 
             if (created) {
-                evictUnmutexed(1);
-                pathIndex.add(path);
-                cache.put(path, entry);
+                insertUnmutexed(path, entry);
             } else {
-                cache.remove(path);
-                cache.put(path, entry);
+                entry.setReferenced(true);
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -632,7 +655,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(pathToDirectory);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(pathToDirectory);
             if (entry != null) {
@@ -643,16 +667,17 @@ public class MetadataCache {
                 DirectoryEntries.Builder dirEntriesBuilder = DirectoryEntries.newBuilder();
 
                 // Copy DirectoryEntries to "dirEntriesBuilder" except entries with "entryName".
-                for (int i = 0; i < entry.getDirectoryEntries().getEntriesCount(); i++) {
-                    if (!entry.getDirectoryEntries().getEntries(i).getName().equals(entryName)) {
-                        dirEntriesBuilder.addEntries(entry.getDirectoryEntries().getEntries(i));
+                DirectoryEntries dirEntries = entry.getDirectoryEntries();
+                for (int i = 0; i < dirEntries.getEntriesCount(); i++) {
+                    if (!dirEntries.getEntries(i).getName().equals(entryName)) {
+                        dirEntriesBuilder.addEntries(dirEntries.getEntries(i));
                     }
                 }
                 entry.setDirectoryEntries(dirEntriesBuilder.build());
             }
 
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -667,7 +692,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             if (entry != null) {
@@ -675,7 +701,7 @@ public class MetadataCache {
                 entry.setDirectoryEntriesTimeoutS(0);
             }
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -699,44 +725,37 @@ public class MetadataCache {
             return new Tupel<String, Boolean>(null, xattrsCached);
         }
 
-        writeLock.lock();
-        try {
-            MetadataCacheEntry entry = cache.get(path);
-            long currentTimeMS = System.currentTimeMillis() / 1000;
-
-            if (entry != null && entry.getXattrs() != null) {
-                // Entry found with valid Xattrs. Check timeout Xattrs
-                if (entry.getXattrTimeoutS() >= currentTimeMS) {
-                    xattrsCached = true;
-
-                    for (XAttr xattr : entry.getXattrs().getXattrsList()) {
-                        if (xattr.getName().equals(name)) {
-                            if (Logging.isDebug()) {
-                                Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                        "MetadataCache getXattr() hit: %s [%s]", path, cache.size());
-                            }
-                            return new Tupel<String, Boolean>(xattr.getValue(), xattrsCached);
+        MetadataCacheEntry entry = cache.get(path);
+        listxattrResponse xattrs = entry == null ? null : entry.getXattrs();
+        long currentTimeS = System.currentTimeMillis() / 1000;
+
+        if (xattrs != null) {
+            // Entry found with valid Xattrs. Check timeout Xattrs
+            if (entry.getXattrTimeoutS() >= currentTimeS) {
+                xattrsCached = true;
+                markReferenced(entry);
+
+                for (XAttr xattr : xattrs.getXattrsList()) {
+                    if (xattr.getName().equals(name)) {
+                        if (Logging.isDebug()) {
+                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                                    "MetadataCache getXattr() hit: %s [%s]", path, cache.size());
                         }
+                        return new Tupel<String, Boolean>(xattr.getValue(), xattrsCached);
                     }
-                    // the Xattr "name" was not found;
-                    return new Tupel<String, Boolean>(null, xattrsCached);
-                } else { // Cache entry is expired => remove from cache.
+                }
+                // the Xattr "name" was not found;
+                return new Tupel<String, Boolean>(null, xattrsCached);
+            } else { // Cache entry is expired => remove from cache.
 
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache getXattr() expired: %s", path);
-                    }
-                    // Only delete object if maximum timeout is reached.
-                    if (entry.getTimeoutS() < currentTimeMS) {
-                        cache.remove(path);
-                        pathIndex.remove(path);
-                    }
-                    return new Tupel<String, Boolean>(null, xattrsCached);
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache getXattr() expired: %s", path);
                 }
+                // Only delete object if maximum timeout is reached.
+                removeIfExpired(path, entry, currentTimeS);
+                return new Tupel<String, Boolean>(null, xattrsCached);
             }
-
-        } finally {
-            writeLock.unlock();
         }
 
         if (Logging.isDebug()) {
@@ -762,41 +781,34 @@ public class MetadataCache {
     protected Tupel<Integer, Boolean> getXAttrSize(String path, String name) {
         boolean xattrCached = false;
 
-        writeLock.lock();
-        try {
-            MetadataCacheEntry entry = cache.get(path);
-            long currentTimeS = System.currentTimeMillis() / 1000;
+        MetadataCacheEntry entry = cache.get(path);
+        listxattrResponse xattrs = entry == null ? null : entry.getXattrs();
+        long currentTimeS = System.currentTimeMillis() / 1000;
 
-            if (entry != null && entry.getXattrs() != null) {
-                if (entry.getXattrTimeoutS() >= currentTimeS) { // entry is still valid
-                    xattrCached = true;
-                    for (XAttr xattr : entry.getXattrs().getXattrsList()) {
-                        if (xattr.getName().equals(name)) {
-
-                            if (Logging.isDebug()) {
-                                Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                        "MetadataCache getXattrSize() hit: %s [%s]", path, cache.size());
-                            }
-                            return new Tupel<Integer, Boolean>(xattr.getValue().length(), xattrCached);
-                        }
-                    }
+        if (xattrs != null) {
+            if (entry.getXattrTimeoutS() >= currentTimeS) { // entry is still valid
+                xattrCached = true;
+                markReferenced(entry);
+                for (XAttr xattr : xattrs.getXattrsList()) {
+                    if (xattr.getName().equals(name)) {
 
-                } else { // cache entry is expired => remove from cache
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache getXattrSize() expired: %s", path);
+                        if (Logging.isDebug()) {
+                            Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                                    "MetadataCache getXattrSize() hit: %s [%s]", path, cache.size());
+                        }
+                        return new Tupel<Integer, Boolean>(xattr.getValue().length(), xattrCached);
                     }
+                }
 
-                    // only delete entry when overall timeout is expired
-                    if (entry.getTimeoutS() < currentTimeS) {
-                        cache.remove(path);
-                        pathIndex.remove(path);
-                    }
+            } else { // cache entry is expired => remove from cache
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache getXattrSize() expired: %s", path);
                 }
-            }
 
-        } finally {
-            writeLock.unlock();
+                // only delete entry when overall timeout is expired
+                removeIfExpired(path, entry, currentTimeS);
+            }
         }
 
         if (Logging.isDebug()) {
@@ -814,36 +826,30 @@ public class MetadataCache {
      * @return {@link listxattrResponse} or null.
      */
     protected listxattrResponse getXAttrs(String path) {
-        writeLock.lock();
-        try {
-            MetadataCacheEntry entry = cache.get(path);
-            long currentTimeS = System.currentTimeMillis() / 1000;
+        MetadataCacheEntry entry = cache.get(path);
+        listxattrResponse xattrs = entry == null ? null : entry.getXattrs();
+        long currentTimeS = System.currentTimeMillis() / 1000;
 
-            if (entry != null && entry.getXattrs() != null) {
-                if (entry.getXattrTimeoutS() >= currentTimeS) { // cache entry is still valid; hit
+        if (xattrs != null) {
+            if (entry.getXattrTimeoutS() >= currentTimeS) { // cache entry is still valid; hit
 
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache getXattrs() hit: %s [%s]", path, cache.size());
-                    }
-                    return entry.getXattrs();
-
-                } else { // entry is expired => remove it
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                                "MetadataCache getXattrs() expired: %s", path, cache.size());
-                    }
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache getXattrs() hit: %s [%s]", path, cache.size());
+                }
+                markReferenced(entry);
+                return xattrs;
 
-                    // only delete object when overall timeout is expired
-                    if (entry.getTimeoutS() < currentTimeS) {
-                        cache.remove(path);
-                        pathIndex.remove(path);
-                    }
-                    return null;
+            } else { // entry is expired => remove it
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache getXattrs() expired: %s", path, cache.size());
                 }
+
+                // only delete object when overall timeout is expired
+                removeIfExpired(path, entry, currentTimeS);
+                return null;
             }
-        } finally {
-            writeLock.unlock();
         }
         if (Logging.isDebug()) {
             Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
@@ -868,7 +874,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             // check if there is already an entry for "path"
             MetadataCacheEntry entry = cache.get(path);
@@ -910,7 +917,7 @@ public class MetadataCache {
             // Replace the existing entry in cache - do not update TTL
             entry.setXattrs(newXattrs.build());
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -929,9 +936,15 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        if (!cache.containsKey(path)) {
+            evict();
+        }
+
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
+            boolean created = false;
             // create a new entry if there isn't one in cache
             if (entry == null) {
 
@@ -941,20 +954,20 @@ public class MetadataCache {
                 }
                 entry = new MetadataCacheEntry();
                 entry.setPath(path);
+                created = true;
             }
 
             entry.setXattrs(xattrs);
             entry.setXattrTimeoutS(System.currentTimeMillis() / 1000 + ttlS);
             entry.setTimeoutS(entry.getXattrTimeoutS());
 
-            // we have to remove and readd the entry. If it was not in cache we are dealing with a
-            // new entry and we have to insert in "pathIndex" too
-            if (cache.remove(path) == null) {
-                pathIndex.add(path);
+            if (created) {
+                insertUnmutexed(path, entry);
+            } else {
+                entry.setReferenced(true);
             }
-            cache.put(path, entry);
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -971,7 +984,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             if (entry == null) {
@@ -1001,7 +1015,7 @@ public class MetadataCache {
             entry.setXattrs(xattrs.build());
 
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -1016,7 +1030,8 @@ public class MetadataCache {
             return;
         }
 
-        writeLock.lock();
+        ReentrantLock lock = getLock(path);
+        lock.lock();
         try {
             MetadataCacheEntry entry = cache.get(path);
             if (entry != null) {
@@ -1025,7 +1040,7 @@ public class MetadataCache {
             }
 
         } finally {
-            writeLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -1035,12 +1050,7 @@ public class MetadataCache {
      * @return long
      */
     protected long size() {
-        readLock.lock();
-        try {
-            return cache.size();
-        } finally {
-            readLock.unlock();
-        }
+        return cache.size();
     }
 
     /**
@@ -1053,22 +1063,137 @@ public class MetadataCache {
     }
 
     /**
-     * Evicts first n oldest entries from cache.
+     * Returns the lock which guards the modifications of "path".
+     */
+    private ReentrantLock getLock(String path) {
+        int h = path.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (NUM_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Acquires all locks in a fixed order.
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Marks "entry" as recently used. The flag is only written if it is not set yet to avoid needless
+     * invalidations of the cache line.
+     */
+    private void markReferenced(MetadataCacheEntry entry) {
+        if (!entry.isReferenced()) {
+            entry.setReferenced(true);
+        }
+    }
+
+    /**
+     * Removes "entry" from the cache if the overall timeout of it is reached and it is still cached for
+     * "path".
+     */
+    private void removeIfExpired(String path, MetadataCacheEntry entry, long currentTimeS) {
+        if (entry.getTimeoutS() >= currentTimeS) {
+            return;
+        }
+
+        ReentrantLock lock = getLock(path);
+        lock.lock();
+        try {
+            if (cache.get(path) == entry && entry.getTimeoutS() < currentTimeS) {
+                cache.remove(path);
+                pathIndex.remove(path);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a new entry to "cache", "pathIndex" and the eviction queue. The lock of "path" has to be held.
+     */
+    private void insertUnmutexed(String path, MetadataCacheEntry entry) {
+        pathIndex.add(path);
+        cache.put(path, entry);
+        evictionQueue.add(entry);
+
+        // Remove entries which were invalidated in the meantime from the queue if it grows too large.
+        if (evictionQueueLength.incrementAndGet() > 2 * maxNumberOfEntries && evictionLock.tryLock()) {
+            try {
+                Iterator<MetadataCacheEntry> it = evictionQueue.iterator();
+                while (it.hasNext()) {
+                    MetadataCacheEntry queued = it.next();
+                    if (cache.get(queued.getPath()) != queued) {
+                        it.remove();
+                        evictionQueueLength.decrementAndGet();
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until there is room for one new entry. Entries which were used since the clock hand
+     * passed them the last time get a second chance.
      * 
-     * @param n
-     *            Number of elements that should be evicted.
+     * Must not be called while holding one of the path locks.
      */
-    private void evictUnmutexed(int n) {
-        while (cache.size() > maxNumberOfEntries - n) {
-            if (Logging.isDebug()) {
-                Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                        "MetadataCache evictUnmutexed: Deleting one entry from cache; "
-                                + "entries in total: %s", cache.size());
+    private void evict() {
+        if (cache.size() < maxNumberOfEntries) {
+            return;
+        }
+
+        evictionLock.lock();
+        try {
+            while (cache.size() >= maxNumberOfEntries) {
+                MetadataCacheEntry entry = evictionQueue.poll();
+                if (entry == null) {
+                    break;
+                }
+                evictionQueueLength.decrementAndGet();
+
+                String path = entry.getPath();
+                if (cache.get(path) != entry) {
+                    // Entry was already removed from the cache.
+                    continue;
+                }
+
+                if (entry.isReferenced()) {
+                    entry.setReferenced(false);
+                    evictionQueue.add(entry);
+                    evictionQueueLength.incrementAndGet();
+                    continue;
+                }
+
+                if (Logging.isDebug()) {
+                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                            "MetadataCache evict: Deleting one entry from cache; "
+                                    + "entries in total: %s", cache.size());
+                }
+
+                ReentrantLock lock = getLock(path);
+                lock.lock();
+                try {
+                    if (cache.get(path) == entry) {
+                        cache.remove(path);
+                        pathIndex.remove(path);
+                    }
+                } finally {
+                    lock.unlock();
+                }
             }
-            // get first element of keys of the LinkedHashMap "cache".
-            String path = cache.keySet().iterator().next();
-            cache.remove(path);
-            pathIndex.remove(path);
+        } finally {
+            evictionLock.unlock();
         }
     }
 }
@@ -17,21 +17,26 @@ import org.xtreemfs.pbrpc.generatedinterfaces.MRC.listxattrResponse;
  */
 public class MetadataCacheEntry {
 
-    private long statTimeoutS;
+    private volatile long statTimeoutS;
     
-    private long dirEntriesTimeoutS;
+    private volatile long dirEntriesTimeoutS;
     
-    private long xattrTimeoutS;
+    private volatile long xattrTimeoutS;
 
-    private long timeoutS;
+    private volatile long timeoutS;
     
-    private Stat stat;
+    private volatile Stat stat;
     
-    private DirectoryEntries dirEntries;
+    private volatile DirectoryEntries dirEntries;
     
-    private String path;
+    private volatile String path;
     
-    private listxattrResponse xattrs;
+    private volatile listxattrResponse xattrs;
+
+    /**
+     * Set if the entry was accessed since the eviction last looked at it (CLOCK algorithm).
+     */
+    private volatile boolean referenced;
     
     
     protected Stat getStat() {
@@ -97,4 +102,12 @@ public class MetadataCacheEntry {
     protected void setXattrTimeoutS(long timeout) {
         this.xattrTimeoutS = timeout;
     }
+
+    protected boolean isReferenced() {
+        return referenced;
+    }
+
+    protected void setReferenced(boolean referenced) {
+        this.referenced = referenced;
+    }
 }
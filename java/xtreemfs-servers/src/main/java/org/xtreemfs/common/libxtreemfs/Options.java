@@ -45,6 +45,27 @@ public class Options {
      */
     private final int     maxWriteaheadRequests             = 10;
 
+    /**
+     * Maximum number of object read requests which are sent in parallel by a single read() call. A value of 1
+     * reads one object after another. Default: 16
+     */
+    private int           maxParallelReads                  = 16;
+
+    /**
+     * Prefetch the next objects if a file handle is read sequentially. Default: false
+     */
+    private boolean       enableReadahead                   = false;
+
+    /**
+     * Number of objects which are read ahead of a sequential reader. Default: 8
+     */
+    private int           readaheadObjects                  = 8;
+
+    /**
+     * Maximum number of bytes which may be read ahead per file handle. Default: 8 MB
+     */
+    private long          maxReadaheadBytes                 = 8 * 1024 * 1024;
+
     /**
      * Number of retrieved entries per readdir request. Default: 1024
      */
@@ -92,6 +113,23 @@ public class Options {
      */
     private final int     lingerTimeout_s                   = 600;
 
+    /**
+     * Number of threads that process the network I/O. Connections are distributed among them by the address of the
+     * server. Default: 1
+     */
+    private int           networkThreads                    = 1;
+
+    /**
+     * Number of connections to each server over which requests with bulk data (e.g. writes) are spread. Default: 1
+     */
+    private int           connectionsPerServer              = 1;
+
+    /**
+     * True, if requests without bulk data shall be sent over a separate connection to each server, so that they are
+     * not delayed by large transfers. Default: false
+     */
+    private boolean       lowLatencyConnection              = false;
+
     // SSL options.
     private final String  sslPemCertPath                    = "";
     private final String  sslPemPath                        = "";
@@ -230,6 +268,38 @@ public class Options {
         return maxWriteaheadRequests;
     }
 
+    public int getMaxParallelReads() {
+        return maxParallelReads;
+    }
+
+    public void setMaxParallelReads(int maxParallelReads) {
+        this.maxParallelReads = maxParallelReads;
+    }
+
+    public boolean isEnableReadahead() {
+        return enableReadahead;
+    }
+
+    public void setEnableReadahead(boolean enableReadahead) {
+        this.enableReadahead = enableReadahead;
+    }
+
+    public int getReadaheadObjects() {
+        return readaheadObjects;
+    }
+
+    public void setReadaheadObjects(int readaheadObjects) {
+        this.readaheadObjects = readaheadObjects;
+    }
+
+    public long getMaxReadaheadBytes() {
+        return maxReadaheadBytes;
+    }
+
+    public void setMaxReadaheadBytes(long maxReadaheadBytes) {
+        this.maxReadaheadBytes = maxReadaheadBytes;
+    }
+
     public int getReaddirChunkSize() {
         return readdirChunkSize;
     }
@@ -286,6 +356,30 @@ public class Options {
         return lingerTimeout_s;
     }
 
+    public int getNetworkThreads() {
+        return networkThreads;
+    }
+
+    public void setNetworkThreads(int networkThreads) {
+        this.networkThreads = networkThreads;
+    }
+
+    public int getConnectionsPerServer() {
+        return connectionsPerServer;
+    }
+
+    public void setConnectionsPerServer(int connectionsPerServer) {
+        this.connectionsPerServer = connectionsPerServer;
+    }
+
+    public boolean isLowLatencyConnection() {
+        return lowLatencyConnection;
+    }
+
+    public void setLowLatencyConnection(boolean lowLatencyConnection) {
+        this.lowLatencyConnection = lowLatencyConnection;
+    }
+
     public int getPeriodicXcapRenewalIntervalS() {
         return periodicXcapRenewalIntervalS;
     }
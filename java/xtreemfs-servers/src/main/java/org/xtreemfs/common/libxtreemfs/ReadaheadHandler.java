@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+package org.xtreemfs.common.libxtreemfs;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xtreemfs.common.libxtreemfs.exceptions.AddressToUUIDNotFoundException;
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+import org.xtreemfs.foundation.pbrpc.client.RPCResponse;
+import org.xtreemfs.foundation.pbrpc.client.RPCResponseAvailableListener;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.FileCredentials;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.StripingPolicy;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSD.ObjectData;
+
+//JCIP import net.jcip.annotations.GuardedBy;
+
+/**
+ * Detects sequential reads of a FileHandle and prefetches the following objects. Used only internally.
+ * <p>
+ * Objects which were prefetched before or while the file was modified are dropped on their next access. Hence,
+ * modifications have to be reported by calling {@link #invalidate()} both before they are sent and after they have
+ * completed.
+ */
+public class ReadaheadHandler {
+
+    /**
+     * An object which was requested in advance.
+     */
+    private static class PrefetchedObject {
+
+        /**
+         * Response of the read request. Set to null once the response was received.
+         */
+        RPCResponse<ObjectData> response;
+
+        /**
+         * Data of the object, valid once response is null. May be null if the object is empty.
+         */
+        ReusableBuffer          data;
+
+        /**
+         * Number of bytes in data.
+         */
+        int                     dataLength;
+
+        /**
+         * Number of zeros which have to be appended to data.
+         */
+        int                     zeroPadding;
+
+        /**
+         * Number of bytes reserved for this object.
+         */
+        final long              reservedBytes;
+
+        /**
+         * Number of modifications of the file before the read request was sent.
+         */
+        final long              modifications;
+
+        PrefetchedObject(RPCResponse<ObjectData> response, long reservedBytes, long modifications) {
+            this.response = response;
+            this.reservedBytes = reservedBytes;
+            this.modifications = modifications;
+        }
+    }
+
+    /**
+     * FileHandle which uses this ReadaheadHandler. Used to send the read requests.
+     */
+    private final FileHandleImplementation     fileHandle;
+
+    /**
+     * Number of objects which are read ahead of the current position.
+     */
+    private final int                          readaheadObjects;
+
+    /**
+     * Maximum number of bytes which may be prefetched.
+     */
+    private final long                         maxReadaheadBytes;
+
+    /**
+     * Prefetched objects, ordered by the object number.
+     */
+    // JCIP @GuardedBy("this")
+    private final TreeMap<Long, PrefetchedObject> prefetchedObjects;
+
+    /**
+     * Number of bytes reserved for prefetched objects.
+     */
+    // JCIP @GuardedBy("this")
+    private long                               reservedBytes;
+
+    /**
+     * Offset at which the next read has to start to be considered sequential.
+     */
+    // JCIP @GuardedBy("this")
+    private long                               nextSequentialOffset;
+
+    /**
+     * Number of reported modifications of the file.
+     */
+    private final AtomicLong                   modifications;
+
+    protected ReadaheadHandler(FileHandleImplementation fileHandle, int readaheadObjects, long maxReadaheadBytes) {
+        this.fileHandle = fileHandle;
+        this.readaheadObjects = readaheadObjects;
+        this.maxReadaheadBytes = maxReadaheadBytes;
+
+        prefetchedObjects = new TreeMap<Long, PrefetchedObject>();
+        reservedBytes = 0;
+        nextSequentialOffset = -1;
+        modifications = new AtomicLong();
+    }
+
+    /**
+     * Copies the data requested by operation into buf if the object was prefetched. A pending read request is
+     * waited for without holding the lock, so that writers can invalidate the prefetched objects meanwhile.
+     *
+     * @return Number of bytes written to buf or -1 if the object is not available.
+     */
+    protected int read(ReadOperation operation, ReusableBuffer buf) {
+        PrefetchedObject object;
+        RPCResponse<ObjectData> response;
+        synchronized (this) {
+            object = getValidObject(operation.getObjNumber());
+            if (object == null) {
+                return -1;
+            }
+            response = object.response;
+        }
+
+        if (response != null) {
+            try {
+                response.waitForResult();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+
+        synchronized (this) {
+            if (getValidObject(operation.getObjNumber()) != object) {
+                // Invalidated while waiting, the data may be outdated.
+                return -1;
+            }
+            if (object.response != null) {
+                try {
+                    ObjectData objectData = object.response.get();
+                    object.data = object.response.getData();
+                    object.dataLength = object.data == null ? 0 : object.data.remaining();
+                    object.zeroPadding = objectData.getZeroPadding();
+                } catch (Exception e) {
+                    if (Logging.isDebug()) {
+                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
+                                "readahead of object %d failed: %s", operation.getObjNumber(), e.getMessage());
+                    }
+                    prefetchedObjects.remove(operation.getObjNumber());
+                    releaseObject(object);
+                    return -1;
+                } finally {
+                    if (object.response != null) {
+                        object.response.freeBuffers();
+                        object.response = null;
+                    }
+                }
+            }
+
+            return copyData(object, operation, buf);
+        }
+    }
+
+    // JCIP @GuardedBy("this")
+    private int copyData(PrefetchedObject object, ReadOperation operation, ReusableBuffer buf) {
+        int available = Math.min(operation.getReqSize(), object.dataLength + object.zeroPadding
+                - operation.getReqOffset());
+        if (available <= 0) {
+            return 0;
+        }
+
+        buf.position(operation.getBufferStart());
+        int fromData = Math.max(0, Math.min(available, object.dataLength - operation.getReqOffset()));
+        if (fromData > 0) {
+            ReusableBuffer view = object.data.createViewBuffer();
+            view.range(operation.getReqOffset(), fromData);
+            buf.put(view);
+            BufferPool.free(view);
+        }
+        for (int i = fromData; i < available; i++) {
+            buf.put((byte) 0);
+        }
+        return available;
+    }
+
+    /**
+     * Has to be called after a read of count bytes at offset finished. If the read continued the previous one,
+     * the next objects are requested in advance.
+     *
+     * @param received
+     *            Number of bytes which were actually read.
+     */
+    protected synchronized void readFinished(FileCredentials fc, StripingPolicy policy, StripeTranslator translator,
+            long offset, int count, int received) throws AddressToUUIDNotFoundException {
+        long currentModifications = modifications.get();
+        dropOutdatedObjects(currentModifications);
+
+        boolean sequential = offset == nextSequentialOffset;
+        nextSequentialOffset = offset + received;
+
+        if (!sequential) {
+            // Random access, drop everything which was prefetched.
+            releaseAllObjects();
+            return;
+        }
+
+        long stripeSize = policy.getStripeSize() * 1024L;
+
+        // Release objects which were read completely.
+        long currentObject = (offset + received) / stripeSize;
+        Iterator<Map.Entry<Long, PrefetchedObject>> it = prefetchedObjects.headMap(currentObject).entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            releaseObject(it.next().getValue());
+            it.remove();
+        }
+
+        if (received < count) {
+            // End of file reached.
+            return;
+        }
+
+        // Do not fetch the current object again if it was already read partially.
+        long firstObject = (offset + received) % stripeSize == 0 ? currentObject : currentObject + 1;
+
+        Vector<ReadOperation> operations = new Vector<ReadOperation>();
+        for (long objNumber = firstObject; objNumber < firstObject + readaheadObjects; objNumber++) {
+            if (prefetchedObjects.containsKey(objNumber)) {
+                continue;
+            }
+            if (reservedBytes + stripeSize > maxReadaheadBytes) {
+                break;
+            }
+
+            operations.clear();
+            translator.translateReadRequest((int) stripeSize, objNumber * stripeSize, policy, operations);
+            ReadOperation operation = operations.get(0);
+            RPCResponse<ObjectData> response = fileHandle.sendReadRequest(fc, operation,
+                    fileHandle.getUUIDIteratorForRead(fc, operation));
+            if (response == null) {
+                break;
+            }
+            prefetchedObjects.put(objNumber, new PrefetchedObject(response, stripeSize, currentModifications));
+            reservedBytes += stripeSize;
+        }
+    }
+
+    /**
+     * Marks all objects prefetched so far as outdated. Has to be called before and after the file is modified. Does
+     * not block, so it may be called from RPC callbacks; the objects are dropped on their next access.
+     */
+    protected void invalidate() {
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * Drops all prefetched objects. Has to be called if the file handle is closed.
+     */
+    protected synchronized void close() {
+        releaseAllObjects();
+        nextSequentialOffset = -1;
+    }
+
+    /**
+     * Returns the prefetched object with the given number, or null if it is not available or outdated.
+     */
+    // JCIP @GuardedBy("this")
+    private PrefetchedObject getValidObject(long objNumber) {
+        long currentModifications = modifications.get();
+        PrefetchedObject object = prefetchedObjects.get(objNumber);
+        if (object != null && object.modifications != currentModifications) {
+            dropOutdatedObjects(currentModifications);
+            return null;
+        }
+        return object;
+    }
+
+    /**
+     * Drops all objects which were prefetched before the last one of the given number of modifications.
+     */
+    // JCIP @GuardedBy("this")
+    private void dropOutdatedObjects(long currentModifications) {
+        Iterator<PrefetchedObject> it = prefetchedObjects.values().iterator();
+        while (it.hasNext()) {
+            PrefetchedObject object = it.next();
+            if (object.modifications != currentModifications) {
+                releaseObject(object);
+                it.remove();
+                nextSequentialOffset = -1;
+            }
+        }
+    }
+
+    private void releaseAllObjects() {
+        for (PrefetchedObject object : prefetchedObjects.values()) {
+            releaseObject(object);
+        }
+        prefetchedObjects.clear();
+    }
+
+    /**
+     * Frees the buffers of object. Its entry has to be removed from prefetchedObjects by the caller.
+     */
+    private void releaseObject(PrefetchedObject object) {
+        reservedBytes -= object.reservedBytes;
+        if (object.response == null) {
+            BufferPool.free(object.data);
+            object.data = null;
+        } else {
+            // Free the data once the pending request is answered.
+            object.response.registerListener(new RPCResponseAvailableListener<ObjectData>() {
+                @Override
+                public void responseAvailable(RPCResponse<ObjectData> r) {
+                    try {
+                        BufferPool.free(r.getData());
+                    } catch (InterruptedException e) {
+                        // Cannot happen as the response is already available.
+                    } finally {
+                        r.freeBuffers();
+                    }
+                }
+            });
+            object.response = null;
+        }
+    }
+}
@@ -224,7 +224,10 @@ public class VolumeImplementation implements Volume, AdminVolume {
     @Override
     public void start(boolean startThreadsAsDaemons) throws IOException {
         networkClient = new RPCNIOSocketClient(sslOptions, volumeOptions.getRequestTimeout_s() * 1000,
-                volumeOptions.getLingerTimeout_s() * 1000, "Volume", startThreadsAsDaemons);
+                volumeOptions.getLingerTimeout_s() * 1000, -1, -1, null, "Volume", startThreadsAsDaemons,
+                volumeOptions.getNetworkThreads());
+        networkClient.setConnectionsPerServer(volumeOptions.getConnectionsPerServer(),
+                volumeOptions.isLowLatencyConnection());
         networkClient.start();
         try {
             networkClient.waitForStartup();
@@ -980,9 +983,19 @@ public class VolumeImplementation implements Volume, AdminVolume {
             int limitDirEntriesCount = (currentOffset > offset + count) ? (currentOffset - offset - count)
                     : volumeOptions.getReaddirChunkSize();
 
-            readdirRequest request = readdirRequest.newBuilder().setPath(path).setVolumeName(volumeName)
-                    .setNamesOnly(namesOnly).setKnownEtag(0).setSeenDirectoryEntriesCount(currentOffset)
-                    .setLimitDirectoryEntriesCount(limitDirEntriesCount).build();
+            readdirRequest.Builder requestBuilder = readdirRequest.newBuilder().setPath(path)
+                    .setVolumeName(volumeName).setNamesOnly(namesOnly).setKnownEtag(0)
+                    .setSeenDirectoryEntriesCount(currentOffset).setLimitDirectoryEntriesCount(limitDirEntriesCount);
+
+            // Let the MRC continue after the last entry of the previous chunk
+            // instead of skipping all entries seen so far.
+            if (dirEntriesBuilder.getEntriesCount() > 0) {
+                String lastName = dirEntriesBuilder.getEntries(dirEntriesBuilder.getEntriesCount() - 1).getName();
+                if (!lastName.equals(".") && !lastName.equals("..")) {
+                    requestBuilder.setLastSeenFileName(lastName);
+                }
+            }
+            readdirRequest request = requestBuilder.build();
 
             DirectoryEntries readDirResponse = RPCCaller.<readdirRequest, DirectoryEntries> syncCall(SERVICES.MRC,
                     userCredentials,
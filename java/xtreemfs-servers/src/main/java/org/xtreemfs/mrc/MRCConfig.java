@@ -55,6 +55,8 @@ public class MRCConfig extends ServiceConfig {
             Parameter.POLICY_DIR,
             Parameter.CAPABILITY_SECRET,
             Parameter.CAPABILITY_TIMEOUT,
+            Parameter.CAPABILITY_SIGNATURE,
+            Parameter.CAPABILITY_SIGNATURE_ACCEPT_MD5,
             Parameter.ADMIN_PASSWORD,
             Parameter.RENEW_TIMED_OUT_CAPS,
             Parameter.USE_SNMP,
@@ -66,7 +68,9 @@ public class MRCConfig extends ServiceConfig {
             Parameter.MAX_CLIENT_Q,
             Parameter.USE_RENEWAL_SIGNAL,
             Parameter.USE_MULTIHOMING,
-            Parameter.FLEASE_LEASE_TIMEOUT_MS
+            Parameter.FLEASE_LEASE_TIMEOUT_MS,
+            Parameter.PROCESSING_THREADS,
+            Parameter.DENTRY_CACHE_SIZE
             };
     /*
      * @formatter:on
@@ -141,6 +145,14 @@ public class MRCConfig extends ServiceConfig {
         return (Integer) parameter.get(Parameter.CAPABILITY_TIMEOUT);
     }
 
+    public String getCapabilitySignature() {
+        return (String) parameter.get(Parameter.CAPABILITY_SIGNATURE);
+    }
+
+    public boolean isCapabilityMD5SignatureAccepted() {
+        return (Boolean) parameter.get(Parameter.CAPABILITY_SIGNATURE_ACCEPT_MD5);
+    }
+
     /**
      * @return the renewTimedOutCaps
      */
@@ -149,6 +161,14 @@ public class MRCConfig extends ServiceConfig {
 
     }
 
+    public int getProcessingThreads() {
+        return (Integer) parameter.get(Parameter.PROCESSING_THREADS);
+    }
+
+    public long getDentryCacheSize() {
+        return (Long) parameter.get(Parameter.DENTRY_CACHE_SIZE);
+    }
+
     /**
      * Set default values according to the value in {@link Parameter} for all configuration parameter which
      * are null.
@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.xtreemfs.babudb.config.BabuDBConfig;
+import org.xtreemfs.common.Capability;
 import org.xtreemfs.common.HeartbeatThread;
 import org.xtreemfs.common.HeartbeatThread.ServiceDataGenerator;
 import org.xtreemfs.common.auth.AuthenticationProvider;
@@ -64,6 +65,7 @@ import org.xtreemfs.mrc.database.StorageManager;
 import org.xtreemfs.mrc.database.VolumeInfo;
 import org.xtreemfs.mrc.database.VolumeManager;
 import org.xtreemfs.mrc.database.babudb.BabuDBVolumeManager;
+import org.xtreemfs.mrc.database.babudb.DentryCache;
 import org.xtreemfs.mrc.metadata.StripingPolicy;
 import org.xtreemfs.mrc.osdselection.OSDStatusManager;
 import org.xtreemfs.mrc.quota.QuotaManager;
@@ -119,6 +121,8 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
 
     private final VolumeManager            volumeManager;
 
+    private final DentryCache              dentryCache;
+
     private final FileAccessManager        fileAccessManager;
 
     private final StatusServer             statusServer;
@@ -204,6 +208,9 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
         osdClient = new OSDServiceClient(clientStage, null);
         TimeSync.initialize(dirClient, config.getRemoteTimeSync(), config.getLocalClockRenew());
 
+        Capability.setSignatureScheme(Capability.SignatureScheme.fromName(config.getCapabilitySignature()));
+        Capability.setMD5SignaturesAccepted(config.isCapabilityMD5SignatureAccepted());
+
         authProvider = policyContainer.getAuthenticationProvider();
         authProvider.initialize(config.isUsingSSL(), config.getAuthenticationProviderPropertiesAsProperties());
         if (Logging.isInfo())
@@ -221,6 +228,13 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
         mrcQuotaManager = new QuotaManager();
         mrcVoucherManager = new VoucherManager(mrcQuotaManager);
 
+        // initialize flag that indicates whether the service is replicated
+        replicated = dbConfig.getPlugins().size() > 0;
+
+        // directory entries are not cached on replicated MRCs, as updates
+        // received from the master bypass the cache
+        dentryCache = new DentryCache(replicated ? 0 : config.getDentryCacheSize());
+
         volumeManager = new BabuDBVolumeManager(this, dbConfig);
         fileAccessManager = new FileAccessManager(volumeManager, policyContainer);
 
@@ -231,9 +245,6 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
             notifyConfigurationChange();
         }
 
-        // initialize flag that indicates whether the service is replicated
-        replicated = dbConfig.getPlugins().size() > 0;
-
         ServiceDataGenerator gen = new ServiceDataGenerator() {
             @Override
             public ServiceSet getServiceData() {
@@ -607,6 +618,7 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
         data.put(Vars.PROTOVERSION, Integer.toString(MRCServiceConstants.INTERFACE_ID));
         data.put(Vars.VERSION, VersionManagement.RELEASE_VERSION);
         data.put(Vars.DBVERSION, volumeManager.getDBVersion());
+        data.put(Vars.DENTRYCACHE, dentryCache.getStatus());
 
         data.put(Vars.PINKYQ, Long.toString(this.serverStage.getPendingRequests()));
         data.put(Vars.NUMCON, Integer.toString(this.serverStage.getNumConnections()));
@@ -746,6 +758,10 @@ public class MRCRequestDispatcher implements RPCServerRequestListener, LifeCycle
         return volumeManager;
     }
 
+    public DentryCache getDentryCache() {
+        return dentryCache;
+    }
+
     public FileAccessManager getFileAccessManager() {
         return fileAccessManager;
     }
@@ -8,9 +8,10 @@
 
 package org.xtreemfs.mrc.ac;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.logging.Logging.Category;
@@ -62,7 +63,10 @@ public class FileAccessManager {
     
     private final VolumeManager                volMan;
     
-    private final Map<Short, FileAccessPolicy> policies;
+    /**
+     * policies loaded so far; accessed by concurrent processing threads
+     */
+    private final ConcurrentMap<Short, FileAccessPolicy> policies;
     
     private MRCPolicyContainer                 policyContainer;
     
@@ -71,7 +75,7 @@ public class FileAccessManager {
         this.volMan = volMan;
         this.policyContainer = policyContainer;
         
-        policies = new HashMap<Short, FileAccessPolicy>();
+        policies = new ConcurrentHashMap<Short, FileAccessPolicy>();
     }
     
     public void checkSearchPermission(StorageManager sMan, PathResolver path, String userId,
@@ -153,7 +157,12 @@ public class FileAccessManager {
         if (policy == null) {
             try {
                 policy = policyContainer.getFileAccessPolicy(policyId, volMan);
-                policies.put(policyId, policy);
+                
+                // if another thread has loaded the policy in the meantime,
+                // use its instance
+                FileAccessPolicy loaded = policies.putIfAbsent(policyId, policy);
+                if (loaded != null)
+                    policy = loaded;
             } catch (Exception exc) {
                 Logging.logMessage(Logging.LEVEL_WARN, Category.misc, this,
                     "could not load FileAccessPolicy with ID %d", policyId);
@@ -199,8 +199,25 @@ public interface StorageManager {
 
     public String getSoftlinkTarget(long fileId) throws DatabaseException;
     
+    /**
+     * Returns the targets of all symbolic links with file IDs between
+     * <code>minFileId</code> and <code>maxFileId</code> (inclusive), which are
+     * retrieved by means of a single range lookup.
+     * 
+     * @return a map from file IDs to link targets
+     */
+    public Map<Long, String> getSoftlinkTargets(long minFileId, long maxFileId) throws DatabaseException;
+    
     public DatabaseResultSet<FileMetadata> getChildren(long parentId, int seen, int num) throws DatabaseException;
     
+    /**
+     * Returns the nested files and directories that follow the file with the
+     * given name in the directory. Unlike {@link #getChildren(long, int, int)},
+     * the costs do not depend on the position in the directory.
+     */
+    public DatabaseResultSet<FileMetadata> getChildren(long parentId, String startAfter, int num)
+        throws DatabaseException;
+    
     // handling snapshots
     
     public void createSnapshot(String snapName, long parentId, String dirName, boolean recursive)
@@ -8,6 +8,9 @@
 
 package org.xtreemfs.mrc.database.babudb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.xtreemfs.babudb.api.database.Database;
 import org.xtreemfs.babudb.api.database.DatabaseInsertGroup;
 import org.xtreemfs.babudb.api.database.DatabaseRequestListener;
@@ -25,16 +28,25 @@ public class AtomicBabuDBUpdate implements AtomicDBUpdate {
     
     private Object                          context;
     
+    private DentryCache                     dentryCache;
+    
+    /**
+     * the keys of all modified file index records, if directory entries are
+     * cached
+     */
+    private List<byte[]>                    fileIndexKeys;
+    
     // private List<Object[]> updates;
     //    
     // private String dbName;
     
-    public AtomicBabuDBUpdate(Database database, DatabaseRequestListener<Object> listener, Object context)
-        throws BabuDBException {
+    public AtomicBabuDBUpdate(Database database, DentryCache dentryCache,
+        DatabaseRequestListener<Object> listener, Object context) throws BabuDBException {
         
         ig = database.createInsertGroup();
         
         this.database = database;
+        this.dentryCache = dentryCache;
         this.listener = listener;
         this.context = context;
         
@@ -46,6 +58,13 @@ public class AtomicBabuDBUpdate implements AtomicDBUpdate {
     public void addUpdate(Object... update) {
         ig.addInsert((Integer) update[0], (byte[]) update[1], (byte[]) update[2]);
         // updates.add(update);
+        
+        if (dentryCache.isEnabled() && (Integer) update[0] == BabuDBStorageManager.FILE_INDEX) {
+            dentryCache.invalidate(database.getName(), (byte[]) update[1]);
+            if (fileIndexKeys == null)
+                fileIndexKeys = new ArrayList<byte[]>();
+            fileIndexKeys.add((byte[]) update[1]);
+        }
     }
     
     @Override
@@ -54,10 +73,39 @@ public class AtomicBabuDBUpdate implements AtomicDBUpdate {
             
             // checkDBConsistency();
             
-            if (listener != null) {
-                database.insert(ig, context).registerListener(listener);
-            } else
-                database.insert(ig, context).get();
+            // entries that have been cached while the update was pending
+            // are invalidated again as soon as it has been applied
+            if (fileIndexKeys == null) {
+                if (listener != null)
+                    database.insert(ig, context).registerListener(listener);
+                else
+                    database.insert(ig, context).get();
+            }
+            
+            else if (listener != null) {
+                database.insert(ig, context).registerListener(new DatabaseRequestListener<Object>() {
+                    
+                    @Override
+                    public void finished(Object result, Object context) {
+                        invalidateDentries();
+                        listener.finished(result, context);
+                    }
+                    
+                    @Override
+                    public void failed(BabuDBException error, Object context) {
+                        invalidateDentries();
+                        listener.failed(error, context);
+                    }
+                });
+            }
+            
+            else {
+                try {
+                    database.insert(ig, context).get();
+                } finally {
+                    invalidateDentries();
+                }
+            }
             
         } catch (Exception exc) {
             throw new DatabaseException(exc);
@@ -68,6 +116,11 @@ public class AtomicBabuDBUpdate implements AtomicDBUpdate {
         return ig.toString();
     }
     
+    private void invalidateDentries() {
+        for (byte[] key : fileIndexKeys)
+            dentryCache.invalidate(database.getName(), key);
+    }
+    
     // private void checkDBConsistency() {
     //        
     // Map<String, byte[][]> prefixEntries = new HashMap<String, byte[][]>();
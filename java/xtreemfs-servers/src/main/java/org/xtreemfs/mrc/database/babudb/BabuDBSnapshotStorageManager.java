@@ -11,6 +11,7 @@ package org.xtreemfs.mrc.database.babudb;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -190,6 +191,18 @@ public class BabuDBSnapshotStorageManager implements StorageManager {
 
     }
 
+    @Override
+    public DatabaseResultSet<FileMetadata> getChildren(long parentId, String startAfter, int num)
+        throws DatabaseException {
+
+        try {
+            return BabuDBStorageHelper.getChildren(database, parentId, startAfter, num);
+        } catch (Exception exc) {
+            throw new DatabaseException(exc);
+        }
+
+    }
+
     @Override
     public StripingPolicy getDefaultStripingPolicy(long fileId) throws DatabaseException {
 
@@ -502,6 +515,24 @@ public class BabuDBSnapshotStorageManager implements StorageManager {
         }
     }
 
+    @Override
+    public Map<Long, String> getSoftlinkTargets(long minFileId, long maxFileId) throws DatabaseException {
+
+        try {
+            Map<Long, byte[]> targets = BabuDBStorageHelper.getXAttrs(database, minFileId, maxFileId, SYSTEM_UID,
+                    LINK_TARGET_ATTR_NAME);
+
+            Map<Long, String> result = new HashMap<Long, String>();
+            for (Entry<Long, byte[]> target : targets.entrySet())
+                result.put(target.getKey(), new String(target.getValue()));
+
+            return result;
+
+        } catch (BabuDBException exc) {
+            throw new DatabaseException(exc);
+        }
+    }
+
     @Override
     public byte[] getXAttr(long fileId, String uid, String key) throws DatabaseException {
 
@@ -9,6 +9,7 @@
 package org.xtreemfs.mrc.database.babudb;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -482,6 +483,48 @@ public class BabuDBStorageHelper {
         return getXAttrCollisionNumber(next.getKey());
     }
     
+    /**
+     * Retrieves an extended attribute of all files with IDs between
+     * <code>minFileId</code> and <code>maxFileId</code> (inclusive) by means of
+     * a single range lookup.
+     * 
+     * @return a map from file IDs to attribute values, which only contains
+     *         files that have the attribute
+     */
+    public static Map<Long, byte[]> getXAttrs(DatabaseRO database, long minFileId, long maxFileId, String owner,
+        String attrKey) throws BabuDBException {
+        
+        final int ownerHash = owner.hashCode();
+        final int attrKeyHash = attrKey.hashCode();
+        
+        byte[] from = createXAttrPrefixKey(minFileId, null, null);
+        byte[] to = createXAttrPrefixKey(maxFileId + 1, null, null);
+        ResultSet<byte[], byte[]> it = database.rangeLookup(BabuDBStorageManager.XATTRS_INDEX, from, to, null)
+                .get();
+        
+        try {
+            Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+            while (it.hasNext()) {
+                
+                Entry<byte[], byte[]> curr = it.next();
+                
+                // only decode attributes with matching hash codes
+                ByteBuffer key = ByteBuffer.wrap(curr.getKey());
+                if (key.getInt(8) != ownerHash || key.getInt(12) != attrKeyHash)
+                    continue;
+                
+                BufferBackedXAttr xattr = new BufferBackedXAttr(curr.getKey(), curr.getValue());
+                if (owner.equals(xattr.getOwner()) && attrKey.equals(xattr.getKey()))
+                    values.put(key.getLong(0), xattr.getValue());
+            }
+            
+            return values;
+            
+        } finally {
+            it.free();
+        }
+    }
+    
     public static byte[] createFileKey(long parentId, String fileName, byte type) {
         
         byte[] bytes = fileName.getBytes();
@@ -810,6 +853,22 @@ public class BabuDBStorageHelper {
         return new ChildrenIterator(database, it, from, num);
     }
     
+    public static ChildrenIterator getChildren(DatabaseRO database, long parentId, String startAfter, int num)
+        throws BabuDBException {
+        
+        // all records of a file share the same key prefix and are followed by
+        // a type byte, so the first key that sorts after the type bytes of
+        // 'startAfter' is the first record of the next file
+        byte[] from = BabuDBStorageHelper.createFileKey(parentId, startAfter, (byte) -1);
+        from = Arrays.copyOf(from, from.length + 1);
+        from[from.length - 1] = (byte) BufferBackedFileMetadata.NUM_BUFFERS;
+        
+        byte[] to = BabuDBStorageHelper.createFilePrefixKey(parentId + 1);
+        ResultSet<byte[], byte[]> it = database.rangeLookup(BabuDBStorageManager.FILE_INDEX, from, to, null).get();
+        
+        return new ChildrenIterator(database, it, 0, num);
+    }
+    
     public static void getNestedFiles(List<FileMetadata> files, Database database, long dirId,
         boolean recursive) throws BabuDBException {
         
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -140,17 +141,21 @@ public class BabuDBStorageManager implements StorageManager {
 
     private final BabuDBVolumeInfo volume;
 
+    private final DentryCache dentryCache;
+
     /**
      * Instantiates a storage manager by loading an existing volume database.
      *
-     * @param dbs the database system
-     * @param db  the database
+     * @param dbs         the database system
+     * @param db          the database
+     * @param dentryCache the cache for directory entries
      */
-    public BabuDBStorageManager(BabuDB dbs, Database db) throws DatabaseException {
+    public BabuDBStorageManager(BabuDB dbs, Database db, DentryCache dentryCache) throws DatabaseException {
 
         this.dbMan = dbs.getDatabaseManager();
         this.snapMan = dbs.getSnapshotManager();
         this.database = db;
+        this.dentryCache = dentryCache;
         this.vcListeners = new LinkedList<VolumeChangeListener>();
 
         volume = new BabuDBVolumeInfo();
@@ -160,15 +165,18 @@ public class BabuDBStorageManager implements StorageManager {
     /**
      * Instantiates a storage manager by loading an existing volume database.
      *
-     * @param dbMan the database manager
-     * @param sMan  the snapshot manager
-     * @param db    the database
+     * @param dbMan       the database manager
+     * @param sMan        the snapshot manager
+     * @param db          the database
+     * @param dentryCache the cache for directory entries
      */
-    public BabuDBStorageManager(DatabaseManager dbMan, SnapshotManager sMan, Database db) throws DatabaseException {
+    public BabuDBStorageManager(DatabaseManager dbMan, SnapshotManager sMan, Database db, DentryCache dentryCache)
+            throws DatabaseException {
 
         this.dbMan = dbMan;
         this.snapMan = sMan;
         this.database = db;
+        this.dentryCache = dentryCache;
         this.vcListeners = new LinkedList<VolumeChangeListener>();
 
         volume = new BabuDBVolumeInfo();
@@ -190,6 +198,7 @@ public class BabuDBStorageManager implements StorageManager {
         this.snapMan = dbs.getSnapshotManager();
         this.vcListeners = new LinkedList<VolumeChangeListener>();
         this.volume = new BabuDBVolumeInfo();
+        this.dentryCache = new DentryCache(0);
 
         TransactionalBabuDBUpdate update = new TransactionalBabuDBUpdate(dbMan);
         update.createDatabase(volumeId, 5);
@@ -252,7 +261,7 @@ public class BabuDBStorageManager implements StorageManager {
     public AtomicDBUpdate createAtomicDBUpdate(DBAccessResultListener<Object> listener, Object context)
             throws DatabaseException {
         try {
-            return new AtomicBabuDBUpdate(database, listener == null ? null : new BabuDBRequestListenerWrapper<Object>(
+            return new AtomicBabuDBUpdate(database, dentryCache, listener == null ? null : new BabuDBRequestListenerWrapper<Object>(
                     listener), context);
         } catch (BabuDBException exc) {
             throw new DatabaseException(exc);
@@ -546,6 +555,18 @@ public class BabuDBStorageManager implements StorageManager {
 
     }
 
+    @Override
+    public DatabaseResultSet<FileMetadata> getChildren(long parentId, String startAfter, int num)
+        throws DatabaseException {
+
+        try {
+            return BabuDBStorageHelper.getChildren(database, parentId, startAfter, num);
+        } catch (Exception exc) {
+            throw new DatabaseException(exc);
+        }
+
+    }
+
     @Override
     public StripingPolicy getDefaultStripingPolicy(long fileId) throws DatabaseException {
 
@@ -835,7 +856,7 @@ public class BabuDBStorageManager implements StorageManager {
     public FileMetadata getMetadata(final long parentId, final String fileName) throws DatabaseException {
 
         try {
-            return BabuDBStorageHelper.getMetadata(database, parentId, fileName);
+            return dentryCache.getMetadata(database, parentId, fileName);
         } catch (BabuDBException exc) {
             throw new DatabaseException(exc);
         }
@@ -854,6 +875,24 @@ public class BabuDBStorageManager implements StorageManager {
         }
     }
 
+    @Override
+    public Map<Long, String> getSoftlinkTargets(long minFileId, long maxFileId) throws DatabaseException {
+
+        try {
+            Map<Long, byte[]> targets = BabuDBStorageHelper.getXAttrs(database, minFileId, maxFileId, SYSTEM_UID,
+                    LINK_TARGET_ATTR_NAME);
+
+            Map<Long, String> result = new HashMap<Long, String>();
+            for (Entry<Long, byte[]> target : targets.entrySet())
+                result.put(target.getKey(), new String(target.getValue()));
+
+            return result;
+
+        } catch (BabuDBException exc) {
+            throw new DatabaseException(exc);
+        }
+    }
+
     @Override
     public byte[] getXAttr(long fileId, String uid, String key) throws DatabaseException {
 
@@ -965,7 +1004,7 @@ public class BabuDBStorageManager implements StorageManager {
 
             long parentId = 0;
             for (int i = 0; i < md.length; i++) {
-                md[i] = BabuDBStorageHelper.getMetadata(database, parentId, path.getComp(i));
+                md[i] = dentryCache.getMetadata(database, parentId, path.getComp(i));
                 if (md[i] == null || i < md.length - 1 && !md[i].isDirectory()) {
                     md[i] = null;
                     return md;
@@ -18,40 +18,41 @@ import org.xtreemfs.mrc.quota.VolumeQuotaManager;
 import org.xtreemfs.mrc.utils.Converter;
 
 /**
- * A <code>VolumeInfo</code> implementation backed by a byte buffer.
+ * A <code>VolumeInfo</code> implementation backed by a byte buffer. The settings of a volume are modified by the
+ * processing thread of the volume, but may be read by all processing threads.
  *
  * @author stender
  *
  */
 public class BabuDBVolumeInfo implements VolumeInfo {
 
-    private BabuDBStorageManager sMan;
+    private BabuDBStorageManager          sMan;
 
-    private String               id;
+    private String                        id;
 
-    private String               name;
+    private String                        name;
 
-    private short[]              osdPolicy;
+    private volatile short[]              osdPolicy;
 
-    private short[]              replicaPolicy;
+    private volatile short[]              replicaPolicy;
 
-    private short                acPolicy;
+    private short                         acPolicy;
 
-    private boolean              allowSnaps;
+    private volatile boolean              allowSnaps;
 
-    private boolean              enableTracing;
+    private volatile boolean              enableTracing;
 
-    private String               traceTarget;
+    private volatile String               traceTarget;
 
-    private String               tracingPolicy;
+    private volatile String               tracingPolicy;
 
-    private long                 quota;
+    private volatile long                 quota;
 
-    private long                 voucherSize;
+    private volatile long                 voucherSize;
 
-    private long                 defaultGroupQuota;
+    private volatile long                 defaultGroupQuota;
 
-    private long                 defaultUserQuota;
+    private volatile long                 defaultUserQuota;
 
     public void init(BabuDBStorageManager sMan, String id, String name, short[] osdPolicy, short[] replicaPolicy,
             short acPolicy, boolean allowSnaps, long quota, AtomicDBUpdate update) throws DatabaseException {
@@ -84,6 +84,8 @@ public class BabuDBVolumeManager implements VolumeManager {
     
     private final AtomicBoolean                    waitLock;
     
+    private final DentryCache                      dentryCache;
+    
     public BabuDBVolumeManager(MRCRequestDispatcher master, BabuDBConfig dbconfig) {
         initialized = new AtomicBoolean(false);
         volsById = Collections.synchronizedMap(new HashMap<String, StorageManager>());
@@ -91,6 +93,7 @@ public class BabuDBVolumeManager implements VolumeManager {
         listeners = new LinkedList<VolumeChangeListener>();
         config = dbconfig;
         waitLock = new AtomicBoolean(false);
+        dentryCache = master.getDentryCache();
     }
     
     /*
@@ -517,7 +520,7 @@ public class BabuDBVolumeManager implements VolumeManager {
             if (dbEntry.getKey().equals(VERSION_DB_NAME) || dbEntry.getKey().equals(SNAP_VERSIONS_DB_NAME))
                 continue;
             
-            BabuDBStorageManager sMan = new BabuDBStorageManager(dbMan, snapMan, dbEntry.getValue());
+            BabuDBStorageManager sMan = new BabuDBStorageManager(dbMan, snapMan, dbEntry.getValue(), dentryCache);
             VolumeInfo vol = sMan.getVolumeInfo();
             
             volsById.put(vol.getId(), sMan);
@@ -567,7 +570,10 @@ public class BabuDBVolumeManager implements VolumeManager {
         try {
             
             BabuDBStorageManager sMan = new BabuDBStorageManager(dbMan, database.getSnapshotManager(),
-                    dbMan.getDatabase(volumeId));
+                    dbMan.getDatabase(volumeId), dentryCache);
+            
+            // a volume with the same ID may have existed before
+            dentryCache.clear();
             
             VolumeInfo vol = sMan.getVolumeInfo();
             
@@ -589,6 +595,8 @@ public class BabuDBVolumeManager implements VolumeManager {
         StorageManager sMan = volsById.remove(volumeId);
         if (sMan != null)
             volsByName.remove(sMan.getVolumeInfo().getName());
+        
+        dentryCache.clear();
     }
     
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.mrc.database.babudb;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xtreemfs.babudb.api.database.Database;
+import org.xtreemfs.babudb.api.exception.BabuDBException;
+import org.xtreemfs.foundation.util.OutputUtils;
+import org.xtreemfs.mrc.metadata.BufferBackedFileMetadata;
+
+/**
+ * Caches the file index records of directory entries, which are identified by the volume database, the ID of the
+ * parent directory and the file name. Path resolution thus only has to access the database for entries that have not
+ * been resolved recently.
+ * <p>
+ * The cache is partitioned into stripes, each of which holds an LRU list of entries and is bounded by its share of the
+ * memory budget. Cached buffers are never handed out: each hit returns a new metadata object, which may be modified
+ * without affecting the cache.
+ * <p>
+ * Entries are invalidated by the {@link AtomicBabuDBUpdate}s that modify them, once when the update is added and once
+ * when it has been applied to the database. Since read-only operations may run concurrently with updates of the same
+ * volume, each invalidation increments the generation of the stripe, and an entry loaded from the database is only
+ * added if the generation has not changed since the lookup started. Hard links are not cached, since their metadata
+ * is kept in the file ID index and shared by all links.
+ */
+public class DentryCache {
+
+    private static final int NUM_STRIPES    = 16;
+
+    /**
+     * estimated memory footprint of an entry in addition to its buffers
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private static final class Key {
+
+        final String volumeId;
+
+        final long   parentId;
+
+        final String fileName;
+
+        Key(String volumeId, long parentId, String fileName) {
+            this.volumeId = volumeId;
+            this.parentId = parentId;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public int hashCode() {
+            return (volumeId.hashCode() * 31 + (int) (parentId ^ (parentId >>> 32))) * 31 + fileName.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return parentId == other.parentId && fileName.equals(other.fileName) && volumeId.equals(other.volumeId);
+        }
+    }
+
+    private static final class Dentry {
+
+        final byte[][] keyBufs;
+
+        final byte[][] valBufs;
+
+        final int      size;
+
+        Dentry(Key key, byte[][] keyBufs, byte[][] valBufs) {
+            this.keyBufs = keyBufs;
+            this.valBufs = valBufs;
+
+            int size = ENTRY_OVERHEAD + 2 * key.fileName.length();
+            for (int i = 0; i < keyBufs.length; i++)
+                size += keyBufs[i].length + valBufs[i].length;
+            this.size = size;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<Key, Dentry> {
+
+        private static final long serialVersionUID = -2896331873394623578L;
+
+        private final long        maxBytes;
+
+        long                      bytes;
+
+        long                      generation;
+
+        Stripe(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        int evict() {
+            int evicted = 0;
+            for (Iterator<Dentry> it = values().iterator(); bytes > maxBytes && it.hasNext(); evicted++) {
+                bytes -= it.next().size;
+                it.remove();
+            }
+            return evicted;
+        }
+    }
+
+    private final Stripe[]   stripes;
+
+    private final long       maxBytes;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong misses;
+
+    private final AtomicLong evictions;
+
+    private final AtomicLong invalidations;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            the memory budget of the cache in bytes; 0 disables the cache
+     */
+    public DentryCache(long maxBytes) {
+
+        this.stripes = new Stripe[maxBytes > 0 ? NUM_STRIPES : 0];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe(maxBytes / NUM_STRIPES);
+
+        this.maxBytes = maxBytes;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.invalidations = new AtomicLong();
+    }
+
+    public boolean isEnabled() {
+        return stripes.length > 0;
+    }
+
+    /**
+     * Returns the metadata of a directory entry, which is retrieved from the database if it is not cached.
+     *
+     * @param database
+     *            the volume database
+     * @return the metadata, or <code>null</code> if the entry does not exist
+     */
+    public BufferBackedFileMetadata getMetadata(Database database, long parentId, String fileName)
+        throws BabuDBException {
+
+        if (stripes.length == 0)
+            return BabuDBStorageHelper.getMetadata(database, parentId, fileName);
+
+        Key key = new Key(database.getName(), parentId, fileName);
+        Stripe stripe = getStripe(key);
+
+        long generation;
+        synchronized (stripe) {
+            Dentry entry = stripe.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return new BufferBackedFileMetadata(entry.keyBufs, entry.valBufs, BabuDBStorageManager.FILE_INDEX);
+            }
+            generation = stripe.generation;
+        }
+        misses.incrementAndGet();
+
+        BufferBackedFileMetadata md = BabuDBStorageHelper.getMetadata(database, parentId, fileName);
+        if (md == null || md.getIndexId() != BabuDBStorageManager.FILE_INDEX)
+            return md;
+
+        // the buffers of 'md' are only retained by the cache; the caller
+        // receives a copy
+        byte[][] keyBufs = new byte[BufferBackedFileMetadata.NUM_BUFFERS][];
+        byte[][] valBufs = new byte[BufferBackedFileMetadata.NUM_BUFFERS][];
+        for (byte i = 0; i < BufferBackedFileMetadata.NUM_BUFFERS; i++) {
+            keyBufs[i] = md.getKeyBuffer(i);
+            valBufs[i] = md.getValueBuffer(i);
+        }
+        Dentry entry = new Dentry(key, keyBufs, valBufs);
+
+        synchronized (stripe) {
+            if (stripe.generation == generation) {
+                Dentry old = stripe.put(key, entry);
+                stripe.bytes += entry.size - (old == null ? 0 : old.size);
+                evictions.addAndGet(stripe.evict());
+            }
+        }
+
+        return new BufferBackedFileMetadata(keyBufs, valBufs, BabuDBStorageManager.FILE_INDEX);
+    }
+
+    /**
+     * Invalidates the directory entry a file index key refers to.
+     *
+     * @param volumeId
+     *            the name of the volume database
+     * @param fileIndexKey
+     *            a key of the file index, consisting of the parent ID, the file name and the record type
+     */
+    public void invalidate(String volumeId, byte[] fileIndexKey) {
+
+        if (stripes.length == 0 || fileIndexKey.length < 9)
+            return;
+
+        long parentId = ByteBuffer.wrap(fileIndexKey).getLong(0);
+        String fileName = new String(fileIndexKey, 8, fileIndexKey.length - 9);
+
+        Key key = new Key(volumeId, parentId, fileName);
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.generation++;
+            Dentry entry = stripe.remove(key);
+            if (entry != null) {
+                stripe.bytes -= entry.size;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries, e.g. when volumes are created or deleted.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                stripe.generation++;
+                stripe.clear();
+                stripe.bytes = 0;
+            }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int getNumEntries() {
+        int num = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                num += stripe.size();
+            }
+        return num;
+    }
+
+    public long getSize() {
+        long bytes = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        return bytes;
+    }
+
+    /**
+     * @return a summary of the cache statistics for the status page
+     */
+    public String getStatus() {
+        if (!isEnabled())
+            return "disabled";
+        return String.format(
+                "entries = %d    size = %s / %s    hit ratio = %.1f%%    hits = %d    misses = %d    evictions = %d"
+                        + "    invalidations = %d", getNumEntries(), OutputUtils.formatBytes(getSize()),
+                OutputUtils.formatBytes(maxBytes), 100 * getHitRatio(), getHits(), getMisses(), getEvictions(),
+                getInvalidations());
+    }
+
+    private Stripe getStripe(Key key) {
+        int hash = key.hashCode();
+        return stripes[hash == Integer.MIN_VALUE ? 0 : Math.abs(hash) % stripes.length];
+    }
+}
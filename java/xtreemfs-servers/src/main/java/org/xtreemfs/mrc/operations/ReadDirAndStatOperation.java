@@ -9,6 +9,10 @@
 package org.xtreemfs.mrc.operations;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.xtreemfs.foundation.TimeSync;
 import org.xtreemfs.foundation.logging.Logging;
@@ -41,6 +45,18 @@ import org.xtreemfs.pbrpc.generatedinterfaces.MRC.readdirRequest;
  */
 public class ReadDirAndStatOperation extends MRCOperation {
     
+    /**
+     * minimum number of files in a listing for which the targets of symbolic
+     * links are retrieved by means of a single range lookup
+     */
+    private static final int BULK_LOOKUP_MIN_FILES = 8;
+    
+    /**
+     * maximum ratio between the range of file IDs and the number of files in a
+     * listing up to which a range lookup is used
+     */
+    private static final int BULK_LOOKUP_MAX_SPREAD = 4;
+    
     public ReadDirAndStatOperation(MRCRequestDispatcher master) {
         super(master);
     }
@@ -145,9 +161,15 @@ public class ReadDirAndStatOperation extends MRCOperation {
                 dirContent.addEntries(entry);
             }
             
-            // get all children
-            DatabaseResultSet<FileMetadata> it = sMan.getChildren(res.getFile().getId(), seenEntries - 2, numEntries
-                - dirContent.getEntriesCount());
+            // get all children; if the client has provided the name of the
+            // last entry it has seen, continue right after it, so that
+            // listing large directories page by page does not require the
+            // seen entries to be skipped over and over again
+            int remainingEntries = numEntries - dirContent.getEntriesCount();
+            DatabaseResultSet<FileMetadata> it = rqArgs.hasLastSeenFileName() ? sMan.getChildren(res.getFile()
+                    .getId(), rqArgs.getLastSeenFileName(), remainingEntries) : sMan.getChildren(res.getFile()
+                    .getId(), seenEntries - 2, remainingEntries);
+            List<FileMetadata> children = new ArrayList<FileMetadata>();
             while (it.hasNext()) {
                 
                 FileMetadata child = it.next();
@@ -157,13 +179,23 @@ public class ReadDirAndStatOperation extends MRCOperation {
                     continue;
                 }
                 
+                children.add(child);
+            }
+            it.destroy();
+            
+            // retrieve the targets of all symbolic links at once, instead of
+            // looking up each child on its own
+            Map<Long, String> linkTargets = namesOnly ? null : getSoftlinkTargets(sMan, children);
+            
+            for (FileMetadata child : children) {
+                
                 DirectoryEntry.Builder entry = DirectoryEntry.newBuilder().setName(child.getFileName());
                 if (!namesOnly)
-                    entry.setStbuf(getStat(sMan, faMan, rq, volume, child));
+                    entry.setStbuf(getStat(sMan, faMan, rq, volume, child, linkTargets == null ? sMan
+                            .getSoftlinkTarget(child.getId()) : linkTargets.get(child.getId())));
                 
                 dirContent.addEntries(entry);
             }
-            it.destroy();
             
         }
         
@@ -173,12 +205,46 @@ public class ReadDirAndStatOperation extends MRCOperation {
         update.execute();
     }
     
+    /**
+     * Retrieves the targets of all symbolic links among the given files by
+     * means of a single range lookup, provided that the file IDs are dense
+     * enough for the lookup not to cover too many unrelated files.
+     * 
+     * @return a map from file IDs to link targets, or <code>null</code> if the
+     *         targets have to be looked up individually
+     */
+    private static Map<Long, String> getSoftlinkTargets(StorageManager sMan, List<FileMetadata> files)
+        throws DatabaseException {
+        
+        // directories cannot be symbolic links
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        int count = 0;
+        for (FileMetadata file : files)
+            if (!file.isDirectory()) {
+                minId = Math.min(minId, file.getId());
+                maxId = Math.max(maxId, file.getId());
+                count++;
+            }
+        
+        if (count == 0)
+            return Collections.emptyMap();
+        if (count < BULK_LOOKUP_MIN_FILES || maxId - minId >= (long) BULK_LOOKUP_MAX_SPREAD * count)
+            return null;
+        
+        return sMan.getSoftlinkTargets(minId, maxId);
+    }
+    
     private Stat getStat(StorageManager sMan, FileAccessManager faMan, MRCRequest rq, VolumeInfo volume,
         FileMetadata file) throws DatabaseException, MRCException {
+        return getStat(sMan, faMan, rq, volume, file, sMan.getSoftlinkTarget(file.getId()));
+    }
+    
+    private Stat getStat(StorageManager sMan, FileAccessManager faMan, MRCRequest rq, VolumeInfo volume,
+        FileMetadata file, String linkTarget) throws DatabaseException, MRCException {
         
         // FIXME: merge w/ 'stat' operation
         
-        String linkTarget = sMan.getSoftlinkTarget(file.getId());
         int mode = faMan.getPosixAccessMode(sMan, file, rq.getDetails().userId, rq.getDetails().groupIds);
         mode |= linkTarget != null ? GlobalTypes.SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_S_IFLNK.getNumber()
             : file.isDirectory() ? GlobalTypes.SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_S_IFDIR.getNumber()
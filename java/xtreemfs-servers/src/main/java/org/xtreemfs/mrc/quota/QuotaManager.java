@@ -6,8 +6,8 @@
  */
 package org.xtreemfs.mrc.quota;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.mrc.MRCException;
@@ -15,11 +15,11 @@ import org.xtreemfs.mrc.database.StorageManager;
 import org.xtreemfs.mrc.database.VolumeManager;
 
 /**
- * This class keeps track of all volume quota managers on an MRC.
+ * This class keeps track of all volume quota managers on an MRC. It is shared by all processing threads.
  */
 public class QuotaManager {
 
-    private final Map<String, VolumeQuotaManager> volQuotaManMap = new HashMap<String, VolumeQuotaManager>();
+    private final Map<String, VolumeQuotaManager> volQuotaManMap = new ConcurrentHashMap<String, VolumeQuotaManager>();
 
     /**
      * 
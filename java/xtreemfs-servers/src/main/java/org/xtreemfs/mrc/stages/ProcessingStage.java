@@ -8,9 +8,13 @@
 
 package org.xtreemfs.mrc.stages;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.xtreemfs.common.auth.AuthenticationException;
 import org.xtreemfs.common.auth.UserCredentials;
@@ -29,6 +33,7 @@ import org.xtreemfs.mrc.MRCRequestDispatcher;
 import org.xtreemfs.mrc.StatusPage;
 import org.xtreemfs.mrc.UserException;
 import org.xtreemfs.mrc.database.DatabaseException;
+import org.xtreemfs.mrc.database.StorageManager;
 import org.xtreemfs.mrc.database.DatabaseException.ExceptionType;
 import org.xtreemfs.mrc.operations.AccessOperation;
 import org.xtreemfs.mrc.operations.AddReplicaOperation;
@@ -72,11 +77,22 @@ import org.xtreemfs.mrc.operations.StatFSOperation;
 import org.xtreemfs.mrc.operations.StatOperation;
 import org.xtreemfs.mrc.operations.TruncateOperation;
 import org.xtreemfs.mrc.operations.UpdateFileSizeOperation;
+import org.xtreemfs.mrc.utils.Path;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XCap;
 import org.xtreemfs.pbrpc.generatedinterfaces.MRCServiceConstants;
 
+import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
 
 /**
+ * Parses incoming requests and executes the corresponding operations.
+ * <p>
+ * If more than one processing thread is configured, the operations are executed by {@link ProcessingThread}s: all
+ * operations that may modify a volume are executed by the thread responsible for the volume, which keeps their order.
+ * Read-only operations are distributed by their parent directory and may run concurrently with the updates. Operations
+ * which affect more than one volume as well as internal callbacks are executed by the stage itself after all processing
+ * threads became idle.
  * 
  * @author bjko
  */
@@ -86,6 +102,32 @@ public class ProcessingStage extends MRCStage {
 
     public static final int                  STAGEOP_INTERNAL_CALLBACK = 2;
 
+    /**
+     * Operations which do not modify the database and may thus be executed concurrently with updates of the same
+     * volume.
+     */
+    private static final Set<Integer>        READ_ONLY_OPERATIONS      = new HashSet<Integer>(Arrays.asList(
+                                                                               MRCServiceConstants.PROC_ID_GETATTR,
+                                                                               MRCServiceConstants.PROC_ID_GETXATTR,
+                                                                               MRCServiceConstants.PROC_ID_LISTXATTR,
+                                                                               MRCServiceConstants.PROC_ID_ACCESS,
+                                                                               MRCServiceConstants.PROC_ID_READLINK));
+
+    /**
+     * Operations which are not bound to a single volume. They are executed exclusively.
+     */
+    private static final Set<Integer>        GLOBAL_OPERATIONS         = new HashSet<Integer>(Arrays.asList(
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_SHUTDOWN,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_MKVOL,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_RMVOL,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_LSVOL,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_DUMP_DATABASE,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_RESTORE_DATABASE,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_CHECK_FILE_EXISTS,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_RESTORE_FILE,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_CHECKPOINT,
+                                                                               MRCServiceConstants.PROC_ID_XTREEMFS_INTERNAL_DEBUG));
+
     private final MRCRequestDispatcher       master;
     
     private final Map<Integer, MRCOperation> operations;
@@ -93,6 +135,21 @@ public class ProcessingStage extends MRCStage {
     private final Map<Integer, Integer>      _opCountMap;
     
     private final boolean                    statisticsEnabled         = true;
+
+    /**
+     * Threads executing the operations, or <code>null</code> if all operations are executed by the stage itself.
+     */
+    private final ProcessingThread[]         processingThreads;
+
+    /**
+     * True if an operation was passed to a processing thread since the threads were idle the last time.
+     */
+    private boolean                          processingThreadsBusy;
+
+    /**
+     * True if readdir does not update the access time of the directory and is thus a read-only operation.
+     */
+    private final boolean                    noAtime;
     
     public ProcessingStage(MRCRequestDispatcher master) {
         super("ProcSt");
@@ -107,6 +164,17 @@ public class ProcessingStage extends MRCStage {
             for (Integer i : operations.keySet())
                 _opCountMap.put(i, 0);
         }
+
+        int numThreads = master.getConfig().getProcessingThreads();
+        if (numThreads > 1) {
+            processingThreads = new ProcessingThread[numThreads];
+            for (int i = 0; i < numThreads; i++)
+                processingThreads[i] = new ProcessingThread(i, this);
+        } else {
+            processingThreads = null;
+        }
+        processingThreadsBusy = false;
+        noAtime = master.getConfig().isNoAtime();
     }
     
     public void installOperations() {
@@ -165,6 +233,52 @@ public class ProcessingStage extends MRCStage {
     public Map<Integer, Integer> get_opCountMap() {
         return _opCountMap;
     }
+
+    @Override
+    public void run() {
+        if (processingThreads != null) {
+            for (ProcessingThread th : processingThreads)
+                th.start();
+        }
+        super.run();
+    }
+
+    @Override
+    public void waitForStartup() throws Exception {
+        super.waitForStartup();
+        if (processingThreads != null) {
+            for (ProcessingThread th : processingThreads)
+                th.waitForStartup();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (processingThreads != null) {
+            for (ProcessingThread th : processingThreads)
+                th.shutdown();
+        }
+    }
+
+    @Override
+    public void waitForShutdown() throws Exception {
+        super.waitForShutdown();
+        if (processingThreads != null) {
+            for (ProcessingThread th : processingThreads)
+                th.waitForShutdown();
+        }
+    }
+
+    @Override
+    public int getQueueLength() {
+        int len = super.getQueueLength();
+        if (processingThreads != null) {
+            for (ProcessingThread th : processingThreads)
+                len += th.getQueueLength();
+        }
+        return len;
+    }
     
 //    public String getOpName(int opId) {
 //        String opName = operations.get(opId).getClass().getSimpleName();
@@ -188,6 +302,12 @@ public class ProcessingStage extends MRCStage {
     protected void processInternalRequest(StageMethod method) {
         switch (method.getStageMethod()) {
         case STAGEOP_INTERNAL_CALLBACK:
+            try {
+                waitForProcessingThreads();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
             executeInternalCallback(method);
             break;
         default:
@@ -272,8 +392,115 @@ public class ProcessingStage extends MRCStage {
             return;
         }
         
-        execute(op, method);
+        if (processingThreads == null) {
+            execute(op, method);
+            return;
+        }
+
+        // execute the operation in a processing thread, or exclusively if it is not bound to a volume
+        String partitionKey = getPartitionKey(rqHeader.getProcId(), rq.getRequestArgs());
+        if (partitionKey != null) {
+            processingThreadsBusy = true;
+            processingThreads[getThreadIndex(partitionKey)].enqueueParsedOperation(method);
+        } else {
+            try {
+                waitForProcessingThreads();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rq.setError(ErrorType.INTERNAL_SERVER_ERROR, "MRC is shutting down");
+                master.requestFinished(rq);
+                return;
+            }
+            execute(op, method);
+        }
+
+    }
+
+    /**
+     * Executes a request which has already been parsed by {@link #parseAndExecute(StageMethod)}. Called by the
+     * processing threads.
+     * 
+     * @param method
+     *            stagemethod to execute
+     */
+    void executeParsedOperation(StageMethod method) {
+        final MRCRequest rq = method.getRq();
+        execute(operations.get(rq.getRPCRequest().getHeader().getRequestHeader().getProcId()), method);
+    }
+
+    /**
+     * Returns the key which determines the processing thread of a request, or <code>null</code> if the request has
+     * to be executed exclusively. Requests which modify a volume are partitioned by the volume ID; read-only
+     * requests are partitioned by the parent directory of the path they refer to.
+     */
+    private String getPartitionKey(int procId, Message args) {
+
+        if (args == null || GLOBAL_OPERATIONS.contains(procId))
+            return null;
+
+        final Descriptor desc = args.getDescriptorForType();
+        final FieldDescriptor volumeName = desc.findFieldByName("volume_name");
+
+        boolean readOnly = READ_ONLY_OPERATIONS.contains(procId)
+            || (noAtime && procId == MRCServiceConstants.PROC_ID_READDIR);
+        if (readOnly && volumeName != null) {
+            FieldDescriptor path = desc.findFieldByName("path");
+            if (path != null) {
+                Path p = new Path((String) args.getField(volumeName), (String) args.getField(path));
+                return p.getComps(0, p.getCompCount() - 2);
+            }
+        }
+
+        // partition all other requests by the volume ID
+        if (volumeName != null && args.hasField(volumeName)) {
+            try {
+                StorageManager sMan = master.getVolumeManager().getStorageManagerByName(
+                    (String) args.getField(volumeName));
+                return sMan.getVolumeInfo().getId();
+            } catch (UserException exc) {
+                // the volume does not exist, the operation will fail anyway
+                return (String) args.getField(volumeName);
+            }
+        }
+
+        final FieldDescriptor fileId = desc.findFieldByName("file_id");
+        if (fileId != null && fileId.getType() == FieldDescriptor.Type.STRING && args.hasField(fileId))
+            return getVolumeId((String) args.getField(fileId));
+
+        for (FieldDescriptor field : desc.getFields()) {
+            if (field.getType() == FieldDescriptor.Type.MESSAGE
+                && field.getMessageType() == XCap.getDescriptor() && args.hasField(field))
+                return getVolumeId(((XCap) args.getField(field)).getFileId());
+        }
+
+        return null;
+    }
+
+    private static String getVolumeId(String globalFileId) {
+        int i = globalFileId.indexOf(':');
+        return i < 0 ? globalFileId : globalFileId.substring(0, i);
+    }
+
+    private int getThreadIndex(String partitionKey) {
+        int hash = partitionKey.hashCode();
+        if (hash == Integer.MIN_VALUE)
+            return 0;
+        return Math.abs(hash) % processingThreads.length;
+    }
+
+    /**
+     * Blocks until all operations which were passed to the processing threads have been executed.
+     */
+    private void waitForProcessingThreads() throws InterruptedException {
+        if (processingThreads == null || !processingThreadsBusy)
+            return;
+
+        CountDownLatch latch = new CountDownLatch(processingThreads.length);
+        for (ProcessingThread th : processingThreads)
+            th.enqueueBarrier(latch);
+        latch.await();
 
+        processingThreadsBusy = false;
     }
 
     /**
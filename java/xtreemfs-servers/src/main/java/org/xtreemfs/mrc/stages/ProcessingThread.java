@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.mrc.stages;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+
+/**
+ * Executes parsed MRC operations on behalf of the {@link ProcessingStage} if more than one processing thread is
+ * configured. Each thread is responsible for a partition of the volumes, so that all updates of a volume are executed
+ * in the order in which they were received.
+ */
+class ProcessingThread extends MRCStage {
+
+    public static final int       STAGEOP_EXECUTE = 1;
+
+    public static final int       STAGEOP_BARRIER = 2;
+
+    private final ProcessingStage procStage;
+
+    ProcessingThread(int id, ProcessingStage procStage) {
+        super("ProcTh" + id);
+        this.procStage = procStage;
+    }
+
+    /**
+     * Enqueues a request which has already been parsed and authenticated by the {@link ProcessingStage}.
+     */
+    void enqueueParsedOperation(StageMethod method) {
+        method.setStageMethod(STAGEOP_EXECUTE);
+        q.add(method);
+    }
+
+    /**
+     * Enqueues a barrier. "latch" is counted down as soon as all operations that were enqueued before have been
+     * executed.
+     */
+    void enqueueBarrier(CountDownLatch latch) {
+        q.add(new StageMethod(new MRCInternalRequest(new Object[] { latch }), STAGEOP_BARRIER, null));
+    }
+
+    @Override
+    protected void processMethod(StageMethod method) {
+        switch (method.getStageMethod()) {
+        case STAGEOP_EXECUTE:
+            procStage.executeParsedOperation(method);
+            break;
+        default:
+            Logging.logMessage(Logging.LEVEL_WARN, Category.stage, this, "Unknown stage operation (%d).",
+                    method.getStageMethod());
+        }
+    }
+
+    @Override
+    protected void processInternalRequest(StageMethod method) {
+        switch (method.getStageMethod()) {
+        case STAGEOP_BARRIER:
+            ((CountDownLatch) method.getInternalRequest().getArgs()[0]).countDown();
+            break;
+        default:
+            Logging.logMessage(Logging.LEVEL_WARN, Category.stage, this,
+                    "Unknown stage operation (%d) for an internal request.", method.getStageMethod());
+        }
+    }
+}
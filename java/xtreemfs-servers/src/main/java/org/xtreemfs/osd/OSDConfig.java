@@ -51,11 +51,13 @@ public class OSDConfig extends ServiceConfig {
             Parameter.GEO_COORDINATES,
             Parameter.CHECKSUM_ENABLED,
             Parameter.CHECKSUM_PROVIDER,
+            Parameter.CHECKSUM_BLOCK_SIZE,
             Parameter.ADMIN_PASSWORD,
             Parameter.WAIT_FOR_DIR,
             Parameter.UUID,
             Parameter.REPORT_FREE_SPACE,
             Parameter.STORAGE_LAYOUT,
+            Parameter.OBJECT_INDEX_ENABLED,
             Parameter.IGNORE_CAPABILITIES,
             Parameter.FLEASE_DMAX_MS,
             Parameter.FLEASE_LEASE_TIMEOUT_MS,
@@ -63,8 +65,12 @@ public class OSDConfig extends ServiceConfig {
             Parameter.FLEASE_RETRIES,
             Parameter.POLICY_DIR,
             Parameter.CAPABILITY_SECRET,
+            Parameter.CAPABILITY_SIGNATURE_ACCEPT_MD5,
             Parameter.SOCKET_SEND_BUFFER_SIZE,
             Parameter.SOCKET_RECEIVE_BUFFER_SIZE,
+            Parameter.RPC_CLIENT_SELECTOR_THREADS,
+            Parameter.RPC_CLIENT_CONNECTIONS_PER_SERVER,
+            Parameter.RPC_CLIENT_LOW_LATENCY_CONNECTION,
             Parameter.USE_SNMP,
             Parameter.SNMP_ADDRESS,
             Parameter.SNMP_PORT,
@@ -72,6 +78,7 @@ public class OSDConfig extends ServiceConfig {
             Parameter.FAILOVER_MAX_RETRIES,
             Parameter.FAILOVER_WAIT,
             Parameter.MAX_CLIENT_Q,
+            Parameter.LISTEN_SELECTOR_THREADS,
             Parameter.MAX_REQUEST_QUEUE_LENGTH,
             Parameter.VIVALDI_RECALCULATION_INTERVAL_IN_MS,
             Parameter.VIVALDI_RECALCULATION_EPSILON_IN_MS,
@@ -80,6 +87,15 @@ public class OSDConfig extends ServiceConfig {
             Parameter.VIVALDI_MAX_REQUEST_TIMEOUT_IN_MS,
             Parameter.VIVALDI_TIMER_INTERVAL_IN_MS,
             Parameter.STORAGE_THREADS,
+            Parameter.STORAGE_THREADS_OFFLOAD_READS,
+            Parameter.PREPROC_THREADS,
+            Parameter.METADATA_CACHE_SIZE,
+            Parameter.FILE_HANDLE_CACHE_SIZE,
+            Parameter.MAPPED_OBJECT_CACHE_SIZE,
+            Parameter.MAPPED_OBJECT_CACHE_MAX_OBJECT_SIZE,
+            Parameter.OBJECT_CACHE_SIZE,
+            Parameter.GROUP_COMMIT_MAX_BATCH_SIZE,
+            Parameter.GROUP_COMMIT_MAX_DELAY_MS,
             Parameter.USE_RENEWAL_SIGNAL,
             Parameter.USE_MULTIHOMING,
             Parameter.HEALTH_CHECK
@@ -162,10 +178,26 @@ public class OSDConfig extends ServiceConfig {
         return (Boolean) parameter.get(Parameter.CHECKSUM_ENABLED);
     }
 
+    public int getChecksumBlockSize() {
+        return (Integer) parameter.get(Parameter.CHECKSUM_BLOCK_SIZE);
+    }
+
+    public void setChecksumBlockSize(int checksumBlockSize) {
+        parameter.put(Parameter.CHECKSUM_BLOCK_SIZE, checksumBlockSize);
+    }
+
+    public boolean isObjectIndexEnabled() {
+        return (Boolean) parameter.get(Parameter.OBJECT_INDEX_ENABLED);
+    }
+
     public String getCapabilitySecret() {
         return (String) parameter.get(Parameter.CAPABILITY_SECRET);
     }
 
+    public boolean isCapabilityMD5SignatureAccepted() {
+        return (Boolean) parameter.get(Parameter.CAPABILITY_SIGNATURE_ACCEPT_MD5);
+    }
+
     /**
      * @return the ignoreCaps
      */
@@ -231,6 +263,18 @@ public class OSDConfig extends ServiceConfig {
         return (Integer) parameter.get(Parameter.SOCKET_RECEIVE_BUFFER_SIZE);
     }
 
+    public int getRPCClientSelectorThreads() {
+        return (Integer) parameter.get(Parameter.RPC_CLIENT_SELECTOR_THREADS);
+    }
+
+    public int getRPCClientConnectionsPerServer() {
+        return (Integer) parameter.get(Parameter.RPC_CLIENT_CONNECTIONS_PER_SERVER);
+    }
+
+    public boolean isRPCClientLowLatencyConnectionEnabled() {
+        return (Boolean) parameter.get(Parameter.RPC_CLIENT_LOW_LATENCY_CONNECTION);
+    }
+
     /**
      * Set default values according to the value in {@link Parameter} for all configuration parameter which
      * are null.
@@ -284,6 +328,46 @@ public class OSDConfig extends ServiceConfig {
     public int getStorageThreads() {
         return (Integer) parameter.get(Parameter.STORAGE_THREADS);
     }
+
+    public boolean isStorageReadOffloadingEnabled() {
+        return (Boolean) parameter.get(Parameter.STORAGE_THREADS_OFFLOAD_READS);
+    }
+
+    public int getPreprocThreads() {
+        return (Integer) parameter.get(Parameter.PREPROC_THREADS);
+    }
+    
+    public long getMetadataCacheSize() {
+        return (Long) parameter.get(Parameter.METADATA_CACHE_SIZE);
+    }
+
+    public int getFileHandleCacheSize() {
+        return (Integer) parameter.get(Parameter.FILE_HANDLE_CACHE_SIZE);
+    }
+
+    public long getMappedObjectCacheSize() {
+        return (Long) parameter.get(Parameter.MAPPED_OBJECT_CACHE_SIZE);
+    }
+
+    public void setMappedObjectCacheSize(long mappedObjectCacheSize) {
+        parameter.put(Parameter.MAPPED_OBJECT_CACHE_SIZE, mappedObjectCacheSize);
+    }
+
+    public int getMappedObjectCacheMaxObjectSize() {
+        return (Integer) parameter.get(Parameter.MAPPED_OBJECT_CACHE_MAX_OBJECT_SIZE);
+    }
+
+    public long getObjectCacheSize() {
+        return (Long) parameter.get(Parameter.OBJECT_CACHE_SIZE);
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return (Integer) parameter.get(Parameter.GROUP_COMMIT_MAX_BATCH_SIZE);
+    }
+
+    public int getGroupCommitMaxDelay() {
+        return (Integer) parameter.get(Parameter.GROUP_COMMIT_MAX_DELAY_MS);
+    }
     
     public String getHealthCheckScript() {
         return (String) parameter.get(Parameter.HEALTH_CHECK);
@@ -23,6 +23,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.xtreemfs.common.Capability;
 import org.xtreemfs.common.HeartbeatThread;
 import org.xtreemfs.common.HeartbeatThread.ServiceDataGenerator;
 import org.xtreemfs.common.ServiceAvailability;
@@ -115,6 +116,7 @@ import org.xtreemfs.osd.storage.CleanupThread;
 import org.xtreemfs.osd.storage.CleanupVersionsThread;
 import org.xtreemfs.osd.storage.HashStorageLayout;
 import org.xtreemfs.osd.storage.MetadataCache;
+import org.xtreemfs.osd.storage.ObjectCache;
 import org.xtreemfs.osd.storage.StorageLayout;
 import org.xtreemfs.osd.vivaldi.VivaldiNode;
 import org.xtreemfs.pbrpc.generatedinterfaces.DIR.DirService;
@@ -164,6 +166,10 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
 
     protected String                                    authString;
 
+    protected final MetadataCache                       metadataCache;
+
+    protected final ObjectCache                         objectCache;
+
     protected final PreprocStage                        preprocStage;
 
     protected final StorageStage                        stStage;
@@ -295,7 +301,8 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
                 .isGRIDSSLmode(), config.getSSLProtocolString(), tm1) : null;
         
         rpcServer = new RPCNIOSocketServer(config.getPort(), config.getAddress(), this, serverSSLopts,
-                config.getBindRetries(), config.getSocketReceiveBufferSize(), config.getMaxClientQ());
+                config.getBindRetries(), config.getSocketReceiveBufferSize(), config.getMaxClientQ(),
+                config.getListenSelectorThreads(), RPCNIOSocketServer.ConnectionAssignment.LEAST_CONNECTIONS);
         rpcServer.setLifeCycleListener(this);
         
         final SSLOptions clientSSLopts = config.isUsingSSL() ? new SSLOptions(config.getServiceCredsFile(),
@@ -311,11 +318,17 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
                     "outgoing server connections will be bound to '%s'", config.getAddress());
         
         rpcClient = new RPCNIOSocketClient(clientSSLopts, RPC_TIMEOUT, CONNECTION_TIMEOUT,
-                config.getSocketSendBufferSize(), config.getSocketReceiveBufferSize(), bindPoint, "OSDRequestDispatcher");
+                config.getSocketSendBufferSize(), config.getSocketReceiveBufferSize(), bindPoint, "OSDRequestDispatcher",
+                false, config.getRPCClientSelectorThreads());
+        rpcClient.setConnectionsPerServer(config.getRPCClientConnectionsPerServer(),
+                config.isRPCClientLowLatencyConnectionEnabled());
         rpcClient.setLifeCycleListener(this);
         
         // replication uses its own RPCClient with a much higher timeout
-        rpcClientForReplication = new RPCNIOSocketClient(clientSSLopts, 30000, 5 * 60 * 1000, "OSDRequestDispatcher (for replication)");
+        rpcClientForReplication = new RPCNIOSocketClient(clientSSLopts, 30000, 5 * 60 * 1000, -1, -1, null,
+                "OSDRequestDispatcher (for replication)", false, config.getRPCClientSelectorThreads());
+        rpcClientForReplication.setConnectionsPerServer(config.getRPCClientConnectionsPerServer(),
+                config.isRPCClientLowLatencyConnectionEnabled());
         rpcClientForReplication.setLifeCycleListener(this);
         
         // initialize ServiceAvailability
@@ -325,7 +338,8 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
         // initialize internal stages
         // --------------------------
         
-        MetadataCache metadataCache = new MetadataCache();
+        metadataCache = new MetadataCache(config.getMetadataCacheSize());
+        objectCache = new ObjectCache(config.getObjectCacheSize(), config.getStorageThreads());
         StorageLayout storageLayout = null;
         if (config.getStorageLayout().equalsIgnoreCase(HashStorageLayout.class.getSimpleName())) {
             storageLayout = new HashStorageLayout(config, metadataCache);
@@ -372,6 +386,7 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
         osdClientForReplication = new OSDServiceClient(rpcClientForReplication, null);
 
         TimeSync.initialize(dirClient, config.getRemoteTimeSync(), config.getLocalClockRenew());
+        Capability.setMD5SignaturesAccepted(config.isCapabilityMD5SignatureAccepted());
         UUIDResolver.start(dirClient, 10 * 1000, 600 * 1000);
         UUIDResolver.addLocalMapping(config.getUUID(), config.getPort(), Schemes.getScheme(config
                 .isUsingSSL(), config.isGRIDSSLmode()));
@@ -644,6 +659,7 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
             tracingStage.waitForShutdown();
             cThread.waitForShutdown();
             cvThread.waitForShutdown();
+            objectCache.clear();
 
             if (statusServer != null) {
                 statusServer.shutdown();
@@ -964,6 +980,14 @@ public class OSDRequestDispatcher implements RPCServerRequestListener, LifeCycle
         return preprocStage;
     }
 
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
     public ReplicationStage getReplicationStage() {
         return replStage;
     }
@@ -49,8 +49,11 @@ class StatusPage extends StatusServerModule {
             PARSERQ("<!-- $PARSERQ -->"),
             AUTHQ("<!-- $AUTHQ -->"),
             STORAGEQ("<!-- $STORAGEQ -->"),
+            STORAGETHRQ("<!-- $STORAGETHRQ -->"),
             DELETIONQ("<!-- $DELETIONQ -->"),
             OPENFILES("<!-- $OPENFILES -->"),
+            MDCACHE("<!-- $MDCACHE -->"),
+            OBJCACHE("<!-- $OBJCACHE -->"),
             OBJWRITE("<!-- $OBJWRITE -->"),
             OBJREAD("<!-- $OBJREAD -->"),
             BYTETX("<!-- $BYTETX -->"),
@@ -157,16 +160,25 @@ class StatusPage extends StatusServerModule {
                 Long.toString(myDispatcher.getPendingRequests()));
         values.put(
                 Vars.PARSERQ,
-                Integer.toString(myDispatcher.getPreprocStage().getQueueLength()));
+                getPreprocStageStatus());
         values.put(
                 Vars.STORAGEQ,
                 Integer.toString(myDispatcher.getStorageStage().getQueueLength()));
+        values.put(
+                Vars.STORAGETHRQ,
+                getStorageThreadStatus());
         values.put(
                 Vars.DELETIONQ,
                 Integer.toString(myDispatcher.getDeletionStage().getQueueLength()));
         values.put(
                 Vars.OPENFILES,
                 Integer.toString(myDispatcher.getPreprocStage().getNumOpenFiles()));
+        values.put(
+                Vars.MDCACHE,
+                myDispatcher.getMetadataCache().getStatus());
+        values.put(
+                Vars.OBJCACHE,
+                myDispatcher.getObjectCache().getStatus());
         values.put(
                 Vars.OBJWRITE,
                 Long.toString(myDispatcher.getObjectsReceived()));
@@ -266,4 +278,27 @@ class StatusPage extends StatusServerModule {
         sendResponse(httpExchange, html);
     }
 
+    private String getPreprocStageStatus() {
+        int[] lengths = myDispatcher.getPreprocStage().getQueueLengths();
+        String status = Integer.toString(myDispatcher.getPreprocStage().getQueueLength());
+        if (lengths.length == 1)
+            return status;
+
+        StringBuilder sb = new StringBuilder(status).append(" (");
+        for (int i = 0; i < lengths.length; i++)
+            sb.append(i > 0 ? ", " : "").append(lengths[i]);
+        return sb.append(")").toString();
+    }
+
+    private String getStorageThreadStatus() {
+        StringBuilder sb = new StringBuilder();
+        for (int len : myDispatcher.getStorageStage().getQueueLengths()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(len);
+        }
+        sb.append(" (offloaded reads: ").append(myDispatcher.getStorageStage().getNumOffloadedReads()).append(")");
+        return sb.toString();
+    }
+
 }
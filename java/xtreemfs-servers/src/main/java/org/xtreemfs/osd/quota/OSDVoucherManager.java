@@ -7,9 +7,9 @@
 package org.xtreemfs.osd.quota;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xtreemfs.common.quota.QuotaConstants;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.ErrorType;
@@ -21,12 +21,13 @@ import org.xtreemfs.osd.storage.StorageLayout;
 /**
  * This class handles all given vouchers on the OSD by managing a responsible manager per file.
  * 
- * All requests are splitted among the StorageThreads by fileId, so that concurrent access on a single file is not
- * possible. Therefore, this class doesn't have to be thread-safe.
+ * All requests are splitted among the StorageThreads and PreprocThreads by fileId, so that concurrent access on a
+ * single file by threads of the same stage is not possible. The map of file managers is accessed by several threads,
+ * though, and is thus a concurrent one.
  */
 public class OSDVoucherManager {
 
-    private final Map<String, FileVoucherManager> fileVoucherManagerMap = new HashMap<String, FileVoucherManager>();
+    private final Map<String, FileVoucherManager> fileVoucherManagerMap = new ConcurrentHashMap<String, FileVoucherManager>();
     private final StorageLayout                   storageLayout;
 
     /**
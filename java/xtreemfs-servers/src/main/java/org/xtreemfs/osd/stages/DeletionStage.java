@@ -9,7 +9,6 @@
 package org.xtreemfs.osd.stages;
 
 import java.io.IOException;
-import java.util.Map.Entry;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.xtreemfs.foundation.logging.Logging;
@@ -19,6 +18,7 @@ import org.xtreemfs.osd.OSDRequest;
 import org.xtreemfs.osd.OSDRequestDispatcher;
 import org.xtreemfs.osd.storage.FileMetadata;
 import org.xtreemfs.osd.storage.MetadataCache;
+import org.xtreemfs.osd.storage.ObjectCache;
 import org.xtreemfs.osd.storage.StorageLayout;
 
 public class DeletionStage extends Stage {
@@ -43,7 +43,7 @@ public class DeletionStage extends Stage {
         this.cache = cache;
         this.layout = layout;
         
-        deletor = new DeleteThread(layout);
+        deletor = new DeleteThread(layout, master.getObjectCache());
     }
     
     public void start() {
@@ -125,11 +125,14 @@ public class DeletionStage extends Stage {
         
         private final StorageLayout                 layout;
         
+        private final ObjectCache                   objectCache;
+        
         private final LinkedBlockingQueue<Object[]> files;
         
-        public DeleteThread(StorageLayout layout) {
+        public DeleteThread(StorageLayout layout, ObjectCache objectCache) {
             quit = false;
             this.layout = layout;
+            this.objectCache = objectCache;
             files = new LinkedBlockingQueue<Object[]>();
         }
         
@@ -162,6 +165,8 @@ public class DeletionStage extends Stage {
                             Logging.logMessage(Logging.LEVEL_DEBUG, Category.proc, this,
                                 "deleting objects for %s", fileId);
                         
+                        objectCache.invalidateFile(fileId);
+                        
                         // if copy-on-write is enabled ...
                         if (cow) {
                             
@@ -184,9 +189,8 @@ public class DeletionStage extends Stage {
                             // file and are not part of former file versions
                             else {
                                 
-                                for (Entry<Long, Long> entry : fi.getLatestObjectVersions()) {
-                                    long objNo = entry.getKey();
-                                    long objVer = entry.getValue();
+                                for (long objNo : fi.getLatestObjectNumbers()) {
+                                    long objVer = fi.getLatestObjectVersion(objNo);
                                     if (!fi.getVersionTable().isContained(objNo, objVer))
                                         layout.deleteObject(fileId, fi, objNo, objVer);
                                 }
@@ -8,18 +8,6 @@
 
 package org.xtreemfs.osd.stages;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import org.xtreemfs.common.Capability;
-import org.xtreemfs.common.ReplicaUpdatePolicies;
-import org.xtreemfs.common.xloc.InvalidXLocationsException;
-import org.xtreemfs.common.xloc.XLocations;
-import org.xtreemfs.foundation.LRUCache;
-import org.xtreemfs.foundation.TimeSync;
 import org.xtreemfs.foundation.buffer.ASCIIString;
 import org.xtreemfs.foundation.logging.Logging;
 import org.xtreemfs.foundation.logging.Logging.Category;
@@ -31,7 +19,6 @@ import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.RPCHeader.ErrorResp
 import org.xtreemfs.foundation.pbrpc.utils.ErrorUtils;
 import org.xtreemfs.foundation.pbrpc.utils.ReusableBufferInputStream;
 import org.xtreemfs.foundation.util.OutputUtils;
-import org.xtreemfs.osd.AdvisoryLock;
 import org.xtreemfs.osd.OSDRequest;
 import org.xtreemfs.osd.OSDRequestDispatcher;
 import org.xtreemfs.osd.OpenFileTable;
@@ -39,23 +26,25 @@ import org.xtreemfs.osd.OpenFileTable.OpenFileTableEntry;
 import org.xtreemfs.osd.operations.EventCloseFile;
 import org.xtreemfs.osd.operations.EventCreateFileVersion;
 import org.xtreemfs.osd.operations.OSDOperation;
-import org.xtreemfs.osd.quota.OSDVoucherManager;
-import org.xtreemfs.osd.quota.VoucherErrorException;
 import org.xtreemfs.osd.rwre.ReplicaUpdatePolicy;
-import org.xtreemfs.osd.storage.CowPolicy;
-import org.xtreemfs.osd.storage.CowPolicy.cowMode;
 import org.xtreemfs.osd.storage.MetadataCache;
 import org.xtreemfs.osd.storage.StorageLayout;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.FileCredentials;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.LeaseState;
-import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SYSTEM_V_FCNTL;
-import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SnapConfig;
 import org.xtreemfs.pbrpc.generatedinterfaces.OSD.Lock;
-import org.xtreemfs.pbrpc.generatedinterfaces.OSD.XLocSetVersionState;
 import org.xtreemfs.pbrpc.generatedinterfaces.OSDServiceConstants;
 
 import com.google.protobuf.Message;
 
+/**
+ * Parses incoming requests, authenticates them and keeps track of open files.
+ * <p>
+ * All operations that refer to a file are executed by the {@link PreprocThread} responsible for the file, which is
+ * determined by the hash of the file ID. Each thread owns the open files, capabilities and locks of its files and
+ * closes them when they expire. If more than one thread is configured, requests are parsed by the stage itself in the
+ * order of their arrival before they are passed to the responsible thread, so that the requests of a file keep their
+ * order.
+ */
 public class PreprocStage extends Stage {
     
     public final static int                                 STAGEOP_PARSE_AUTH_OFTOPEN = 1;
@@ -82,54 +71,37 @@ public class PreprocStage extends Stage {
 
     public final static int                                 STAGEOP_UPDATE_XLOC        = 17;
 
-    private final static long                               OFT_CLEAN_INTERVAL         = 1000 * 60;
-    
-    private final static long                               OFT_OPEN_EXTENSION         = 1000 * 30;
-    
-    private final Map<String, LRUCache<String, Capability>> capCache;
-    
-    private final OpenFileTable                             oft;
-    
-    // time left to next clean op
-    private long                                            timeToNextOFTclean;
-    
-    // last check of the OFT
-    private long                                            lastOFTcheck;
-    
-    private volatile long                                   numRequests;
-    
     /**
-     * X-Location cache
+     * Authenticates a request that has already been parsed by the stage and opens the file.
      */
-    private final LRUCache<String, XLocations>              xLocCache;
-    
-    private final MetadataCache                             metadataCache;
-    
-    private final StorageLayout                             layout;
+    public final static int                                 STAGEOP_AUTH_OFTOPEN       = 18;
+
+    private final PreprocThread[]                           preprocThreads;
 
     private final OSDRequestDispatcher                      master;
     
-    private final boolean                                   ignoreCaps;
-    
-    private static final int                                MAX_CAP_CACHE              = 20;
-    
     /** Creates a new instance of AuthenticationStage */
     public PreprocStage(OSDRequestDispatcher master, MetadataCache metadataCache, StorageLayout layout,
             int maxRequestsQueueLength) {
         
         super("OSD PreProcSt", maxRequestsQueueLength);
         
-        capCache = new HashMap();
-        oft = new OpenFileTable();
-        xLocCache = new LRUCache<String, XLocations>(10000);
         this.master = master;
-        this.metadataCache = metadataCache;
-        this.layout = layout;
-        this.ignoreCaps = master.getConfig().isIgnoreCaps();
+
+        int numThreads = Math.max(1, master.getConfig().getPreprocThreads());
+        preprocThreads = new PreprocThread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            preprocThreads[i] = new PreprocThread(i, this, master, metadataCache, layout, maxRequestsQueueLength);
+            preprocThreads[i].setLifeCycleListener(master);
+        }
     }
     
     public void prepareRequest(OSDRequest request, ParseCompleteCallback listener) {
-        this.enqueueOperation(STAGEOP_PARSE_AUTH_OFTOPEN, new Object[] { request }, null, listener);
+        // with a single thread, the request is parsed by the thread itself
+        if (preprocThreads.length == 1)
+            preprocThreads[0].enqueueOperation(STAGEOP_PARSE_AUTH_OFTOPEN, new Object[] { request }, null, listener);
+        else
+            this.enqueueOperation(STAGEOP_PARSE_AUTH_OFTOPEN, new Object[] { request }, null, listener);
     }
     
     public static interface ParseCompleteCallback {
@@ -137,129 +109,24 @@ public class PreprocStage extends Stage {
         public void parseComplete(OSDRequest result, ErrorResponse error);
     }
     
-    private void doPrepareRequest(StageRequest rq) {
+    private void doParseRequest(StageRequest rq) {
         final OSDRequest request = (OSDRequest) rq.getArgs()[0];
-        final ParseCompleteCallback callback = (ParseCompleteCallback) rq.getCallback();
-        
-        numRequests++;
         
         if (parseRequest(request) == false)
             return;
         
-        if (request.getOperation().requiresCapability()) {
-            
-            if (Logging.isDebug())
-                Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this, "STAGEOP AUTH");
-            ErrorResponse err = processAuthenticate(request);
-            if (err != null) {
-                callback.parseComplete(request, err);
-                if (Logging.isDebug()) {
-                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.net, this,
-                        "authentication of request failed: %s", ErrorUtils.formatError(err));
-                }
-                return;
-            }
-        }
-        
-        // Check if the request is from the same view (same XLocationSet version) and install newer one.
-        if (!request.getOperation().bypassViewValidation() && request.getLocationList() != null) {
-            if (Logging.isDebug())
-                Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this, "STAGEOP VIEW");
-            ErrorResponse error = processValidateView(request);
-            if (error != null) {
-                callback.parseComplete(request, error);
-                if (Logging.isDebug()) {
-                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.misc, this,
-                            "request failed with an invalid view: %s", ErrorUtils.formatError(error));
-                }
-                return;
-            }
-        }
-
-        String fileId = request.getFileId();
-        if (fileId != null) {
-            
-            if (Logging.isDebug())
-                Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this, "STAGEOP OPEN");
-            
-            boolean writeAccess = request.getCapability() != null
-                    && ((SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR.getNumber()
-                            | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_TRUNC.getNumber() | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_WRONLY
-                                .getNumber()) & request.getCapability().getAccessMode()) > 0;
-
-            // configure quota, if valid
-            if (writeAccess) {
-                OSDVoucherManager osdVoucherManager = master.getOsdVoucherManager();
-                Capability capability = request.getCapability();
-                try {
-                    osdVoucherManager.registerFileVoucher(fileId, capability.getClientIdentity(),
-                            capability.getExpireMs(), capability.getVoucherSize());
-                } catch (VoucherErrorException ex) {
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
-                                "Failed to process doPrepareRequest() request due to the following VoucherErrorException:");
-                        Logging.logError(Logging.LEVEL_DEBUG, this, ex);
-                    }
-
-                    callback.parseComplete(request, ErrorUtils.getErrorResponse(ErrorType.ERRNO,
-                            POSIXErrno.POSIX_ERROR_EACCES, ex.toString(), ex));
-                    return;
-                } catch (IOException ex) {
-                    if (Logging.isDebug()) {
-                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
-                                "Failed to process doPrepareRequest() request due to the following IOException:");
-                    }
-                    Logging.logError(Logging.LEVEL_ERROR, this, ex);
-
-                    callback.parseComplete(request, ErrorUtils.getErrorResponse(ErrorType.IO_ERROR,
-                            POSIXErrno.POSIX_ERROR_EIO, ex.toString(), ex));
-                }
-            }
-
-            CowPolicy cowPolicy = CowPolicy.PolicyNoCow;
-
-            // check if snasphots are enabled and a write operation is executed;
-            // this is required to create new snapshots when files open for
-            // writing are closed, even if the same files are still open for
-            // reading
-            boolean snapShotWrite = writeAccess
-                    && request.getCapability().getSnapConfig() != SnapConfig.SNAP_CONFIG_SNAPS_DISABLED;
-
-            if (oft.contains(fileId)) {
-                cowPolicy = oft.refresh(fileId, TimeSync.getLocalSystemTime() + OFT_OPEN_EXTENSION, snapShotWrite);
-            } else {
-
-                // find out which COW mode to use, depending on the capability
-                if (request.getCapability() == null
-                        || request.getCapability().getSnapConfig() == SnapConfig.SNAP_CONFIG_SNAPS_DISABLED)
-                    cowPolicy = CowPolicy.PolicyNoCow;
-                else
-                    cowPolicy = new CowPolicy(cowMode.COW_ONCE);
-
-                oft.openFile(fileId, TimeSync.getLocalSystemTime() + OFT_OPEN_EXTENSION, cowPolicy, snapShotWrite);
-                request.setFileOpen(true);
-            }
-            request.setCowPolicy(cowPolicy);
-        }
-
-        callback.parseComplete(request, null);
+        // requests that do not refer to a file are neither authenticated nor
+        // opened, but still passed to a thread to count them
+        getPreprocThread(request.getFileId()).enqueueOperation(STAGEOP_AUTH_OFTOPEN, rq.getArgs(), null,
+            rq.getCallback());
     }
     
     public void pingFile(String fileId) {
-        this.enqueueOperation(STAGEOP_PING_FILE, new Object[] { fileId }, null, null);
-    }
-    
-    private void doPingFile(StageRequest m) {
-        
-        final String fileId = (String) m.getArgs()[0];
-        
-        // TODO: check if the file was opened for writing
-        oft.refresh(fileId, TimeSync.getLocalSystemTime() + OFT_OPEN_EXTENSION, false);
-        
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_PING_FILE, new Object[] { fileId }, null, null);
     }
     
     public void checkDeleteOnClose(String fileId, DeleteOnCloseCallback listener) {
-        this.enqueueOperation(STAGEOP_OFT_DELETE, new Object[] { fileId }, null, listener);
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_OFT_DELETE, new Object[] { fileId }, null, listener);
     }
     
     public static interface DeleteOnCloseCallback {
@@ -267,18 +134,6 @@ public class PreprocStage extends Stage {
         public void deleteOnCloseResult(boolean isDeleteOnClose, ErrorResponse error);
     }
     
-    private void doCheckDeleteOnClose(StageRequest m) {
-        
-        final String fileId = (String) m.getArgs()[0];
-        final DeleteOnCloseCallback callback = (DeleteOnCloseCallback) m.getCallback();
-        
-        final boolean deleteOnClose = oft.contains(fileId);
-        if (deleteOnClose)
-            oft.setDeleteOnClose(fileId);
-        
-        callback.deleteOnCloseResult(deleteOnClose, null);
-    }
-    
     public static interface LockOperationCompleteCallback {
         
         public void parseComplete(Lock result, ErrorResponse error);
@@ -286,94 +141,20 @@ public class PreprocStage extends Stage {
     
     public void acquireLock(String clientUuid, int pid, String fileId, long offset, long length,
         boolean exclusive, OSDRequest request, LockOperationCompleteCallback listener) {
-        this.enqueueOperation(STAGEOP_ACQUIRE_LOCK, new Object[] { clientUuid, pid, fileId, offset, length,
-            exclusive }, request, listener);
-    }
-    
-    public void doAcquireLock(StageRequest m) {
-        final LockOperationCompleteCallback callback = (LockOperationCompleteCallback) m.getCallback();
-        try {
-            final String clientUuid = (String) m.getArgs()[0];
-            final Integer pid = (Integer) m.getArgs()[1];
-            final String fileId = (String) m.getArgs()[2];
-            final Long offset = (Long) m.getArgs()[3];
-            final Long length = (Long) m.getArgs()[4];
-            final Boolean exclusive = (Boolean) m.getArgs()[5];
-            
-            OpenFileTableEntry e = oft.getEntry(fileId);
-            if (e == null) {
-                callback.parseComplete(null, ErrorUtils.getErrorResponse(ErrorType.INTERNAL_SERVER_ERROR, POSIXErrno.POSIX_ERROR_EIO, "no entry in OFT, programmatic error"));
-                return;
-            }
-            
-            AdvisoryLock l = e.acquireLock(clientUuid, pid, offset, length, exclusive);
-            if (l != null) {
-                Lock lock = Lock.newBuilder().setClientPid(l.getClientPid()).setClientUuid(l.getClientUuid()).setLength(l.getLength()).setOffset(l.getOffset()).setExclusive(l.isExclusive()).build();
-                callback.parseComplete(lock, null);
-            }
-            else
-                callback.parseComplete(null, ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EAGAIN, "conflicting lock"));
-            
-        } catch (Exception ex) {
-            callback.parseComplete(null, ErrorUtils.getInternalServerError(ex));
-        }
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_ACQUIRE_LOCK, new Object[] { clientUuid, pid, fileId,
+            offset, length, exclusive }, request, listener);
     }
     
     public void checkLock(String clientUuid, int pid, String fileId, long offset, long length,
         boolean exclusive, OSDRequest request, LockOperationCompleteCallback listener) {
-        this.enqueueOperation(STAGEOP_CHECK_LOCK, new Object[] { clientUuid, pid, fileId, offset, length,
-            exclusive }, request, listener);
-    }
-    
-    public void doCheckLock(StageRequest m) {
-        final LockOperationCompleteCallback callback = (LockOperationCompleteCallback) m.getCallback();
-        try {
-            final String clientUuid = (String) m.getArgs()[0];
-            final Integer pid = (Integer) m.getArgs()[1];
-            final String fileId = (String) m.getArgs()[2];
-            final Long offset = (Long) m.getArgs()[3];
-            final Long length = (Long) m.getArgs()[4];
-            final Boolean exclusive = (Boolean) m.getArgs()[5];
-            
-            OpenFileTableEntry e = oft.getEntry(fileId);
-            if (e == null) {
-                callback.parseComplete(null, ErrorUtils.getErrorResponse(ErrorType.INTERNAL_SERVER_ERROR, POSIXErrno.POSIX_ERROR_EIO, "no entry in OFT, programmatic error"));
-                return;
-            }
-            
-            AdvisoryLock l = e.checkLock(clientUuid, pid, offset, length, exclusive);
-            Lock lock = Lock.newBuilder().setClientPid(l.getClientPid()).setClientUuid(l.getClientUuid()).setLength(l.getLength()).setOffset(l.getOffset()).setExclusive(l.isExclusive()).build();
-            callback.parseComplete(lock, null);
-            
-        } catch (Exception ex) {
-            callback.parseComplete(null, ErrorUtils.getInternalServerError(ex));
-        }
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_CHECK_LOCK, new Object[] { clientUuid, pid, fileId,
+            offset, length, exclusive }, request, listener);
     }
     
     public void unlock(String clientUuid, int pid, String fileId, OSDRequest request,
         LockOperationCompleteCallback listener) {
-        this.enqueueOperation(STAGEOP_UNLOCK, new Object[] { clientUuid, pid, fileId }, request, listener);
-    }
-    
-    public void doUnlock(StageRequest m) {
-        final LockOperationCompleteCallback callback = (LockOperationCompleteCallback) m.getCallback();
-        try {
-            final String clientUuid = (String) m.getArgs()[0];
-            final Integer pid = (Integer) m.getArgs()[1];
-            final String fileId = (String) m.getArgs()[2];
-            
-            OpenFileTableEntry e = oft.getEntry(fileId);
-            if (e == null) {
-                callback.parseComplete(null, ErrorUtils.getErrorResponse(ErrorType.INTERNAL_SERVER_ERROR, POSIXErrno.POSIX_ERROR_EIO, "no entry in OFT, programmatic error"));
-                return;
-            }
-            
-            e.unlock(clientUuid, pid);
-            callback.parseComplete(null, null);
-            
-        } catch (Exception ex) {
-            callback.parseComplete(null, ErrorUtils.getInternalServerError(ex));
-        }
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_UNLOCK, new Object[] { clientUuid, pid, fileId },
+            request, listener);
     }
     
     /**
@@ -386,118 +167,63 @@ public class PreprocStage extends Stage {
      * @param listener
      */
     public void close(String fileId, CloseCallback listener) {
-        this.enqueueOperation(STAGEOP_CLOSE_FILE, new Object[] { fileId }, null, listener);
+        getPreprocThread(fileId).enqueueOperation(STAGEOP_CLOSE_FILE, new Object[] { fileId }, null, listener);
     }
 
     public static interface CloseCallback {
         public void closeResult( OpenFileTableEntry entry, ErrorResponse error);
     }
 
-    private void doClose(StageRequest m) {
-
-        final String fileId = (String) m.getArgs()[0];
-        final CloseCallback callback = (CloseCallback) m.getCallback();
+    /**
+     * Process a viewIdChangeEvent from flease and update the persistent version/state
+     */
+    public void updateXLocSetFromFlease(ASCIIString cellId, int version) {
+        getPreprocThread(ReplicaUpdatePolicy.cellToFileId(cellId)).enqueueOperation(STAGEOP_UPDATE_XLOC,
+            new Object[] { cellId, version }, null, null);
+    }
 
-        OpenFileTableEntry entry = oft.close(fileId);
+    /**
+     * Invalidate the current XLocSet. The replica will not respond to read/write/truncate or flease operations until a
+     * new XLocSet is installed.<br>
+     * If the request is based on a newer XLocSet, the local XLocSet version will be updated. If the request is from an
+     * older one, an error is returned.
+     */
+    public void invalidateXLocSet(OSDRequest request, FileCredentials fileCreds, boolean validateView,
+            InvalidateXLocSetCallback listener) {
+        getPreprocThread(request.getFileId()).enqueueOperation(STAGEOP_INVALIDATE_XLOC,
+            new Object[] { fileCreds, validateView }, request, listener);
+    }
 
-        if(entry != null && entry.getFileId() != null) {
-            LRUCache<String, Capability> cachedCaps = capCache.remove(entry.getFileId());
-            callback.closeResult(entry, null);
-        }
+    public static interface InvalidateXLocSetCallback {
+        public void invalidateComplete(LeaseState leaseState, ErrorResponse error);
     }
 
     @Override
     public void run() {
-        
-        notifyStarted();
-        
-        // interval to check the OFT
-        
-        timeToNextOFTclean = OFT_CLEAN_INTERVAL;
-        lastOFTcheck = TimeSync.getLocalSystemTime();
-        
-        while (!quit) {
-            try {
-                final StageRequest op = q.poll(timeToNextOFTclean, TimeUnit.MILLISECONDS);
-                
-                checkOpenFileTable(false);
-                
-                if (op == null) {
-                    // Logging.logMessage(Logging.LEVEL_DEBUG,this,"no request
-                    // -- timer only");
-                    continue;
-                }
-                
-                processMethod(op);
-                
-            } catch (InterruptedException ex) {
-                break;
-            } catch (Throwable ex) {
-                notifyCrashed(ex);
-                break;
-            }
-        }
-        
-        notifyStopped();
+        for (PreprocThread th : preprocThreads)
+            th.start();
+        super.run();
     }
-    
-    /**
-     * Removes all open files from the {@link OpenFileTable} whose time has expired and triggers for each file
-     * the internal event {@link EventCloseFile} or {@link EventCreateFileVersion}.
-     * 
-     * @param force
-     *            If true, force the cleaning and do not respect the cleaning interval.
-     */
-    private void checkOpenFileTable(boolean force) {
-        final long tPassed = TimeSync.getLocalSystemTime() - lastOFTcheck;
-        timeToNextOFTclean = timeToNextOFTclean - tPassed;
-        // Logging.logMessage(Logging.LEVEL_DEBUG,this,"time to next OFT:
-        // "+timeToNextOFTclean);
-        if (force || timeToNextOFTclean <= 0) {
-            
-            if (Logging.isDebug())
-                Logging.logMessage(Logging.LEVEL_DEBUG, Category.proc, this, "OpenFileTable clean");
-            
-            long currentTime = TimeSync.getLocalSystemTime();
-            
-            // do OFT clean
-            List<OpenFileTableEntry> closedFiles = oft.clean(currentTime);
-            // Logging.logMessage(Logging.LEVEL_DEBUG,this,"closing
-            // "+closedFiles.size()+" files");
-            for (OpenFileTableEntry entry : closedFiles) {
-                
-                if (Logging.isDebug())
-                    Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this,
-                        "send internal close event for %s, deleteOnClose=%b", entry.getFileId(), entry
-                                .isDeleteOnClose());
-                
-                // Remove the cached capabilities.
-                capCache.remove(entry.getFileId());
-                
-                // Send close event (creates a new file version if necessary).
-                OSDOperation closeEvent = master.getInternalEvent(EventCloseFile.class);
-                closeEvent.startInternalEvent(new Object[] { entry.getFileId(), entry.isDeleteOnClose(),
-                        entry.getCowPolicy().cowEnabled(), entry.isWrite() });
-                  
-            }
-            
-            
-            // Check if written files need to be versioned (copied on write). If the file has been already closed it
-            // unnecessary to create another version because EventCloseFile already did.
-            List<OpenFileTableEntry> closedWrittenFiles = oft.cleanWritten(currentTime);
-            for (OpenFileTableEntry entry : closedWrittenFiles) {
-                if (!entry.isClosed() && entry.isWrite()) {
-                    entry.clearWrite();
 
-                    OSDOperation createVersionEvent = master.getInternalEvent(EventCreateFileVersion.class);
-                    createVersionEvent.startInternalEvent(new Object[] { entry.getFileId(),
-                            metadataCache.getFileInfo(entry.getFileId()) });
-                }
-            }
+    @Override
+    public void waitForStartup() throws Exception {
+        super.waitForStartup();
+        for (PreprocThread th : preprocThreads)
+            th.waitForStartup();
+    }
 
-            timeToNextOFTclean = OFT_CLEAN_INTERVAL;
-        }
-        lastOFTcheck = TimeSync.getLocalSystemTime();
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        for (PreprocThread th : preprocThreads)
+            th.shutdown();
+    }
+
+    @Override
+    public void waitForShutdown() throws Exception {
+        super.waitForShutdown();
+        for (PreprocThread th : preprocThreads)
+            th.waitForShutdown();
     }
     
     @Override
@@ -507,31 +233,7 @@ public class PreprocStage extends Stage {
         
         switch (requestedMethod) {
         case STAGEOP_PARSE_AUTH_OFTOPEN:
-            doPrepareRequest(m);
-            break;
-        case STAGEOP_OFT_DELETE:
-            doCheckDeleteOnClose(m);
-            break;
-        case STAGEOP_ACQUIRE_LOCK:
-            doAcquireLock(m);
-            break;
-        case STAGEOP_CHECK_LOCK:
-            doCheckLock(m);
-            break;
-        case STAGEOP_UNLOCK:
-            doUnlock(m);
-            break;
-        case STAGEOP_PING_FILE:
-            doPingFile(m);
-            break;
-        case STAGEOP_CLOSE_FILE:
-            doClose(m);
-            break;
-        case STAGEOP_INVALIDATE_XLOC:
-            doInvalidateXLocSet(m);
-            break;
-        case STAGEOP_UPDATE_XLOC:
-            doUpdateXLocSetFromFlease(m);
+            doParseRequest(m);
             break;
         default:
             Logging.logMessage(Logging.LEVEL_ERROR, this, "unknown stageop called: %d", requestedMethod);
@@ -540,7 +242,13 @@ public class PreprocStage extends Stage {
         
     }
     
-    private boolean parseRequest(OSDRequest rq) {
+    /**
+     * Parses the RPC message of a request and determines the operation. Called by the stage or, if there is only one
+     * preprocessing thread, by the thread.
+     * 
+     * @return <code>false</code>, if an error has been sent to the client
+     */
+    boolean parseRequest(OSDRequest rq) {
 
         RPCHeader hdr = rq.getRpcRequest().getHeader();
 
@@ -617,270 +325,44 @@ public class PreprocStage extends Stage {
         return true;
     }
     
-    private ErrorResponse processAuthenticate(OSDRequest rq) {
-        
-        final Capability rqCap = rq.getCapability();
-        
-        if (Logging.isDebug()) {
-            Logging.logMessage(Logging.LEVEL_DEBUG, this, "capability: %s", rqCap.getXCap().toString().replace('\n', '/'));
-        }
-        
-        // check if the capability has valid arguments
-        if (rqCap.getFileId().length() == 0) {
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EINVAL, "invalid capability. file_id must not be empty");
-        }
-        
-        if (rqCap.getEpochNo() < 0) {
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EINVAL, "invalid capability. epoch must not be < 0");
-        }
-        
-        if (ignoreCaps)
-            return null;
+    private PreprocThread getPreprocThread(String fileId) {
+        if (fileId == null || preprocThreads.length == 1)
+            return preprocThreads[0];
         
-        // check if the capability is valid
-        boolean isValid = false;
-        // look in capCache
-        LRUCache<String, Capability> cachedCaps = capCache.get(rqCap.getFileId());
-        if (cachedCaps != null) {
-            final Capability cap = cachedCaps.get(rqCap.getSignature());
-            if (cap != null) {
-                if (Logging.isDebug()) {
-                    Logging.logMessage(Logging.LEVEL_DEBUG, this, "using cached cap: %s %s", cap.getFileId(),
-                        cap.getSignature());
-                }
-                isValid = !cap.hasExpired();
-            }
-        }
-                
-        if (!isValid) {
-            isValid = rqCap.isValid();
-            if (isValid) {
-                // add to cache
-                if (cachedCaps == null) {
-                    cachedCaps = new LRUCache<String, Capability>(MAX_CAP_CACHE);
-                    capCache.put(rqCap.getFileId(), cachedCaps);
-                }
-                cachedCaps.put(rqCap.getSignature(), rqCap);
-            }
-        }
-        
-        // depending on the result the event listener is sent
-        if (!isValid) {
-            if (rqCap.hasExpired())
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES, "capability is not valid (timed out)");
-
-            if (!rqCap.hasValidSignature())
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES, "capability is not valid (invalid signature)");
-
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES, "capability is not valid (unknown cause)");
-        }
-        
-        // check if the capability was issued for the requested file
-        if (!rqCap.getFileId().equals(rq.getFileId())) {
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES, "capability was issued for another file than the one requested");
-        }
-        
-        // check if the capability provides sufficient access rights for requested operation
-        if (rq.getOperation().getProcedureId() == OSDServiceConstants.PROC_ID_READ) {
-            
-            if ((rqCap.getAccessMode() & (SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_WRONLY.getNumber())) != 0)
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES,
-                        "capability does not allow read access to file " + rqCap.getFileId());
-            
-        } else if (rq.getOperation().getProcedureId() == OSDServiceConstants.PROC_ID_WRITE) {
-            
-            if ((rqCap.getAccessMode() & (SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_CREAT.getNumber()
-                    | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_WRONLY.getNumber() | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR
-                        .getNumber())) == 0)
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES,
-                        "capability does not allow write access to file " + rqCap.getFileId());
-            
-        } else if (rq.getOperation().getProcedureId() == OSDServiceConstants.PROC_ID_TRUNCATE) {
-            
-            if ((rqCap.getAccessMode() & SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_TRUNC.getNumber()) == 0)
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES,
-                        "capability does not allow truncate access to file " + rqCap.getFileId());
-            
-        } else if (rq.getOperation().getProcedureId() == OSDServiceConstants.PROC_ID_UNLINK) {
-            
-            // TODO: replace numeric flag with constant
-            if ((rqCap.getAccessMode() & 010000000) == 0)
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EACCES,
-                        "capability does not allow delete access to file " + rqCap.getFileId());
-            
-        }
-
-        return null;
+        int hash = fileId.hashCode();
+        return preprocThreads[hash == Integer.MIN_VALUE ? 0 : Math.abs(hash) % preprocThreads.length];
     }
     
-    private ErrorResponse processValidateView(OSDRequest request) {
-        String fileId = request.getFileId();
-        if (fileId == null || fileId.length() == 0) {
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EINVAL,
-                    "Invalid view. file_id must not be empty.");
-        }
-
-        XLocSetVersionState state;
-        try {
-            state = layout.getXLocSetVersionState(fileId);
-        } catch (IOException e) {
-            return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EIO,
-                    "Invalid view. Local version could not be read.");
-        }
-
-        XLocations locset = request.getLocationList();
-        if (state.getVersion() == locset.getVersion() && !state.getInvalidated()) {
-            // The request is based on the same (valid) view.
-            return null;
-        } else if (locset.getVersion() > state.getVersion()) {
-            XLocSetVersionState newstate = state.toBuilder()
-                    .setInvalidated(false)
-                    .setVersion(locset.getVersion())
-                    .setModifiedTime(TimeSync.getGlobalTime())
-                    .build();
-            
-            try {
-                // Persist the view.
-                layout.setXLocSetVersionState(fileId, newstate);
-                // Inform flease about the new view.
-                if (locset.getNumReplicas() > 1
-                        && ReplicaUpdatePolicies.isRW(locset.getReplicaUpdatePolicy())) {
-                    ASCIIString cellId = ReplicaUpdatePolicy.fileToCellId(fileId);
-                    master.getRWReplicationStage().setView(fileId, cellId, newstate);
-                }
-            } catch (IOException e) {
-                return ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EIO,
-                        "Invalid view. Local version could not be written.");
-            }
-
-            // The request is valid, because it is based on a newer view.
-            return null;
-        }
-
-        // The request is either based on an outdated view, or the replica is invalidated.
-        String errorMessage = state.getInvalidated() ? "Replica is invalidated."
-                : "The request is based on an outdated view" 
-                        + "(" + locset.getVersion() + " < " + state.getVersion() + ").";
-        return ErrorUtils.getErrorResponse(ErrorType.INVALID_VIEW, POSIXErrno.POSIX_ERROR_NONE, 
-                "View is not valid. " + errorMessage);
-    }
-
-    /**
-     * Process a viewIdChangeEvent from flease and update the persistent version/state
-     */
-    public void updateXLocSetFromFlease(ASCIIString cellId, int version) {
-        enqueueOperation(STAGEOP_UPDATE_XLOC, new Object[] { cellId, version }, null, null);
-    }
-
-    private void doUpdateXLocSetFromFlease(StageRequest m) {
-        final ASCIIString cellId = (ASCIIString) m.getArgs()[0];
-        final int version = (Integer) m.getArgs()[1];
-        final String fileId = ReplicaUpdatePolicy.cellToFileId(cellId);
-
-        XLocSetVersionState state;
-        try {
-            state = layout.getXLocSetVersionState(fileId);
-        } catch (IOException e) {
-            Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
-                    "VersionState could not be read for fileId: %s", fileId);
-            return;
-        }
-
-        // If a response from a newer View is encountered, we have to install it and leave the invalidated state.
-        if (state.getVersion() < version) {
-            state = state.toBuilder()
-                        .setInvalidated(false)
-                        .setVersion(version)
-                        .setModifiedTime(TimeSync.getGlobalTime())
-                        .build();
-            try {
-                // persist the version
-                layout.setXLocSetVersionState(fileId, state);
-                // and pass it back to flease
-                master.getRWReplicationStage().setView(fileId, cellId, state);
-            } catch (IOException e) {
-                Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
-                        "VersionState could not be written for fileId: %s", fileId);
-                return;
-            }
-
-        }
-
-        // If the local version is greater then the one flease got from it responses, the other replicas have
-        // to update their version. There exists no path to decrement the version if it has been seen once.
-        return;
+    @Override
+    public int getQueueLength() {
+        int len = super.getQueueLength();
+        for (PreprocThread th : preprocThreads)
+            len += th.getQueueLength();
+        return len;
     }
-
+    
     /**
-     * Invalidate the current XLocSet. The replica will not respond to read/write/truncate or flease operations until a
-     * new XLocSet is installed.<br>
-     * If the request is based on a newer XLocSet, the local XLocSet version will be updated. If the request is from an
-     * older one, an error is returned.
+     * @return the number of queued requests of each preprocessing thread
      */
-    public void invalidateXLocSet(OSDRequest request, FileCredentials fileCreds, boolean validateView,
-            InvalidateXLocSetCallback listener) {
-        enqueueOperation(STAGEOP_INVALIDATE_XLOC, new Object[] { fileCreds, validateView }, request, listener);
+    public int[] getQueueLengths() {
+        int[] lengths = new int[preprocThreads.length];
+        for (int i = 0; i < preprocThreads.length; i++)
+            lengths[i] = preprocThreads[i].getQueueLength();
+        return lengths;
     }
-
-    private void doInvalidateXLocSet(StageRequest m) {
-        final OSDRequest request = m.getRequest();
-        final String fileId = request.getFileId();
-        final XLocations xLoc = request.getLocationList();
-        final FileCredentials fileCreds = (FileCredentials) m.getArgs()[0];
-        final boolean validateView = (Boolean) m.getArgs()[1];
-        final InvalidateXLocSetCallback callback = (InvalidateXLocSetCallback) m.getCallback();
-        
-        XLocSetVersionState state;
-        try {
-            XLocSetVersionState.Builder stateBuilder = layout.getXLocSetVersionState(fileId).toBuilder();
-            
-            // Return an error if the local version is newer then the requested one and the replica is not already
-            // invalidated.
-            if (validateView && !stateBuilder.getInvalidated() && stateBuilder.getVersion() > xLoc.getVersion()) {
-                throw new InvalidXLocationsException("View is not valid. The requests is based on an outdated view.");
-            }
-
-            // Update the local version if the request is newer.
-            if (stateBuilder.getVersion() < xLoc.getVersion()) {
-                stateBuilder.setVersion(xLoc.getVersion());
-            }
-            
-            // Invalidate the replica.
-            stateBuilder.setInvalidated(true)
-                        .setModifiedTime(TimeSync.getGlobalTime());
-
-            state = stateBuilder.build();
-            layout.setXLocSetVersionState(fileId, state);
-            
-            if (xLoc.getNumReplicas() > 1 && ReplicaUpdatePolicies.isRW(xLoc.getReplicaUpdatePolicy())) {
-                master.getRWReplicationStage().invalidateReplica(fileId, fileCreds, xLoc, callback);
-            } else {
-                callback.invalidateComplete(LeaseState.NONE, null);
-            }
-
-        } catch (InvalidXLocationsException e) {
-            ErrorResponse error = ErrorUtils.getErrorResponse(ErrorType.INVALID_VIEW, POSIXErrno.POSIX_ERROR_NONE,
-                    e.getMessage(), e);
-            callback.invalidateComplete(LeaseState.NONE, error);
-        } catch (IOException e) {
-            Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
-                    "VersionState could not be written for fileId: %s", fileId);
-            ErrorResponse error = ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EIO,
-                    "Invalid view. Local version could not be written.");
-            callback.invalidateComplete(LeaseState.NONE, error);
-        }
-    }
-
-    public static interface InvalidateXLocSetCallback {
-        public void invalidateComplete(LeaseState leaseState, ErrorResponse error);
-    }
-
+    
     public int getNumOpenFiles() {
-        return oft.getNumOpenFiles();
+        int num = 0;
+        for (PreprocThread th : preprocThreads)
+            num += th.getNumOpenFiles();
+        return num;
     }
     
     public long getNumRequests() {
-        return numRequests;
+        long num = 0;
+        for (PreprocThread th : preprocThreads)
+            num += th.getNumRequests();
+        return num;
     }
     
 }
@@ -80,9 +80,10 @@ public abstract class Stage extends LifeCycleThread {
      * @param createdViewBuffer
      *            an optional additional view buffer to the data, which will be
      *            freed if the request needs to be dropped due to overload
+     * @return <code>false</code>, if the request has been dropped
      */
-    protected void enqueueOperation(int stageOp, Object[] args, OSDRequest request, ReusableBuffer createdViewBuffer,
-            Object callback) {
+    protected boolean enqueueOperation(int stageOp, Object[] args, OSDRequest request,
+            ReusableBuffer createdViewBuffer, Object callback) {
         // rq.setEnqueueNanos(System.nanoTime());
         
         if (request == null) {
@@ -92,6 +93,7 @@ public abstract class Stage extends LifeCycleThread {
                 Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this,
                         "Failed to queue internal request due to InterruptedException:");
                 Logging.logError(Logging.LEVEL_DEBUG, this, e);
+                return false;
             }
         } else {
             if (q.size() < queueCapacity) {
@@ -101,6 +103,7 @@ public abstract class Stage extends LifeCycleThread {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.stage, this,
                             "Failed to queue external request due to InterruptedException:");
                     Logging.logError(Logging.LEVEL_DEBUG, this, e);
+                    return false;
                 }
             } else {
                 // Make sure that the data buffer is returned to the pool if
@@ -114,8 +117,10 @@ public abstract class Stage extends LifeCycleThread {
                 Logging.logMessage(Logging.LEVEL_WARN, this, "stage is overloaded, request %d for %s dropped",
                         request.getRequestId(), request.getFileId());
                 request.sendInternalServerError(new IllegalStateException("server overloaded, request dropped"));
+                return false;
             }
         }
+        return true;
     }
     
     /**
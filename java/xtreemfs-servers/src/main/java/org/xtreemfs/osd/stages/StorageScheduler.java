@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.stages;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns the requests of the storage stage to storage threads.
+ * <p>
+ * Each file has a home thread, which is determined by the hash of its file ID. All requests of a file are executed by
+ * its home thread in the order in which they have been scheduled, which guarantees that requests modifying the file
+ * are serialized. If read offloading is enabled, a read request is assigned to the thread with the fewest
+ * outstanding requests instead, provided that no modifying request of the file is queued at or executed by the home
+ * thread. Modifying requests that arrive while offloaded reads of the file are outstanding are deferred until all of
+ * them have completed, so that modifications never run concurrently with reads of the same file. Consequently, the
+ * storage layout only has to support concurrent reads of the same file.
+ * <p>
+ * Executors have to invoke {@link #completed(int, String, boolean)} when they have finished a request.
+ *
+ * @param <R>
+ *            the type of the requests
+ */
+public class StorageScheduler<R> {
+
+    /**
+     * Executes scheduled requests.
+     */
+    public static interface Executor<R> {
+
+        /**
+         * Enqueues a request at a thread.
+         *
+         * @return <code>false</code>, if the request has been rejected, e.g. because the thread is overloaded
+         */
+        public boolean enqueue(int threadId, R request);
+
+        /**
+         * Invoked if a deferred request is rejected when it is released. Since
+         * {@link StorageScheduler#schedule(String, boolean, Object)} has already accepted the request, the executor
+         * is responsible for notifying its originator.
+         */
+        public void rejected(R request);
+    }
+
+    /**
+     * The scheduling state of a file with outstanding requests.
+     */
+    private static final class FileSchedule<R> {
+
+        /**
+         * number of requests other than reads that are queued at or executed by the home thread
+         */
+        int              homeUpdates;
+
+        /**
+         * number of reads that are queued at or executed by the home thread
+         */
+        int              homeReads;
+
+        /**
+         * number of reads that are queued at or executed by other threads
+         */
+        int              offloadedReads;
+
+        /**
+         * requests waiting for offloaded reads to complete, or <code>null</code>
+         */
+        List<Deferred<R>> deferred;
+
+        boolean isIdle() {
+            return homeUpdates == 0 && homeReads == 0 && offloadedReads == 0 && deferred == null;
+        }
+    }
+
+    private static final class Deferred<R> {
+
+        final boolean read;
+
+        final R       request;
+
+        Deferred(boolean read, R request) {
+            this.read = read;
+            this.request = request;
+        }
+    }
+
+    private final Executor<R>                    executor;
+
+    private final boolean                        offloadReads;
+
+    /**
+     * number of outstanding (queued or running) requests per thread
+     */
+    private final AtomicInteger[]                queueLengths;
+
+    // JCIP @GuardedBy("schedules")
+    private final Map<String, FileSchedule<R>>   schedules;
+
+    private final AtomicLong                     numOffloadedReads;
+
+    private final AtomicLong                     numDeferred;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param numThreads
+     *            the number of threads
+     * @param offloadReads
+     *            if <code>true</code>, reads may be executed by threads other than the home thread of the file
+     * @param executor
+     *            the executor of the requests
+     */
+    public StorageScheduler(int numThreads, boolean offloadReads, Executor<R> executor) {
+
+        this.executor = executor;
+        this.offloadReads = offloadReads;
+        this.queueLengths = new AtomicInteger[numThreads];
+        for (int i = 0; i < numThreads; i++)
+            queueLengths[i] = new AtomicInteger();
+        this.schedules = new HashMap<String, FileSchedule<R>>();
+        this.numOffloadedReads = new AtomicLong();
+        this.numDeferred = new AtomicLong();
+    }
+
+    /**
+     * Schedules a request.
+     *
+     * @param fileId
+     *            the ID of the file the request refers to
+     * @param read
+     *            <code>true</code>, if the request only reads the file and may thus be executed concurrently with
+     *            other reads
+     * @param request
+     *            the request
+     * @return <code>false</code>, if the request has been rejected by the executor
+     */
+    public boolean schedule(String fileId, boolean read, R request) {
+
+        if (!offloadReads)
+            return enqueue(getHomeThread(fileId), request);
+
+        synchronized (schedules) {
+
+            FileSchedule<R> schedule = schedules.get(fileId);
+            if (schedule == null) {
+                schedule = new FileSchedule<R>();
+                schedules.put(fileId, schedule);
+            }
+
+            boolean accepted = schedule(fileId, schedule, read, request);
+
+            if (schedule.isIdle())
+                schedules.remove(fileId);
+
+            return accepted;
+        }
+    }
+
+    /**
+     * Notifies the scheduler that a thread has finished a request.
+     *
+     * @param threadId
+     *            the thread that has executed the request
+     * @param fileId
+     *            the ID of the file the request refers to
+     * @param read
+     *            the value passed to {@link #schedule(String, boolean, Object)} for the request
+     */
+    public void completed(int threadId, String fileId, boolean read) {
+
+        queueLengths[threadId].decrementAndGet();
+
+        if (!offloadReads)
+            return;
+
+        synchronized (schedules) {
+
+            final FileSchedule<R> schedule = schedules.get(fileId);
+            assert (schedule != null) : "no schedule for " + fileId;
+
+            if (!read)
+                schedule.homeUpdates--;
+
+            else if (threadId == getHomeThread(fileId))
+                schedule.homeReads--;
+
+            else {
+
+                schedule.offloadedReads--;
+
+                // once the last offloaded read has completed, release all
+                // deferred requests in their original order
+                if (schedule.offloadedReads == 0 && schedule.deferred != null) {
+                    final List<Deferred<R>> deferred = schedule.deferred;
+                    schedule.deferred = null;
+                    for (Deferred<R> d : deferred)
+                        if (!schedule(fileId, schedule, d.read, d.request))
+                            executor.rejected(d.request);
+                }
+            }
+
+            if (schedule.isIdle())
+                schedules.remove(fileId);
+        }
+    }
+
+    /**
+     * Returns the thread that executes all requests of a file except for offloaded reads.
+     */
+    public int getHomeThread(String fileId) {
+
+        // calculate a hash value from the file ID and return the responsible
+        // thread
+        assert (fileId != null);
+        int hash = fileId.hashCode();
+        if (hash == Integer.MIN_VALUE) {
+            return 0;
+        }
+        int key = Math.abs(hash);
+        return key % queueLengths.length;
+    }
+
+    /**
+     * @return the number of outstanding (queued or running) requests of each thread
+     */
+    public int[] getQueueLengths() {
+        int[] lengths = new int[queueLengths.length];
+        for (int i = 0; i < lengths.length; i++)
+            lengths[i] = queueLengths[i].get();
+        return lengths;
+    }
+
+    /**
+     * @return the number of reads that have been executed by threads other than the home thread of the file
+     */
+    public long getNumOffloadedReads() {
+        return numOffloadedReads.get();
+    }
+
+    /**
+     * @return the number of requests that had to wait for offloaded reads
+     */
+    public long getNumDeferred() {
+        return numDeferred.get();
+    }
+
+    // JCIP @GuardedBy("schedules")
+    private boolean schedule(String fileId, FileSchedule<R> schedule, boolean read, R request) {
+
+        // requests must not overtake deferred ones, and modifications have to
+        // wait for offloaded reads
+        if (schedule.deferred != null || (!read && schedule.offloadedReads > 0)) {
+            if (schedule.deferred == null)
+                schedule.deferred = new ArrayList<Deferred<R>>();
+            schedule.deferred.add(new Deferred<R>(read, request));
+            numDeferred.incrementAndGet();
+            return true;
+        }
+
+        final int home = getHomeThread(fileId);
+
+        // a read may be offloaded unless the home thread holds a modifying
+        // request of the file, which the read must not overtake
+        if (read && schedule.homeUpdates == 0) {
+            final int thread = getLeastLoadedThread(home);
+            if (thread != home) {
+                if (!enqueue(thread, request))
+                    return false;
+                schedule.offloadedReads++;
+                numOffloadedReads.incrementAndGet();
+                return true;
+            }
+        }
+
+        if (!enqueue(home, request))
+            return false;
+        if (read)
+            schedule.homeReads++;
+        else
+            schedule.homeUpdates++;
+        return true;
+    }
+
+    private boolean enqueue(int thread, R request) {
+        queueLengths[thread].incrementAndGet();
+        if (executor.enqueue(thread, request))
+            return true;
+
+        queueLengths[thread].decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the thread with the fewest outstanding requests; the preferred thread is returned unless another thread
+     * has strictly fewer.
+     */
+    private int getLeastLoadedThread(int preferred) {
+        int thread = preferred;
+        int min = queueLengths[preferred].get();
+        for (int i = 0; i < queueLengths.length && min > 0; i++) {
+            final int len = queueLengths[i].get();
+            if (len < min) {
+                min = len;
+                thread = i;
+            }
+        }
+        return thread;
+    }
+
+}
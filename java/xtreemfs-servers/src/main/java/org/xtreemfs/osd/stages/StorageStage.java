@@ -17,6 +17,8 @@ import org.xtreemfs.common.xloc.Replica;
 import org.xtreemfs.common.xloc.StripingPolicyImpl;
 import org.xtreemfs.common.xloc.XLocations;
 import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.RPCHeader.ErrorResponse;
 import org.xtreemfs.osd.OSDRequest;
 import org.xtreemfs.osd.OSDRequestDispatcher;
@@ -34,8 +36,15 @@ import org.xtreemfs.pbrpc.generatedinterfaces.OSD.ReplicaStatus;
 
 public class StorageStage extends Stage {
     
+    /**
+     * the key used to assign requests that do not refer to a single file to a storage thread
+     */
+    private static final String FILEID_LIST_KEY = "foobar";
+    
     private final StorageThread[] storageThreads;
     private final StorageLayout layout;
+    private final MetadataCache cache;
+    private final StorageScheduler<StorageOperation> scheduler;
     
     /** Creates a new instance of MultithreadedStorageStage */
     public StorageStage(OSDRequestDispatcher master, MetadataCache cache, StorageLayout layout,
@@ -44,6 +53,7 @@ public class StorageStage extends Stage {
         super("OSD Storage Stage", maxRequestsQueueLength);
 
         this.layout = layout;
+        this.cache = cache;
 
         int numberOfThreads = 5;
         if (numOfThreads > 0)
@@ -52,9 +62,26 @@ public class StorageStage extends Stage {
         storageThreads = new StorageThread[numberOfThreads];
         for (int i = 0; i < numberOfThreads; i++) {
             // Each storage thread gets the max. queue length as it is possible that one thread gets the whole load
-            storageThreads[i] = new StorageThread(i, master, cache, layout, maxRequestsQueueLength);
+            storageThreads[i] = new StorageThread(i, master, cache, layout, this, maxRequestsQueueLength);
             storageThreads[i].setLifeCycleListener(master);
         }
+        
+        // reads can only be offloaded to other threads if the storage layout
+        // is able to process concurrent reads of the same file
+        boolean offloadReads = master.getConfig().isStorageReadOffloadingEnabled() && layout.supportsConcurrentReads();
+        scheduler = new StorageScheduler<StorageOperation>(numberOfThreads, offloadReads,
+            new StorageScheduler.Executor<StorageOperation>() {
+                @Override
+                public boolean enqueue(int threadId, StorageOperation op) {
+                    return storageThreads[threadId].enqueueOperation(op.stageOp, op.args, op.request,
+                        op.createdViewBuffer, op.callback);
+                }
+
+                @Override
+                public void rejected(StorageOperation op) {
+                    operationRejected(op);
+                }
+            });
     }
 
     public StorageLayout getStorageLayout() {
@@ -211,7 +238,7 @@ public class StorageStage extends Stage {
     }
     
     public void getFileIDList(OSDRequest request, GetFileIDListCallback listener) {
-        this.enqueueOperation("foobar", StorageThread.STAGEOP_GET_FILEID_LIST, new Object[] {}, request, listener);
+        this.enqueueOperation(FILEID_LIST_KEY, StorageThread.STAGEOP_GET_FILEID_LIST, new Object[] {}, request, listener);
     }
     
     public static interface GetFileIDListCallback {
@@ -235,17 +262,70 @@ public class StorageStage extends Stage {
             
             // rq.setEnqueueNanos(System.nanoTime());
             
-            // choose the thread the new request has to be
-            // assigned to, for its execution
-            int taskId = getTaskId(fileId);
+            // let the scheduler choose the thread the new request has to be
+            // assigned to, for its execution; requests of the same file are
+            // executed by the same thread, except for reads that can be
+            // offloaded to idle threads
             
-            // add the new request to the storageTask,
-            // in order to start/schedule its execution
-            // concurrently with other threads assigned to other
-            // storageTasks
-            storageThreads[taskId].enqueueOperation(stageOp, args, request, createdViewBuffer, callback);
+            // the metadata of the file must not be evicted from the cache
+            // before the request has been completed
+            final boolean pin = stageOp != StorageThread.STAGEOP_GET_FILEID_LIST;
+            if (pin)
+                cache.pin(fileId);
+            
+            if (!scheduler.schedule(fileId, stageOp == StorageThread.STAGEOP_READ_OBJECT, new StorageOperation(
+                stageOp, args, request, createdViewBuffer, callback)) && pin)
+                cache.unpin(fileId);
         }
     
+    /**
+     * Invoked if a request that had to wait for offloaded reads of its file is rejected by its storage thread.
+     * Requests of clients have already been answered with an error by the storage thread.
+     */
+    private void operationRejected(StorageOperation op) {
+        final String fileId = op.stageOp == StorageThread.STAGEOP_GET_FILEID_LIST ? FILEID_LIST_KEY
+            : (String) op.args[0];
+        if (op.stageOp != StorageThread.STAGEOP_GET_FILEID_LIST)
+            cache.unpin(fileId);
+        if (op.request == null)
+            Logging.logMessage(Logging.LEVEL_ERROR, Category.stage, this,
+                "deferred internal request (operation %d) for %s was rejected", op.stageOp, fileId);
+    }
+    
+    /**
+     * Invoked by a storage thread when it has finished processing a request.
+     * 
+     * @param threadId
+     *            the ID of the storage thread
+     * @param rq
+     *            the request
+     */
+    public void operationCompleted(int threadId, StageRequest rq) {
+        // the file ID is the first argument of all operations that refer to a
+        // file
+        final int stageOp = rq.getStageMethod();
+        final String fileId = stageOp == StorageThread.STAGEOP_GET_FILEID_LIST ? FILEID_LIST_KEY : (String) rq
+                .getArgs()[0];
+        scheduler.completed(threadId, fileId, stageOp == StorageThread.STAGEOP_READ_OBJECT);
+        if (stageOp != StorageThread.STAGEOP_GET_FILEID_LIST)
+            cache.unpin(fileId);
+    }
+    
+    /**
+     * @return the number of queued and running requests of each storage thread
+     */
+    public int[] getQueueLengths() {
+        return scheduler.getQueueLengths();
+    }
+    
+    /**
+     * @return the number of reads that have been offloaded to storage threads other than the one responsible for the
+     *         file
+     */
+    public long getNumOffloadedReads() {
+        return scheduler.getNumOffloadedReads();
+    }
+    
     @Override
     public void run() {
         // start all storage threads
@@ -273,26 +353,6 @@ public class StorageStage extends Stage {
             th.waitForShutdown();
     }
     
-    private int getTaskId(String fileId) {
-        
-        // calculate a hash value from the file ID and return the responsible
-        // thread
-        assert (fileId != null);
-        int hash = fileId.hashCode();
-        if (hash == Integer.MIN_VALUE) {
-            return 0;
-        }
-        int key = Math.abs(hash);
-        int index = (key % storageThreads.length);
-        
-        // String objId = rq.getDetails().getFileId()
-        // + rq.getDetails().getObjectNumber();
-        // int key = Math.abs(objId.hashCode());
-        // int index = (key % storageThreads.length);
-        
-        return index;
-    }
-    
     @Override
     protected void processMethod(StageRequest method) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -308,4 +368,26 @@ public class StorageStage extends Stage {
         return len;
     }
     
+    private static final class StorageOperation {
+        
+        final int            stageOp;
+        
+        final Object[]       args;
+        
+        final OSDRequest     request;
+        
+        final ReusableBuffer createdViewBuffer;
+        
+        final Object         callback;
+        
+        StorageOperation(int stageOp, Object[] args, OSDRequest request, ReusableBuffer createdViewBuffer,
+            Object callback) {
+            this.stageOp = stageOp;
+            this.args = args;
+            this.request = request;
+            this.createdViewBuffer = createdViewBuffer;
+            this.callback = callback;
+        }
+    }
+    
 }
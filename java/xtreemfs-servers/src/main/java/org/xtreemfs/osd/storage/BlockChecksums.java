@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.xtreemfs.foundation.checksums.ChecksumAlgorithm;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+
+/**
+ * The checksums of the fixed-size blocks of a single object version in the {@link HashStorageLayout}. Block
+ * <code>k</code> covers the bytes <code>[k * blockSize, (k + 1) * blockSize)</code> of the object file; the last block
+ * may be shorter.
+ * <p>
+ * The checksums are kept in a small file next to the object file, which consists of a header with the block size,
+ * followed by one checksum per block. Since each block is verified and updated on its own, partial reads can be
+ * verified and partial writes only require the checksums of the modified blocks to be recomputed. The file is
+ * replaced atomically, so that it is either in its old or in its new state after a crash.
+ * <p>
+ * A file that cannot be parsed is loaded as a damaged instance without any blocks, which fails each verification.
+ * <p>
+ * Instances may be verified concurrently, but must not be modified while they are verified.
+ */
+public class BlockChecksums {
+
+    private static final int MAGIC       = 0x58424331; // "XBC1"
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final int           blockSize;
+
+    /**
+     * the version of the object the checksums belong to
+     */
+    private final long          version;
+
+    private final boolean       damaged;
+
+    private long[]              checksums;
+
+    private int                 numBlocks;
+
+    public BlockChecksums(int blockSize, long version) {
+        this(blockSize, version, false);
+    }
+
+    private BlockChecksums(int blockSize, long version, boolean damaged) {
+        this.blockSize = blockSize;
+        this.version = version;
+        this.damaged = damaged;
+        this.checksums = new long[0];
+    }
+
+    /**
+     * Loads the block checksums of an object.
+     *
+     * @param blockSize
+     *            the block size of damaged instances
+     * @param version
+     *            the version of the object
+     * @return the checksums, or <code>null</code> if the file does not exist; a damaged instance if the file cannot
+     *         be parsed
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static BlockChecksums load(File file, int blockSize, long version) throws IOException {
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException exc) {
+            return null;
+        }
+
+        try {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || (size - HEADER_SIZE) % 8 != 0 || size > Integer.MAX_VALUE)
+                return damaged(file, blockSize, version, "invalid size");
+
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining())
+                if (channel.read(buf) == -1)
+                    return damaged(file, blockSize, version, "unexpected end of file");
+            buf.flip();
+
+            final int magic = buf.getInt();
+            final int storedBlockSize = buf.getInt();
+            if (magic != MAGIC || storedBlockSize <= 0)
+                return damaged(file, blockSize, version, "invalid header");
+
+            BlockChecksums csums = new BlockChecksums(storedBlockSize, version);
+            csums.setNumBlocks(buf.remaining() / 8);
+            for (int i = 0; i < csums.numBlocks; i++)
+                csums.checksums[i] = buf.getLong();
+
+            return csums;
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stores the block checksums, replacing the previous content of the file. The checksums are written to a
+     * temporary file first, which is then renamed.
+     *
+     * @param sync
+     *            if <code>true</code>, the file and the rename are forced to the storage device before the method
+     *            returns
+     */
+    public void store(File file, boolean sync) throws IOException {
+
+        assert (!damaged);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + numBlocks * 8);
+        buf.putInt(MAGIC).putInt(blockSize);
+        for (int i = 0; i < numBlocks; i++)
+            buf.putLong(checksums[i]);
+        buf.flip();
+
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+        FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buf.hasRemaining())
+                channel.write(buf);
+            if (sync)
+                channel.force(false);
+        } finally {
+            channel.close();
+        }
+
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        if (sync) {
+            FileChannel dir = FileChannel.open(file.getParentFile().toPath(), StandardOpenOption.READ);
+            try {
+                dir.force(true);
+            } finally {
+                dir.close();
+            }
+        }
+    }
+
+    /**
+     * @return a modifiable copy of the checksums for another version of the object
+     */
+    public BlockChecksums copy(long version) {
+        BlockChecksums copy = new BlockChecksums(blockSize, version);
+        if (!damaged) {
+            copy.checksums = Arrays.copyOf(checksums, numBlocks);
+            copy.numBlocks = numBlocks;
+        }
+        return copy;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return <code>true</code>, if the file the checksums have been loaded from could not be parsed
+     */
+    public boolean isDamaged() {
+        return damaged;
+    }
+
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+
+    /**
+     * @return the estimated size of the instance in bytes
+     */
+    public long estimateMemoryUsage() {
+        return 48 + 8L * checksums.length;
+    }
+
+    /**
+     * @return the number of blocks of an object with the given length
+     */
+    public int getNumBlocks(long length) {
+        return (int) ((length + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Adjusts the number of blocks to the length of the object. Checksums of new blocks are 0 until they are
+     * computed.
+     */
+    public void setNumBlocks(int numBlocks) {
+        if (numBlocks > checksums.length)
+            checksums = Arrays.copyOf(checksums, Math.max(numBlocks, 2 * checksums.length));
+        else if (numBlocks < this.numBlocks)
+            Arrays.fill(checksums, numBlocks, this.numBlocks, 0);
+        this.numBlocks = numBlocks;
+    }
+
+    /**
+     * Computes the checksum of a single block.
+     *
+     * @param block
+     *            the content of the block, between position and limit
+     */
+    public void update(ChecksumAlgorithm algorithm, int blockNo, ByteBuffer block) {
+        assert (blockNo < numBlocks) : "block " + blockNo + " is beyond the end of the object";
+
+        algorithm.reset();
+        algorithm.update(block);
+        checksums[blockNo] = algorithm.getValue();
+    }
+
+    /**
+     * Verifies a range of blocks.
+     *
+     * @param data
+     *            the content of the blocks, starting at the beginning of block <code>firstBlockNo</code> and ending
+     *            at the end of a block or the end of the object
+     * @return the number of the first block with a wrong checksum, or -1 if all checksums are correct
+     */
+    public int verify(ChecksumAlgorithm algorithm, int firstBlockNo, ByteBuffer data) {
+
+        ByteBuffer block = data.duplicate();
+        int blockNo = firstBlockNo;
+        for (int pos = data.position(); pos < data.limit(); pos += blockSize, blockNo++) {
+            if (blockNo >= numBlocks)
+                return blockNo;
+
+            block.limit(Math.min(pos + blockSize, data.limit()));
+            block.position(pos);
+
+            algorithm.reset();
+            algorithm.update(block);
+            if (algorithm.getValue() != checksums[blockNo])
+                return blockNo;
+        }
+
+        return -1;
+    }
+
+    private static BlockChecksums damaged(File file, int blockSize, long version, String reason) {
+        Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, BlockChecksums.class,
+                "block checksum file %s is damaged (%s), the object cannot be verified", file, reason);
+        return new BlockChecksums(blockSize, version, true);
+    }
+}
@@ -260,8 +260,10 @@ public class CleanupVersionsThread extends LifeCycleThread {
                                 
                                 // delete the object version if it is not part
                                 // of the file's current version
-                                if (md.getLatestObjectVersion(v.getKey()) != version)
+                                if (md.getLatestObjectVersion(v.getKey()) != version) {
+                                    master.getObjectCache().invalidate(fileId, v.getKey());
                                     layout.deleteObject(fileId, md, v.getKey(), version);
+                                }
                             }
                         
                         // save the updated version table
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+
+/**
+ * A bounded cache of open {@link FileChannel}s, keyed by the absolute path of the file.
+ * <p>
+ * The cache is partitioned into stripes, each of which holds an LRU list of channels. The stripe of a channel is
+ * determined by the file ID in the same way as the storage thread responsible for the file is, so that each storage
+ * thread effectively has its own stripe, and stripe locks are hardly ever contended.
+ * <p>
+ * A channel is removed from the cache while it is being used, i.e. between {@link #acquire(String, String, boolean)}
+ * and {@link #release(String, String, FileChannel)}, so that it cannot be closed by a concurrent eviction. Since open
+ * channels continue to refer to a file after it has been renamed or deleted, {@link #invalidate(String, String)} must
+ * be invoked whenever a file is renamed or deleted. Channels of a file that are in use while it is invalidated are
+ * closed when they are released, even if the file has been acquired again in the meantime.
+ * <p>
+ * Files are opened read-only unless they are acquired for writing. A cached read-only channel is replaced when its file
+ * is acquired for writing.
+ */
+public class FileHandleCache {
+
+    private static final class Handle {
+
+        final String      path;
+
+        final FileChannel channel;
+
+        final boolean     writable;
+
+        Handle(String path, FileChannel channel, boolean writable) {
+            this.path = path;
+            this.channel = channel;
+            this.writable = writable;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Handle> {
+
+        private static final long      serialVersionUID = 2479340135741236578L;
+
+        private final int              maxSize;
+
+        /**
+         * the channels that are currently in use and may be returned to the cache; a channel is removed if its file
+         * is invalidated
+         */
+        final Map<FileChannel, Handle> acquired;
+
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.acquired = new IdentityHashMap<FileChannel, Handle>();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Handle> eldest) {
+            if (size() <= maxSize)
+                return false;
+
+            closeChannel(eldest.getValue().channel);
+            return true;
+        }
+    }
+
+    private final Stripe[]   stripes;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong opens;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxHandles
+     *            the maximum number of open channels in the cache; 0 disables caching
+     * @param numStripes
+     *            the number of stripes, which should be equal to the number of storage threads
+     */
+    public FileHandleCache(int maxHandles, int numStripes) {
+
+        numStripes = Math.max(1, numStripes);
+        this.stripes = new Stripe[maxHandles > 0 ? numStripes : 0];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe(Math.max(1, maxHandles / numStripes));
+
+        this.hits = new AtomicLong();
+        this.opens = new AtomicLong();
+    }
+
+    /**
+     * Returns an open channel for a file, either from the cache or by opening the file. The channel has to be
+     * returned with {@link #release(String, String, FileChannel)}, or with {@link #discard(String, String, FileChannel)}
+     * if it must not be used anymore.
+     *
+     * @param fileId
+     *            the ID of the file the object file belongs to
+     * @param path
+     *            the absolute path of the object file
+     * @param write
+     *            if <code>true</code>, the channel is opened for writing, and the file is created if it does not
+     *            exist; otherwise, it is opened read-only
+     * @return the channel, or <code>null</code> if the file does not exist and <code>write</code> is
+     *         <code>false</code>
+     * @throws IOException
+     *             if an I/O error occurs; a {@link FileNotFoundException} is thrown if the file cannot be created
+     */
+    public FileChannel acquire(String fileId, String path, boolean write) throws IOException {
+
+        Stripe stripe = null;
+        if (stripes.length > 0) {
+            stripe = getStripe(fileId);
+            Handle handle;
+            synchronized (stripe) {
+                handle = stripe.remove(path);
+                if (handle != null && (handle.writable || !write))
+                    stripe.acquired.put(handle.channel, handle);
+            }
+            if (handle != null) {
+                if (handle.writable || !write) {
+                    hits.incrementAndGet();
+                    return handle.channel;
+                }
+                closeChannel(handle.channel);
+            }
+        }
+
+        opens.incrementAndGet();
+        FileChannel channel;
+        try {
+            channel = write ? FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE) : FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (NoSuchFileException exc) {
+            if (!write)
+                return null;
+            throw new FileNotFoundException(path);
+        }
+
+        if (stripe != null)
+            synchronized (stripe) {
+                stripe.acquired.put(channel, new Handle(path, channel, write));
+            }
+        return channel;
+    }
+
+    /**
+     * Returns a channel that has been acquired before to the cache. If the cache is full, the least recently used
+     * channel is closed. The channel is closed as well if its file has been invalidated in the meantime.
+     */
+    public void release(String fileId, String path, FileChannel channel) {
+
+        if (stripes.length == 0) {
+            closeChannel(channel);
+            return;
+        }
+
+        Stripe stripe = getStripe(fileId);
+        Handle old = null;
+        Handle handle;
+        synchronized (stripe) {
+            handle = stripe.acquired.remove(channel);
+            if (handle != null)
+                old = stripe.put(path, handle);
+        }
+
+        if (handle == null)
+            closeChannel(channel);
+
+        // only possible if the same file was acquired twice
+        if (old != null && old.channel != channel)
+            closeChannel(old.channel);
+    }
+
+    /**
+     * Closes a channel that has been acquired before instead of returning it to the cache, e.g. after an I/O error.
+     */
+    public void discard(String fileId, String path, FileChannel channel) {
+
+        if (stripes.length > 0) {
+            Stripe stripe = getStripe(fileId);
+            synchronized (stripe) {
+                stripe.acquired.remove(channel);
+            }
+        }
+
+        closeChannel(channel);
+    }
+
+    /**
+     * Closes the cached channel of a file, if any. Must be invoked when the file is renamed or deleted.
+     */
+    public void invalidate(String fileId, String path) {
+
+        if (stripes.length == 0)
+            return;
+
+        Stripe stripe = getStripe(fileId);
+        Handle handle;
+        synchronized (stripe) {
+            handle = stripe.remove(path);
+            for (Iterator<Handle> it = stripe.acquired.values().iterator(); it.hasNext();)
+                if (it.next().path.equals(path))
+                    it.remove();
+        }
+        if (handle != null)
+            closeChannel(handle.channel);
+    }
+
+    /**
+     * Closes all cached channels of files in a directory.
+     *
+     * @param fileId
+     *            the ID of the file the object files belong to
+     * @param dirPath
+     *            the absolute path of the directory, ending with a separator
+     */
+    public void invalidateAll(String fileId, String dirPath) {
+
+        if (stripes.length == 0)
+            return;
+
+        Stripe stripe = getStripe(fileId);
+        List<FileChannel> channels = new ArrayList<FileChannel>();
+        synchronized (stripe) {
+            for (Iterator<Map.Entry<String, Handle>> it = stripe.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Handle> entry = it.next();
+                if (entry.getKey().startsWith(dirPath)) {
+                    channels.add(entry.getValue().channel);
+                    it.remove();
+                }
+            }
+            for (Iterator<Handle> it = stripe.acquired.values().iterator(); it.hasNext();)
+                if (it.next().path.startsWith(dirPath))
+                    it.remove();
+        }
+
+        for (FileChannel channel : channels)
+            closeChannel(channel);
+    }
+
+    /**
+     * @return the number of channels that were served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of files that had to be opened
+     */
+    public long getOpens() {
+        return opens.get();
+    }
+
+    private Stripe getStripe(String fileId) {
+        // same distribution as in StorageStage
+        int hash = fileId.hashCode();
+        return stripes[hash == Integer.MIN_VALUE ? 0 : Math.abs(hash) % stripes.length];
+    }
+
+    private static void closeChannel(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException exc) {
+            Logging.logMessage(Logging.LEVEL_WARN, Category.storage, FileHandleCache.class,
+                    "could not close object file: %s", exc.toString());
+        }
+    }
+
+}
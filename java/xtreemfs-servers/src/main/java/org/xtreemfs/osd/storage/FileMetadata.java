@@ -11,8 +11,8 @@ package org.xtreemfs.osd.storage;
 import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xtreemfs.common.xloc.StripingPolicyImpl;
 
@@ -22,11 +22,26 @@ import org.xtreemfs.common.xloc.StripingPolicyImpl;
  */
 public class FileMetadata {
     
-    private Map<Long, Long>            latestObjVersions;
+    private ObjectNumberMap            latestObjVersions;
     
-    private Map<Long, Long>            largestObjVersions;
+    private ObjectNumberMap            largestObjVersions;
     
-    private Map<Long, Map<Long, Long>> objChecksums;
+    /**
+     * checksums of the largest known version of each object
+     */
+    private ObjectNumberMap            objChecksums;
+    
+    /**
+     * the versions to which the checksums in <code>objChecksums</code> belong
+     */
+    private ObjectNumberMap            objChecksumVersions;
+    
+    /**
+     * checksums of all other object versions; only created if multiple versions of an object are known
+     */
+    private Map<Long, Map<Long, Long>> olderObjChecksums;
+    
+    private int                        olderObjChecksumCount;
     
     private long                       filesize;
     
@@ -42,11 +57,26 @@ public class FileMetadata {
 
     private RandomAccessFile[]       handles;
 
+    private ObjectIndex              objectIndex;
+
     private long                     mdFileLength;
+
+    /**
+     * the block checksums of the latest versions of recently accessed objects, if the storage layout keeps checksums
+     * per block; accessed by concurrent reads
+     */
+    private final Map<Long, BlockChecksums> blockChecksums;
+
+    /**
+     * the estimated size of all cached block checksums
+     */
+    private final AtomicLong         blockChecksumsSize;
     
     /** Creates a new instance of FileInfo */
     public FileMetadata(StripingPolicyImpl sp) {
         stripingPolicy = sp;
+        blockChecksums = new ConcurrentHashMap<Long, BlockChecksums>();
+        blockChecksumsSize = new AtomicLong();
     }
     
     public long getFilesize() {
@@ -66,18 +96,22 @@ public class FileMetadata {
     }
     
     public long getLargestObjectVersion(long objId) {
-        Long v = largestObjVersions.get(objId);
-        return (v == null) ? 0 : v;
+        return largestObjVersions.get(objId, 0);
     }
     
     public long getLatestObjectVersion(long objId) {
-        Long v = latestObjVersions.get(objId);
-        return (v == null) ? 0 : v;
+        return latestObjVersions.get(objId, 0);
     }
     
     public Long getObjectChecksum(long objId, long objVer) {
         
-        Map<Long, Long> checksums = objChecksums.get(objId);
+        if (objChecksumVersions.get(objId, -1) == objVer)
+            return objChecksums.get(objId, 0);
+        
+        if (olderObjChecksums == null)
+            return 0L;
+        
+        Map<Long, Long> checksums = olderObjChecksums.get(objId);
         if (checksums == null)
             return 0L;
         
@@ -85,27 +119,36 @@ public class FileMetadata {
         return (c == null) ? 0 : c;
     }
     
-    public Set<Entry<Long, Long>> getLatestObjectVersions() {
-        return latestObjVersions.entrySet();
+    /**
+     * Returns the numbers of all objects that make up the latest version of the file in ascending order. The
+     * corresponding versions can be retrieved via {@link #getLatestObjectVersion(long)}.
+     */
+    public long[] getLatestObjectNumbers() {
+        return latestObjVersions.keys();
+    }
+    
+    public int getLatestObjectCount() {
+        return latestObjVersions.size();
     }
     
     public void clearLatestObjectVersions() {
         latestObjVersions.clear();
     }
     
-    public void initLargestObjectVersions(Map<Long, Long> largestObjVersions) {
+    public void initLargestObjectVersions(ObjectNumberMap largestObjVersions) {
         assert (this.largestObjVersions == null);
         this.largestObjVersions = largestObjVersions;
     }
     
-    public void initLatestObjectVersions(Map<Long, Long> latestObjVersions) {
+    public void initLatestObjectVersions(ObjectNumberMap latestObjVersions) {
         assert (this.latestObjVersions == null);
         this.latestObjVersions = latestObjVersions;
     }
     
-    public void initObjectChecksums(Map<Long, Map<Long, Long>> objChecksums) {
+    public void initObjectChecksums() {
         assert (this.objChecksums == null);
-        this.objChecksums = objChecksums;
+        this.objChecksums = createObjectNumberMap();
+        this.objChecksumVersions = createObjectNumberMap();
     }
     
     public void initVersionTable(VersionTable versionTable) {
@@ -113,6 +156,14 @@ public class FileMetadata {
         this.versionTable = versionTable;
     }
     
+    /**
+     * Creates an empty map for object numbers that is laid out according to the striping policy of the file.
+     */
+    public ObjectNumberMap createObjectNumberMap() {
+        return stripingPolicy == null ? new ObjectNumberMap() : new ObjectNumberMap(stripingPolicy.getWidth(),
+            stripingPolicy.getRelativeOSDPosition());
+    }
+    
     public void updateObjectVersion(long objId, long newVersion) {
         
         latestObjVersions.put(objId, newVersion);
@@ -124,18 +175,76 @@ public class FileMetadata {
     
     public void updateObjectChecksum(long objId, long objVer, long newChecksum) {
         
-        Map<Long, Long> checksums = objChecksums.get(objId);
-        if (checksums == null) {
-            checksums = new HashMap<Long, Long>();
-            objChecksums.put(objId, checksums);
+        long currVer = objChecksumVersions.get(objId, -1);
+        if (currVer == -1 || currVer == objVer) {
+            objChecksums.put(objId, newChecksum);
+            objChecksumVersions.put(objId, objVer);
+            return;
         }
         
-        checksums.put(objVer, newChecksum);
+        // keep the checksum of the largest version in the primitive maps,
+        // and all others in the fallback map
+        if (objVer > currVer) {
+            putOlderObjectChecksum(objId, currVer, objChecksums.get(objId, 0));
+            objChecksums.put(objId, newChecksum);
+            objChecksumVersions.put(objId, objVer);
+        } else
+            putOlderObjectChecksum(objId, objVer, newChecksum);
     }
     
     public void discardObject(long objId, long objVer) {
+        
         latestObjVersions.remove(objId);
-        objChecksums.remove(objId + "." + objVer);
+        
+        if (objChecksums == null)
+            return;
+        
+        Map<Long, Long> checksums = olderObjChecksums == null ? null : olderObjChecksums.get(objId);
+        if (objChecksumVersions.get(objId, -1) == objVer) {
+            objChecksums.remove(objId);
+            objChecksumVersions.remove(objId);
+        } else if (checksums != null) {
+            if (checksums.remove(objVer) != null)
+                olderObjChecksumCount--;
+            if (checksums.isEmpty())
+                olderObjChecksums.remove(objId);
+        }
+    }
+    
+    /**
+     * Returns an estimate of the number of heap bytes occupied by the object versions, checksums and the version
+     * table. The estimate is computed in constant time, so that it may be refreshed on every access.
+     */
+    public long estimateMemoryUsage() {
+        
+        long size = 128;
+        if (latestObjVersions != null)
+            size += latestObjVersions.estimateMemoryUsage();
+        if (largestObjVersions != null && largestObjVersions != latestObjVersions)
+            size += largestObjVersions.estimateMemoryUsage();
+        if (objChecksums != null)
+            size += objChecksums.estimateMemoryUsage() + objChecksumVersions.estimateMemoryUsage();
+        size += 80L * olderObjChecksumCount;
+        if (versionTable != null)
+            size += versionTable.estimateMemoryUsage();
+        size += blockChecksumsSize.get();
+        
+        return size;
+    }
+    
+    private void putOlderObjectChecksum(long objId, long objVer, long checksum) {
+        
+        if (olderObjChecksums == null)
+            olderObjChecksums = new HashMap<Long, Map<Long, Long>>();
+        
+        Map<Long, Long> checksums = olderObjChecksums.get(objId);
+        if (checksums == null) {
+            checksums = new HashMap<Long, Long>();
+            olderObjChecksums.put(objId, checksums);
+        }
+        
+        if (checksums.put(objVer, checksum) == null)
+            olderObjChecksumCount++;
     }
     
     public String toString() {
@@ -190,6 +299,47 @@ public class FileMetadata {
         this.handles = handles;
     }
 
+    /**
+     * @return the persistent object index of the file, or <code>null</code> if the file has no index
+     */
+    public ObjectIndex getObjectIndex() {
+        return objectIndex;
+    }
+
+    /**
+     * @param objectIndex the objectIndex to set
+     */
+    public void setObjectIndex(ObjectIndex objectIndex) {
+        this.objectIndex = objectIndex;
+    }
+
+    /**
+     * @return the cached block checksums of the given version of an object, or <code>null</code> if they are not
+     *         cached
+     */
+    public BlockChecksums getBlockChecksums(long objId, long objVer) {
+        BlockChecksums csums = blockChecksums.get(objId);
+        return csums != null && csums.getVersion() == objVer ? csums : null;
+    }
+
+    /**
+     * Caches the block checksums of an object, replacing those of any other version. Cached instances must not be
+     * modified anymore.
+     */
+    public void setBlockChecksums(long objId, BlockChecksums csums) {
+        BlockChecksums old = blockChecksums.put(objId, csums);
+        blockChecksumsSize.addAndGet(csums.estimateMemoryUsage() - (old == null ? 0 : old.estimateMemoryUsage()));
+    }
+
+    /**
+     * Removes the cached block checksums of the given version of an object, if they are cached.
+     */
+    public void discardBlockChecksums(long objId, long objVer) {
+        BlockChecksums csums = getBlockChecksums(objId, objVer);
+        if (csums != null && blockChecksums.remove(objId, csums))
+            blockChecksumsSize.addAndGet(-csums.estimateMemoryUsage());
+    }
+
     /**
      * @return the mdFileLength
      */
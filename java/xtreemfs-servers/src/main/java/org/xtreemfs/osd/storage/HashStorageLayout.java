@@ -22,11 +22,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
@@ -85,6 +88,16 @@ public class HashStorageLayout extends StorageLayout {
      */
     public static final String             QUOTA_INVALID_EXPIRE_TIMES_FILENAME = ".invalid_expire_times";
 
+    /**
+     * file that contains the persistent {@link ObjectIndex}
+     */
+    public static final String             OBJECT_INDEX_FILENAME         = ".objidx";
+
+    /**
+     * prefix of the files that contain the block checksums of objects
+     */
+    public static final String             BLOCK_CHECKSUMS_PREFIX        = ".bcs";
+
     public static final int                SL_TAG                        = 0x00000002;
 
     /** 32bit algorithm */
@@ -121,6 +134,21 @@ public class HashStorageLayout extends StorageLayout {
 
     private final boolean                  checksumsEnabled;
 
+    /**
+     * size of the individually checksummed blocks of new objects, or 0 if there is one checksum per object
+     */
+    private final int                      checksumBlockSize;
+
+    private final boolean                  objectIndexEnabled;
+
+    private final FileHandleCache          handleCache;
+
+    private final MappedObjectCache        mappedCache;
+
+    /**
+     * the hashed paths of recently accessed files; LRUCache is not thread-safe, as even lookups reorder the entries
+     */
+    // JCIP @GuardedBy("hashedPathCache")
     private final LRUCache<String, String> hashedPathCache;
 
     private static final boolean           USE_PATH_CACHE                = true;
@@ -133,6 +161,10 @@ public class HashStorageLayout extends StorageLayout {
 
     private static final String            ERROR_MESSAGE_INCOMPLETE_READ = "Failed to read the requested number of bytes from the file on disk. Maybe there's a media error or the file was modified outside the scope of the OSD by another process?";
 
+    /**
+     * the XLocSet version states of recently accessed files, which are accessed by all preprocessing threads
+     */
+    // JCIP @GuardedBy("xLocSetVSCache")
     private final LRUCache<String, XLocSetVersionState> xLocSetVSCache;
 
     /** Creates a new instance of HashStorageLayout */
@@ -161,6 +193,11 @@ public class HashStorageLayout extends StorageLayout {
          */
 
         this.checksumsEnabled = config.isUseChecksums();
+        this.objectIndexEnabled = config.isObjectIndexEnabled();
+        this.handleCache = new FileHandleCache(config.getFileHandleCacheSize(), config.getStorageThreads());
+        this.mappedCache = new MappedObjectCache(config.getMappedObjectCacheSize(),
+                config.getMappedObjectCacheMaxObjectSize(), config.getStorageThreads());
+        int blockSize = 0;
         if (config.isUseChecksums()) {
 
             // get the algorithm from the factory
@@ -168,13 +205,20 @@ public class HashStorageLayout extends StorageLayout {
                 checksumAlgo = ChecksumFactory.getInstance().getAlgorithm(config.getChecksumProvider());
                 if (checksumAlgo == null)
                     throw new NoSuchAlgorithmException("algo is null");
+                blockSize = config.getChecksumBlockSize();
             } catch (NoSuchAlgorithmException e) {
                 Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
                         "could not instantiate checksum algorithm '%s'", config.getChecksumProvider());
                 Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
                         "OSD checksums will be switched off");
             }
+            if (blockSize < 0) {
+                Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
+                        "invalid checksum block size %d, using one checksum per object", blockSize);
+                blockSize = 0;
+            }
         }
+        this.checksumBlockSize = blockSize;
 
         if (maxSubdirsPerDir != 0) {
             this.prefixLength = Integer.toHexString(maxSubdirsPerDir).length();
@@ -189,8 +233,9 @@ public class HashStorageLayout extends StorageLayout {
         }
 
         if (Logging.isDebug()) {
-            Logging.logMessage(Logging.LEVEL_DEBUG, this, "initialized with checksums=%s prefixLen=%d",
-                    this.checksumsEnabled, this.prefixLength);
+            Logging.logMessage(Logging.LEVEL_DEBUG, this,
+                    "initialized with checksums=%s checksumBlockSize=%d objectIndex=%s prefixLen=%d",
+                    this.checksumsEnabled, this.checksumBlockSize, this.objectIndexEnabled, this.prefixLength);
         }
 
         _stat_fileInfoLoads = 0;
@@ -240,13 +285,22 @@ public class HashStorageLayout extends StorageLayout {
                     fileName);
         }
 
-        File file = new File(fileName);
+        // small, frequently read objects are served from memory
+        if (!checkChecksum) {
+            MappedObjectCache.MappedObject mapped = mappedCache.get(fileId, fileName);
+            if (mapped != null)
+                try {
+                    return readMappedObject(mapped, objNo, offset, length, stripeSize, fileName);
+                } finally {
+                    mappedCache.release(fileId, mapped);
+                }
+        }
 
-        if (file.exists()) {
+        FileChannel f = handleCache.acquire(fileId, fileName, false);
 
-            RandomAccessFile f = new RandomAccessFile(file, "r");
+        if (f != null) {
 
-            final int flength = (int) f.length();
+            final int flength = (int) f.size();
 
             try {
                 if (flength == 0) {
@@ -278,11 +332,23 @@ public class HashStorageLayout extends StorageLayout {
 
                     if (lastoffset > flength) {
                         assert (flength - offset > 0);
-                        bbuf = BufferPool.allocate(flength - offset);
-                    } else {
-                        bbuf = BufferPool.allocate(length);
+                        lastoffset = flength;
                     }
 
+                    // with block checksums, all blocks touched by the range
+                    // are read, so that they can be verified
+                    final BlockChecksums blockChecksums = checksumBlockSize > 0 ? getBlockChecksums(md,
+                            getBlockChecksumsFile(fileName), objNo, version) : null;
+                    int readOffset = offset;
+                    int readEnd = lastoffset;
+                    if (blockChecksums != null) {
+                        final int blockSize = blockChecksums.getBlockSize();
+                        readOffset = offset / blockSize * blockSize;
+                        readEnd = (int) Math.min((lastoffset + (long) blockSize - 1) / blockSize * blockSize,
+                                flength);
+                    }
+                    bbuf = BufferPool.allocate(readEnd - readOffset);
+
                     for (int attempt = 0; attempt <= RETRIES_INCOMPLETE_READ; attempt++) {
                         if (attempt > 0) {
                             bbuf.position(0);
@@ -294,8 +360,7 @@ public class HashStorageLayout extends StorageLayout {
                                     attempt, RETRIES_INCOMPLETE_READ, fileName);
                         }
 
-                        f.getChannel().position(offset);
-                        f.getChannel().read(bbuf.getBuffer());
+                        f.read(bbuf.getBuffer(), readOffset);
                         if (Logging.isDebug()) {
                             Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
                                     "object %d is read at offset %d, %d bytes read, attempt: %d", objNo,
@@ -325,13 +390,36 @@ public class HashStorageLayout extends StorageLayout {
                         }
                     }
 
-                    f.close();
-
                     bbuf.position(0);
+
+                    boolean checksumInvalid = false;
+                    if (blockChecksums != null) {
+                        checksumInvalid = !verifyBlockChecksums(blockChecksums, readOffset, bbuf.getBuffer(), fileName);
+                        if (readOffset != offset || readEnd != lastoffset)
+                            bbuf.range(offset - readOffset, lastoffset - offset);
+                    }
+
                     ObjectInformation oInfo = new ObjectInformation(ObjectInformation.ObjectStatus.EXISTS,
                             bbuf, stripeSize);
+                    oInfo.setChecksumInvalidOnOSD(checksumInvalid);
+
+                    // only objects whose checksums are correct are mapped
+                    if (!checksumInvalid)
+                        mappedCache.read(fileId, fileName, f, flength, blockChecksums);
+
+                    // an object written with block checksums whose checksum
+                    // file has been lost cannot be verified
+                    if (blockChecksums == null && checksumBlockSize > 0 && oldChecksum == 0) {
+                        Logging.logMessage(Logging.LEVEL_WARN, Category.storage, this,
+                                "block checksum file of object %d is missing, the object cannot be verified. "
+                                        + "Path to the file on disk: %s", objNo, fileName);
+                        if (checkChecksum)
+                            oInfo.setChecksumInvalidOnOSD(true);
+                    }
 
-                    if (checkChecksum) {
+                    // objects without block checksums are verified by means
+                    // of the checksum in the file name, if there is one
+                    if (checkChecksum && blockChecksums == null && (checksumBlockSize == 0 || oldChecksum != 0)) {
                         ReusableBuffer bbufCopy = bbuf.createViewBuffer();
                         checksumAlgo.reset();
                         checksumAlgo.update(bbufCopy.getBuffer());
@@ -347,6 +435,9 @@ public class HashStorageLayout extends StorageLayout {
                     BufferPool.free(bbuf);
                 }
 
+                handleCache.discard(fileId, fileName, f);
+                f = null;
+
                 if (e instanceof IOException) {
                     Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
                             "Failed to read object file from disk. Error: %s Path to the file on disk: %s",
@@ -356,7 +447,9 @@ public class HashStorageLayout extends StorageLayout {
                     throw new IOException(e);
                 }
             } finally {
-                f.close();
+                if (f != null) {
+                    handleCache.release(fileId, fileName, f);
+                }
             }
 
         } else {
@@ -388,12 +481,14 @@ public class HashStorageLayout extends StorageLayout {
                     "writing object %s-%d to disk: %s", fileId, objNo, relPath);
         }
 
+        markObjectIndexDirty(md);
+
         try {
 
             final boolean isRangeWrite = (offset > 0)
                     || (data.capacity() < md.getStripingPolicy().getStripeSizeForObject(objNo));
             if (isRangeWrite) {
-                if (cow || checksumsEnabled) {
+                if (cow || hasObjectChecksum(md, objNo)) {
                     partialWriteCOW(relPath, fileId, md, data, offset, objNo, newVersion, sync, !cow);
                 } else {
                     partialWriteNoCOW(relPath, fileId, md, data, objNo, offset, newVersion, sync);
@@ -402,6 +497,8 @@ public class HashStorageLayout extends StorageLayout {
                 completeWrite(relPath, fileId, md, data, objNo, newVersion, sync, !cow);
             }
 
+            updateObjectIndex(md, objNo, cow);
+
         } catch (FileNotFoundException ex) {
             throw new IOException("unable to create file directory or object: " + ex.getMessage());
         }
@@ -416,11 +513,18 @@ public class HashStorageLayout extends StorageLayout {
 
         final long oldVersion = md.getLatestObjectVersion(objNo);
         final long oldChecksum = md.getObjectChecksum(objNo, oldVersion);
+        final int dataLength = data.capacity();
+
+        // the block checksums of the new version only differ from those of
+        // the old version in the written blocks
+        final BlockChecksums blockChecksums = checksumBlockSize > 0 ? getBlockChecksums(md,
+                getBlockChecksumsFile(relativePath, objNo, oldVersion), objNo, oldVersion) : null;
 
         ReusableBuffer fullObj = cow(fileId, md, objNo, data, offset, oldVersion);
 
         long newChecksum = 0;
-        if (checksumsEnabled) {
+        if (checksumsEnabled && checksumBlockSize == 0) {
+            fullObj.position(0);
             checksumAlgo.reset();
             checksumAlgo.update(fullObj.getBuffer());
             newChecksum = checksumAlgo.getValue();
@@ -430,31 +534,29 @@ public class HashStorageLayout extends StorageLayout {
         if (Logging.isDebug()) {
             Logging.logMessage(Logging.LEVEL_DEBUG, this, "writing to file (COW): %s", newFilename);
         }
-        File file = new File(newFilename);
-        String mode = sync ? "rwd" : "rw";
-        RandomAccessFile f = null;
-
         try {
-            f = new RandomAccessFile(file, mode);
             fullObj.position(0);
-            f.getChannel().write(fullObj.getBuffer());
+            writeToFile(fileId, newFilename, fullObj, 0, sync);
+            if (checksumBlockSize > 0) {
+                fullObj.position(0);
+                updateBlockChecksums(fileId, md, newFilename, objNo, newVersion, blockChecksums,
+                        fullObj.getBuffer(), offset, offset + dataLength, sync);
+            }
         } catch (IOException e) {
             Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
                     "Failed to write object file to disk. Error: %s Path to the file on disk: %s",
                     e.getMessage(), newFilename);
             throw e;
         } finally {
-            if (f != null) {
-                f.close();
-            }
             BufferPool.free(fullObj);
         }
 
         if (deleteOldVersion) {
             String oldFilename = generateAbsoluteObjectPathFromRelPath(relativePath, objNo, oldVersion,
                     oldChecksum);
-            File oldFile = new File(oldFilename);
-            oldFile.delete();
+            deleteObjectFile(fileId, oldFilename);
+            if (oldVersion != newVersion)
+                deleteBlockChecksums(oldFilename);
         }
 
         md.updateObjectVersion(objNo, newVersion);
@@ -464,37 +566,36 @@ public class HashStorageLayout extends StorageLayout {
     private void partialWriteNoCOW(String relativePath, String fileId, FileMetadata md, ReusableBuffer data,
             long objNo, int offset, long newVersion, boolean sync) throws IOException {
         // write file
-        assert (!checksumsEnabled);
+        assert (!checksumsEnabled || checksumBlockSize > 0);
 
         final long oldVersion = md.getLatestObjectVersion(objNo);
         final String filename = generateAbsoluteObjectPathFromRelPath(relativePath, objNo, oldVersion, 0l);
         if (Logging.isDebug()) {
             Logging.logMessage(Logging.LEVEL_DEBUG, this, "writing to file: %s", filename);
         }
-        File file = new File(filename);
-        String mode = sync ? "rwd" : "rw";
-        RandomAccessFile f = null;
-
         try {
-            f = new RandomAccessFile(file, mode);
             data.position(0);
-            f.seek(offset);
-            f.getChannel().write(data.getBuffer());
+            writeToFile(fileId, filename, data, offset, sync);
+            if (checksumBlockSize > 0) {
+                data.position(0);
+                updateBlockChecksums(fileId, md, filename, objNo, oldVersion, getBlockChecksums(md,
+                        getBlockChecksumsFile(filename), objNo, oldVersion), data.getBuffer(), offset, offset
+                        + data.capacity(), sync);
+            }
         } catch (IOException e) {
             Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
                     "Failed to write object file to disk. Error: %s Path to the file on disk: %s",
                     e.getMessage(), filename);
             throw e;
         } finally {
-            if (f != null) {
-                f.close();
-            }
             BufferPool.free(data);
         }
 
         if (newVersion != oldVersion) {
             String newFilename = generateAbsoluteObjectPathFromRelPath(relativePath, objNo, newVersion, 0l);
-            file.renameTo(new File(newFilename));
+            invalidateObjectFile(fileId, filename);
+            new File(filename).renameTo(new File(newFilename));
+            renameBlockChecksums(md, filename, newFilename, objNo, oldVersion, newVersion);
             if (Logging.isDebug()) {
                 Logging.logMessage(Logging.LEVEL_DEBUG, this, "renamed to: %s", newFilename);
             }
@@ -510,7 +611,8 @@ public class HashStorageLayout extends StorageLayout {
         final long oldChecksum = md.getObjectChecksum(objNo, oldVersion);
 
         long newChecksum = 0;
-        if (checksumsEnabled) {
+        if (checksumsEnabled && checksumBlockSize == 0) {
+            data.position(0);
             checksumAlgo.reset();
             checksumAlgo.update(data.getBuffer());
             newChecksum = checksumAlgo.getValue();
@@ -520,26 +622,25 @@ public class HashStorageLayout extends StorageLayout {
         if (Logging.isDebug()) {
             Logging.logMessage(Logging.LEVEL_DEBUG, this, "writing to file: %s", newFilename);
         }
-        File file = new File(newFilename);
-        String mode = sync ? "rwd" : "rw";
-        RandomAccessFile f = null;
-
         try {
-            f = new RandomAccessFile(file, mode);
             data.position(0);
-            f.getChannel().write(data.getBuffer());
-        } finally {
-            if (f != null) {
-                f.close();
+            writeToFile(fileId, newFilename, data, 0, sync);
+            if (checksumBlockSize > 0) {
+                // all blocks have been overwritten
+                data.position(0);
+                updateBlockChecksums(fileId, md, newFilename, objNo, newVersion, null, data.getBuffer(), 0,
+                        data.capacity(), sync);
             }
+        } finally {
             BufferPool.free(data);
         }
 
         if (((oldVersion != newVersion) || (newChecksum != oldChecksum)) && (deleteOldVersion)) {
             String oldFilename = generateAbsoluteObjectPathFromRelPath(relativePath, objNo, oldVersion,
                     oldChecksum);
-            File oldFile = new File(oldFilename);
-            oldFile.delete();
+            deleteObjectFile(fileId, oldFilename);
+            if (oldVersion != newVersion)
+                deleteBlockChecksums(oldFilename);
         }
 
         md.updateObjectVersion(objNo, newVersion);
@@ -583,10 +684,76 @@ public class HashStorageLayout extends StorageLayout {
         }
     }
 
+    @Override
+    public boolean supportsGroupCommit() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        return true;
+    }
+
+    @Override
+    public boolean requiresNewVersionForChecksums() {
+        // block checksums are updated in place
+        return checksumBlockSize == 0;
+    }
+
+    @Override
+    public void syncObjects(String fileId, FileMetadata md, long[] objNos, boolean syncDirectory)
+            throws IOException {
+
+        for (long objNo : objNos) {
+
+            // the object may have been deleted in the meantime
+            final long version = md.getLatestObjectVersion(objNo);
+            if (version == 0)
+                continue;
+
+            final String fileName = generateAbsoluteObjectPathFromFileId(fileId, objNo, version,
+                    md.getObjectChecksum(objNo, version));
+            FileChannel f = handleCache.acquire(fileId, fileName, false);
+            if (f == null)
+                continue;
+
+            try {
+                f.force(false);
+            } catch (IOException e) {
+                handleCache.discard(fileId, fileName, f);
+                throw e;
+            }
+            handleCache.release(fileId, fileName, f);
+
+            // the block checksums have been stored without being forced, as
+            // they have to be consistent with the object data after a crash
+            if (checksumBlockSize > 0)
+                forceFile(getBlockChecksumsFile(fileName));
+        }
+
+        // block checksum files are replaced by renaming them
+        if (syncDirectory || checksumBlockSize > 0) {
+            FileChannel dir = FileChannel.open(Paths.get(generateAbsoluteFilePath(fileId)), StandardOpenOption.READ);
+            try {
+                dir.force(true);
+            } finally {
+                dir.close();
+            }
+        }
+    }
+
     @Override
     public void truncateObject(String fileId, FileMetadata md, long objNo, int newLength, long newVersion,
             boolean cow) throws IOException {
 
+        markObjectIndexDirty(md);
+        truncateObjectFile(fileId, md, objNo, newLength, newVersion, cow);
+        updateObjectIndex(md, objNo, cow);
+    }
+
+    private void truncateObjectFile(String fileId, FileMetadata md, long objNo, int newLength, long newVersion,
+            boolean cow) throws IOException {
+
         final long oldVersion = md.getLatestObjectVersion(objNo);
         final long oldChecksum = md.getObjectChecksum(objNo, oldVersion);
 
@@ -602,7 +769,7 @@ public class HashStorageLayout extends StorageLayout {
             return;
         }
 
-        if (cow || checksumsEnabled) {
+        if (cow || hasObjectChecksum(md, objNo)) {
             ReusableBuffer oldData = unwrapObjectData(fileId, md, objNo, oldVersion);
 
             if (newLength < oldData.capacity()) {
@@ -619,14 +786,16 @@ public class HashStorageLayout extends StorageLayout {
             oldData.position(0);
 
             long newChecksum = 0l;
-            if (checksumsEnabled) {
+            if (checksumsEnabled && checksumBlockSize == 0) {
                 // calc checksum
                 checksumAlgo.update(oldData.getBuffer());
                 newChecksum = checksumAlgo.getValue();
             }
 
             if (!cow) {
-                oldFile.delete();
+                deleteObjectFile(fileId, oldFileName);
+                if (oldVersion != newVersion)
+                    deleteBlockChecksums(oldFileName);
                 if (Logging.isDebug()) {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
                             "truncate object %d, delete old version %d: %s", objNo, oldVersion, oldFileName);
@@ -634,10 +803,16 @@ public class HashStorageLayout extends StorageLayout {
             }
 
             String newFilename = generateAbsoluteObjectPathFromFileId(fileId, objNo, newVersion, newChecksum);
+            mappedCache.invalidate(fileId, newFilename);
             RandomAccessFile raf = null;
             try {
                 raf = new RandomAccessFile(newFilename, mode);
                 raf.getChannel().write(oldData.getBuffer());
+                if (checksumBlockSize > 0) {
+                    oldData.position(0);
+                    updateBlockChecksums(fileId, md, newFilename, objNo, newVersion, null, oldData.getBuffer(), 0,
+                            newLength, false);
+                }
             } finally {
                 if (raf != null) {
                     raf.close();
@@ -656,6 +831,7 @@ public class HashStorageLayout extends StorageLayout {
 
         } else {
             // just make the object shorter
+            mappedCache.invalidate(fileId, oldFileName);
             RandomAccessFile raf = null;
             try {
                 raf = new RandomAccessFile(oldFile, mode);
@@ -665,9 +841,12 @@ public class HashStorageLayout extends StorageLayout {
                     raf.close();
                 }
             }
+            String newFilename = oldFileName;
             if (newVersion != oldVersion) {
-                String newFilename = generateAbsoluteObjectPathFromFileId(fileId, objNo, newVersion, 0l);
+                newFilename = generateAbsoluteObjectPathFromFileId(fileId, objNo, newVersion, 0l);
+                invalidateObjectFile(fileId, oldFileName);
                 oldFile.renameTo(new File(newFilename));
+                renameBlockChecksums(md, oldFileName, newFilename, objNo, oldVersion, newVersion);
                 md.updateObjectVersion(objNo, newVersion);
                 if (Logging.isDebug()) {
                     Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
@@ -675,6 +854,13 @@ public class HashStorageLayout extends StorageLayout {
                             newFilename);
                 }
             }
+
+            // only the new last block and the blocks beyond the old end of
+            // the object have changed
+            if (checksumBlockSize > 0)
+                updateBlockChecksums(fileId, md, newFilename, objNo, newVersion, getBlockChecksums(md,
+                        getBlockChecksumsFile(newFilename), objNo, newVersion), null, (int) Math.min(newLength,
+                        currentLength), newLength, false);
         }
     }
 
@@ -689,14 +875,18 @@ public class HashStorageLayout extends StorageLayout {
 
         // calculate the checksum for the padding object if necessary
         long checksum = 0;
-        if (checksumAlgo != null) {
+        if (checksumAlgo != null && checksumBlockSize == 0) {
             byte[] content = new byte[size];
             checksumAlgo.update(ByteBuffer.wrap(content));
             checksum = checksumAlgo.getValue();
         }
 
         // write file
+        final long oldVersion = md.getLargestObjectVersion(objNo);
+        markObjectIndexDirty(md);
+
         String filename = generateAbsoluteObjectPathFromRelPath(relPath, objNo, version, checksum);
+        mappedCache.invalidate(fileId, filename);
         RandomAccessFile raf = null;
         try {
             raf = new RandomAccessFile(filename, "rw");
@@ -707,15 +897,29 @@ public class HashStorageLayout extends StorageLayout {
             }
         }
 
+        if (checksumBlockSize > 0)
+            updateBlockChecksums(fileId, md, filename, objNo, version, null, null, 0, size, false);
+
         md.updateObjectVersion(objNo, version);
 
         if (checksumsEnabled)
             md.updateObjectChecksum(objNo, version, checksum);
+
+        // a previous version of the object is not overwritten
+        updateObjectIndex(md, objNo, oldVersion != 0 && oldVersion != version);
     }
 
     @Override
     public void deleteFile(String fileId, final boolean deleteMetadata) throws IOException {
-        File fileDir = new File(generateAbsoluteFilePath(fileId));
+        final String fileDirPath = generateAbsoluteFilePath(fileId);
+        File fileDir = new File(fileDirPath);
+
+        handleCache.invalidateAll(fileId, fileDirPath);
+        mappedCache.invalidateAll(fileId, fileDirPath);
+
+        // the object index refers to the objects, so it has to be deleted in
+        // any case
+        new File(fileDir, OBJECT_INDEX_FILENAME).delete();
 
         // Filter metadata from the fileList, if deleteMetadata is not set.
         File[] fileList = fileDir.listFiles(new FileFilter() {
@@ -747,7 +951,7 @@ public class HashStorageLayout extends StorageLayout {
     }
 
     public boolean isMetadataFile(File pathname) {
-        return pathname.getName().startsWith(".");
+        return pathname.getName().startsWith(".") && !pathname.getName().startsWith(BLOCK_CHECKSUMS_PREFIX);
     }
 
     private void del(File parent) {
@@ -774,9 +978,25 @@ public class HashStorageLayout extends StorageLayout {
                 return (ofd.objNo == objNo) && (ofd.objVersion == verToDel);
             }
         });
+
+        markObjectIndexDirty(md);
         for (File obj : objs) {
+            invalidateObjectFile(fileId, fileDir.getPath() + "/" + obj.getName());
             obj.delete();
         }
+        if (checksumBlockSize > 0) {
+            new File(fileDir, getBlockChecksumsFileName(objNo, verToDel)).delete();
+            md.discardBlockChecksums(objNo, verToDel);
+        }
+
+        // the index only contains the largest version of each object
+        ObjectIndex index = md.getObjectIndex();
+        if (index != null) {
+            if (verToDel == md.getLargestObjectVersion(objNo))
+                index.setObject(objNo, 0, 0);
+            else
+                index.invalidate();
+        }
     }
 
     @Override
@@ -797,9 +1017,9 @@ public class HashStorageLayout extends StorageLayout {
         // file exists already ...
         if (fileDir.exists()) {
 
-            Map<Long, Long> largestObjVersions = new HashMap<Long, Long>();
-            Map<Long, Map<Long, Long>> objChecksums = new HashMap<Long, Map<Long, Long>>();
-            Map<Long, Long> latestObjVersions = null;
+            ObjectNumberMap largestObjVersions = info.createObjectNumberMap();
+            ObjectNumberMap latestObjVersions = null;
+            info.initObjectChecksums();
 
             long lastObjNum = -1;
             String lastObject = null;
@@ -812,7 +1032,7 @@ public class HashStorageLayout extends StorageLayout {
             // file
             if (multiVersionSupport) {
 
-                latestObjVersions = new HashMap<Long, Long>();
+                latestObjVersions = info.createObjectNumberMap();
 
                 RandomAccessFile rf = new RandomAccessFile(currVerFile, "r");
                 for (long l = 0;; l++) {
@@ -830,46 +1050,82 @@ public class HashStorageLayout extends StorageLayout {
                 rf.close();
             }
 
-            // determine the largest object versions, as well as all checksums
-            String[] objs = fileDir.list();
-            for (String obj : objs) {
+            // try to load the object versions and checksums from the object
+            // index, which only exists for files without multiple versions
+            ObjectIndex index = null;
+            File indexFile = new File(fileDir, OBJECT_INDEX_FILENAME);
+            if (objectIndexEnabled && !multiVersionSupport) {
+
+                index = ObjectIndex.load(indexFile, info, largestObjVersions);
+                if (index != null) {
+                    lastObjNum = largestObjVersions.getLargestKey();
+                    if (lastObjNum > -1) {
+                        long lastObjVer = largestObjVersions.get(lastObjNum, 0);
+                        lastObject = createFileName(lastObjNum, lastObjVer,
+                                info.getObjectChecksum(lastObjNum, lastObjVer));
+                    }
 
-                if (obj.startsWith(".")) {
-                    continue; // ignore special files (metadata, .tepoch)
+                    // verify the index by means of the last object, which is
+                    // needed to determine the file size anyway
+                    if (lastObject != null && !new File(fileDir, lastObject).exists()) {
+                        Logging.logMessage(Logging.LEVEL_WARN, Category.storage, this,
+                                "object index of file %s is outdated, rebuilding it", fileId);
+                        index.invalidate();
+                        index = null;
+
+                        // discard everything that was read from the index
+                        info = new FileMetadata(sp);
+                        info.initObjectChecksums();
+                        largestObjVersions = info.createObjectNumberMap();
+                        lastObjNum = -1;
+                        lastObject = null;
+                    }
                 }
+            }
 
-                ObjFileData ofd = parseFileName(obj);
+            if (index == null) {
 
-                // determine the checksum
-                if (ofd.checksum != 0) {
+                // determine the largest object versions, as well as all
+                // checksums
+                int numObjFiles = 0;
+                String[] objs = fileDir.list();
+                for (String obj : objs) {
 
-                    Map<Long, Long> checksums = objChecksums.get(ofd.objNo);
-                    if (checksums == null) {
-                        checksums = new HashMap<Long, Long>();
-                        objChecksums.put(ofd.objNo, checksums);
+                    if (obj.startsWith(".")) {
+                        continue; // ignore special files (metadata, .tepoch)
                     }
 
-                    checksums.put(ofd.objVersion, ofd.checksum);
-                }
+                    ObjFileData ofd = parseFileName(obj);
 
-                // determine the last object
-                if (multiVersionSupport) {
-                    Long latestObjVer = latestObjVersions.get(ofd.objNo);
-                    if (ofd.objNo == lastObjNum && latestObjVer != null && ofd.objVersion == latestObjVer)
-                        lastObject = obj;
-                }
+                    // determine the checksum
+                    if (ofd.checksum != 0)
+                        info.updateObjectChecksum(ofd.objNo, ofd.objVersion, ofd.checksum);
 
-                else {
-                    if (ofd.objNo > lastObjNum) {
-                        lastObject = obj;
-                        lastObjNum = ofd.objNo;
+                    // determine the last object
+                    if (multiVersionSupport) {
+                        if (ofd.objNo == lastObjNum && ofd.objVersion == latestObjVersions.get(ofd.objNo, -1))
+                            lastObject = obj;
                     }
+
+                    else {
+                        if (ofd.objNo > lastObjNum) {
+                            lastObject = obj;
+                            lastObjNum = ofd.objNo;
+                        }
+                    }
+
+                    // determine the largest object version
+                    if (largestObjVersions.get(ofd.objNo, -1) < ofd.objVersion)
+                        largestObjVersions.put(ofd.objNo, ofd.objVersion);
+                    numObjFiles++;
                 }
 
-                // determine the largest object version
-                Long oldver = largestObjVersions.get(ofd.objNo);
-                if ((oldver == null) || (oldver < ofd.objVersion))
-                    largestObjVersions.put(ofd.objNo, ofd.objVersion);
+                // (re)build the index, unless it cannot represent the file
+                // because of multiple versions per object
+                if (objectIndexEnabled && !multiVersionSupport && numObjFiles == largestObjVersions.size())
+                    index = ObjectIndex.create(indexFile, info, largestObjVersions);
+                else
+                    indexFile.delete();
             }
 
             if (multiVersionSupport) {
@@ -889,7 +1145,6 @@ public class HashStorageLayout extends StorageLayout {
                 info.initLargestObjectVersions(largestObjVersions);
             }
 
-            info.initObjectChecksums(objChecksums);
 
             // determine filesize from lastObjectNumber
             if (lastObjNum > -1) {
@@ -933,6 +1188,7 @@ public class HashStorageLayout extends StorageLayout {
                 vt.load();
 
             info.initVersionTable(vt);
+            info.setObjectIndex(index);
 
         }
 
@@ -940,9 +1196,9 @@ public class HashStorageLayout extends StorageLayout {
         else {
             info.setFilesize(0);
             info.setLastObjectNumber(-1);
-            info.initLatestObjectVersions(new HashMap<Long, Long>());
-            info.initLargestObjectVersions(new HashMap<Long, Long>());
-            info.initObjectChecksums(new HashMap<Long, Map<Long, Long>>());
+            info.initLatestObjectVersions(info.createObjectNumberMap());
+            info.initLargestObjectVersions(info.createObjectNumberMap());
+            info.initObjectChecksums();
             info.initVersionTable(new VersionTable(new File(fileDir, VTABLE_FILENAME)));
         }
 
@@ -950,6 +1206,341 @@ public class HashStorageLayout extends StorageLayout {
         return info;
     }
 
+    @Override
+    public void closeFile(String fileId, FileMetadata metadata) {
+
+        // mappings must not outlive the file, as it may be truncated or
+        // deleted in the meantime
+        final String fileDirPath = generateAbsoluteFilePath(fileId);
+        handleCache.invalidateAll(fileId, fileDirPath);
+        mappedCache.invalidateAll(fileId, fileDirPath);
+
+        ObjectIndex index = metadata == null ? null : metadata.getObjectIndex();
+        if (index == null)
+            return;
+
+        try {
+            index.close();
+        } catch (IOException exc) {
+            // the index remains dirty and will be rebuilt with the next load
+            Logging.logMessage(Logging.LEVEL_WARN, Category.storage, this, "could not close object index: %s",
+                    exc.toString());
+        }
+    }
+
+    /**
+     * Writes data to an object file at the given offset, creating the file if necessary.
+     *
+     * @param sync
+     *            if <code>true</code>, the data is forced to the storage device before the method returns
+     */
+    private void writeToFile(String fileId, String filename, ReusableBuffer data, long offset, boolean sync)
+            throws IOException {
+
+        mappedCache.invalidate(fileId, filename);
+        FileChannel f = handleCache.acquire(fileId, filename, true);
+        try {
+            ByteBuffer buf = data.getBuffer();
+            while (buf.hasRemaining())
+                offset += f.write(buf, offset);
+            if (sync)
+                f.force(false);
+        } catch (IOException e) {
+            handleCache.discard(fileId, filename, f);
+            throw e;
+        }
+        handleCache.release(fileId, filename, f);
+    }
+
+    /**
+     * Closes any cached handle of an object file and drops its mapping. Must be invoked before the file is renamed or
+     * deleted.
+     */
+    private void invalidateObjectFile(String fileId, String filename) {
+        handleCache.invalidate(fileId, filename);
+        mappedCache.invalidate(fileId, filename);
+    }
+
+    /**
+     * Deletes an object file and closes any cached handle of it.
+     */
+    private void deleteObjectFile(String fileId, String filename) {
+        invalidateObjectFile(fileId, filename);
+        new File(filename).delete();
+    }
+
+    /**
+     * Checks whether the checksum of an object is encoded in the name of its file, so that each modification of the
+     * object requires a new object file. With block checksums, this is only the case for objects that have been
+     * written before block checksums were enabled.
+     */
+    private boolean hasObjectChecksum(FileMetadata md, long objNo) {
+        if (!checksumsEnabled)
+            return false;
+        return checksumBlockSize == 0 || md.getObjectChecksum(objNo, md.getLatestObjectVersion(objNo)) != 0;
+    }
+
+    /**
+     * Recomputes the block checksums of an object file after the range <code>[start, end)</code> of it has been
+     * modified, and stores them. Blocks that are entirely contained in the given data are hashed from memory, all
+     * other modified blocks are read from the object file.
+     *
+     * @param version
+     *            the version of the object file
+     * @param oldChecksums
+     *            the checksums of the object before the modification, which remain unchanged, or <code>null</code>
+     *            if all blocks have to be computed
+     * @param data
+     *            the new content of the object file at <code>start</code>, or <code>null</code>
+     */
+    private void updateBlockChecksums(String fileId, FileMetadata md, String filename, long objNo, long version,
+            BlockChecksums oldChecksums, ByteBuffer data, int start, int end, boolean sync) throws IOException {
+
+        final int dataEnd = data == null ? start : start + data.remaining();
+        final boolean computeAll = oldChecksums == null || oldChecksums.isDamaged();
+        final BlockChecksums blockChecksums = computeAll ? new BlockChecksums(checksumBlockSize, version)
+                : oldChecksums.copy(version);
+
+        final int oldNumBlocks = blockChecksums.getNumBlocks();
+        final int blockSize = blockChecksums.getBlockSize();
+
+        ChecksumAlgorithm algorithm = null;
+        ReusableBuffer blockBuf = null;
+        FileChannel f = handleCache.acquire(fileId, filename, false);
+        if (f == null)
+            throw new FileNotFoundException("object file does not exist: " + filename);
+        try {
+            final long length = f.size();
+            final int numBlocks = blockChecksums.getNumBlocks(length);
+            blockChecksums.setNumBlocks(numBlocks);
+
+            // if the object was extended, its former last block has changed
+            // as well
+            final int firstBlock = computeAll ? 0 : Math.min(start / blockSize, Math.max(oldNumBlocks - 1, 0));
+            final int lastBlock = computeAll ? numBlocks - 1 : Math.min(blockChecksums.getNumBlocks(end),
+                    numBlocks) - 1;
+
+            algorithm = ChecksumFactory.getInstance().getAlgorithm(checksumAlgo.getName());
+            for (int blockNo = firstBlock; blockNo <= lastBlock; blockNo++) {
+
+                final long blockStart = (long) blockNo * blockSize;
+                final int blockLength = (int) Math.min(blockSize, length - blockStart);
+
+                if (blockStart >= start && blockStart + blockLength <= dataEnd) {
+                    ByteBuffer block = data.duplicate();
+                    block.position(data.position() + (int) (blockStart - start));
+                    block.limit(block.position() + blockLength);
+                    blockChecksums.update(algorithm, blockNo, block);
+
+                } else {
+                    if (blockBuf == null)
+                        blockBuf = BufferPool.allocate(blockSize);
+                    ByteBuffer block = blockBuf.getBuffer();
+                    block.clear();
+                    block.limit(blockLength);
+                    while (block.hasRemaining())
+                        if (f.read(block, blockStart + block.position()) == -1)
+                            throw new IOException(ERROR_MESSAGE_INCOMPLETE_READ);
+                    block.flip();
+                    blockChecksums.update(algorithm, blockNo, block);
+                }
+            }
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } catch (IOException e) {
+            handleCache.discard(fileId, filename, f);
+            f = null;
+            throw e;
+        } finally {
+            if (f != null)
+                handleCache.release(fileId, filename, f);
+            if (algorithm != null)
+                ChecksumFactory.getInstance().returnAlgorithm(algorithm);
+            BufferPool.free(blockBuf);
+        }
+
+        blockChecksums.store(getBlockChecksumsFile(filename), sync);
+        md.setBlockChecksums(objNo, blockChecksums);
+    }
+
+    /**
+     * Returns the block checksums of an object file, which are cached if the file contains the latest version of the
+     * object.
+     *
+     * @return the checksums, or <code>null</code> if there is no checksum file
+     */
+    private BlockChecksums getBlockChecksums(FileMetadata md, File file, long objNo, long version)
+            throws IOException {
+
+        BlockChecksums blockChecksums = md.getBlockChecksums(objNo, version);
+        if (blockChecksums != null)
+            return blockChecksums;
+
+        blockChecksums = BlockChecksums.load(file, checksumBlockSize, version);
+        if (blockChecksums != null && version == md.getLatestObjectVersion(objNo))
+            md.setBlockChecksums(objNo, blockChecksums);
+        return blockChecksums;
+    }
+
+    /**
+     * Renames the block checksum file of an object file that has been renamed for a new version of the object.
+     */
+    private void renameBlockChecksums(FileMetadata md, String oldFilename, String newFilename, long objNo,
+            long oldVersion, long newVersion) {
+        if (checksumBlockSize == 0)
+            return;
+
+        getBlockChecksumsFile(oldFilename).renameTo(getBlockChecksumsFile(newFilename));
+        BlockChecksums blockChecksums = md.getBlockChecksums(objNo, oldVersion);
+        if (blockChecksums != null)
+            md.setBlockChecksums(objNo, blockChecksums.copy(newVersion));
+    }
+
+    /**
+     * Reads an object from its mapping. Since zero-length files are never mapped, the object cannot be a padding
+     * object.
+     */
+    private ObjectInformation readMappedObject(MappedObjectCache.MappedObject mapped, long objNo, int offset,
+            int length, int stripeSize, String fileName) throws IOException {
+
+        final int flength = mapped.getLength();
+        if (flength <= offset) {
+            if (Logging.isDebug()) {
+                Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
+                        "object %d is read at an offset beyond its size", objNo);
+            }
+            return new ObjectInformation(ObjectInformation.ObjectStatus.EXISTS, BufferPool.allocate(0), stripeSize);
+        }
+
+        final int lastoffset = Math.min(offset + length, flength);
+        ByteBuffer data = mapped.getData();
+
+        boolean checksumInvalid = false;
+        final BlockChecksums blockChecksums = mapped.getBlockChecksums();
+        if (blockChecksums != null) {
+            final int blockSize = blockChecksums.getBlockSize();
+            data.limit((int) Math.min((lastoffset + (long) blockSize - 1) / blockSize * blockSize, flength));
+            data.position(offset / blockSize * blockSize);
+            checksumInvalid = !verifyBlockChecksums(blockChecksums, data.position(), data, fileName);
+        }
+
+        data.limit(lastoffset);
+        data.position(offset);
+        ReusableBuffer bbuf = BufferPool.allocate(lastoffset - offset);
+        bbuf.put(data);
+        bbuf.position(0);
+
+        if (Logging.isDebug()) {
+            Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
+                    "object %d is read from memory at offset %d, %d bytes read", objNo, offset, bbuf.limit());
+        }
+
+        ObjectInformation oInfo = new ObjectInformation(ObjectInformation.ObjectStatus.EXISTS, bbuf, stripeSize);
+        oInfo.setChecksumInvalidOnOSD(checksumInvalid);
+        return oInfo;
+    }
+
+    /**
+     * Verifies the blocks of an object that have been read.
+     *
+     * @param data
+     *            the blocks between position and limit, starting at <code>offset</code> of the object
+     * @return <code>true</code>, if all checksums are correct
+     */
+    private boolean verifyBlockChecksums(BlockChecksums blockChecksums, int offset, ByteBuffer data,
+            String filename) throws IOException {
+
+        ChecksumAlgorithm algorithm = null;
+        try {
+            algorithm = ChecksumFactory.getInstance().getAlgorithm(checksumAlgo.getName());
+            final int blockNo = blockChecksums.verify(algorithm, offset / blockChecksums.getBlockSize(), data);
+            if (blockNo == -1)
+                return true;
+
+            Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
+                    "invalid checksum of block %d (block size %d). Path to the file on disk: %s", blockNo,
+                    blockChecksums.getBlockSize(), filename);
+            return false;
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            if (algorithm != null)
+                ChecksumFactory.getInstance().returnAlgorithm(algorithm);
+        }
+    }
+
+    private File getBlockChecksumsFile(String objectFilename) {
+        File objFile = new File(objectFilename);
+        ObjFileData ofd = parseFileName(objFile.getName());
+        return new File(objFile.getParentFile(), getBlockChecksumsFileName(ofd.objNo, ofd.objVersion));
+    }
+
+    private File getBlockChecksumsFile(String relativeFilePath, long objNo, long version) {
+        return new File(this.storageDir + relativeFilePath + getBlockChecksumsFileName(objNo, version));
+    }
+
+    private static String getBlockChecksumsFileName(long objNo, long version) {
+        return BLOCK_CHECKSUMS_PREFIX + createFileName(objNo, version, 0);
+    }
+
+    /**
+     * Forces a file that is not kept open to the storage device, if it exists.
+     */
+    private static void forceFile(File file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Deletes the block checksums of an object file, if they exist.
+     */
+    private void deleteBlockChecksums(String objectFilename) {
+        if (checksumBlockSize > 0)
+            getBlockChecksumsFile(objectFilename).delete();
+    }
+
+    /**
+     * Marks the object index of a file dirty before one of its object files is modified.
+     */
+    private void markObjectIndexDirty(FileMetadata md) throws IOException {
+        ObjectIndex index = md.getObjectIndex();
+        if (index != null)
+            index.markDirty();
+    }
+
+    /**
+     * Records the current version and checksum of an object in the object index of its file after the object file
+     * has been modified.
+     *
+     * @param cow
+     *            <code>true</code>, if a new version of the object has been created, which cannot be represented by
+     *            the index
+     */
+    private void updateObjectIndex(FileMetadata md, long objNo, boolean cow) throws IOException {
+        ObjectIndex index = md.getObjectIndex();
+        if (index == null)
+            return;
+
+        if (cow) {
+            index.invalidate();
+            return;
+        }
+
+        final long version = md.getLargestObjectVersion(objNo);
+        index.setObject(objNo, version, version == 0 ? 0 : md.getObjectChecksum(objNo, version));
+    }
+
     @Override
     public void setTruncateEpoch(String fileId, long newTruncateEpoch) throws IOException {
         File parent = new File(generateAbsoluteFilePath(fileId));
@@ -1019,7 +1610,10 @@ public class HashStorageLayout extends StorageLayout {
 
     private String generateRelativeFilePath(String fileId) {
         if (USE_PATH_CACHE) {
-            String cached = hashedPathCache.get(fileId);
+            String cached;
+            synchronized (hashedPathCache) {
+                cached = hashedPathCache.get(fileId);
+            }
             if (cached != null)
                 return cached;
         }
@@ -1029,7 +1623,9 @@ public class HashStorageLayout extends StorageLayout {
         path.append("/");
         final String pathStr = path.toString();
         if (USE_PATH_CACHE) {
-            hashedPathCache.put(fileId, pathStr);
+            synchronized (hashedPathCache) {
+                hashedPathCache.put(fileId, pathStr);
+            }
         }
         return pathStr;
     }
@@ -1080,6 +1676,14 @@ public class HashStorageLayout extends StorageLayout {
         }
     }
 
+    public FileHandleCache getFileHandleCache() {
+        return handleCache;
+    }
+
+    public MappedObjectCache getMappedObjectCache() {
+        return mappedCache;
+    }
+
     @Override
     public long getFileInfoLoadCount() {
         return _stat_fileInfoLoads;
@@ -1385,7 +1989,10 @@ public class HashStorageLayout extends StorageLayout {
 
     @Override
     public XLocSetVersionState getXLocSetVersionState(String fileId) throws IOException {
-        XLocSetVersionState state = xLocSetVSCache.get(fileId);
+        XLocSetVersionState state;
+        synchronized (xLocSetVSCache) {
+            state = xLocSetVSCache.get(fileId);
+        }
 
         if (state == null) {
             File fileDir = new File(generateAbsoluteFilePath(fileId));
@@ -1413,7 +2020,9 @@ public class HashStorageLayout extends StorageLayout {
             }
 
             // Cache the version state.
-            xLocSetVSCache.put(fileId, state);
+            synchronized (xLocSetVSCache) {
+                xLocSetVSCache.put(fileId, state);
+            }
         }
 
         return state;
@@ -1431,7 +2040,9 @@ public class HashStorageLayout extends StorageLayout {
         try {
             output = new FileOutputStream(vsFile);
             versionState.writeDelimitedTo(output);
-            xLocSetVSCache.put(fileId, versionState);
+            synchronized (xLocSetVSCache) {
+                xLocSetVSCache.put(fileId, versionState);
+            }
         } finally {
             if (output != null) {
                 output.close();
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+
+/**
+ * A bounded cache of memory-mapped object files, keyed by the absolute path of the file. Reads of cached objects are
+ * served from memory, without any system call.
+ * <p>
+ * Only small objects that are read repeatedly are mapped: an object file is mapped when it is read for the second
+ * time within a short period, i.e. while its path is still contained in a list of recently read files. Like the
+ * {@link FileHandleCache}, the cache is partitioned into stripes by the file ID, each of which holds an LRU list of
+ * mappings and is bounded by its share of the memory budget.
+ * <p>
+ * A mapping reflects the content of its file, but not changes of its size, and accessing a mapping beyond the end of
+ * a truncated file crashes the process. Hence, {@link #invalidate(String, String)} must be invoked before an object
+ * file is modified, renamed or deleted, and {@link #invalidateAll(String, String)} when a file is closed or deleted.
+ * Mappings that have been dropped are unmapped as soon as no read is in progress on them, rather than when they are
+ * garbage collected; reads must therefore return a mapping with {@link #release(String, MappedObject)}.
+ */
+public class MappedObjectCache {
+
+    /**
+     * unmaps a mapped buffer; <code>null</code> if explicit unmapping is not supported by the JVM
+     */
+    private static final Method  INVOKE_CLEANER;
+
+    private static final Object  UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception exc) {
+            Logging.logMessage(Logging.LEVEL_WARN, Category.storage, MappedObjectCache.class,
+                    "mapped object files cannot be unmapped explicitly, they are unmapped when garbage collected: %s",
+                    exc.toString());
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    /**
+     * A mapped object file.
+     */
+    public static final class MappedObject {
+
+        private final ByteBuffer     data;
+
+        private final BlockChecksums blockChecksums;
+
+        /**
+         * number of reads in progress
+         */
+        // JCIP @GuardedBy("stripe")
+        int                          refCount;
+
+        /**
+         * <code>true</code>, if the mapping has been removed from the cache
+         */
+        // JCIP @GuardedBy("stripe")
+        boolean                      dropped;
+
+        MappedObject(ByteBuffer data, BlockChecksums blockChecksums) {
+            this.data = data;
+            this.blockChecksums = blockChecksums;
+        }
+
+        /**
+         * @return a read-only view of the content of the object file, which must not be accessed after the mapping
+         *         has been released
+         */
+        public ByteBuffer getData() {
+            return data.duplicate();
+        }
+
+        public int getLength() {
+            return data.capacity();
+        }
+
+        /**
+         * @return the block checksums of the object, or <code>null</code>
+         */
+        public BlockChecksums getBlockChecksums() {
+            return blockChecksums;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, MappedObject> {
+
+        private static final long                  serialVersionUID = -6513283052412453014L;
+
+        private static final int                   MAX_CANDIDATES   = 1024;
+
+        private final long                         maxBytes;
+
+        long                                       bytes;
+
+        /**
+         * paths of recently read files that have not been mapped yet
+         */
+        final LinkedHashMap<String, Boolean>       candidates;
+
+        Stripe(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+            this.candidates = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                private static final long serialVersionUID = 4366421346108735282L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_CANDIDATES;
+                }
+            };
+        }
+
+        void evict(List<MappedObject> unmapped) {
+            for (Iterator<MappedObject> it = values().iterator(); bytes > maxBytes && it.hasNext();) {
+                MappedObject obj = it.next();
+                it.remove();
+                drop(obj, unmapped);
+            }
+        }
+
+        /**
+         * Accounts for a mapping that has been removed from the cache, and adds it to the given list if no read is in
+         * progress on it.
+         */
+        void drop(MappedObject obj, List<MappedObject> unmapped) {
+            bytes -= obj.getLength();
+            obj.dropped = true;
+            if (obj.refCount == 0)
+                unmapped.add(obj);
+        }
+    }
+
+    private final Stripe[]   stripes;
+
+    private final int        maxObjectSize;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong mappings;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            the maximum number of bytes of all mapped object files; 0 disables the cache
+     * @param maxObjectSize
+     *            the maximum size of a mapped object file
+     * @param numStripes
+     *            the number of stripes, which should be equal to the number of storage threads
+     */
+    public MappedObjectCache(long maxBytes, int maxObjectSize, int numStripes) {
+
+        numStripes = Math.max(1, numStripes);
+        this.stripes = new Stripe[maxBytes > 0 && maxObjectSize > 0 ? numStripes : 0];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe(maxBytes / numStripes);
+
+        this.maxObjectSize = maxObjectSize;
+        this.hits = new AtomicLong();
+        this.mappings = new AtomicLong();
+    }
+
+    /**
+     * @return <code>true</code>, if object files are mapped at all
+     */
+    public boolean isEnabled() {
+        return stripes.length > 0;
+    }
+
+    /**
+     * Returns the mapping of an object file. A mapping that has been returned has to be released with
+     * {@link #release(String, MappedObject)} once it is no longer accessed.
+     *
+     * @return the mapping, or <code>null</code> if the file is not mapped
+     */
+    public MappedObject get(String fileId, String path) {
+
+        if (stripes.length == 0)
+            return null;
+
+        Stripe stripe = getStripe(fileId);
+        MappedObject obj;
+        synchronized (stripe) {
+            obj = stripe.get(path);
+            if (obj != null)
+                obj.refCount++;
+        }
+        if (obj != null)
+            hits.incrementAndGet();
+        return obj;
+    }
+
+    /**
+     * Releases a mapping that has been returned by {@link #get(String, String)}. The mapping is unmapped if it has
+     * been dropped from the cache in the meantime.
+     */
+    public void release(String fileId, MappedObject obj) {
+
+        Stripe stripe = getStripe(fileId);
+        boolean unmap;
+        synchronized (stripe) {
+            unmap = --obj.refCount == 0 && obj.dropped;
+        }
+        if (unmap)
+            unmap(obj);
+    }
+
+    /**
+     * Records that an object file that is not mapped has been read, and maps it if it has been read recently as
+     * well.
+     *
+     * @param channel
+     *            an open channel of the object file
+     * @param length
+     *            the current length of the object file
+     * @param blockChecksums
+     *            the block checksums of the object, or <code>null</code>
+     */
+    public void read(String fileId, String path, FileChannel channel, long length, BlockChecksums blockChecksums) {
+
+        if (stripes.length == 0 || length == 0 || length > maxObjectSize)
+            return;
+
+        Stripe stripe = getStripe(fileId);
+        synchronized (stripe) {
+            if (stripe.candidates.put(path, Boolean.TRUE) == null)
+                return;
+            stripe.candidates.remove(path);
+        }
+
+        ByteBuffer data;
+        try {
+            data = channel.map(MapMode.READ_ONLY, 0, length);
+        } catch (IOException exc) {
+            Logging.logMessage(Logging.LEVEL_WARN, Category.storage, this, "could not map object file %s: %s", path,
+                    exc.toString());
+            return;
+        }
+        mappings.incrementAndGet();
+
+        MappedObject obj = new MappedObject(data, blockChecksums);
+        List<MappedObject> unmapped = new ArrayList<MappedObject>(1);
+        synchronized (stripe) {
+            MappedObject old = stripe.put(path, obj);
+            stripe.bytes += obj.getLength();
+            if (old != null)
+                stripe.drop(old, unmapped);
+            stripe.evict(unmapped);
+        }
+        unmap(unmapped);
+    }
+
+    /**
+     * Drops the mapping of an object file, if any. Must be invoked before the file is modified, renamed or deleted.
+     */
+    public void invalidate(String fileId, String path) {
+
+        if (stripes.length == 0)
+            return;
+
+        Stripe stripe = getStripe(fileId);
+        List<MappedObject> unmapped = new ArrayList<MappedObject>(1);
+        synchronized (stripe) {
+            MappedObject obj = stripe.remove(path);
+            if (obj != null)
+                stripe.drop(obj, unmapped);
+            stripe.candidates.remove(path);
+        }
+        unmap(unmapped);
+    }
+
+    /**
+     * Drops the mappings of all files in a directory.
+     *
+     * @param fileId
+     *            the ID of the file the object files belong to
+     * @param dirPath
+     *            the absolute path of the directory, ending with a separator
+     */
+    public void invalidateAll(String fileId, String dirPath) {
+
+        if (stripes.length == 0)
+            return;
+
+        Stripe stripe = getStripe(fileId);
+        List<MappedObject> unmapped = new ArrayList<MappedObject>();
+        synchronized (stripe) {
+            for (Iterator<Map.Entry<String, MappedObject>> it = stripe.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, MappedObject> entry = it.next();
+                if (entry.getKey().startsWith(dirPath)) {
+                    it.remove();
+                    stripe.drop(entry.getValue(), unmapped);
+                }
+            }
+            for (Iterator<String> it = stripe.candidates.keySet().iterator(); it.hasNext();)
+                if (it.next().startsWith(dirPath))
+                    it.remove();
+        }
+        unmap(unmapped);
+    }
+
+    /**
+     * @return the number of reads that were served from a mapping
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of object files that have been mapped
+     */
+    public long getMappings() {
+        return mappings.get();
+    }
+
+    /**
+     * @return the number of bytes of all currently mapped object files
+     */
+    public long getMappedBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        return bytes;
+    }
+
+    private static void unmap(List<MappedObject> objs) {
+        for (MappedObject obj : objs)
+            unmap(obj);
+    }
+
+    private static void unmap(MappedObject obj) {
+
+        if (INVOKE_CLEANER == null)
+            return;
+
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, obj.data);
+        } catch (Exception exc) {
+            Logging.logMessage(Logging.LEVEL_WARN, Category.storage, MappedObjectCache.class,
+                    "could not unmap object file: %s", exc.toString());
+        }
+    }
+
+    private Stripe getStripe(String fileId) {
+        // same distribution as in StorageStage
+        int hash = fileId.hashCode();
+        return stripes[hash == Integer.MIN_VALUE ? 0 : Math.abs(hash) % stripes.length];
+    }
+}
@@ -9,31 +9,302 @@
 
 package org.xtreemfs.osd.storage;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+import org.xtreemfs.foundation.util.OutputUtils;
 
+/**
+ * Caches the metadata of files on the OSD.
+ * <p>
+ * The size of each cached {@link FileMetadata} is estimated whenever it is accessed. If the estimated total exceeds
+ * the configured budget, entries that have not been accessed since the clock hand passed them last are evicted
+ * (CLOCK / second chance). New entries start out unreferenced, so that files which are only accessed once are
+ * evicted before frequently accessed ones.
+ * <p>
+ * The metadata of a file is only evicted if the file is not pinned, i.e. if it is neither open nor referenced by
+ * operations in flight (see {@link #pin(String)}). Evicted metadata is closed by means of
+ * {@link StorageLayout#closeFile(String, FileMetadata)} and reloaded from disk by the storage layout with the next
+ * access. As the metadata of pinned files cannot be evicted, the budget may be exceeded if too many files are open at
+ * the same time.
+ */
 public class MetadataCache {
 
-    private Map<String, FileMetadata> metadataMap;
+    private static final class CacheEntry {
+
+        final FileMetadata md;
+
+        /**
+         * the estimated size of <code>md</code> in bytes; 0 once the entry has been removed
+         */
+        final AtomicLong   size;
+
+        volatile boolean   referenced;
+
+        CacheEntry(FileMetadata md) {
+            this.md = md;
+            this.size = new AtomicLong(md.estimateMemoryUsage());
+        }
+    }
+
+    /**
+     * the number of full rotations of the clock hand after which eviction gives up, if the budget cannot be met
+     */
+    private static final int                     MAX_SWEEPS = 2;
+
+    private final Map<String, CacheEntry>        metadataMap;
+
+    /**
+     * maximum estimated size of all entries in bytes; 0 means unlimited
+     */
+    private final long                           maxSize;
+
+    private final AtomicLong                     size;
+
+    private final AtomicLong                     hits;
+
+    private final AtomicLong                     misses;
+
+    private final AtomicLong                     evictions;
+
+    private final ReentrantLock                  evictionLock;
+
+    /**
+     * the number of pins per file; files without pins are not contained
+     */
+    // JCIP @GuardedBy("pins")
+    private final Map<String, Integer>           pins;
+
+    /**
+     * the storage layout that closes evicted metadata, or <code>null</code>
+     */
+    private volatile StorageLayout               layout;
 
-    /** Creates a new instance of StorageCache */
+    /**
+     * the clock hand; CHM iterators are weakly consistent and thus remain valid while the map is modified
+     */
+    // JCIP @GuardedBy("evictionLock")
+    private Iterator<Map.Entry<String, CacheEntry>> hand;
+
+    /** Creates a new instance of StorageCache without a memory budget */
     public MetadataCache() {
-        metadataMap = new ConcurrentSkipListMap<String, FileMetadata>();
+        this(0);
+    }
+
+    /**
+     * Creates a new instance of StorageCache.
+     *
+     * @param maxSize
+     *            the memory budget in bytes; 0 means unlimited
+     */
+    public MetadataCache(long maxSize) {
+        this.metadataMap = new ConcurrentHashMap<String, CacheEntry>();
+        this.maxSize = maxSize;
+        this.size = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.evictionLock = new ReentrantLock();
+        this.pins = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Sets the storage layout that is notified when the metadata of a file is evicted.
+     */
+    public void setStorageLayout(StorageLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Prevents the metadata of a file from being evicted until {@link #unpin(String)} has been invoked as often as
+     * this method. Files have to be pinned while they are open and while operations on them are in flight, as such
+     * operations keep references to the cached metadata and soft state like the last received GMAX must not get
+     * lost.
+     *
+     * @param fileId
+     *            the file ID; the file does not have to be cached yet
+     */
+    public void pin(String fileId) {
+        synchronized (pins) {
+            Integer count = pins.get(fileId);
+            pins.put(fileId, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Releases a pin acquired by means of {@link #pin(String)}.
+     */
+    public void unpin(String fileId) {
+        synchronized (pins) {
+            Integer count = pins.get(fileId);
+            assert (count != null) : "file " + fileId + " is not pinned";
+            if (count == null || count == 1)
+                pins.remove(fileId);
+            else
+                pins.put(fileId, count - 1);
+        }
+    }
+
+    public boolean isPinned(String fileId) {
+        synchronized (pins) {
+            return pins.containsKey(fileId);
+        }
     }
 
     public FileMetadata getFileInfo(String fileId) {
         assert (fileId != null);
-        return metadataMap.get(fileId);
+
+        CacheEntry entry = metadataMap.get(fileId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.referenced = true;
+
+        // the metadata may have grown since the last access
+        if (maxSize > 0 && updateSize(entry))
+            evictIfNecessary(entry);
+
+        return entry.md;
     }
 
     public void setFileInfo(String fileId, FileMetadata info) {
         assert (info.getFilesize() != 0 || info.getLastObjectNumber() <= 0);
-        metadataMap.put(fileId, info);
+
+        CacheEntry entry = new CacheEntry(info);
+        size.addAndGet(entry.size.get());
+
+        CacheEntry old = metadataMap.put(fileId, entry);
+        if (old != null)
+            size.addAndGet(-old.size.getAndSet(0));
+
+        evictIfNecessary(entry);
     }
 
     public FileMetadata removeFileInfo(String fileId) {
-        return metadataMap.remove(fileId);
+        CacheEntry entry = metadataMap.remove(fileId);
+        if (entry == null)
+            return null;
+
+        size.addAndGet(-entry.size.getAndSet(0));
+        return entry.md;
+    }
+
+    public int getNumEntries() {
+        return metadataMap.size();
+    }
+
+    /**
+     * @return the estimated size of all cached entries in bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public String getStatus() {
+        return String.format("entries = %d    size = %s / %s    hits = %d    misses = %d    evictions = %d",
+                getNumEntries(), OutputUtils.formatBytes(getSize()), maxSize > 0 ? OutputUtils.formatBytes(maxSize)
+                        : "unlimited", getHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * Re-estimates the size of an entry and updates the total size accordingly.
+     *
+     * @return <code>true</code>, if the entry has grown
+     */
+    private boolean updateSize(CacheEntry entry) {
+        long oldSize = entry.size.get();
+        long newSize = entry.md.estimateMemoryUsage();
+
+        // a size of 0 indicates that the entry has been removed concurrently
+        if (oldSize == 0 || oldSize == newSize || !entry.size.compareAndSet(oldSize, newSize))
+            return false;
+
+        size.addAndGet(newSize - oldSize);
+        return newSize > oldSize;
+    }
+
+    /**
+     * Evicts unpinned entries until the estimated total size no longer exceeds the budget. Only one thread sweeps the
+     * cache at a time; all others return immediately.
+     *
+     * @param current
+     *            the entry that is currently being accessed, which is never evicted
+     */
+    private void evictIfNecessary(CacheEntry current) {
+
+        if (maxSize <= 0 || size.get() <= maxSize || !evictionLock.tryLock())
+            return;
+
+        try {
+            long maxSteps = (long) MAX_SWEEPS * metadataMap.size();
+            for (long step = 0; step < maxSteps && size.get() > maxSize; step++) {
+
+                if (hand == null || !hand.hasNext()) {
+                    hand = metadataMap.entrySet().iterator();
+                    if (!hand.hasNext())
+                        break;
+                }
+
+                Map.Entry<String, CacheEntry> e = hand.next();
+                CacheEntry entry = e.getValue();
+                if (entry == current)
+                    continue;
+                updateSize(entry);
+
+                // give recently accessed entries a second chance
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    continue;
+                }
+
+                // the entry is removed while holding the pin lock, so that no
+                // operation can be started on the evicted metadata
+                boolean evicted;
+                synchronized (pins) {
+                    evicted = !pins.containsKey(e.getKey()) && metadataMap.remove(e.getKey(), entry);
+                }
+
+                if (evicted) {
+                    size.addAndGet(-entry.size.getAndSet(0));
+                    evictions.incrementAndGet();
+
+                    StorageLayout l = layout;
+                    if (l != null)
+                        l.closeFile(e.getKey(), entry.md);
+
+                    if (Logging.isDebug())
+                        Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
+                                "evicted file info for file %s from cache", e.getKey());
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
 }
@@ -0,0 +1,527 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.util.OutputUtils;
+
+/**
+ * Caches the data of frequently read objects in front of the {@link StorageLayout}.
+ * <p>
+ * Entries are replaced according to W-TinyLFU: new objects enter a small LRU window; objects that fall out of the
+ * window only replace the least recently used object of the main region if they have been accessed more frequently,
+ * which is estimated by means of a count-min sketch whose counters are halved periodically. The main region is a
+ * segmented LRU, in which objects that are hit again are promoted from the probation to the protected segment. Like
+ * the {@link FileHandleCache}, the cache is partitioned into stripes by the file ID, each of which holds its share of
+ * the memory budget.
+ * <p>
+ * The cache holds a reference to the pooled buffer an object was read into, rather than a copy of its data. Readers
+ * receive view buffers, which must not be modified and have to be freed; since each view holds a reference as well,
+ * the buffer is only returned to the {@link BufferPool} once the object has been evicted or invalidated and all
+ * views have been freed. Cached objects are identified by file ID, object number and version. Modifications that retain the version of an object, i.e.
+ * writes, truncates and deletes, have to invalidate it before the object is modified.
+ */
+public class ObjectCache {
+
+    private static final int WINDOW              = 0;
+
+    private static final int PROBATION           = 1;
+
+    private static final int PROTECTED           = 2;
+
+    /**
+     * minimum estimated number of recent accesses of an object before it is loaded into the cache
+     */
+    private static final int ADMISSION_FREQUENCY = 2;
+
+    private static final class Key {
+
+        final String fileId;
+
+        final long   objNo;
+
+        Key(String fileId, long objNo) {
+            this.fileId = fileId;
+            this.objNo = objNo;
+        }
+
+        @Override
+        public int hashCode() {
+            return fileId.hashCode() * 31 + (int) (objNo ^ (objNo >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return objNo == other.objNo && fileId.equals(other.fileId);
+        }
+    }
+
+    private static final class Node {
+
+        final Key            key;
+
+        final long           version;
+
+        final ReusableBuffer data;
+
+        int                  region;
+
+        Node(Key key, long version, ReusableBuffer data) {
+            this.key = key;
+            this.version = version;
+            this.data = data;
+        }
+
+        int getSize() {
+            return data.capacity();
+        }
+    }
+
+    /**
+     * A count-min sketch with saturating 4-bit counters, which are halved after a number of increments, so that the
+     * estimates reflect recent accesses.
+     */
+    private static final class FrequencySketch {
+
+        private static final int[] SEEDS = { 0x97CB3127, 0xB9F4A7D3, 0x5F4A7C15, 0xC2B2AE35 };
+
+        private final byte[]       table;
+
+        private final int          sampleSize;
+
+        private int                additions;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(width, 1024) - 1) << 1;
+            this.table = new byte[size];
+            this.sampleSize = 10 * size / SEEDS.length;
+        }
+
+        int frequency(int hash) {
+            int freq = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++)
+                freq = Math.min(freq, table[index(hash, i)]);
+            return freq;
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = index(hash, i);
+                if (table[index] < 15)
+                    table[index]++;
+            }
+            if (++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++)
+                    table[i] >>= 1;
+                additions /= 2;
+            }
+        }
+
+        private int index(int hash, int i) {
+            int h = hash * SEEDS[i];
+            h ^= h >>> 16;
+            return h & (table.length - 1);
+        }
+    }
+
+    private static final class Stripe {
+
+        final HashMap<Key, Node>             index;
+
+        /**
+         * the window, probation and protected regions in LRU order, i.e. the least recently used entry comes first
+         */
+        final List<LinkedHashMap<Key, Node>> regions;
+
+        final long[]                         bytes;
+
+        final long                           windowMax;
+
+        final long                           mainMax;
+
+        final long                           protectedMax;
+
+        final FrequencySketch                sketch;
+
+        Stripe(long maxBytes) {
+            this.index = new HashMap<Key, Node>();
+            this.regions = new ArrayList<LinkedHashMap<Key, Node>>(3);
+            for (int i = 0; i < 3; i++)
+                regions.add(new LinkedHashMap<Key, Node>());
+            this.bytes = new long[regions.size()];
+            this.windowMax = maxBytes / 100;
+            this.mainMax = maxBytes - windowMax;
+            this.protectedMax = mainMax * 8 / 10;
+            // assume an average object size of 64 kB
+            this.sketch = new FrequencySketch((int) Math.min(4 * (maxBytes >> 16), 1 << 22));
+        }
+
+        void add(Node node, int region) {
+            node.region = region;
+            regions.get(region).put(node.key, node);
+            bytes[region] += node.getSize();
+        }
+
+        void unlink(Node node) {
+            regions.get(node.region).remove(node.key);
+            bytes[node.region] -= node.getSize();
+        }
+
+        /**
+         * Removes an entry and releases the cache's reference to its data.
+         */
+        void remove(Node node) {
+            unlink(node);
+            index.remove(node.key);
+            BufferPool.free(node.data);
+        }
+
+        Node eldest(int region) {
+            Iterator<Node> it = regions.get(region).values().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+
+    private final Stripe[]   stripes;
+
+    private final long       maxBytes;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong misses;
+
+    private final AtomicLong loads;
+
+    private final AtomicLong evictions;
+
+    private final AtomicLong invalidations;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            the memory budget in bytes; 0 disables the cache
+     * @param numStripes
+     *            the number of stripes, which should be equal to the number of storage threads
+     */
+    public ObjectCache(long maxBytes, int numStripes) {
+
+        numStripes = Math.max(1, numStripes);
+        this.stripes = new Stripe[maxBytes > 0 ? numStripes : 0];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe(maxBytes / numStripes);
+
+        this.maxBytes = maxBytes;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.loads = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.invalidations = new AtomicLong();
+    }
+
+    public boolean isEnabled() {
+        return stripes.length > 0;
+    }
+
+    /**
+     * Returns a range of a cached object and records the access.
+     *
+     * @param version
+     *            the version of the object to read
+     * @param offset
+     *            the offset of the range in the object
+     * @param length
+     *            the maximum length of the range
+     * @return a view buffer of the range, which is shorter than <code>length</code> if the object ends before, or
+     *         <code>null</code> if the version is not cached
+     */
+    public ReusableBuffer get(String fileId, long objNo, long version, int offset, int length) {
+
+        if (stripes.length == 0)
+            return null;
+
+        final Key key = new Key(fileId, objNo);
+        final Stripe stripe = getStripe(fileId);
+        final ReusableBuffer view;
+        synchronized (stripe) {
+            stripe.sketch.increment(key.hashCode());
+
+            Node node = stripe.index.get(key);
+            if (node != null && node.version != version) {
+                stripe.remove(node);
+                node = null;
+            }
+            if (node == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            touch(stripe, node);
+
+            // the view has to be created before the data may be released
+            view = offset < node.data.capacity() ? node.data.createViewBuffer() : null;
+        }
+        hits.incrementAndGet();
+
+        if (view == null)
+            return BufferPool.allocate(0);
+
+        view.range(offset, Math.min(length, view.capacity() - offset));
+        return view;
+    }
+
+    /**
+     * Checks whether an object that is not cached has been accessed frequently enough to be loaded into the cache.
+     */
+    public boolean isAdmissible(String fileId, long objNo) {
+
+        if (stripes.length == 0)
+            return false;
+
+        final Stripe stripe = getStripe(fileId);
+        synchronized (stripe) {
+            return stripe.sketch.frequency(new Key(fileId, objNo).hashCode()) >= ADMISSION_FREQUENCY;
+        }
+    }
+
+    /**
+     * Adds an object to the cache.
+     *
+     * @param data
+     *            the complete data of the object, which must not be modified afterwards; the cache keeps a reference
+     *            to it if it is a pooled buffer, and a copy otherwise
+     */
+    public void put(String fileId, long objNo, long version, ReusableBuffer data) {
+
+        if (stripes.length == 0)
+            return;
+
+        final Stripe stripe = getStripe(fileId);
+        final int size = data.capacity();
+        if (size == 0 || size > stripe.mainMax)
+            return;
+
+        final ReusableBuffer ref;
+        if (data.isReusable()) {
+            ref = data.createViewBuffer();
+        } else {
+            ByteBuffer src = data.getBuffer().duplicate();
+            src.clear();
+            ref = BufferPool.allocate(size);
+            ref.put(src);
+            ref.flip();
+        }
+
+        final Node node = new Node(new Key(fileId, objNo), version, ref);
+        synchronized (stripe) {
+            Node old = stripe.index.put(node.key, node);
+            if (old != null) {
+                stripe.unlink(old);
+                BufferPool.free(old.data);
+            }
+            stripe.add(node, WINDOW);
+            loads.incrementAndGet();
+
+            // objects that fall out of the window compete for the main region
+            while (stripe.bytes[WINDOW] > stripe.windowMax) {
+                Node candidate = stripe.eldest(WINDOW);
+                stripe.unlink(candidate);
+                admit(stripe, candidate);
+            }
+        }
+    }
+
+    /**
+     * Removes an object from the cache. Must be invoked before the object is modified or deleted.
+     */
+    public void invalidate(String fileId, long objNo) {
+
+        if (stripes.length == 0)
+            return;
+
+        final Stripe stripe = getStripe(fileId);
+        synchronized (stripe) {
+            Node node = stripe.index.get(new Key(fileId, objNo));
+            if (node != null) {
+                stripe.remove(node);
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all objects of a file from the cache.
+     */
+    public void invalidateFile(String fileId) {
+
+        if (stripes.length == 0)
+            return;
+
+        final Stripe stripe = getStripe(fileId);
+        synchronized (stripe) {
+            for (Iterator<Node> it = stripe.index.values().iterator(); it.hasNext();) {
+                Node node = it.next();
+                if (node.key.fileId.equals(fileId)) {
+                    stripe.unlink(node);
+                    it.remove();
+                    BufferPool.free(node.data);
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all objects from the cache.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                for (Node node : stripe.index.values()) {
+                    stripe.unlink(node);
+                    BufferPool.free(node.data);
+                }
+                stripe.index.clear();
+            }
+    }
+
+    public int getNumEntries() {
+        int entries = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                entries += stripe.index.size();
+            }
+        return entries;
+    }
+
+    /**
+     * @return the size of all cached objects in bytes
+     */
+    public long getSize() {
+        long size = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                for (long bytes : stripe.bytes)
+                    size += bytes;
+            }
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of objects that have been added to the cache
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return the number of objects that have been evicted or not admitted to the main region
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the fraction of lookups that have been served from the cache
+     */
+    public double getHitRatio() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String getStatus() {
+        if (!isEnabled())
+            return "disabled";
+        return String.format(
+                "entries = %d    size = %s / %s    hit ratio = %.1f%%    hits = %d    misses = %d    loads = %d"
+                        + "    evictions = %d    invalidations = %d", getNumEntries(),
+                OutputUtils.formatBytes(getSize()), OutputUtils.formatBytes(maxBytes), 100 * getHitRatio(), getHits(),
+                getMisses(), getLoads(), getEvictions(), getInvalidations());
+    }
+
+    /**
+     * Moves an entry that has been hit to the most recently used end of its region, promoting it to the protected
+     * segment if it was on probation.
+     */
+    private void touch(Stripe stripe, Node node) {
+
+        stripe.unlink(node);
+        if (node.region == WINDOW) {
+            stripe.add(node, WINDOW);
+            return;
+        }
+
+        stripe.add(node, PROTECTED);
+        while (stripe.bytes[PROTECTED] > stripe.protectedMax) {
+            Node demoted = stripe.eldest(PROTECTED);
+            stripe.unlink(demoted);
+            stripe.add(demoted, PROBATION);
+        }
+    }
+
+    /**
+     * Adds an entry that has left the window to the probation segment. As long as the main region is full, the entry
+     * competes with the least recently used entry of the main region; the one that has been accessed less frequently
+     * is evicted.
+     */
+    private void admit(Stripe stripe, Node candidate) {
+
+        final int candidateFreq = stripe.sketch.frequency(candidate.key.hashCode());
+        while (stripe.bytes[PROBATION] + stripe.bytes[PROTECTED] + candidate.getSize() > stripe.mainMax) {
+
+            Node victim = stripe.eldest(PROBATION);
+            if (victim == null)
+                victim = stripe.eldest(PROTECTED);
+
+            evictions.incrementAndGet();
+            if (candidateFreq <= stripe.sketch.frequency(victim.key.hashCode())) {
+                stripe.index.remove(candidate.key);
+                BufferPool.free(candidate.data);
+                return;
+            }
+            stripe.remove(victim);
+        }
+
+        stripe.add(candidate, PROBATION);
+    }
+
+    private Stripe getStripe(String fileId) {
+        // same distribution as in StorageStage
+        int hash = fileId.hashCode();
+        return stripes[hash == Integer.MIN_VALUE ? 0 : Math.abs(hash) % stripes.length];
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.logging.Logging.Category;
+
+/**
+ * A persistent index of the object files of a single file in the {@link HashStorageLayout}. It allows the
+ * metadata of a file to be loaded without listing the file's directory and parsing the names of all object files.
+ * <p>
+ * The index consists of a header followed by one slot per object that is stored on the OSD according to the
+ * striping policy, i.e. slot <code>k</code> refers to object <code>firstObjectNo + k * stripeWidth</code>. Each
+ * slot holds the version and checksum of the object file; a version of 0 marks a missing object. The index can
+ * only represent files with at most one version per object, which is always the case unless copy-on-write is
+ * enabled.
+ * <p>
+ * Before an object file is modified, the index is marked dirty; it is marked clean again when the file is closed.
+ * While the index is dirty, its file is kept open, so that updating a slot does not require opening the file.
+ * Dirty, damaged or missing indices are never used; instead, the storage layout falls back to a directory scan and
+ * rebuilds the index from its result. Thus, deleting the index file is a safe way to enforce a verification of the
+ * index.
+ * <p>
+ * Instances are not thread-safe; they are only accessed by the storage thread responsible for the file.
+ */
+public class ObjectIndex {
+
+    private static final int  MAGIC       = 0x584f4931;                // "XOI1"
+
+    private static final int  HEADER_SIZE = 32;
+
+    private static final int  FLAGS_POS   = 4;
+
+    private static final int  SLOT_SIZE   = 16;
+
+    private static final int  FLAG_DIRTY  = 1;
+
+    private enum State {
+        CLEAN, DIRTY, INVALID
+    }
+
+    private final File  file;
+
+    private final int   stripeWidth;
+
+    private final long  firstObjectNo;
+
+    private State       state;
+
+    /**
+     * the open index file; only set while the index is dirty
+     */
+    private FileChannel channel;
+
+    private ObjectIndex(File file, int stripeWidth, long firstObjectNo) {
+        this.file = file;
+        this.stripeWidth = stripeWidth;
+        this.firstObjectNo = firstObjectNo;
+        this.state = State.CLEAN;
+    }
+
+    /**
+     * Loads the index of a file.
+     *
+     * @param file
+     *            the index file
+     * @param md
+     *            the metadata of the file; checksums contained in the index are added to it
+     * @param versions
+     *            an empty map to which the versions of all objects are added
+     * @return the index, or <code>null</code> if no usable index exists. In the latter case, <code>md</code> and
+     *         <code>versions</code> remain unmodified.
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static ObjectIndex load(File file, FileMetadata md, ObjectNumberMap versions) throws IOException {
+
+        if (!file.exists())
+            return null;
+
+        final int stripeWidth = getStripeWidth(md);
+        final long firstObjectNo = getFirstObjectNo(md);
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || (size - HEADER_SIZE) % SLOT_SIZE != 0)
+                return discard(file, "invalid size");
+
+            MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC)
+                return discard(file, "invalid magic number");
+            if ((buf.getInt() & FLAG_DIRTY) != 0)
+                return discard(file, "index is dirty");
+            if (buf.getInt() != stripeWidth || buf.getInt() != 0 || buf.getLong() != firstObjectNo)
+                return discard(file, "striping policy does not match");
+
+            buf.position(HEADER_SIZE);
+            for (long objNo = firstObjectNo; buf.hasRemaining(); objNo += stripeWidth) {
+                final long version = buf.getLong();
+                final long checksum = buf.getLong();
+                if (version == 0)
+                    continue;
+
+                versions.put(objNo, version);
+                if (checksum != 0)
+                    md.updateObjectChecksum(objNo, version, checksum);
+            }
+
+        } finally {
+            channel.close();
+        }
+
+        return new ObjectIndex(file, stripeWidth, firstObjectNo);
+    }
+
+    /**
+     * Creates a new index for a file, replacing any existing one.
+     *
+     * @param file
+     *            the index file
+     * @param md
+     *            the metadata of the file, which provides the checksums
+     * @param versions
+     *            the versions of all object files of the file
+     * @return the index, or <code>null</code> if the objects of the file cannot be represented by an index
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static ObjectIndex create(File file, FileMetadata md, ObjectNumberMap versions) throws IOException {
+
+        final int stripeWidth = getStripeWidth(md);
+        final long firstObjectNo = getFirstObjectNo(md);
+
+        final long[] objNos = versions.keys();
+        final long numSlots = objNos.length == 0 ? 0 : (objNos[objNos.length - 1] - firstObjectNo) / stripeWidth + 1;
+        for (long objNo : objNos)
+            if (objNo < firstObjectNo || (objNo - firstObjectNo) % stripeWidth != 0) {
+                file.delete();
+                return null;
+            }
+
+        // write the index to a temporary file first, so that an incomplete
+        // index never replaces a complete one
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(HEADER_SIZE + numSlots * SLOT_SIZE, 64 * 1024));
+            buf.putInt(MAGIC).putInt(0).putInt(stripeWidth).putInt(0).putLong(firstObjectNo).putLong(0);
+
+            int i = 0;
+            for (long slot = 0; slot < numSlots; slot++) {
+                if (buf.remaining() < SLOT_SIZE) {
+                    buf.flip();
+                    writeFully(channel, buf);
+                    buf.clear();
+                }
+
+                final long objNo = firstObjectNo + slot * stripeWidth;
+                if (i < objNos.length && objNos[i] == objNo) {
+                    final long version = versions.get(objNo, 0);
+                    buf.putLong(version).putLong(md.getObjectChecksum(objNo, version));
+                    i++;
+                } else
+                    buf.putLong(0).putLong(0);
+            }
+            buf.flip();
+            writeFully(channel, buf);
+
+            // the slots have to be on disk before the index can replace the
+            // previous one as a clean index
+            channel.force(false);
+
+        } finally {
+            channel.close();
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("could not create object index " + file);
+        }
+
+        return new ObjectIndex(file, stripeWidth, firstObjectNo);
+    }
+
+    /**
+     * Marks the index dirty and forces the flag to disk. Must be invoked before object files are modified, so that
+     * the index is never taken for clean after a crash.
+     */
+    public void markDirty() throws IOException {
+
+        if (state != State.CLEAN)
+            return;
+
+        if (writeFlags(FLAG_DIRTY))
+            state = State.DIRTY;
+    }
+
+    /**
+     * Records the version and checksum of the (only) file of an object. A version of 0 records that no file exists
+     * for the object.
+     */
+    public void setObject(long objNo, long version, long checksum) throws IOException {
+
+        if (state == State.INVALID)
+            return;
+        assert (state == State.DIRTY) : "index has not been marked dirty";
+
+        final long rel = objNo - firstObjectNo;
+        if (rel < 0 || rel % stripeWidth != 0) {
+            invalidate();
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(SLOT_SIZE);
+        buf.putLong(version).putLong(checksum);
+        buf.flip();
+        if (!write(buf, HEADER_SIZE + rel / stripeWidth * SLOT_SIZE))
+            state = State.INVALID;
+    }
+
+    /**
+     * Discards the index, e.g. because multiple versions of an object exist. The index will be rebuilt by the next
+     * directory scan.
+     */
+    public void invalidate() {
+        if (state == State.INVALID)
+            return;
+
+        state = State.INVALID;
+        try {
+            closeChannel();
+        } catch (IOException exc) {
+            // ignore, the index file is deleted anyway
+        }
+        file.delete();
+    }
+
+    /**
+     * Forces the index to disk, marks it clean again and closes the index file. Must be invoked when the file is
+     * closed.
+     */
+    public void close() throws IOException {
+
+        try {
+            if (state == State.DIRTY && writeFlags(0))
+                state = State.CLEAN;
+        } finally {
+            closeChannel();
+        }
+    }
+
+    public boolean isValid() {
+        return state != State.INVALID;
+    }
+
+    /**
+     * Writes the flags and forces them to disk. A dirty flag is forced after it has been written, so that it is
+     * persistent before any object file is modified; a clean flag is written after the slots have been forced, so that
+     * it never refers to incomplete slots.
+     *
+     * @return <code>false</code>, if the index file does not exist anymore
+     */
+    private boolean writeFlags(int flags) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        buf.putInt(flags);
+        buf.flip();
+        if (!write(buf, FLAGS_POS, flags == 0, flags != 0)) {
+            state = State.INVALID;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean write(ByteBuffer buf, long position) throws IOException {
+        return write(buf, position, false, false);
+    }
+
+    /**
+     * Writes to the existing index file, which is opened by the first write and remains open until the index is
+     * closed or invalidated. Writes beyond the end of the file implicitly create empty slots.
+     *
+     * @param forceBefore
+     *            if <code>true</code>, the file is forced to disk before the write
+     * @param forceAfter
+     *            if <code>true</code>, the file is forced to disk after the write
+     * @return <code>false</code>, if the index file does not exist anymore (e.g. because all objects of the file
+     *         have been deleted)
+     */
+    private boolean write(ByteBuffer buf, long position, boolean forceBefore, boolean forceAfter)
+            throws IOException {
+
+        if (channel == null) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            } catch (NoSuchFileException exc) {
+                return false;
+            }
+        }
+
+        if (forceBefore)
+            channel.force(false);
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+        if (forceAfter)
+            channel.force(false);
+
+        return true;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel == null)
+            return;
+
+        try {
+            channel.close();
+        } finally {
+            channel = null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+    private static ObjectIndex discard(File file, String reason) {
+        if (Logging.isDebug())
+            Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, ObjectIndex.class,
+                    "ignoring object index %s: %s", file, reason);
+        return null;
+    }
+
+    private static int getStripeWidth(FileMetadata md) {
+        return md.getStripingPolicy() == null ? 1 : md.getStripingPolicy().getWidth();
+    }
+
+    private static long getFirstObjectNo(FileMetadata md) {
+        return md.getStripingPolicy() == null ? 0 : md.getStripingPolicy().getRelativeOSDPosition();
+    }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd.storage;
+
+import java.util.Arrays;
+
+/**
+ * Maps object numbers to primitive long values (e.g. object versions or checksums) without boxing.
+ * <p>
+ * Object numbers that follow the striping pattern of the OSD, i.e. <code>firstObjectNo + k * stripeWidth</code>,
+ * are stored in a dense array indexed by <code>k</code>, as long as the array is sufficiently populated. All other
+ * object numbers are stored in a sparse open-addressing hash table. For a file that is written sequentially, an
+ * entry thus only costs a little more than 8 bytes, compared to roughly 70 bytes for a boxed
+ * <code>HashMap&lt;Long, Long&gt;</code>.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ObjectNumberMap {
+
+    private static final int    MIN_DENSE_CAPACITY  = 16;
+
+    private static final int    MIN_SPARSE_CAPACITY = 8;
+
+    /**
+     * The dense array is only grown if at least 1/DENSE_FILL_FACTOR of it will be populated afterwards.
+     */
+    private static final int    DENSE_FILL_FACTOR   = 4;
+
+    private static final long   EMPTY_KEY           = Long.MIN_VALUE;
+
+    private static final long[] NO_LONGS            = new long[0];
+
+    private final int           stripeWidth;
+
+    private final long          firstObjectNo;
+
+    private long[]              denseValues;
+
+    /**
+     * one bit per slot of <code>denseValues</code>, set if the slot holds a value
+     */
+    private long[]              densePresent;
+
+    private int                 denseSize;
+
+    private long[]              sparseKeys;
+
+    private long[]              sparseValues;
+
+    private int                 sparseSize;
+
+    /**
+     * Creates a map in which all object numbers are stored densely.
+     */
+    public ObjectNumberMap() {
+        this(1, 0);
+    }
+
+    /**
+     * Creates a map which stores the object numbers <code>firstObjectNo + k * stripeWidth</code> densely.
+     *
+     * @param stripeWidth
+     *            the stripe width of the file
+     * @param firstObjectNo
+     *            the first object number stored on the OSD, i.e. the relative position of the OSD in the stripe
+     */
+    public ObjectNumberMap(int stripeWidth, long firstObjectNo) {
+        assert (stripeWidth > 0);
+        this.stripeWidth = stripeWidth;
+        this.firstObjectNo = firstObjectNo;
+        this.denseValues = NO_LONGS;
+        this.densePresent = NO_LONGS;
+        this.sparseKeys = NO_LONGS;
+        this.sparseValues = NO_LONGS;
+    }
+
+    /**
+     * Returns the value mapped to <code>objNo</code>, or <code>defaultValue</code> if no value is mapped.
+     */
+    public long get(long objNo, long defaultValue) {
+        int idx = getDenseIndex(objNo);
+        if (idx >= 0 && idx < denseValues.length)
+            return isDensePresent(idx) ? denseValues[idx] : defaultValue;
+
+        int slot = findSparseSlot(objNo);
+        return slot < 0 ? defaultValue : sparseValues[slot];
+    }
+
+    public boolean containsKey(long objNo) {
+        int idx = getDenseIndex(objNo);
+        if (idx >= 0 && idx < denseValues.length)
+            return isDensePresent(idx);
+
+        return findSparseSlot(objNo) >= 0;
+    }
+
+    public void put(long objNo, long value) {
+        assert (objNo != EMPTY_KEY);
+
+        int idx = getDenseIndex(objNo);
+        if (idx >= 0 && (idx < denseValues.length || growDense(idx))) {
+            if (!isDensePresent(idx)) {
+                densePresent[idx >>> 6] |= 1L << idx;
+                denseSize++;
+            }
+            denseValues[idx] = value;
+        } else {
+            putSparse(objNo, value);
+        }
+    }
+
+    /**
+     * Removes the mapping for <code>objNo</code>.
+     *
+     * @return <code>true</code>, if a mapping existed
+     */
+    public boolean remove(long objNo) {
+        int idx = getDenseIndex(objNo);
+        if (idx >= 0 && idx < denseValues.length) {
+            if (!isDensePresent(idx))
+                return false;
+            densePresent[idx >>> 6] &= ~(1L << idx);
+            denseValues[idx] = 0;
+            denseSize--;
+            return true;
+        }
+
+        int slot = findSparseSlot(objNo);
+        if (slot < 0)
+            return false;
+        removeSparseSlot(slot);
+        return true;
+    }
+
+    public int size() {
+        return denseSize + sparseSize;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        denseValues = NO_LONGS;
+        densePresent = NO_LONGS;
+        denseSize = 0;
+        sparseKeys = NO_LONGS;
+        sparseValues = NO_LONGS;
+        sparseSize = 0;
+    }
+
+    /**
+     * Returns all object numbers contained in the map in ascending order.
+     */
+    public long[] keys() {
+        long[] keys = new long[size()];
+        int n = 0;
+
+        for (int i = 0; i < densePresent.length; i++) {
+            long bits = densePresent[i];
+            while (bits != 0) {
+                int idx = (i << 6) + Long.numberOfTrailingZeros(bits);
+                keys[n++] = firstObjectNo + (long) idx * stripeWidth;
+                bits &= bits - 1;
+            }
+        }
+
+        if (sparseSize > 0) {
+            for (long key : sparseKeys)
+                if (key != EMPTY_KEY)
+                    keys[n++] = key;
+            Arrays.sort(keys);
+        }
+
+        assert (n == keys.length);
+        return keys;
+    }
+
+    /**
+     * Returns the largest object number contained in the map, or -1 if the map is empty.
+     */
+    public long getLargestKey() {
+        long max = -1;
+
+        for (int i = densePresent.length - 1; i >= 0; i--) {
+            if (densePresent[i] != 0) {
+                int idx = (i << 6) + 63 - Long.numberOfLeadingZeros(densePresent[i]);
+                max = firstObjectNo + (long) idx * stripeWidth;
+                break;
+            }
+        }
+
+        if (sparseSize > 0)
+            for (long key : sparseKeys)
+                if (key != EMPTY_KEY && key > max)
+                    max = key;
+
+        return max;
+    }
+
+    /**
+     * Returns an estimate of the number of heap bytes occupied by the map.
+     */
+    public long estimateMemoryUsage() {
+        return 64 + 8L * (denseValues.length + densePresent.length + sparseKeys.length + sparseValues.length);
+    }
+
+    private int getDenseIndex(long objNo) {
+        long rel = objNo - firstObjectNo;
+        if (rel < 0 || rel % stripeWidth != 0)
+            return -1;
+        long idx = rel / stripeWidth;
+        return idx > Integer.MAX_VALUE - 64 ? -1 : (int) idx;
+    }
+
+    private boolean isDensePresent(int idx) {
+        return (densePresent[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    /**
+     * Grows the dense array such that it can hold <code>idx</code>, provided that it will be sufficiently
+     * populated afterwards. Entries from the sparse table which fall into the new range are moved to the dense
+     * array.
+     */
+    private boolean growDense(int idx) {
+        if (idx >= MIN_DENSE_CAPACITY && (long) (size() + 1) * DENSE_FILL_FACTOR <= idx)
+            return false;
+
+        int newCapacity = Math.max(MIN_DENSE_CAPACITY, denseValues.length);
+        while (newCapacity <= idx)
+            newCapacity = newCapacity > (Integer.MAX_VALUE >> 1) ? Integer.MAX_VALUE - 64 : newCapacity << 1;
+        // round up to a multiple of 64 in order to make use of all presence bits
+        newCapacity = (newCapacity + 63) & ~63;
+
+        denseValues = Arrays.copyOf(denseValues, newCapacity);
+        densePresent = Arrays.copyOf(densePresent, newCapacity >>> 6);
+
+        if (sparseSize > 0) {
+            long[] oldKeys = sparseKeys;
+            long[] oldValues = sparseValues;
+            sparseKeys = NO_LONGS;
+            sparseValues = NO_LONGS;
+            sparseSize = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY_KEY)
+                    continue;
+                int j = getDenseIndex(oldKeys[i]);
+                if (j >= 0 && j < newCapacity) {
+                    densePresent[j >>> 6] |= 1L << j;
+                    denseValues[j] = oldValues[i];
+                    denseSize++;
+                } else {
+                    putSparse(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findSparseSlot(long key) {
+        if (sparseSize == 0)
+            return -1;
+
+        int mask = sparseKeys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            long k = sparseKeys[slot];
+            if (k == key)
+                return slot;
+            if (k == EMPTY_KEY)
+                return -1;
+        }
+    }
+
+    private void putSparse(long key, long value) {
+        // keep the load factor below 1/2
+        if ((sparseSize + 1) * 2 > sparseKeys.length)
+            resizeSparse(Math.max(MIN_SPARSE_CAPACITY, sparseKeys.length * 2));
+
+        int mask = sparseKeys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            long k = sparseKeys[slot];
+            if (k == key) {
+                sparseValues[slot] = value;
+                return;
+            }
+            if (k == EMPTY_KEY) {
+                sparseKeys[slot] = key;
+                sparseValues[slot] = value;
+                sparseSize++;
+                return;
+            }
+        }
+    }
+
+    private void resizeSparse(int newCapacity) {
+        long[] oldKeys = sparseKeys;
+        long[] oldValues = sparseValues;
+
+        sparseKeys = new long[newCapacity];
+        Arrays.fill(sparseKeys, EMPTY_KEY);
+        sparseValues = new long[newCapacity];
+        sparseSize = 0;
+
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY_KEY)
+                putSparse(oldKeys[i], oldValues[i]);
+    }
+
+    /**
+     * Removes the entry at <code>slot</code> and shifts back subsequent entries of the same probe sequence, so that
+     * no tombstones are needed.
+     */
+    private void removeSparseSlot(int slot) {
+        int mask = sparseKeys.length - 1;
+        int gap = slot;
+        for (int i = (gap + 1) & mask;; i = (i + 1) & mask) {
+            long k = sparseKeys[i];
+            if (k == EMPTY_KEY)
+                break;
+            int home = hash(k) & mask;
+            // move the entry into the gap if its home slot is not located cyclically in (gap, i]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                sparseKeys[gap] = k;
+                sparseValues[gap] = sparseValues[i];
+                gap = i;
+            }
+        }
+        sparseKeys[gap] = EMPTY_KEY;
+        sparseValues[gap] = 0;
+        sparseSize--;
+    }
+
+}
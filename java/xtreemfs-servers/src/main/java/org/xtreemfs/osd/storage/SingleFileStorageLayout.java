@@ -14,9 +14,6 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
 
@@ -93,11 +90,11 @@ public class SingleFileStorageLayout extends StorageLayout {
     @Override
     protected FileMetadata loadFileMetadata(String fileId, StripingPolicyImpl sp) throws IOException {
         FileMetadata fi = new FileMetadata(sp);
-        Map<Long,Long> tmp = new HashMap();
+        ObjectNumberMap tmp = fi.createObjectNumberMap();
         fi.initLatestObjectVersions(tmp);
         fi.initLargestObjectVersions(tmp);
         if (checksumsEnabled)
-            fi.initObjectChecksums(new HashMap());
+            fi.initObjectChecksums();
 
         File f = new File(getFilePath(fileId)+DATA_SUFFIX);
         
@@ -192,6 +189,7 @@ public class SingleFileStorageLayout extends StorageLayout {
                 ReusableBuffer data = BufferPool.allocate(stripeSize);
                 ofile.seek(sp.getRow(objNo)*stripeSize);
                 c.read(data.getBuffer());
+                data.position(0);
                 checksumAlgo.reset();
                 checksumAlgo.update(data.getBuffer());
                 BufferPool.free(data);
@@ -233,6 +231,7 @@ public class SingleFileStorageLayout extends StorageLayout {
                 ReusableBuffer csumData = BufferPool.allocate(stripeSize);
                 ofile.seek(objOffset);
                 c.read(csumData.getBuffer());
+                csumData.position(0);
                 checksumAlgo.update(csumData.getBuffer());
                 BufferPool.free(csumData);
             } else {
@@ -359,9 +358,9 @@ public class SingleFileStorageLayout extends StorageLayout {
     public ObjectSet getObjectSet(String fileId, FileMetadata md) {
         ObjectSet objectSet;
 
-        objectSet = new ObjectSet(md.getLatestObjectVersions().size());
-        for (Entry<Long,Long> e : md.getLatestObjectVersions()) {
-            objectSet.add(e.getKey());
+        objectSet = new ObjectSet(md.getLatestObjectCount());
+        for (long objNo : md.getLatestObjectNumbers()) {
+            objectSet.add(objNo);
         }
 
         return objectSet;
@@ -407,6 +406,7 @@ public class SingleFileStorageLayout extends StorageLayout {
                 ReusableBuffer csumData = BufferPool.allocate(stripeSize);
                 ofile.seek(objOffset);
                 ofile.getChannel().read(csumData.getBuffer());
+                csumData.position(0);
                 checksumAlgo.update(csumData.getBuffer());
                 BufferPool.free(csumData);
 
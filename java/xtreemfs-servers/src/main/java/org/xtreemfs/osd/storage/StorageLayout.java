@@ -65,9 +65,18 @@ public abstract class StorageLayout {
      */
     protected final MetadataCache cache;
     
+    /**
+     * locks that prevent the metadata of a file from being loaded concurrently by multiple threads
+     */
+    private final Object[]        loadLocks;
+    
     protected StorageLayout(OSDConfig config, MetadataCache cache) throws IOException {
         
         this.cache = cache;
+        this.cache.setStorageLayout(this);
+        this.loadLocks = new Object[64];
+        for (int i = 0; i < loadLocks.length; i++)
+            loadLocks[i] = new Object();
         
         // initialize the storage directory
         String tmp = config.getObjDir();
@@ -118,11 +127,20 @@ public abstract class StorageLayout {
         // if metadata is not cached ...
         if (fi == null) {
             
-            // ... load metadata from disk
-            fi = loadFileMetadata(fileId, sp);
-            
-            // ... cache metadata to speed up further accesses
-            cache.setFileInfo(fileId, fi);
+            // reads of the same file may be executed by different storage
+            // threads, which must not load the metadata twice
+            synchronized (loadLocks[(fileId.hashCode() & Integer.MAX_VALUE) % loadLocks.length]) {
+                
+                fi = cache.getFileInfo(fileId);
+                if (fi == null) {
+                    
+                    // ... load metadata from disk
+                    fi = loadFileMetadata(fileId, sp);
+                    
+                    // ... cache metadata to speed up further accesses
+                    cache.setFileInfo(fileId, fi);
+                }
+            }
         }
         
         return fi;
@@ -166,9 +184,12 @@ public abstract class StorageLayout {
 
     /**
      * must be called when a file is closed
+     * @param fileId
+     *            the file Id of the closed file
      * @param metadata
+     *            file metadata of the closed file
      */
-    public void closeFile(FileMetadata metadata) {
+    public void closeFile(String fileId, FileMetadata metadata) {
         //do nothing
     }
     
@@ -219,6 +240,74 @@ public abstract class StorageLayout {
      */
     public abstract void writeObject(String fileId, FileMetadata md, ReusableBuffer data, long objNo,
         int offset, long newVersion, boolean sync, boolean cow) throws IOException;
+
+    /**
+     * Indicates whether the storage layout implements {@link #syncObjects(String, FileMetadata, long[], boolean)}
+     * efficiently, which allows synchronous writes to be made durable together (group commit).
+     * 
+     * @return <code>true</code>, if group commit is supported
+     */
+    public boolean supportsGroupCommit() {
+        return false;
+    }
+    
+    /**
+     * Indicates whether the checksum of an object, if checksums are enabled, is bound to an object version, so that
+     * each modification of the object has to create a new version.
+     * 
+     * @return <code>true</code>, if modified objects require new versions
+     */
+    public boolean requiresNewVersionForChecksums() {
+        return true;
+    }
+    
+    /**
+     * Indicates whether objects of the same file can be read concurrently by multiple threads, provided that the
+     * file is not modified at the same time.
+     * 
+     * @return <code>true</code>, if concurrent reads are supported
+     */
+    public boolean supportsConcurrentReads() {
+        return false;
+    }
+    
+    /**
+     * Forces the current versions of a set of objects, which have been written without the <code>sync</code>
+     * flag, to the storage device. Layouts that do not support group commit rewrite each object synchronously,
+     * which is correct but slower than forcing the object files directly.
+     * 
+     * @param fileId
+     *            the file Id the objects belong to
+     * @param md
+     *            file metadata
+     * @param objNos
+     *            the object numbers
+     * @param syncDirectory
+     *            <code>true</code>, if object files have been created or renamed, so that the directory entries
+     *            have to be forced to the storage device as well
+     * @throws IOException
+     *             when the objects cannot be synchronized
+     */
+    public void syncObjects(String fileId, FileMetadata md, long[] objNos, boolean syncDirectory)
+        throws IOException {
+        for (long objNo : objNos) {
+
+            // the object may have been deleted in the meantime
+            final long version = md.getLatestObjectVersion(objNo);
+            if (version == 0)
+                continue;
+
+            ObjectInformation obj = readObject(fileId, md, objNo, 0, -1, version);
+            ReusableBuffer data = obj.getData();
+            try {
+                if (obj.getStatus() == ObjectInformation.ObjectStatus.EXISTS && data != null)
+                    writeObject(fileId, md, data, objNo, 0, version, true, false);
+            } finally {
+                if (data != null)
+                    BufferPool.free(data);
+            }
+        }
+    }
     
     /**
      * Truncates an object on the storage device.
@@ -460,7 +549,8 @@ public abstract class StorageLayout {
     public abstract ArrayList<String> getFileIDList();
     
     /**
-     * Retrieves the XLocSet version and invalidated sate for a replica
+     * Retrieves the XLocSet version and invalidated sate for a replica. May be invoked concurrently by different
+     * preprocessing threads for different files.
      * 
      * @param fileId
      * @return current version and state stored on disk
@@ -468,7 +558,8 @@ public abstract class StorageLayout {
     public abstract XLocSetVersionState getXLocSetVersionState(String fileId) throws IOException;
 
     /**
-     * Stores the XLocSet version for a replica on stable storage
+     * Stores the XLocSet version for a replica on stable storage. May be invoked concurrently by different
+     * preprocessing threads for different files.
      * 
      * @param fileId
      * @param versionState
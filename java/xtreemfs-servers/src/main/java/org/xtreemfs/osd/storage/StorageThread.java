@@ -11,10 +11,12 @@ package org.xtreemfs.osd.storage;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.xtreemfs.common.quota.FinalizeVoucherResponseHelper;
 import org.xtreemfs.common.uuids.ServiceUUID;
@@ -31,6 +33,7 @@ import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.ErrorType;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.MessageType;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.POSIXErrno;
 import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.RPCHeader;
+import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.RPCHeader.ErrorResponse;
 import org.xtreemfs.foundation.pbrpc.utils.ErrorUtils;
 import org.xtreemfs.foundation.util.OutputUtils;
 import org.xtreemfs.osd.OSDRequestDispatcher;
@@ -38,6 +41,7 @@ import org.xtreemfs.osd.quota.OSDVoucherManager;
 import org.xtreemfs.osd.quota.VoucherErrorException;
 import org.xtreemfs.osd.replication.ObjectSet;
 import org.xtreemfs.osd.stages.Stage;
+import org.xtreemfs.osd.stages.StorageStage;
 import org.xtreemfs.osd.stages.StorageStage.CachesFlushedCallback;
 import org.xtreemfs.osd.stages.StorageStage.CreateFileVersionCallback;
 import org.xtreemfs.osd.stages.StorageStage.DeleteObjectsCallback;
@@ -96,21 +100,99 @@ public class StorageThread extends Stage {
 
     private final MetadataCache        cache;
 
+    private final ObjectCache          objectCache;
+
     private final StorageLayout        layout;
     
     private final OSDRequestDispatcher master;
     
-    private final boolean        checksumsEnabled;
+    private final StorageStage         stage;
+    
+    private final int                  id;
+    
+    private final boolean        newVersionPerWrite;
+    
+    /**
+     * maximum number of synchronous writes that are committed together; group commit is disabled if &lt;= 1
+     */
+    private final int                  groupCommitBatchSize;
+    
+    private final long                 groupCommitDelayNanos;
+    
+    /**
+     * synchronous writes that have been written but neither forced to disk nor acknowledged yet
+     */
+    private final List<PendingSync>    pendingSyncs;
+    
+    private long                       batchDeadline;
     
     public StorageThread(int id, OSDRequestDispatcher dispatcher, MetadataCache cache, StorageLayout layout,
-        int maxQueueLength) {
+        StorageStage stage, int maxQueueLength) {
         
         super("OSD StThr " + id, maxQueueLength);
         
+        this.id = id;
         this.cache = cache;
+        this.objectCache = dispatcher.getObjectCache();
         this.layout = layout;
         this.master = dispatcher;
-        this.checksumsEnabled = master.getConfig().isUseChecksums();
+        this.stage = stage;
+        this.newVersionPerWrite = master.getConfig().isUseChecksums() && layout.requiresNewVersionForChecksums();
+        this.groupCommitBatchSize = layout.supportsGroupCommit() ? master.getConfig().getGroupCommitMaxBatchSize()
+            : 0;
+        this.groupCommitDelayNanos = TimeUnit.MILLISECONDS.toNanos(master.getConfig().getGroupCommitMaxDelay());
+        this.pendingSyncs = new ArrayList<PendingSync>();
+    }
+    
+    @Override
+    public void run() {
+        
+        if (groupCommitBatchSize <= 1) {
+            super.run();
+            return;
+        }
+        
+        notifyStarted();
+        
+        while (!quit) {
+            try {
+                final StageRequest op;
+                if (pendingSyncs.isEmpty()) {
+                    op = q.take();
+                } else {
+                    // wait for further requests until the batch deadline is
+                    // reached; commit the batch if none arrives
+                    final long wait = batchDeadline - System.nanoTime();
+                    op = wait > 0 ? q.poll(wait, TimeUnit.NANOSECONDS) : q.poll();
+                    if (op == null) {
+                        commitPendingSyncs();
+                        continue;
+                    }
+                }
+                
+                // reads and writes may overtake pending syncs; all other
+                // operations may modify or close the object files and thus
+                // require a commit before
+                if (op.getStageMethod() != STAGEOP_READ_OBJECT && op.getStageMethod() != STAGEOP_WRITE_OBJECT)
+                    commitPendingSyncs();
+                
+                processMethod(op);
+                
+                if (pendingSyncs.size() >= groupCommitBatchSize
+                    || (groupCommitDelayNanos > 0 && !pendingSyncs.isEmpty() && System.nanoTime() - batchDeadline >= 0))
+                    commitPendingSyncs();
+                
+            } catch (InterruptedException ex) {
+                break;
+            } catch (Throwable ex) {
+                this.notifyCrashed(ex);
+                break;
+            }
+        }
+        
+        commitPendingSyncs();
+        
+        notifyStopped();
     }
     
     @Override
@@ -169,6 +251,8 @@ public class StorageThread extends Stage {
         } catch (Exception ex) {
             method.sendInternalServerError(ex);
             Logging.logError(Logging.LEVEL_ERROR, this, ex);
+        } finally {
+            stage.operationCompleted(id, method);
         }
     }
 
@@ -248,7 +332,7 @@ public class StorageThread extends Stage {
             final String fileId = (String) rq.getArgs()[0];
             FileMetadata md = cache.removeFileInfo(fileId);
             if (md != null)
-                layout.closeFile(null);
+                layout.closeFile(fileId, md);
             
             if (Logging.isDebug())
                 Logging.logMessage(Logging.LEVEL_DEBUG, Category.proc, this,
@@ -338,12 +422,13 @@ public class StorageThread extends Stage {
             result.setTruncateEpoch(fi.getTruncateEpoch());
             
             long localMaxObjVer = 0;
-            for (Entry<Long, Long> e : fi.getLatestObjectVersions()) {
-                if (e.getValue() > remoteMaxObjVer) {
-                    result.addObjectVersions(ObjectVersion.newBuilder().setObjectNumber(e.getKey())
-                            .setObjectVersion(e.getValue()));
-                    if (e.getValue() > localMaxObjVer)
-                        localMaxObjVer = e.getValue();
+            for (long objNo : fi.getLatestObjectNumbers()) {
+                long objVer = fi.getLatestObjectVersion(objNo);
+                if (objVer > remoteMaxObjVer) {
+                    result.addObjectVersions(ObjectVersion.newBuilder().setObjectNumber(objNo)
+                            .setObjectVersion(objVer));
+                    if (objVer > localMaxObjVer)
+                        localMaxObjVer = objVer;
                 }
             }
             result.setMaxObjVersion(localMaxObjVer);
@@ -395,7 +480,7 @@ public class StorageThread extends Stage {
                 Logging.logMessage(Logging.LEVEL_DEBUG, Category.proc, this, "checksum is %d", objChksm);
             }
             
-            ObjectInformation obj = layout.readObject(fileId, fi, objNo, offset, length, objVer);
+            ObjectInformation obj = readObject(fileId, fi, sp, objNo, offset, length, objVer);
             
             if (versionTimestamp != 0) {
                 int lastObj = fi.getVersionTable().getLatestVersionBefore(versionTimestamp).getObjCount() - 1;
@@ -414,6 +499,46 @@ public class StorageThread extends Stage {
         
     }
     
+    /**
+     * Reads an object through the object cache. An object that is not cached is read completely and added to the
+     * cache if it has been read frequently.
+     */
+    private ObjectInformation readObject(String fileId, FileMetadata fi, StripingPolicyImpl sp, long objNo,
+        int offset, int length, long objVer) throws IOException {
+        
+        // reads that verify the checksum of the object on disk bypass the
+        // cache
+        if (!objectCache.isEnabled() || objVer == 0 || (length == -1 && master.getConfig().isUseChecksums()))
+            return layout.readObject(fileId, fi, objNo, offset, length, objVer);
+        
+        final int stripeSize = sp.getStripeSizeForObject(objNo);
+        final int rangeLength = length == -1 ? stripeSize : length;
+        
+        ReusableBuffer data = objectCache.get(fileId, objNo, objVer, offset, rangeLength);
+        if (data != null)
+            return new ObjectInformation(ObjectInformation.ObjectStatus.EXISTS, data, stripeSize);
+        
+        if (!objectCache.isAdmissible(fileId, objNo))
+            return layout.readObject(fileId, fi, objNo, offset, length, objVer);
+        
+        ObjectInformation obj = layout.readObject(fileId, fi, objNo, 0, stripeSize, objVer);
+        if (obj.getStatus() == ObjectInformation.ObjectStatus.EXISTS) {
+            data = obj.getData();
+            if (!obj.isChecksumInvalidOnOSD())
+                objectCache.put(fileId, objNo, objVer, data);
+            
+            // only return the requested range
+            if (offset >= data.capacity()) {
+                BufferPool.free(data);
+                obj.setData(BufferPool.allocate(0));
+            } else {
+                data.range(offset, Math.min(rangeLength, data.capacity() - offset));
+            }
+        }
+        
+        return obj;
+    }
+    
     /**
      * returns the OSDs view of a files size
      * 
@@ -456,6 +581,7 @@ public class StorageThread extends Stage {
             final FileMetadata fi = layout.getFileMetadata(sp, fileId);
             final long version = fi.getLatestObjectVersion(objNo) + 1;
             
+            objectCache.invalidate(fileId, objNo);
             layout.createPaddingObject(fileId, fi, objNo, version, size);
             
             OSDWriteResponse response = OSDWriteResponse.newBuilder().build();
@@ -526,7 +652,7 @@ public class StorageThread extends Stage {
             // determine the object version to write
             final boolean isCow = cow.isCOW((int) objNo);
             
-            long newVersion = (isCow || checksumsEnabled) ? largestV + 1 : Math.max(1, largestV);
+            long newVersion = (isCow || newVersionPerWrite) ? largestV + 1 : Math.max(1, largestV);
             if (newVersionArg != null) {
                 // new version passed via arg always prevails
                 newVersion = newVersionArg;
@@ -538,7 +664,11 @@ public class StorageThread extends Stage {
                 fi.setLastObjectNumber(objNo);
             }
             
-            layout.writeObject(fileId, fi, data, objNo, offset, newVersion, syncWrite, isCow);
+            // in group commit mode, synchronous writes are forced to disk
+            // together with others before they are acknowledged
+            final boolean groupCommit = syncWrite && groupCommitBatchSize > 1;
+            objectCache.invalidate(fileId, objNo);
+            layout.writeObject(fileId, fi, data, objNo, offset, newVersion, syncWrite && !groupCommit, isCow);
             
             // if a new version was created, update the "latest versions" file
             if (cow.cowEnabled() && (isCow || largestV == 0))
@@ -621,7 +751,11 @@ public class StorageThread extends Stage {
                 Logging.logMessage(Logging.LEVEL_DEBUG, Category.proc, this, "new last object=%d gmax=%d", fi
                         .getLastObjectNumber(), fi.getGlobalLastObjectNumber());
             // BufferPool.free(data);
-            cback.writeComplete(response.build(), null);
+            if (groupCommit)
+                addPendingSync(new PendingSync(fileId, fi, objNo, largestV == 0 || newVersion != largestV, cback,
+                    response.build()));
+            else
+                cback.writeComplete(response.build(), null);
             
         } catch (IOException ex) {
             Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this, "Failed to process write() request due to the following IOException:");
@@ -653,6 +787,7 @@ public class StorageThread extends Stage {
             final FileMetadata fi = layout.getFileMetadata(sp, fileId);
 
             // Delete objects.
+            objectCache.invalidateFile(fileId);
             for (Entry<Long,Long> obj : objectsToBeDeleted.entrySet()) {
                 layout.deleteObject(fileId, fi, obj.getKey(), obj.getValue());
             }
@@ -700,6 +835,9 @@ public class StorageThread extends Stage {
             // is e.g. needed for the COW_ONCE policy)
             cow.initCowFlagsIfRequired(fi.getLastObjectNumber() + 1);
             
+            // any object of the file may be shrunk, padded or deleted
+            objectCache.invalidateFile(fileId);
+            
             // find the offset of the local OSD in the current replica's
             // locations list
             // FIXME: unify OSD IDs
@@ -721,10 +859,9 @@ public class StorageThread extends Stage {
                     // version of the file and are not part of former file
                     // versions
                     
-                    for (Entry<Long, Long> entry : fi.getLatestObjectVersions()) {
+                    for (long objNo : fi.getLatestObjectNumbers()) {
                         
-                        long objNo = entry.getKey();
-                        long objVer = entry.getValue();
+                        long objVer = fi.getLatestObjectVersion(objNo);
                         
                         if (!fi.getVersionTable().isContained(objNo, objVer))
                             layout.deleteObject(fileId, fi, objNo, objVer);
@@ -878,25 +1015,21 @@ public class StorageThread extends Stage {
             if (fi == null)
                 fi = layout.getFileMetadataNoCaching(null, fileId);
             
-            Set<Entry<Long, Long>> objVersions = fi.getLatestObjectVersions();
+            long[] objNos = fi.getLatestObjectNumbers();
             long fileSize = fi.getFilesize();
             
             // convert the set of object versions into an array
             
-            // first, determine the last object
-            long maxKey = -1;
-            for (Entry<Long, Long> ver : objVersions) {
-                if (ver.getKey() > maxKey)
-                    maxKey = ver.getKey();
-            }
+            // first, determine the last object (object numbers are sorted)
+            long maxKey = objNos.length == 0 ? -1 : objNos[objNos.length - 1];
             
             // instantiate a sufficiently large array
             assert (maxKey < Integer.MAX_VALUE);
             int[] versions = new int[(int) maxKey + 1];
             
             // set all object versions in the array
-            for (Entry<Long, Long> ver : objVersions)
-                versions[ver.getKey().intValue()] = ver.getValue().intValue();
+            for (long objNo : objNos)
+                versions[(int) objNo] = (int) fi.getLatestObjectVersion(objNo);
             
             // create and save the new version
             fi.getVersionTable().addVersion(TimeSync.getGlobalTime(), versions, fileSize);
@@ -1110,4 +1243,95 @@ public class StorageThread extends Stage {
         int size, FileMetadata fi) throws IOException {
         layout.createPaddingObject(fileId, fi, objNo, version, size);
     }
+    
+    private void addPendingSync(PendingSync sync) {
+        // the metadata has to remain cached until the write is committed
+        cache.pin(sync.fileId);
+        if (pendingSyncs.isEmpty())
+            batchDeadline = System.nanoTime() + groupCommitDelayNanos;
+        pendingSyncs.add(sync);
+    }
+    
+    /**
+     * Forces all pending synchronous writes to disk with a single sync per file and acknowledges them.
+     */
+    private void commitPendingSyncs() {
+        
+        if (pendingSyncs.isEmpty())
+            return;
+        
+        // group the pending writes by file
+        final Map<String, List<PendingSync>> syncsByFile = new LinkedHashMap<String, List<PendingSync>>();
+        for (PendingSync sync : pendingSyncs) {
+            List<PendingSync> list = syncsByFile.get(sync.fileId);
+            if (list == null) {
+                list = new ArrayList<PendingSync>();
+                syncsByFile.put(sync.fileId, list);
+            }
+            list.add(sync);
+        }
+        
+        if (Logging.isDebug())
+            Logging.logMessage(Logging.LEVEL_DEBUG, Category.storage, this,
+                "committing %d synchronous writes of %d files", pendingSyncs.size(), syncsByFile.size());
+        
+        pendingSyncs.clear();
+        
+        for (Entry<String, List<PendingSync>> entry : syncsByFile.entrySet()) {
+            
+            final List<PendingSync> syncs = entry.getValue();
+            final long[] objNos = new long[syncs.size()];
+            boolean syncDirectory = false;
+            for (int i = 0; i < objNos.length; i++) {
+                objNos[i] = syncs.get(i).objNo;
+                syncDirectory |= syncs.get(i).newFile;
+            }
+            
+            ErrorResponse error = null;
+            try {
+                layout.syncObjects(entry.getKey(), syncs.get(0).md, objNos, syncDirectory);
+            } catch (IOException ex) {
+                Logging.logMessage(Logging.LEVEL_ERROR, Category.storage, this,
+                    "could not commit synchronous writes of file %s", entry.getKey());
+                Logging.logError(Logging.LEVEL_ERROR, this, ex);
+                error = ErrorUtils.getErrorResponse(ErrorType.ERRNO, POSIXErrno.POSIX_ERROR_EIO, ex.toString());
+            }
+            
+            for (PendingSync sync : syncs) {
+                sync.callback.writeComplete(error == null ? sync.response : null, error);
+                cache.unpin(sync.fileId);
+            }
+        }
+    }
+    
+    /**
+     * A synchronous write that awaits being committed.
+     */
+    private static final class PendingSync {
+        
+        final String              fileId;
+        
+        final FileMetadata        md;
+        
+        final long                objNo;
+        
+        /**
+         * <code>true</code>, if the write has created a new object file
+         */
+        final boolean             newFile;
+        
+        final WriteObjectCallback callback;
+        
+        final OSDWriteResponse    response;
+        
+        PendingSync(String fileId, FileMetadata md, long objNo, boolean newFile, WriteObjectCallback callback,
+            OSDWriteResponse response) {
+            this.fileId = fileId;
+            this.md = md;
+            this.objNo = objNo;
+            this.newFile = newFile;
+            this.callback = callback;
+            this.response = response;
+        }
+    }
 }
@@ -71,6 +71,11 @@ public class VersionTable {
     
     private File                     vtFile;
     
+    /**
+     * total number of object versions in all file versions of the table
+     */
+    private long                     objVersionCount;
+    
     /**
      * Creates a new empty version table.
      * 
@@ -95,6 +100,7 @@ public class VersionTable {
             throw new IOException("no source file specified");
         
         vt.clear();
+        objVersionCount = 0;
         
         FileInputStream fi = new FileInputStream(vtFile);
         ReusableBuffer buf = BufferPool.allocate((int) vtFile.length());
@@ -181,7 +187,8 @@ public class VersionTable {
      *            the set of object versions attached to the file version
      */
     public void addVersion(long timestamp, int[] objVersions, long fileSize) {
-        vt.put(timestamp, new Version(objVersions, fileSize));
+        Version old = vt.put(timestamp, new Version(objVersions, fileSize));
+        objVersionCount += objVersions.length - (old == null ? 0 : old.getObjCount());
     }
     
     /**
@@ -191,7 +198,9 @@ public class VersionTable {
      *            the timestamp attached to the file version
      */
     public void deleteVersion(long timestamp) {
-        vt.remove(timestamp);
+        Version old = vt.remove(timestamp);
+        if (old != null)
+            objVersionCount -= old.getObjCount();
     }
     
     /**
@@ -241,8 +250,10 @@ public class VersionTable {
         }
         
         // remove all superseeded versions
-        for (long ts : superseeded.keySet())
-            cleanedTable.remove(ts);
+        for (Entry<Long, Version> entry : superseeded.entrySet()) {
+            cleanedTable.remove(entry.getKey());
+            objVersionCount -= entry.getValue().getObjCount();
+        }
         
         // for all superseeded versions, check which objects do not occur in
         // non-superseeded versions
@@ -276,6 +287,15 @@ public class VersionTable {
         return vt.size();
     }
     
+    /**
+     * Returns an estimate of the number of heap bytes occupied by the table.
+     * 
+     * @return the estimated size in bytes
+     */
+    public long estimateMemoryUsage() {
+        return 64 + vt.size() * 96L + objVersionCount * 4;
+    }
+    
     /**
      * Checks if the given version of the given object is contained in any of
      * the file versions.
@@ -94,7 +94,7 @@ public class BenchmarkStorageLayouts {
 
         long tEnd = System.currentTimeMillis();
 
-        layout.closeFile(md);
+        layout.closeFile(fileId, md);
 
         System.out.println("write: " + (tEnd - tStart) + " ms");
 
@@ -112,7 +112,7 @@ public class BenchmarkStorageLayouts {
 
         System.out.println("read : " + (tEnd - tStart) + " ms");
 
-        layout.closeFile(md);
+        layout.closeFile(fileId, md);
 
     }
 
@@ -47,6 +47,10 @@ public class SetupUtils {
     
     public static boolean          CHECKSUMS_ON     = false;
     
+    public static int              MRC_PROCESSING_THREADS = 1;
+    
+    public static int              OSD_PREPROC_THREADS    = 1;
+    
     public static final int        DEBUG_LEVEL      = Logging.LEVEL_WARN;
     
     public static final Category[] DEBUG_CATEGORIES = new Category[] { Category.all };
@@ -88,6 +92,7 @@ public class SetupUtils {
         props.setProperty("snmp.port", "" + (port + 1000));
         props.setProperty("snmp.address", "localhost");
         props.setProperty("measure_requests", "false");
+        props.setProperty("preproc_threads", "" + OSD_PREPROC_THREADS);
         return props;
     }
     
@@ -220,6 +225,7 @@ public class SetupUtils {
         props.setProperty("snmp.port", new Integer(34636 + PORT_RANGE_OFFSET).toString());
         props.setProperty("snmp.address", "localhost");
         props.setProperty("measure_requests", "false");
+        props.setProperty("processing_threads", "" + MRC_PROCESSING_THREADS);
         
         MRCConfig config = new MRCConfig(props);
         config.setDefaults();
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.common;
+
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.foundation.TimeSync;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.util.OutputUtils;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SnapConfig;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XCap;
+
+/**
+ * Measures the cost of verifying a capability signature, as done by the OSD for each capability that is not cached
+ * and by the MRC for each renewal: with a new MD5 digest per verification as in earlier versions, with the current MD5
+ * implementation and with HMAC-SHA256. Not part of the regular test suite; run it manually.
+ */
+public class CapabilityBenchmark {
+    @Rule
+    public final TestRule       testLog       = TestHelper.testLog;
+
+    private static final String SECRET        = "secretPassphrase";
+
+    private static final int    NUM_CAPS      = 1000;
+
+    private static final int    ITERATIONS    = 500;
+
+    private static final int    ROUNDS        = 5;
+
+    @Before
+    public void setUp() throws Exception {
+        Logging.start(Logging.LEVEL_WARN);
+        TimeSync.initializeLocal(50);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TimeSync.getInstance().shutdown();
+        Capability.setSignatureScheme(Capability.SignatureScheme.MD5);
+    }
+
+    @Test
+    public void benchmarkVerification() throws Exception {
+
+        XCap[] md5Caps = createCaps(Capability.SignatureScheme.MD5);
+        XCap[] hmacCaps = createCaps(Capability.SignatureScheme.HMAC_SHA256);
+
+        long legacyNanos = Long.MAX_VALUE;
+        long md5Nanos = Long.MAX_VALUE;
+        long hmacNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyNanos = Math.min(legacyNanos, verifyLegacy(md5Caps));
+            md5Nanos = Math.min(md5Nanos, verify(md5Caps));
+            hmacNanos = Math.min(hmacNanos, verify(hmacCaps));
+        }
+
+        int numVerifications = NUM_CAPS * ITERATIONS;
+        System.out.println("signature verification:");
+        System.out.println(String.format("  MD5, new digest per call: %8.0f ns", (double) legacyNanos
+            / numVerifications));
+        System.out.println(String.format("  MD5:                      %8.0f ns", (double) md5Nanos
+            / numVerifications));
+        System.out.println(String.format("  HMAC-SHA256:              %8.0f ns", (double) hmacNanos
+            / numVerifications));
+    }
+
+    private static XCap[] createCaps(Capability.SignatureScheme scheme) {
+        Capability.setSignatureScheme(scheme);
+        XCap[] caps = new XCap[NUM_CAPS];
+        for (int i = 0; i < NUM_CAPS; i++)
+            caps[i] = new Capability("1a2b3c4d-5e6f-7a8b-9c0d-1e2f3a4b5c6d:" + i, 2, 600,
+                System.currentTimeMillis() / 1000 + 600, "client", i, false, SnapConfig.SNAP_CONFIG_SNAPS_DISABLED,
+                0, SECRET).getXCap();
+        return caps;
+    }
+
+    private static long verify(XCap[] caps) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            for (XCap xcap : caps)
+                assertTrue(new Capability(xcap, SECRET).hasValidSignature());
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Verifies the signatures as done before the digests and HMAC-SHA256 signatures were introduced.
+     */
+    private static long verifyLegacy(XCap[] caps) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            for (XCap xcap : caps) {
+                XCap.Builder builder = xcap.toBuilder();
+                String plainText = builder.getFileId() + Integer.toString(builder.getAccessMode())
+                    + Long.toString(builder.getExpireTimeS()) + Long.toString(builder.getTruncateEpoch())
+                    + Long.toString(builder.getSnapConfig().getNumber()) + Long.toString(builder.getSnapTimestamp())
+                    + Long.toString(builder.getVoucherSize()) + Long.toString(builder.getExpireTimeMs()) + SECRET;
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                md5.update(plainText.getBytes());
+                assertTrue(xcap.getServerSignature().equals(OutputUtils.byteArrayToHexString(md5.digest())));
+            }
+        return System.nanoTime() - start;
+    }
+}
@@ -65,4 +65,46 @@ public class CapabilityTest {
         assertFalse(cap4.isValid());
 
     }
+
+    @Test
+    public void testHMACSignature() throws Exception {
+
+        Capability.setSignatureScheme(Capability.SignatureScheme.HMAC_SHA256);
+        try {
+            Capability cap = new Capability("ABCD:1", 2, 60, System.currentTimeMillis() / 1000 + 100, "", 3, false,
+                    SnapConfig.SNAP_CONFIG_SNAPS_DISABLED, 0, SECRET);
+            assertTrue(cap.getSignature().startsWith(Capability.HMAC_SHA256_PREFIX));
+            assertTrue(cap.isValid());
+
+            // signatures are verified with a wrapped XCap, as on the OSD
+            assertTrue(new Capability(cap.getXCap(), SECRET).hasValidSignature());
+            assertFalse(new Capability(cap.getXCap(), "other secret").hasValidSignature());
+            assertFalse(new Capability(cap.getXCap().toBuilder().setAccessMode(3).build(), SECRET)
+                    .hasValidSignature());
+            assertFalse(new Capability(cap.getXCap().toBuilder().setTruncateEpoch(4).build(), SECRET)
+                    .hasValidSignature());
+            assertFalse(new Capability(cap.getXCap().toBuilder().setFileId("ABCD:2").build(), SECRET)
+                    .hasValidSignature());
+
+            // non-ASCII file IDs
+            cap = new Capability("\u00e4\u00f6\u00fc:1", 2, 60, System.currentTimeMillis() / 1000 + 100, "", 3,
+                    false, SnapConfig.SNAP_CONFIG_SNAPS_DISABLED, 0, SECRET);
+            assertTrue(new Capability(cap.getXCap(), SECRET).hasValidSignature());
+
+            // MD5 signatures remain valid until they are no longer accepted
+            Capability.setSignatureScheme(Capability.SignatureScheme.MD5);
+            Capability md5Cap = new Capability("ABCD:1", 2, 60, System.currentTimeMillis() / 1000 + 100, "", 3,
+                    false, SnapConfig.SNAP_CONFIG_SNAPS_DISABLED, 0, SECRET);
+            assertFalse(md5Cap.getSignature().startsWith(Capability.HMAC_SHA256_PREFIX));
+            assertTrue(new Capability(md5Cap.getXCap(), SECRET).hasValidSignature());
+
+            Capability.setMD5SignaturesAccepted(false);
+            assertFalse(new Capability(md5Cap.getXCap(), SECRET).hasValidSignature());
+            assertTrue(new Capability(cap.getXCap(), SECRET).hasValidSignature());
+
+        } finally {
+            Capability.setSignatureScheme(Capability.SignatureScheme.MD5);
+            Capability.setMD5SignaturesAccepted(true);
+        }
+    }
 }
@@ -12,6 +12,9 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -31,6 +34,8 @@ import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.UserCredentials;
 import org.xtreemfs.foundation.util.FSUtils;
 import org.xtreemfs.osd.storage.HashStorageLayout;
 import org.xtreemfs.osd.storage.MetadataCache;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.AccessControlPolicyType;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.KeyValuePair;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.OSDWriteResponse;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.REPL_FLAG;
 import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SYSTEM_V_FCNTL;
@@ -131,6 +136,105 @@ public class FileHandleImplementationTest {
     }
     
 
+    @Test
+    public void testParallelStripedRead() throws Exception {
+        String volumeName = "testParallelStripedRead";
+        String fileName = "testfile";
+        int flags = SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_CREAT.getNumber()
+                | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR.getNumber();
+
+        // Stripe the file over both OSDs with a stripe size of 4 kB.
+        client.createVolume(mrcAddress, auth, userCredentials, volumeName, 0777, userCredentials.getUsername(),
+                userCredentials.getGroupsList().get(0), AccessControlPolicyType.ACCESS_CONTROL_POLICY_POSIX,
+                StripingPolicyType.STRIPING_POLICY_RAID0, 4, 2, new ArrayList<KeyValuePair>());
+        Volume volume = client.openVolume(volumeName, null, options);
+        FileHandle fileHandle = volume.openFile(userCredentials, fileName, flags, 0777);
+
+        // Write 20 objects, leave a hole and let the last object end in the middle.
+        byte[] data = new byte[20 * 4096 + 1000];
+        new Random(42).nextBytes(data);
+        Arrays.fill(data, 5 * 4096, 7 * 4096, (byte) 0);
+        fileHandle.write(userCredentials, data, 0, 5 * 4096, 0);
+        fileHandle.write(userCredentials, data, 7 * 4096, data.length - 7 * 4096, 7 * 4096);
+
+        // Read with all requests in flight, with a limited window and sequentially.
+        for (int maxParallelReads : new int[] { 32, 3, 1 }) {
+            options.setMaxParallelReads(maxParallelReads);
+            byte[] result = new byte[data.length + 4096];
+            int read = fileHandle.read(userCredentials, result, 0, result.length, 0);
+            assertEquals(data.length, read);
+            assertTrue(Arrays.equals(data, Arrays.copyOf(result, read)));
+
+            // Unaligned read in the middle of the file.
+            read = fileHandle.read(userCredentials, result, 10, 9 * 4096 + 17, 4000);
+            assertEquals(9 * 4096 + 17, read);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, 4000, 4000 + read),
+                    Arrays.copyOfRange(result, 10, 10 + read)));
+        }
+        options.setMaxParallelReads(new Options().getMaxParallelReads());
+
+        fileHandle.close();
+        client.deleteVolume(auth, userCredentials, volumeName);
+    }
+
+    @Test
+    public void testReadahead() throws Exception {
+        String volumeName = "testReadahead";
+        String fileName = "testfile";
+        int flags = SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_CREAT.getNumber()
+                | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR.getNumber();
+
+        Options readaheadOptions = new Options();
+        readaheadOptions.setEnableReadahead(true);
+        readaheadOptions.setReadaheadObjects(4);
+        readaheadOptions.setMaxReadaheadBytes(3 * 4096);
+
+        client.createVolume(mrcAddress, auth, userCredentials, volumeName, 0777, userCredentials.getUsername(),
+                userCredentials.getGroupsList().get(0), AccessControlPolicyType.ACCESS_CONTROL_POLICY_POSIX,
+                StripingPolicyType.STRIPING_POLICY_RAID0, 4, 2, new ArrayList<KeyValuePair>());
+        Volume volume = client.openVolume(volumeName, null, readaheadOptions);
+        FileHandle fileHandle = volume.openFile(userCredentials, fileName, flags, 0777);
+
+        byte[] data = new byte[16 * 4096 + 100];
+        new Random(23).nextBytes(data);
+        fileHandle.write(userCredentials, data, data.length, 0);
+
+        // Read sequentially in chunks which are not aligned to the object boundaries.
+        assertTrue(Arrays.equals(data, readSequentially(fileHandle, data.length + 1000, 1500)));
+
+        // Modify the file, the prefetched objects must not be returned anymore.
+        readSequentially(fileHandle, 3 * 4096, 1000);
+        byte[] modified = new byte[5000];
+        new Random(24).nextBytes(modified);
+        fileHandle.write(userCredentials, modified, modified.length, 4096);
+        System.arraycopy(modified, 0, data, 4096, modified.length);
+        assertTrue(Arrays.equals(data, readSequentially(fileHandle, data.length, 1000)));
+
+        // Truncate the file.
+        readSequentially(fileHandle, 4 * 4096, 4096);
+        fileHandle.truncate(userCredentials, 2 * 4096 + 10);
+        assertTrue(Arrays.equals(Arrays.copyOf(data, 2 * 4096 + 10), readSequentially(fileHandle, data.length, 4096)));
+
+        fileHandle.close();
+        client.deleteVolume(auth, userCredentials, volumeName);
+    }
+
+    /**
+     * Reads up to length bytes from the beginning of the file in chunks of chunkSize bytes.
+     */
+    private byte[] readSequentially(FileHandle fileHandle, int length, int chunkSize) throws Exception {
+        byte[] result = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = fileHandle.read(userCredentials, result, offset, Math.min(chunkSize, length - offset), offset);
+            if (read == 0) {
+                break;
+            }
+            offset += read;
+        }
+        return Arrays.copyOf(result, offset);
+    }
+
     @Test(expected = PosixErrorException.class)
     public void testTruncateWithAsyncWritesFailed() throws Exception {
         String volumeName = "testTruncateWithAsyncWritesFailed";
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+package org.xtreemfs.common.libxtreemfs;
+
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.pbrpc.generatedinterfaces.MRC.Stat;
+
+/**
+ * Measures the throughput of concurrent getStat() calls on the {@link MetadataCache}. Not part of the regular
+ * test suite; run it manually to compare implementations of the cache.
+ */
+public class MetadataCacheBenchmark {
+    @Rule
+    public final TestRule       testLog          = TestHelper.testLog;
+
+    private static final int    NUM_PATHS        = 10000;
+
+    private static final int    DURATION_MS      = 2000;
+
+    /**
+     * Every n-th operation of a thread is an update of the cached Stat.
+     */
+    private static final int    UPDATE_INTERVAL  = 100;
+
+    private static final int[]  NUM_THREADS      = { 1, 2, 4, 8, 16 };
+
+    private String[]            paths;
+
+    private Stat[]              stats;
+
+    @Before
+    public void setUp() throws Exception {
+        Logging.start(SetupUtils.DEBUG_LEVEL, SetupUtils.DEBUG_CATEGORIES);
+
+        paths = new String[NUM_PATHS];
+        stats = new Stat[NUM_PATHS];
+        for (int i = 0; i < NUM_PATHS; i++) {
+            paths[i] = "/dir" + (i % 100) + "/file" + i;
+            stats[i] = Stat.newBuilder().setDev(0).setIno(i).setMode(0).setNlink(1).setUserId("")
+                    .setGroupId("").setSize(0).setAtimeNs(0).setMtimeNs(0).setCtimeNs(0).setBlksize(0)
+                    .setTruncateEpoch(0).build();
+        }
+    }
+
+    @Test
+    public void benchmarkGetStat() throws Exception {
+        for (int numThreads : NUM_THREADS) {
+            MetadataCache cache = new MetadataCache(NUM_PATHS, 3600);
+            for (int i = 0; i < NUM_PATHS; i++) {
+                cache.updateStat(paths[i], stats[i]);
+            }
+
+            long ops = run(cache, numThreads);
+            System.out.println(String.format("%2d threads: %,12d getStat/s", numThreads, ops * 1000
+                    / DURATION_MS));
+        }
+    }
+
+    /**
+     * Runs "numThreads" threads which read (and occasionally update) random entries of "cache".
+     *
+     * @return total number of operations.
+     */
+    private long run(final MetadataCache cache, int numThreads) throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] opsPerThread = new long[numThreads];
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int threadNo = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(threadNo);
+                    long ops = 0;
+                    try {
+                        start.await();
+                        while (!stop.get()) {
+                            int i = random.nextInt(NUM_PATHS);
+                            if (ops % UPDATE_INTERVAL == 0) {
+                                cache.updateStat(paths[i], stats[i]);
+                            } else if (cache.getStat(paths[i]) == null) {
+                                failed.set(true);
+                            }
+                            ops++;
+                        }
+                    } catch (InterruptedException e) {
+                        failed.set(true);
+                    }
+                    opsPerThread[threadNo] = ops;
+                }
+            };
+            threads[t].start();
+        }
+
+        start.countDown();
+        Thread.sleep(DURATION_MS);
+        stop.set(true);
+
+        long total = 0;
+        for (int t = 0; t < numThreads; t++) {
+            threads[t].join();
+            total += opsPerThread[t];
+        }
+
+        assertFalse(failed.get());
+        return total;
+    }
+}
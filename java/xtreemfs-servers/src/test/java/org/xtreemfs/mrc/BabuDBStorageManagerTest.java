@@ -10,6 +10,7 @@ package org.xtreemfs.mrc;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -34,6 +35,7 @@ import org.xtreemfs.mrc.database.AtomicDBUpdate;
 import org.xtreemfs.mrc.database.DBAccessResultListener;
 import org.xtreemfs.mrc.database.DatabaseResultSet;
 import org.xtreemfs.mrc.database.babudb.BabuDBStorageManager;
+import org.xtreemfs.mrc.database.babudb.DentryCache;
 import org.xtreemfs.mrc.metadata.FileMetadata;
 import org.xtreemfs.mrc.utils.Path;
 import org.xtreemfs.SetupUtils;
@@ -337,6 +339,53 @@ public class BabuDBStorageManagerTest {
         assertTrue(tmp.contains("comp2"));
     }
 
+    @Test
+    public void testPathResolutionWithDentryCache() throws Exception {
+        
+        final short perms = 511;
+        exc = null;
+        
+        DentryCache cache = new DentryCache(1024 * 1024);
+        BabuDBStorageManager cMngr = new BabuDBStorageManager(database, database.getDatabaseManager()
+                .getDatabase("volId"), cache);
+        
+        AtomicDBUpdate update = cMngr.createAtomicDBUpdate(listener, null);
+        long dirId = cMngr.createDir(2, 1, "dir", 0, 0, 0, "me", "myGrp", perms, 0, update).getId();
+        cMngr.createFile(3, dirId, "file.txt", 0, 0, 0, "me", "myGrp", perms, 0, 4711, false, 3, 4, update);
+        update.execute();
+        waitForResponse();
+        
+        FileMetadata[] md = cMngr.resolvePath(new Path("volume/dir/file.txt"));
+        assertEquals(4711, md[2].getSize());
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getNumEntries());
+        
+        // modifications of returned metadata must not affect the cache
+        md[2].setSize(1);
+        md = cMngr.resolvePath(new Path("volume/dir/file.txt"));
+        assertEquals(4711, md[2].getSize());
+        assertEquals(3, cache.getHits());
+        
+        // updates invalidate cached entries
+        md[2].setSize(42);
+        update = cMngr.createAtomicDBUpdate(listener, null);
+        cMngr.setMetadata(md[2], FileMetadata.FC_METADATA, update);
+        update.execute();
+        waitForResponse();
+        assertEquals(42, cMngr.resolvePath(new Path("volume/dir/file.txt"))[2].getSize());
+        
+        update = cMngr.createAtomicDBUpdate(listener, null);
+        cMngr.delete(dirId, "file.txt", update);
+        update.execute();
+        waitForResponse();
+        assertNull(cMngr.resolvePath(new Path("volume/dir/file.txt"))[2]);
+        assertTrue(cache.getInvalidations() >= 2);
+        
+        cache.clear();
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(dirId, cMngr.getMetadata(1, "dir").getId());
+    }
+    
     @Test
     public void testPartialReaddir() throws Exception {
         
@@ -410,6 +459,140 @@ public class BabuDBStorageManagerTest {
         
     }
     
+    @Test
+    public void testReaddirAfterLastSeenFileName() throws Exception {
+        
+        final String userId = "me";
+        final String groupId = "myGroup";
+        final short perms = 511;
+        exc = null;
+        
+        // create a directory with files and nested directories, some of whose
+        // names are prefixes of others, and a sibling directory with an entry
+        AtomicDBUpdate update = mngr.createAtomicDBUpdate(listener, null);
+        mngr.createDir(2, 1, "dir", 0, 0, 0, userId, groupId, perms, 0, update);
+        mngr.createDir(3, 1, "dir2", 0, 0, 0, userId, groupId, perms, 0, update);
+        mngr.createFile(4, 3, "other", 0, 0, 0, userId, groupId, perms, 0, 0, false, 0, 0, update);
+        update.execute();
+        waitForResponse();
+        
+        String[] names = { "a", "ab", "abc", "b", "x" };
+        long nextId = 10;
+        update = mngr.createAtomicDBUpdate(listener, null);
+        for (String name : names)
+            mngr.createFile(nextId++, 2, name, 0, 0, 0, userId, groupId, perms, 0, 0, false, 0, 0, update);
+        for (int i = 0; i < 6; i++)
+            mngr.createDir(nextId++, 2, "dir" + i, 0, 0, 0, userId, groupId, perms, 0, update);
+        update.execute();
+        waitForResponse();
+        
+        List<String> all = getNames(mngr.getChildren(2, 0, Integer.MAX_VALUE));
+        assertEquals(names.length + 6, all.size());
+        
+        // page through the directory; each page has to be equal to the
+        // corresponding page retrieved by means of an offset
+        final int pageSize = 4;
+        List<String> paged = new LinkedList<String>();
+        List<String> page = getNames(mngr.getChildren(2, 0, pageSize));
+        while (!page.isEmpty()) {
+            assertEquals(getNames(mngr.getChildren(2, paged.size(), pageSize)), page);
+            paged.addAll(page);
+            page = getNames(mngr.getChildren(2, paged.get(paged.size() - 1), pageSize));
+        }
+        assertEquals(all, paged);
+        
+        // the last page is incomplete and does not contain entries of the
+        // sibling directory
+        List<String> lastPage = getNames(mngr.getChildren(2, all.get(all.size() - 3), pageSize));
+        assertEquals(all.subList(all.size() - 2, all.size()), lastPage);
+        assertTrue(getNames(mngr.getChildren(2, all.get(all.size() - 1), pageSize)).isEmpty());
+        
+        // a name that is a prefix of other names only excludes itself
+        List<String> afterA = getNames(mngr.getChildren(2, "a", Integer.MAX_VALUE));
+        assertEquals(all.subList(all.indexOf("a") + 1, all.size()), afterA);
+        assertEquals("ab", afterA.get(0));
+        
+        // listings continue after names that no longer exist
+        update = mngr.createAtomicDBUpdate(listener, null);
+        mngr.delete(2, "ab", update);
+        update.execute();
+        waitForResponse();
+        
+        List<String> afterAb = getNames(mngr.getChildren(2, "ab", Integer.MAX_VALUE));
+        assertEquals(all.subList(all.indexOf("ab") + 1, all.size()), afterAb);
+        assertEquals("abc", afterAb.get(0));
+    }
+    
+    @Test
+    public void testBulkSoftlinkTargets() throws Exception {
+        
+        final String userId = "me";
+        final String groupId = "myGroup";
+        final short perms = 511;
+        exc = null;
+        
+        // create a directory with twelve entries: symbolic links with the
+        // smallest, the largest and a medium ID, directories and files, as
+        // well as links with adjacent IDs in another directory
+        AtomicDBUpdate update = mngr.createAtomicDBUpdate(listener, null);
+        mngr.createDir(2, 1, "dir", 0, 0, 0, userId, groupId, perms, 0, update);
+        mngr.createDir(3, 1, "dir2", 0, 0, 0, userId, groupId, perms, 0, update);
+        mngr.createSymLink(19, 3, "before", 0, 0, 0, userId, groupId, "/target19", update);
+        mngr.createSymLink(32, 3, "after", 0, 0, 0, userId, groupId, "/target32", update);
+        
+        Map<Long, String> expected = new HashMap<Long, String>();
+        for (long id = 20; id < 32; id++) {
+            String name = "entry" + id;
+            if (id == 20 || id == 24 || id == 31) {
+                mngr.createSymLink(id, 2, name, 0, 0, 0, userId, groupId, "/target" + id, update);
+                expected.put(id, "/target" + id);
+            } else if (id == 21 || id == 25 || id == 28)
+                mngr.createDir(id, 2, name, 0, 0, 0, userId, groupId, perms, 0, update);
+            else
+                mngr.createFile(id, 2, name, 0, 0, 0, userId, groupId, perms, 0, 0, false, 0, 0, update);
+        }
+        
+        // add a user attribute with the name of the link target attribute
+        mngr.setXAttr(22, userId, "lt", "/bogus".getBytes(), update);
+        update.execute();
+        waitForResponse();
+        
+        // determine the ID range of all non-directories in the listing, as
+        // done for readdir; the listing is large and dense enough to be
+        // subject to a bulk lookup
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        List<FileMetadata> files = new LinkedList<FileMetadata>();
+        DatabaseResultSet<FileMetadata> children = mngr.getChildren(2, 0, Integer.MAX_VALUE);
+        while (children.hasNext()) {
+            FileMetadata child = children.next();
+            if (!child.isDirectory()) {
+                files.add(child);
+                minId = Math.min(minId, child.getId());
+                maxId = Math.max(maxId, child.getId());
+            }
+        }
+        children.destroy();
+        assertEquals(9, files.size());
+        assertEquals(20, minId);
+        assertEquals(31, maxId);
+        
+        // the bulk lookup has to return the same targets as the per-file
+        // lookups, and nothing else
+        Map<Long, String> targets = mngr.getSoftlinkTargets(minId, maxId);
+        for (FileMetadata file : files)
+            assertEquals(mngr.getSoftlinkTarget(file.getId()), targets.get(file.getId()));
+        assertEquals(expected, targets);
+    }
+    
+    private static List<String> getNames(DatabaseResultSet<FileMetadata> children) {
+        List<String> names = new LinkedList<String>();
+        while (children.hasNext())
+            names.add(children.next().getFileName());
+        children.destroy();
+        return names;
+    }
+    
     private void waitForResponse() throws Exception {
         
         synchronized (lock) {
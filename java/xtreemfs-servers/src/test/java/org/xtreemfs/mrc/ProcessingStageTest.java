@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.mrc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestEnvironment;
+import org.xtreemfs.TestEnvironment.Services;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.pbrpc.client.PBRPCException;
+import org.xtreemfs.foundation.pbrpc.client.RPCAuthentication;
+import org.xtreemfs.foundation.pbrpc.client.RPCResponse;
+import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.UserCredentials;
+import org.xtreemfs.mrc.ac.FileAccessManager;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.AccessControlPolicyType;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.KeyValuePair;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.StripingPolicy;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.StripingPolicyType;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.VivaldiCoordinates;
+import org.xtreemfs.pbrpc.generatedinterfaces.MRC.DirectoryEntries;
+import org.xtreemfs.pbrpc.generatedinterfaces.MRC.Stat;
+import org.xtreemfs.pbrpc.generatedinterfaces.MRC.Volumes;
+import org.xtreemfs.pbrpc.generatedinterfaces.MRCServiceClient;
+
+import com.google.protobuf.Message;
+
+/**
+ * Tests the MRC with more than one processing thread.
+ */
+public class ProcessingStageTest {
+    @Rule
+    public final TestRule     testLog     = TestHelper.testLog;
+
+    private static final int  NUM_THREADS = 4;
+
+    private static final int  NUM_FILES   = 20;
+
+    private MRCServiceClient  client;
+
+    private InetSocketAddress mrcAddress;
+
+    private TestEnvironment   testEnv;
+
+    public ProcessingStageTest() {
+        Logging.start(SetupUtils.DEBUG_LEVEL);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mrcAddress = SetupUtils.getMRC1Addr();
+
+        SetupUtils.MRC_PROCESSING_THREADS = NUM_THREADS;
+        testEnv = new TestEnvironment(Services.DIR_CLIENT, Services.TIME_SYNC, Services.UUID_RESOLVER,
+                Services.MRC_CLIENT, Services.DIR_SERVICE, Services.MRC, Services.OSD);
+        testEnv.start();
+
+        client = testEnv.getMrcClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testEnv.shutdown();
+        SetupUtils.MRC_PROCESSING_THREADS = 1;
+    }
+
+    @Test
+    public void testConcurrentOperationsOnMultipleVolumes() throws Exception {
+
+        final UserCredentials uc = createUserCredentials("userXY", "groupZ");
+        final String[] volumeNames = { "vol1", "vol2" };
+
+        for (String volumeName : volumeNames)
+            invokeSync(client.xtreemfs_mkvol(mrcAddress, RPCAuthentication.authNone, uc,
+                    AccessControlPolicyType.ACCESS_CONTROL_POLICY_POSIX, getDefaultStripingPolicy(), "", 0775,
+                    volumeName, "", "", new LinkedList<KeyValuePair>(), 0));
+
+        // create, stat and list files in both volumes concurrently
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[NUM_THREADS * 2];
+        for (int t = 0; t < threads.length; t++) {
+            final String volumeName = volumeNames[t % volumeNames.length];
+            final String dirName = "dir" + t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        invokeSync(client.mkdir(mrcAddress, RPCAuthentication.authNone, uc, volumeName, dirName,
+                                0775));
+                        for (int i = 0; i < NUM_FILES; i++) {
+                            String path = dirName + "/file" + i;
+                            invokeSync(client.open(mrcAddress, RPCAuthentication.authNone, uc, volumeName, path,
+                                    FileAccessManager.O_CREAT, 0775, 0, getDefaultCoordinates()));
+                            Stat stat = invokeSync(
+                                    client.getattr(mrcAddress, RPCAuthentication.authNone, uc, volumeName, path,
+                                            -1)).getStbuf();
+                            assertEquals("userXY", stat.getUserId());
+                            DirectoryEntries entries = invokeSync(client.readdir(mrcAddress,
+                                    RPCAuthentication.authNone, uc, volumeName, dirName, -1, 1000, false, 0));
+                            assertEquals(i + 3, entries.getEntriesCount());
+                        }
+                    } catch (Throwable exc) {
+                        error.compareAndSet(null, exc);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread th : threads)
+            th.join();
+        assertNull(error.get());
+
+        // check the result
+        for (int t = 0; t < threads.length; t++) {
+            DirectoryEntries entries = invokeSync(client.readdir(mrcAddress, RPCAuthentication.authNone, uc,
+                    volumeNames[t % volumeNames.length], "dir" + t, -1, 1000, false, 0));
+            assertEquals(NUM_FILES + 2, entries.getEntriesCount());
+        }
+
+        // volume operations are executed exclusively
+        for (String volumeName : volumeNames)
+            invokeSync(client.xtreemfs_rmvol(mrcAddress, RPCAuthentication.authNone, uc, volumeName));
+        Volumes vols = invokeSync(client.xtreemfs_lsvol(mrcAddress, RPCAuthentication.authNone, uc));
+        assertEquals(0, vols.getVolumesCount());
+    }
+
+    private static <T extends Message> T invokeSync(RPCResponse<T> response) throws PBRPCException,
+            IOException, InterruptedException {
+
+        try {
+            return response.get();
+        } finally {
+            response.freeBuffers();
+        }
+    }
+
+    private static UserCredentials createUserCredentials(String uid, String gid) {
+        List<String> gids = new LinkedList<String>();
+        gids.add(gid);
+        return UserCredentials.newBuilder().setUsername(uid).addAllGroups(gids).build();
+    }
+
+    private static StripingPolicy getDefaultStripingPolicy() {
+        return StripingPolicy.newBuilder().setType(StripingPolicyType.STRIPING_POLICY_RAID0).setStripeSize(1000)
+                .setWidth(1).build();
+    }
+
+    private static VivaldiCoordinates getDefaultCoordinates() {
+        return VivaldiCoordinates.newBuilder().setXCoordinate(0).setYCoordinate(0).setLocalError(0).build();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.mrc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestEnvironment;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.babudb.BabuDBFactory;
+import org.xtreemfs.babudb.api.BabuDB;
+import org.xtreemfs.babudb.config.BabuDBConfig;
+import org.xtreemfs.babudb.log.DiskLogger.SyncMode;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.util.FSUtils;
+import org.xtreemfs.mrc.database.AtomicDBUpdate;
+import org.xtreemfs.mrc.database.DatabaseResultSet;
+import org.xtreemfs.mrc.database.StorageManager;
+import org.xtreemfs.mrc.database.babudb.BabuDBStorageManager;
+import org.xtreemfs.mrc.metadata.FileMetadata;
+
+/**
+ * Compares the database costs of listing a directory with 100,000 files page by page, as done by readdir with stat
+ * information: the targets of symbolic links are either looked up for each file, or retrieved for each page by means
+ * of a single range lookup ({@link StorageManager#getSoftlinkTargets(long, long)}). Not part of the regular test
+ * suite; run it manually.
+ */
+public class ReadDirAndStatBenchmark {
+    @Rule
+    public final TestRule       testLog      = TestHelper.testLog;
+
+    private static final String DB_DIRECTORY = "/tmp/xtreemfs-test";
+
+    private static final int    NUM_FILES    = 100000;
+
+    private static final int    LINK_EVERY   = 100;
+
+    private static final int    PAGE_SIZE    = 1024;
+
+    private static final int    ROUNDS       = 3;
+
+    private TestEnvironment     testEnv;
+
+    private BabuDB              database;
+
+    private StorageManager      sMan;
+
+    @Before
+    public void setUp() throws Exception {
+        Logging.start(Logging.LEVEL_WARN);
+
+        testEnv = new TestEnvironment(new TestEnvironment.Services[] { TestEnvironment.Services.DIR_SERVICE,
+                TestEnvironment.Services.DIR_CLIENT, TestEnvironment.Services.TIME_SYNC,
+                TestEnvironment.Services.UUID_RESOLVER });
+        testEnv.start();
+
+        File dbDir = new File(DB_DIRECTORY);
+        FSUtils.delTree(dbDir);
+        dbDir.mkdirs();
+        database = BabuDBFactory.createBabuDB(new BabuDBConfig(DB_DIRECTORY, DB_DIRECTORY, 2, 1024 * 1024 * 16,
+                5 * 60, SyncMode.ASYNC, 300, 1000, false, 16, 1024 * 1024 * 512));
+        sMan = new BabuDBStorageManager(database, "volId", "volume", (short) 1, new short[] { 1 }, new short[0],
+                "me", "myGrp", 511, null, null, false, 0, null);
+
+        // create a directory with NUM_FILES files, every LINK_EVERY-th of
+        // which is a symbolic link
+        AtomicDBUpdate update = sMan.createAtomicDBUpdate(null, null);
+        sMan.createDir(2, 1, "dir", 0, 0, 0, "me", "myGrp", 511, 0, update);
+        for (int i = 0; i < NUM_FILES; i++) {
+            long fileId = i + 3;
+            String name = String.format("file%06d", i);
+            if (i % LINK_EVERY == 0)
+                sMan.createSymLink(fileId, 2, name, 0, 0, 0, "me", "myGrp", "target" + i, update);
+            else
+                sMan.createFile(fileId, 2, name, 0, 0, 0, "me", "myGrp", 511, 0, 0, false, 0, 0, update);
+
+            if (i % 1000 == 999) {
+                update.execute();
+                update = sMan.createAtomicDBUpdate(null, null);
+            }
+        }
+        sMan.setLastFileId(NUM_FILES + 2, update);
+        update.execute();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+        testEnv.shutdown();
+    }
+
+    @Test
+    public void benchmarkSoftlinkTargets() throws Exception {
+
+        long individualNanos = Long.MAX_VALUE;
+        long bulkNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            individualNanos = Math.min(individualNanos, list(false));
+            bulkNanos = Math.min(bulkNanos, list(true));
+        }
+
+        System.out.println(String.format("listing %d files in pages of %d:", NUM_FILES, PAGE_SIZE));
+        System.out.println(String.format("  individual lookups:      %8.1f ms", individualNanos / 1e6));
+        System.out.println(String.format("  one range lookup / page: %8.1f ms", bulkNanos / 1e6));
+    }
+
+    /**
+     * Lists the directory and resolves the link targets of all files.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    private long list(boolean bulk) throws Exception {
+
+        int numLinks = 0;
+        long start = System.nanoTime();
+
+        String last = null;
+        for (;;) {
+            DatabaseResultSet<FileMetadata> it = last == null ? sMan.getChildren(2, 0, PAGE_SIZE) : sMan
+                    .getChildren(2, last, PAGE_SIZE);
+            List<FileMetadata> page = new ArrayList<FileMetadata>(PAGE_SIZE);
+            while (it.hasNext())
+                page.add(it.next());
+            it.destroy();
+            if (page.isEmpty())
+                break;
+
+            Map<Long, String> targets;
+            if (bulk) {
+                targets = sMan.getSoftlinkTargets(page.get(0).getId(), page.get(page.size() - 1).getId());
+            } else {
+                targets = new HashMap<Long, String>();
+                for (FileMetadata file : page) {
+                    String target = sMan.getSoftlinkTarget(file.getId());
+                    if (target != null)
+                        targets.put(file.getId(), target);
+                }
+            }
+            numLinks += targets.size();
+
+            last = page.get(page.size() - 1).getFileName();
+        }
+
+        long nanos = System.nanoTime() - start;
+        assertEquals(NUM_FILES / LINK_EVERY, numLinks);
+        return nanos;
+    }
+}
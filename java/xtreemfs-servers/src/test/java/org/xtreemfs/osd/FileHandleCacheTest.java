@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.foundation.util.FSUtils;
+import org.xtreemfs.osd.storage.FileHandleCache;
+
+public class FileHandleCacheTest {
+    @Rule
+    public final TestRule testLog = TestHelper.testLog;
+
+    private static final String FILE_ID = "ABCDEFG:1";
+
+    private File                dir;
+
+    private String              path;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "xtreemfs-test-fhc");
+        FSUtils.delTree(dir);
+        dir.mkdirs();
+        path = new File(dir, "obj").getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FSUtils.delTree(dir);
+    }
+
+    @Test
+    public void testReadOnlyChannels() throws Exception {
+
+        FileHandleCache cache = new FileHandleCache(10, 1);
+        assertNull(cache.acquire(FILE_ID, path, false));
+
+        FileChannel rw = cache.acquire(FILE_ID, path, true);
+        rw.write(ByteBuffer.wrap(new byte[10]));
+        cache.discard(FILE_ID, path, rw);
+        assertFalse(rw.isOpen());
+
+        // reads open the file read-only
+        FileChannel ro = cache.acquire(FILE_ID, path, false);
+        try {
+            ro.write(ByteBuffer.wrap(new byte[10]));
+            fail("read-only channel is writable");
+        } catch (NonWritableChannelException exc) {
+            // expected
+        }
+        cache.release(FILE_ID, path, ro);
+
+        // a cached read-only channel is not used for writing
+        rw = cache.acquire(FILE_ID, path, true);
+        assertNotSame(ro, rw);
+        assertFalse(ro.isOpen());
+        cache.release(FILE_ID, path, rw);
+
+        // a cached writable channel can be used for reading
+        assertSame(rw, cache.acquire(FILE_ID, path, false));
+        cache.release(FILE_ID, path, rw);
+
+        assertEquals(4, cache.getOpens());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testInvalidateAcquiredChannel() throws Exception {
+
+        FileHandleCache cache = new FileHandleCache(10, 1);
+        FileChannel stale = cache.acquire(FILE_ID, path, true);
+
+        // the file is replaced while its channel is in use, and then
+        // acquired again
+        cache.invalidate(FILE_ID, path);
+        assertTrue(new File(path).delete());
+        FileChannel current = cache.acquire(FILE_ID, path, true);
+
+        // the stale channel must not be returned to the cache
+        cache.release(FILE_ID, path, stale);
+        assertFalse(stale.isOpen());
+
+        cache.release(FILE_ID, path, current);
+        assertTrue(current.isOpen());
+        assertSame(current, cache.acquire(FILE_ID, path, false));
+        cache.release(FILE_ID, path, current);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.xloc.StripingPolicyImpl;
+import org.xtreemfs.osd.storage.FileMetadata;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+
+/**
+ * Measures the throughput of {@link FileMetadata#updateObjectVersion(long, long)} and
+ * {@link FileMetadata#getLatestObjectVersion(long)}, as well as the heap footprint of the object versions of a
+ * large file, and compares them to the boxed <code>HashMap&lt;Long, Long&gt;</code> that was used before. Not part
+ * of the regular test suite; run it manually.
+ */
+public class FileMetadataBenchmark {
+    @Rule
+    public final TestRule     testLog     = TestHelper.testLog;
+
+    /**
+     * 100 GB with 128 KB objects
+     */
+    private static final int  NUM_OBJECTS = 800 * 1024;
+
+    private static final int  ROUNDS      = 10;
+
+    @Test
+    public void benchmarkObjectVersions() throws Exception {
+
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, 128))
+                .setReplicationFlags(0).build();
+        StripingPolicyImpl sp = StripingPolicyImpl.getPolicy(r, 0);
+
+        // FileMetadata
+        long before = usedMemory();
+        FileMetadata md = new FileMetadata(sp);
+        md.initLatestObjectVersions(md.createObjectNumberMap());
+        md.initLargestObjectVersions(md.createObjectNumberMap());
+        md.initObjectChecksums();
+        for (long i = 0; i < NUM_OBJECTS; i++) {
+            md.updateObjectVersion(i, 1);
+            md.updateObjectChecksum(i, 1, i);
+        }
+        long mdMemory = usedMemory() - before;
+
+        long t0 = System.nanoTime();
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (long i = 0; i < NUM_OBJECTS; i++) {
+                md.updateObjectVersion(i, round + 1);
+                sum += md.getLatestObjectVersion(i);
+            }
+        }
+        long mdNanos = System.nanoTime() - t0;
+        assertEquals(expectedSum(), sum);
+
+        // boxed maps as before
+        before = usedMemory();
+        Map<Long, Long> latest = new HashMap<Long, Long>();
+        Map<Long, Long> largest = new HashMap<Long, Long>();
+        Map<Long, Map<Long, Long>> checksums = new HashMap<Long, Map<Long, Long>>();
+        for (long i = 0; i < NUM_OBJECTS; i++) {
+            latest.put(i, 1L);
+            largest.put(i, 1L);
+            Map<Long, Long> c = new HashMap<Long, Long>();
+            c.put(1L, i);
+            checksums.put(i, c);
+        }
+        long boxedMemory = usedMemory() - before;
+
+        t0 = System.nanoTime();
+        sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (long i = 0; i < NUM_OBJECTS; i++) {
+                latest.put(i, (long) round + 1);
+                largest.put(i, (long) round + 1);
+                sum += latest.get(i);
+            }
+        }
+        long boxedNanos = System.nanoTime() - t0;
+        assertEquals(expectedSum(), sum);
+
+        long ops = (long) NUM_OBJECTS * ROUNDS;
+        System.out.println(String.format("FileMetadata:   %,12d update+get/s, %,6d KB (estimate: %,6d KB)", ops
+                * 1000000000L / mdNanos, mdMemory / 1024, md.estimateMemoryUsage() / 1024));
+        System.out.println(String.format("boxed HashMaps: %,12d update+get/s, %,6d KB", ops * 1000000000L
+                / boxedNanos, boxedMemory / 1024));
+
+        // keep the maps reachable until both measurements are done
+        assertEquals(NUM_OBJECTS, md.getLatestObjectCount());
+        assertEquals(NUM_OBJECTS, checksums.size());
+    }
+
+    private static long expectedSum() {
+        return (long) NUM_OBJECTS * ROUNDS * (ROUNDS + 1) / 2;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.xloc.StripingPolicyImpl;
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.util.FSUtils;
+import org.xtreemfs.osd.storage.FileHandleCache;
+import org.xtreemfs.osd.storage.FileMetadata;
+import org.xtreemfs.osd.storage.HashStorageLayout;
+import org.xtreemfs.osd.storage.MappedObjectCache;
+import org.xtreemfs.osd.storage.MetadataCache;
+import org.xtreemfs.osd.storage.ObjectInformation;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+
+/**
+ * Measures the throughput of small reads and in-place writes of the {@link HashStorageLayout} with and without the
+ * {@link FileHandleCache}, and reports how many object files had to be opened. A second benchmark measures the
+ * throughput of reads with and without the {@link MappedObjectCache}. Not part of the regular test suite; run it
+ * manually.
+ */
+public class HashStorageLayoutBenchmark {
+    @Rule
+    public final TestRule    testLog     = TestHelper.testLog;
+
+    private static final int NUM_FILES   = 16;
+
+    private static final int NUM_OBJECTS = 16;
+
+    private static final int OBJ_SIZE    = 128 * 1024;
+
+    private static final int IO_SIZE     = 4 * 1024;
+
+    private static final int NUM_OPS     = 200000;
+
+    static OSDConfig         config;
+
+    @BeforeClass
+    public static void initializeTest() throws Exception {
+        Logging.start(Logging.LEVEL_WARN);
+        config = SetupUtils.createOSD1Config();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        FSUtils.delTree(new File(config.getObjDir()));
+    }
+
+    @Test
+    public void benchmarkFileHandleCache() throws Exception {
+
+        HashMap<String, String> hm = config.toHashMap();
+        hm.put("file_handle_cache_size", "0");
+        HashStorageLayout uncached = new HashStorageLayout(new OSDConfig(hm), new MetadataCache());
+        long uncachedNanos = run(uncached, true);
+
+        FSUtils.delTree(new File(config.getObjDir()));
+
+        hm.put("file_handle_cache_size", Integer.toString(NUM_FILES * NUM_OBJECTS));
+        HashStorageLayout cached = new HashStorageLayout(new OSDConfig(hm), new MetadataCache());
+        long cachedNanos = run(cached, true);
+
+        FileHandleCache c0 = uncached.getFileHandleCache();
+        FileHandleCache c1 = cached.getFileHandleCache();
+        System.out.println(String.format("without cache: %,10d ops/s, %,8d opens", (long) NUM_OPS * 1000000000L
+                / uncachedNanos, c0.getOpens()));
+        System.out.println(String.format("with cache:    %,10d ops/s, %,8d opens, %,8d hits", (long) NUM_OPS
+                * 1000000000L / cachedNanos, c1.getOpens(), c1.getHits()));
+
+        // without the cache, each access opens the object file; with the
+        // cache, each object file is opened once
+        assertTrue(c0.getOpens() >= NUM_OPS);
+        assertEquals(NUM_FILES * NUM_OBJECTS, c1.getOpens());
+    }
+
+    @Test
+    public void benchmarkMappedObjectCache() throws Exception {
+
+        HashMap<String, String> hm = config.toHashMap();
+        hm.put("file_handle_cache_size", Integer.toString(NUM_FILES * NUM_OBJECTS));
+        HashStorageLayout unmapped = new HashStorageLayout(new OSDConfig(hm), new MetadataCache());
+        long unmappedNanos = run(unmapped, false);
+
+        FSUtils.delTree(new File(config.getObjDir()));
+
+        hm.put("mapped_object_cache.size", Long.toString((long) NUM_FILES * NUM_OBJECTS * OBJ_SIZE));
+        hm.put("mapped_object_cache.max_object_size", Integer.toString(OBJ_SIZE));
+        HashStorageLayout mapped = new HashStorageLayout(new OSDConfig(hm), new MetadataCache());
+        long mappedNanos = run(mapped, false);
+
+        MappedObjectCache c = mapped.getMappedObjectCache();
+        System.out.println(String.format("positional reads: %,10d ops/s", (long) NUM_OPS * 1000000000L
+                / unmappedNanos));
+        System.out.println(String.format("mapped reads:     %,10d ops/s, %,8d mappings, %,8d hits", (long) NUM_OPS
+                * 1000000000L / mappedNanos, c.getMappings(), c.getHits()));
+
+        // each object file is mapped once, when it is read for the second
+        // time
+        assertEquals(NUM_FILES * NUM_OBJECTS, c.getMappings());
+        assertTrue(c.getHits() >= NUM_OPS - 2 * NUM_FILES * NUM_OBJECTS);
+    }
+
+    private static long run(HashStorageLayout layout, boolean withWrites) throws Exception {
+
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, OBJ_SIZE / 1024))
+                .setReplicationFlags(0).build();
+        StripingPolicyImpl sp = StripingPolicyImpl.getPolicy(r, 0);
+
+        FileMetadata[] mds = new FileMetadata[NUM_FILES];
+        for (int i = 0; i < NUM_FILES; i++) {
+            mds[i] = layout.getFileMetadata(sp, fileId(i));
+            for (long objNo = 0; objNo < NUM_OBJECTS; objNo++)
+                layout.writeObject(fileId(i), mds[i], BufferPool.allocate(OBJ_SIZE), objNo, 0, 1, false, false);
+        }
+
+        Random rnd = new Random(42);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < NUM_OPS; i++) {
+
+            int file = rnd.nextInt(NUM_FILES);
+            long objNo = rnd.nextInt(NUM_OBJECTS);
+            int offset = rnd.nextInt(OBJ_SIZE / IO_SIZE) * IO_SIZE;
+
+            if (!withWrites || i % 2 == 0) {
+                ObjectInformation oinfo = layout.readObject(fileId(file), mds[file], objNo, offset, IO_SIZE, 1);
+                assertEquals(IO_SIZE, oinfo.getData().capacity());
+                BufferPool.free(oinfo.getData());
+            } else {
+                ReusableBuffer data = BufferPool.allocate(IO_SIZE);
+                layout.writeObject(fileId(file), mds[file], data, objNo, offset, 1, false, false);
+            }
+        }
+
+        return System.nanoTime() - t0;
+    }
+
+    private static String fileId(int i) {
+        return "ABCDEFG:" + i;
+    }
+}
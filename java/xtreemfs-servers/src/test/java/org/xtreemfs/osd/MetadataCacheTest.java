@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.xloc.StripingPolicyImpl;
+import org.xtreemfs.osd.storage.FileMetadata;
+import org.xtreemfs.osd.storage.MetadataCache;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+
+public class MetadataCacheTest {
+    @Rule
+    public final TestRule testLog = TestHelper.testLog;
+
+    @Test
+    public void testUnlimited() throws Exception {
+
+        MetadataCache cache = new MetadataCache();
+        for (int i = 0; i < 100; i++)
+            cache.setFileInfo("file" + i, createMetadata(1000));
+
+        assertEquals(100, cache.getNumEntries());
+        assertEquals(0, cache.getEvictions());
+        assertTrue(cache.getSize() > 100 * 1000 * 8);
+
+        assertNotNull(cache.getFileInfo("file5"));
+        assertNull(cache.getFileInfo("nonexisting"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        for (int i = 0; i < 100; i++)
+            assertNotNull(cache.removeFileInfo("file" + i));
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        FileMetadata md = createMetadata(1000);
+        final long entrySize = md.estimateMemoryUsage();
+
+        // room for roughly 10 entries
+        MetadataCache cache = new MetadataCache(entrySize * 10);
+
+        cache.setFileInfo("hot", md);
+        int hotReloads = 0;
+        for (int i = 0; i < 100; i++) {
+            cache.setFileInfo("file" + i, createMetadata(1000));
+
+            // keep accessing the "hot" file, reload it if it was evicted
+            FileMetadata hot = cache.getFileInfo("hot");
+            if (hot == null) {
+                hotReloads++;
+                cache.setFileInfo("hot", md);
+            } else
+                assertSame(md, hot);
+
+            assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+
+        assertTrue(cache.getEvictions() >= 90);
+        assertTrue(cache.getNumEntries() <= 10);
+
+        // frequently accessed entries are hardly ever evicted
+        assertTrue("hot entry was reloaded " + hotReloads + " times", hotReloads <= 2);
+
+        // the most recently inserted entry must not have been evicted
+        assertNotNull(cache.getFileInfo("file99"));
+    }
+
+    @Test
+    public void testGrowingEntry() throws Exception {
+
+        FileMetadata md = createMetadata(0);
+        MetadataCache cache = new MetadataCache(createMetadata(1000).estimateMemoryUsage() * 4);
+
+        for (int i = 0; i < 3; i++)
+            cache.setFileInfo("file" + i, createMetadata(1000));
+        cache.setFileInfo("growing", md);
+        assertEquals(0, cache.getEvictions());
+
+        // the growth of an entry is accounted for with the next access
+        for (long objNo = 0; objNo < 2000; objNo++)
+            md.updateObjectVersion(objNo, 1);
+        assertSame(md, cache.getFileInfo("growing"));
+
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+    @Test
+    public void testPinnedEntries() throws Exception {
+
+        final long entrySize = createMetadata(1000).estimateMemoryUsage();
+        MetadataCache cache = new MetadataCache(entrySize * 4);
+
+        // pinned entries, e.g. those of open files, are never evicted, even if
+        // this exceeds the budget
+        FileMetadata md = createMetadata(1000);
+        cache.pin("open");
+        cache.pin("open");
+        cache.setFileInfo("open", md);
+        for (int i = 0; i < 20; i++)
+            cache.setFileInfo("file" + i, createMetadata(1000));
+        assertSame(md, cache.getFileInfo("open"));
+
+        // files may be pinned before their metadata is cached
+        cache.pin("inflight");
+        for (int i = 0; i < 4; i++)
+            cache.pin("pinned" + i);
+        for (int i = 0; i < 4; i++)
+            cache.setFileInfo("pinned" + i, createMetadata(1000));
+        cache.setFileInfo("inflight", createMetadata(1000));
+        for (int i = 0; i < 4; i++)
+            assertNotNull(cache.getFileInfo("pinned" + i));
+        assertNotNull(cache.getFileInfo("inflight"));
+        assertTrue(cache.getSize() > cache.getMaxSize());
+
+        // entries become evictable once all pins have been released
+        cache.unpin("open");
+        assertTrue(cache.isPinned("open"));
+        cache.unpin("open");
+        assertFalse(cache.isPinned("open"));
+        for (int i = 0; i < 4; i++)
+            cache.unpin("pinned" + i);
+        cache.unpin("inflight");
+        for (int i = 20; i < 40; i++)
+            cache.setFileInfo("file" + i, createMetadata(1000));
+        assertNull(cache.getFileInfo("open"));
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+    private static FileMetadata createMetadata(int numObjs) {
+
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, 128))
+                .setReplicationFlags(0).build();
+        StripingPolicyImpl sp = StripingPolicyImpl.getPolicy(r, 0);
+
+        FileMetadata md = new FileMetadata(sp);
+        md.initLatestObjectVersions(md.createObjectNumberMap());
+        md.initLargestObjectVersions(md.createObjectNumberMap());
+        md.initObjectChecksums();
+        for (long objNo = 0; objNo < numObjs; objNo++)
+            md.updateObjectVersion(objNo, 1);
+
+        return md;
+    }
+}
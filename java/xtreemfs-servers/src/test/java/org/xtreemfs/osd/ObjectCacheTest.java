@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.osd.storage.ObjectCache;
+
+public class ObjectCacheTest {
+    @Rule
+    public final TestRule    testLog  = TestHelper.testLog;
+
+    private static final int OBJ_SIZE = 4096;
+
+    @Test
+    public void testGet() throws Exception {
+
+        ObjectCache cache = new ObjectCache(1024 * 1024, 1);
+        assertTrue(cache.isEnabled());
+
+        assertNull(cache.get("file", 0, 1, 0, OBJ_SIZE));
+        assertFalse(cache.isAdmissible("file", 0));
+        assertNull(cache.get("file", 0, 1, 0, OBJ_SIZE));
+        assertTrue(cache.isAdmissible("file", 0));
+
+        ReusableBuffer data = createObject(OBJ_SIZE);
+        cache.put("file", 0, 1, data);
+        BufferPool.free(data);
+        assertEquals(1, cache.getNumEntries());
+        assertEquals(OBJ_SIZE, cache.getSize());
+
+        // ranges are cut at the end of the object
+        ReusableBuffer view = cache.get("file", 0, 1, 100, 50);
+        assertEquals(50, view.capacity());
+        assertEquals((byte) 100, view.get(0));
+        BufferPool.free(view);
+
+        view = cache.get("file", 0, 1, OBJ_SIZE - 10, 100);
+        assertEquals(10, view.capacity());
+        assertEquals((byte) (OBJ_SIZE - 10), view.get(0));
+        BufferPool.free(view);
+
+        view = cache.get("file", 0, 1, OBJ_SIZE, 100);
+        assertEquals(0, view.capacity());
+        BufferPool.free(view);
+
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // other versions are not returned
+        assertNull(cache.get("file", 0, 2, 0, OBJ_SIZE));
+        assertEquals(0, cache.getNumEntries());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+
+        ObjectCache cache = new ObjectCache(1024 * 1024, 4);
+        ReusableBuffer data = createObject(OBJ_SIZE);
+        for (int i = 0; i < 10; i++) {
+            cache.put("file1", i, 1, data);
+            cache.put("file2", i, 1, data);
+        }
+        BufferPool.free(data);
+        assertEquals(20, cache.getNumEntries());
+
+        // views remain valid after the object has been invalidated
+        ReusableBuffer view = cache.get("file1", 3, 1, 0, OBJ_SIZE);
+        cache.invalidate("file1", 3);
+        assertNull(cache.get("file1", 3, 1, 0, OBJ_SIZE));
+        assertEquals((byte) 42, view.get(42));
+        BufferPool.free(view);
+
+        cache.invalidateFile("file2");
+        assertEquals(9, cache.getNumEntries());
+        assertEquals(9 * OBJ_SIZE, cache.getSize());
+        assertNotNull(cache.get("file1", 4, 1, 0, OBJ_SIZE));
+        assertNull(cache.get("file2", 4, 1, 0, OBJ_SIZE));
+        assertEquals(11, cache.getInvalidations());
+    }
+
+    @Test
+    public void testReferences() throws Exception {
+
+        ObjectCache cache = new ObjectCache(1024 * 1024, 1);
+
+        // pooled buffers are referenced rather than copied
+        ReusableBuffer data = createObject(OBJ_SIZE);
+        cache.put("file", 0, 1, data);
+        assertEquals(2, data.getRefCount());
+        BufferPool.free(data);
+
+        ReusableBuffer view = cache.get("file", 0, 1, 0, OBJ_SIZE);
+        assertEquals(2, data.getRefCount());
+
+        // the buffer is not returned to the pool before the last view is freed
+        cache.invalidate("file", 0);
+        assertEquals(1, data.getRefCount());
+        assertEquals((byte) 42, view.get(42));
+        BufferPool.free(view);
+        assertEquals(0, data.getRefCount());
+
+        // other buffers are copied
+        byte[] bytes = new byte[OBJ_SIZE];
+        cache.put("file", 1, 1, ReusableBuffer.wrap(bytes));
+        bytes[42] = 1;
+        view = cache.get("file", 1, 1, 0, OBJ_SIZE);
+        assertEquals((byte) 0, view.get(42));
+        BufferPool.free(view);
+
+        cache.clear();
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testFrequentObjectsSurviveScans() throws Exception {
+
+        // room for roughly 10 objects
+        ObjectCache cache = new ObjectCache(10 * OBJ_SIZE + OBJ_SIZE / 2, 1);
+        ReusableBuffer data = createObject(OBJ_SIZE);
+
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++)
+                cache.get("hot", i, 1, 0, OBJ_SIZE);
+            cache.put("hot", i, 1, data);
+        }
+
+        // objects that are read twice only must not displace the hot ones
+        for (int i = 0; i < 100; i++) {
+            assertNull(cache.get("scan", i, 1, 0, OBJ_SIZE));
+            assertNull(cache.get("scan", i, 1, 0, OBJ_SIZE));
+            cache.put("scan", i, 1, data);
+            assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+        BufferPool.free(data);
+
+        for (int i = 0; i < 5; i++) {
+            ReusableBuffer view = cache.get("hot", i, 1, 0, OBJ_SIZE);
+            assertNotNull(view);
+            BufferPool.free(view);
+        }
+        assertTrue(cache.getEvictions() >= 90);
+        assertFalse(cache.getHitRatio() == 0);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+
+        ObjectCache cache = new ObjectCache(0, 4);
+        assertFalse(cache.isEnabled());
+
+        ReusableBuffer data = createObject(OBJ_SIZE);
+        cache.put("file", 0, 1, data);
+        BufferPool.free(data);
+        assertNull(cache.get("file", 0, 1, 0, OBJ_SIZE));
+        assertEquals(0, cache.getNumEntries());
+    }
+
+    private static ReusableBuffer createObject(int size) {
+        ReusableBuffer data = BufferPool.allocate(size);
+        for (int i = 0; i < size; i++)
+            data.put((byte) i);
+        data.flip();
+        return data;
+    }
+}
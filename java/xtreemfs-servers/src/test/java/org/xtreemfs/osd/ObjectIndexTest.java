@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.xloc.StripingPolicyImpl;
+import org.xtreemfs.osd.storage.FileMetadata;
+import org.xtreemfs.osd.storage.ObjectIndex;
+import org.xtreemfs.osd.storage.ObjectNumberMap;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+
+public class ObjectIndexTest {
+    @Rule
+    public final TestRule    testLog    = TestHelper.testLog;
+
+    public static final File INDEX_FILE = new File("/tmp/objidxtest");
+
+    @Before
+    public void setUp() throws Exception {
+        INDEX_FILE.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        INDEX_FILE.delete();
+    }
+
+    @Test
+    public void testCreateLoad() throws Exception {
+
+        FileMetadata md = createMetadata(1, 0);
+        ObjectNumberMap versions = md.createObjectNumberMap();
+        for (long objNo = 0; objNo < 100; objNo++) {
+            if (objNo == 50)
+                continue;
+            versions.put(objNo, objNo + 1);
+            md.updateObjectChecksum(objNo, objNo + 1, objNo * 7);
+        }
+
+        assertNull(ObjectIndex.load(INDEX_FILE, createMetadata(1, 0), md.createObjectNumberMap()));
+        ObjectIndex index = ObjectIndex.create(INDEX_FILE, md, versions);
+        assertNotNull(index);
+
+        // modify the index
+        index.markDirty();
+        index.setObject(50, 3, 333);
+        index.setObject(99, 0, 0);
+        index.setObject(120, 1, 0);
+        index.close();
+
+        FileMetadata md2 = createMetadata(1, 0);
+        ObjectNumberMap versions2 = md2.createObjectNumberMap();
+        assertNotNull(ObjectIndex.load(INDEX_FILE, md2, versions2));
+
+        assertEquals(100, versions2.size());
+        for (long objNo = 0; objNo < 99; objNo++) {
+            long version = objNo == 50 ? 3 : objNo + 1;
+            assertEquals(version, versions2.get(objNo, 0));
+            assertEquals(objNo == 50 ? 333 : objNo * 7, md2.getObjectChecksum(objNo, version).longValue());
+        }
+        assertFalse(versions2.containsKey(99));
+        assertEquals(1, versions2.get(120, 0));
+        assertEquals(120, versions2.getLargestKey());
+    }
+
+    @Test
+    public void testDirtyIndex() throws Exception {
+
+        FileMetadata md = createMetadata(1, 0);
+        ObjectNumberMap versions = md.createObjectNumberMap();
+        versions.put(0, 1);
+
+        ObjectIndex index = ObjectIndex.create(INDEX_FILE, md, versions);
+        index.markDirty();
+
+        // an index that has not been closed must not be used
+        assertNull(ObjectIndex.load(INDEX_FILE, createMetadata(1, 0), md.createObjectNumberMap()));
+
+        index.close();
+        assertNotNull(ObjectIndex.load(INDEX_FILE, createMetadata(1, 0), md.createObjectNumberMap()));
+
+        // the index file is reopened when the file is modified again
+        index.markDirty();
+        index.setObject(0, 2, 0);
+        index.close();
+        ObjectNumberMap versions2 = md.createObjectNumberMap();
+        assertNotNull(ObjectIndex.load(INDEX_FILE, createMetadata(1, 0), versions2));
+        assertEquals(2, versions2.get(0, 0));
+
+        // a different striping policy invalidates the index
+        assertNull(ObjectIndex.load(INDEX_FILE, createMetadata(2, 1), md.createObjectNumberMap()));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+
+        FileMetadata md = createMetadata(1, 0);
+        ObjectIndex index = ObjectIndex.create(INDEX_FILE, md, md.createObjectNumberMap());
+        assertTrue(INDEX_FILE.exists());
+
+        index.markDirty();
+        index.invalidate();
+        assertFalse(index.isValid());
+        assertFalse(INDEX_FILE.exists());
+
+        // updates of an invalid index are ignored
+        index.setObject(0, 1, 0);
+        index.close();
+        assertFalse(INDEX_FILE.exists());
+    }
+
+    @Test
+    public void testStriped() throws Exception {
+
+        // the second OSD of a stripe of width 3 stores objects 1, 4, 7, ...
+        FileMetadata md = createMetadata(3, 1);
+        ObjectNumberMap versions = md.createObjectNumberMap();
+        for (long objNo = 1; objNo < 3000; objNo += 3)
+            versions.put(objNo, 2);
+
+        ObjectIndex.create(INDEX_FILE, md, versions);
+        assertEquals(32 + 1000 * 16, INDEX_FILE.length());
+
+        ObjectNumberMap versions2 = md.createObjectNumberMap();
+        assertNotNull(ObjectIndex.load(INDEX_FILE, createMetadata(3, 1), versions2));
+        assertEquals(1000, versions2.size());
+        assertEquals(2998, versions2.getLargestKey());
+
+        // object numbers that do not follow the striping pattern cannot be
+        // represented
+        versions.put(2, 1);
+        assertNull(ObjectIndex.create(INDEX_FILE, md, versions));
+        assertFalse(INDEX_FILE.exists());
+    }
+
+    private static FileMetadata createMetadata(int width, int osdPosition) {
+
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(width, 128))
+                .setReplicationFlags(0).build();
+        StripingPolicyImpl sp = StripingPolicyImpl.getPolicy(r, osdPosition);
+
+        FileMetadata md = new FileMetadata(sp);
+        md.initLatestObjectVersions(md.createObjectNumberMap());
+        md.initLargestObjectVersions(md.createObjectNumberMap());
+        md.initObjectChecksums();
+        return md;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.xloc.StripingPolicyImpl;
+import org.xtreemfs.osd.storage.FileMetadata;
+import org.xtreemfs.osd.storage.ObjectNumberMap;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+import org.xtreemfs.SetupUtils;
+
+public class ObjectNumberMapTest {
+    @Rule
+    public final TestRule testLog = TestHelper.testLog;
+
+    @Test
+    public void testDense() throws Exception {
+
+        ObjectNumberMap map = new ObjectNumberMap();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.getLargestKey());
+
+        for (long i = 0; i < 1000; i++)
+            map.put(i, i + 1);
+
+        assertEquals(1000, map.size());
+        for (long i = 0; i < 1000; i++)
+            assertEquals(i + 1, map.get(i, 0));
+        assertEquals(0, map.get(1000, 0));
+        assertEquals(999, map.getLargestKey());
+
+        // a densely populated map should not need much more than 8 bytes per entry
+        assertTrue(map.estimateMemoryUsage() < 1000 * 20);
+
+        assertTrue(map.remove(500));
+        assertFalse(map.remove(500));
+        assertFalse(map.containsKey(500));
+        assertEquals(999, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    public void testStriped() throws Exception {
+
+        // the third OSD of a stripe of width 4 stores objects 2, 6, 10, ...
+        ObjectNumberMap map = new ObjectNumberMap(4, 2);
+        for (long i = 2; i < 4000; i += 4)
+            map.put(i, i);
+
+        // object numbers that do not follow the striping pattern are stored
+        // as well
+        map.put(3, 33);
+        map.put(1L << 40, 44);
+
+        assertEquals(1002, map.size());
+        assertEquals(2, map.get(2, 0));
+        assertEquals(3998, map.get(3998, 0));
+        assertEquals(33, map.get(3, 0));
+        assertEquals(44, map.get(1L << 40, 0));
+        assertEquals(0, map.get(4, 0));
+        assertEquals(1L << 40, map.getLargestKey());
+
+        long[] keys = map.keys();
+        assertEquals(1002, keys.length);
+        assertEquals(2, keys[0]);
+        assertEquals(3, keys[1]);
+        assertEquals(1L << 40, keys[keys.length - 1]);
+
+        assertTrue(map.estimateMemoryUsage() < 1000 * 20);
+    }
+
+    @Test
+    public void testRandomOperations() throws Exception {
+
+        Random rnd = new Random(42);
+        ObjectNumberMap map = new ObjectNumberMap(2, 1);
+        Map<Long, Long> ref = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < 100000; i++) {
+
+            // mostly small object numbers, sometimes sparse ones
+            long objNo = rnd.nextInt(10) == 0 ? rnd.nextInt(1000000) : rnd.nextInt(2000);
+
+            switch (rnd.nextInt(3)) {
+            case 0:
+            case 1:
+                long value = rnd.nextLong();
+                map.put(objNo, value);
+                ref.put(objNo, value);
+                break;
+            case 2:
+                assertEquals(ref.remove(objNo) != null, map.remove(objNo));
+                break;
+            }
+
+            Long expected = ref.get(objNo);
+            assertEquals(expected != null, map.containsKey(objNo));
+            if (expected != null)
+                assertEquals(expected.longValue(), map.get(objNo, 0));
+        }
+
+        assertEquals(ref.size(), map.size());
+
+        long[] expectedKeys = new long[ref.size()];
+        int n = 0;
+        for (long key : ref.keySet())
+            expectedKeys[n++] = key;
+        assertArrayEquals(expectedKeys, map.keys());
+
+        for (Map.Entry<Long, Long> entry : ref.entrySet())
+            assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), 0));
+    }
+
+    @Test
+    public void testFileMetadata() throws Exception {
+
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(2, 64))
+                .setReplicationFlags(0).build();
+        StripingPolicyImpl sp = StripingPolicyImpl.getPolicy(r, 1);
+
+        FileMetadata md = new FileMetadata(sp);
+        md.initLatestObjectVersions(md.createObjectNumberMap());
+        md.initLargestObjectVersions(md.createObjectNumberMap());
+        md.initObjectChecksums();
+
+        md.updateObjectVersion(1, 1);
+        md.updateObjectChecksum(1, 1, 111);
+        md.updateObjectVersion(1, 2);
+        md.updateObjectChecksum(1, 2, 222);
+        md.updateObjectVersion(3, 1);
+        md.updateObjectChecksum(3, 1, 333);
+
+        assertEquals(2, md.getLatestObjectVersion(1));
+        assertEquals(2, md.getLargestObjectVersion(1));
+        assertEquals(0, md.getLatestObjectVersion(5));
+        assertEquals(111, md.getObjectChecksum(1, 1).longValue());
+        assertEquals(222, md.getObjectChecksum(1, 2).longValue());
+        assertEquals(333, md.getObjectChecksum(3, 1).longValue());
+        assertEquals(0, md.getObjectChecksum(3, 2).longValue());
+        assertEquals(0, md.getObjectChecksum(5, 1).longValue());
+        assertEquals("[1, 3]", Arrays.toString(md.getLatestObjectNumbers()));
+
+        md.discardObject(1, 1);
+        assertEquals(0, md.getObjectChecksum(1, 1).longValue());
+        assertEquals(222, md.getObjectChecksum(1, 2).longValue());
+        assertEquals(1, md.getLatestObjectCount());
+
+        md.discardObject(3, 1);
+        assertEquals(0, md.getObjectChecksum(3, 1).longValue());
+        assertEquals(0, md.getLatestObjectCount());
+        assertEquals(2, md.getLargestObjectVersion(1));
+    }
+
+}
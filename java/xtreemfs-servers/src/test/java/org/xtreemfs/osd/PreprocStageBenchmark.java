@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestEnvironment;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.Capability;
+import org.xtreemfs.common.uuids.ServiceUUID;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.pbrpc.client.RPCAuthentication;
+import org.xtreemfs.foundation.pbrpc.client.RPCResponse;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.FileCredentials;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SYSTEM_V_FCNTL;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SnapConfig;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XLocSet;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSD.Lock;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSDServiceClient;
+
+/**
+ * Measures the request rate of an OSD with one and with several preprocessing threads. The clients send lock checks,
+ * which are executed by the preprocessing threads only, each of them with a new capability, so that every request
+ * requires a signature check. Not part of the regular test suite; run it manually.
+ */
+public class PreprocStageBenchmark {
+    @Rule
+    public final TestRule    testLog             = TestHelper.testLog;
+
+    private static final int MAX_THREADS         = 4;
+
+    private static final int NUM_CLIENTS         = 32;
+
+    private static final int REQUESTS_PER_CLIENT = 2000;
+
+    private static final int FILES_PER_CLIENT    = 16;
+
+    @Test
+    public void benchmarkRequestRate() throws Exception {
+
+        Logging.start(Logging.LEVEL_WARN);
+
+        System.out.println(String.format("%d clients, %d requests each:", NUM_CLIENTS, REQUESTS_PER_CLIENT));
+        for (int numThreads = 1; numThreads <= MAX_THREADS; numThreads *= 2) {
+            double rate = run(numThreads);
+            System.out.println(String.format("  %d preprocessing thread(s): %10.0f requests/s", numThreads, rate));
+        }
+    }
+
+    /**
+     * Starts an OSD with the given number of preprocessing threads and sends the requests of all clients.
+     *
+     * @return the number of requests per second
+     */
+    private double run(int numThreads) throws Exception {
+
+        SetupUtils.OSD_PREPROC_THREADS = numThreads;
+        TestEnvironment testEnv = new TestEnvironment(new TestEnvironment.Services[] {
+                TestEnvironment.Services.DIR_SERVICE, TestEnvironment.Services.TIME_SYNC,
+                TestEnvironment.Services.UUID_RESOLVER, TestEnvironment.Services.OSD_CLIENT,
+                TestEnvironment.Services.OSD });
+        try {
+            testEnv.start();
+
+            final OSDServiceClient osdClient = testEnv.getOSDClient();
+            final ServiceUUID serverID = testEnv.getOSDConfig().getUUID();
+            final String secret = testEnv.getOSDConfig().getCapabilitySecret();
+
+            // create the credentials in advance, so that the clients only
+            // measure the OSD
+            final FileCredentials[][] creds = new FileCredentials[NUM_CLIENTS][REQUESTS_PER_CLIENT];
+            for (int c = 0; c < NUM_CLIENTS; c++)
+                for (int i = 0; i < REQUESTS_PER_CLIENT; i++)
+                    creds[c][i] = getFileCredentials("ABCDEF:" + (c * FILES_PER_CLIENT + i % FILES_PER_CLIENT + 1),
+                            serverID, secret, i);
+
+            final Lock lock = Lock.newBuilder().setClientPid(1).setClientUuid("test").setExclusive(false)
+                    .setOffset(0).setLength(1).build();
+
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            Thread[] clients = new Thread[NUM_CLIENTS];
+            for (int c = 0; c < NUM_CLIENTS; c++) {
+                final int clientNo = c;
+                clients[c] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (FileCredentials fcred : creds[clientNo]) {
+                                RPCResponse<Lock> r = osdClient.xtreemfs_lock_check(serverID.getAddress(),
+                                        RPCAuthentication.authNone, RPCAuthentication.userService, fcred, lock);
+                                r.get();
+                                r.freeBuffers();
+                            }
+                        } catch (Throwable exc) {
+                            error.compareAndSet(null, exc);
+                        }
+                    }
+                };
+            }
+
+            long start = System.nanoTime();
+            for (Thread th : clients)
+                th.start();
+            for (Thread th : clients)
+                th.join();
+            long nanos = System.nanoTime() - start;
+
+            assertNull(error.get());
+            return NUM_CLIENTS * (double) REQUESTS_PER_CLIENT / (nanos / 1e9);
+
+        } finally {
+            testEnv.shutdown();
+            SetupUtils.OSD_PREPROC_THREADS = 1;
+        }
+    }
+
+    private static FileCredentials getFileCredentials(String fileId, ServiceUUID serverID, String secret, int epoch) {
+
+        // capabilities with different epochs have different signatures
+        Capability cap = new Capability(fileId, SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR.getNumber(), 600,
+                System.currentTimeMillis(), "", epoch, false, SnapConfig.SNAP_CONFIG_SNAPS_DISABLED, 0, secret);
+
+        Replica r = Replica.newBuilder().setReplicationFlags(0).setStripingPolicy(SetupUtils.getStripingPolicy(1, 2))
+                .addOsdUuids(serverID.toString()).build();
+        XLocSet xloc = XLocSet.newBuilder().setReadOnlyFileSize(0).setReplicaUpdatePolicy("").addReplicas(r)
+                .setVersion(1).build();
+
+        return FileCredentials.newBuilder().setXcap(cap.getXCap()).setXlocs(xloc).build();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.SetupUtils;
+import org.xtreemfs.TestEnvironment;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.common.Capability;
+import org.xtreemfs.common.uuids.ServiceUUID;
+import org.xtreemfs.foundation.buffer.BufferPool;
+import org.xtreemfs.foundation.buffer.ReusableBuffer;
+import org.xtreemfs.foundation.logging.Logging;
+import org.xtreemfs.foundation.pbrpc.client.PBRPCException;
+import org.xtreemfs.foundation.pbrpc.client.RPCAuthentication;
+import org.xtreemfs.foundation.pbrpc.client.RPCResponse;
+import org.xtreemfs.foundation.pbrpc.generatedinterfaces.RPC.POSIXErrno;
+import org.xtreemfs.mrc.ac.FileAccessManager;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.FileCredentials;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.OSDWriteResponse;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.Replica;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SYSTEM_V_FCNTL;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.SnapConfig;
+import org.xtreemfs.pbrpc.generatedinterfaces.GlobalTypes.XLocSet;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSD.Lock;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSD.ObjectData;
+import org.xtreemfs.pbrpc.generatedinterfaces.OSDServiceClient;
+
+/**
+ * Tests the OSD with more than one preprocessing thread.
+ */
+public class PreprocStageTest {
+    @Rule
+    public final TestRule    testLog     = TestHelper.testLog;
+
+    private static final int NUM_THREADS = 4;
+
+    private static final int NUM_CLIENTS = 8;
+
+    private static final int NUM_FILES   = 10;
+
+    private static final int DATA_SIZE   = 1024;
+
+    private OSDServiceClient osdClient;
+
+    private OSDConfig        osdConfig;
+
+    private ServiceUUID      serverID;
+
+    private TestEnvironment  testEnv;
+
+    public PreprocStageTest() {
+        Logging.start(SetupUtils.DEBUG_LEVEL, SetupUtils.DEBUG_CATEGORIES);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        SetupUtils.OSD_PREPROC_THREADS = NUM_THREADS;
+        testEnv = new TestEnvironment(new TestEnvironment.Services[] { TestEnvironment.Services.DIR_SERVICE,
+                TestEnvironment.Services.TIME_SYNC, TestEnvironment.Services.UUID_RESOLVER,
+                TestEnvironment.Services.OSD_CLIENT, TestEnvironment.Services.OSD });
+        testEnv.start();
+
+        osdClient = testEnv.getOSDClient();
+        osdConfig = testEnv.getOSDConfig();
+        serverID = osdConfig.getUUID();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testEnv.shutdown();
+        SetupUtils.OSD_PREPROC_THREADS = 1;
+    }
+
+    @Test
+    public void testConcurrentRequestsOnMultipleFiles() throws Exception {
+
+        // write, read, lock and delete files concurrently; the files are
+        // spread across all preprocessing threads
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[NUM_CLIENTS];
+        for (int t = 0; t < threads.length; t++) {
+            final int clientNo = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < NUM_FILES; i++)
+                            accessFile("ABCDEF:" + (clientNo * NUM_FILES + i + 1), (byte) i);
+                    } catch (Throwable exc) {
+                        error.compareAndSet(null, exc);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread th : threads)
+            th.join();
+        assertNull(error.get());
+    }
+
+    private void accessFile(String fileId, byte value) throws Exception {
+
+        FileCredentials fcred = getFileCredentials(fileId);
+
+        // write and read the first object
+        ReusableBuffer buf = BufferPool.allocate(DATA_SIZE);
+        for (int i = 0; i < DATA_SIZE; i++)
+            buf.put(value);
+        buf.flip();
+        ObjectData data = ObjectData.newBuilder().setChecksum(0).setZeroPadding(0).setInvalidChecksumOnOsd(false)
+                .build();
+        RPCResponse<OSDWriteResponse> wr = osdClient.write(serverID.getAddress(), RPCAuthentication.authNone,
+                RPCAuthentication.userService, fcred, fileId, 0, 0, 0, 0, data, buf);
+        assertEquals(DATA_SIZE, wr.get().getSizeInBytes());
+        wr.freeBuffers();
+
+        RPCResponse<ObjectData> rr = osdClient.read(serverID.getAddress(), RPCAuthentication.authNone,
+                RPCAuthentication.userService, fcred, fileId, 0, 0, 0, DATA_SIZE);
+        rr.get();
+        ReusableBuffer dataOut = rr.getData();
+        assertEquals(DATA_SIZE, dataOut.remaining());
+        assertEquals(value, dataOut.get(DATA_SIZE - 1));
+        rr.freeBuffers();
+
+        // locks are kept by the thread that owns the open file
+        Lock lock = Lock.newBuilder().setClientPid(1).setClientUuid("test").setExclusive(true).setOffset(0)
+                .setLength(DATA_SIZE).build();
+        RPCResponse<Lock> lr = osdClient.xtreemfs_lock_acquire(serverID.getAddress(), RPCAuthentication.authNone,
+                RPCAuthentication.userService, fcred, lock);
+        assertEquals(1, lr.get().getClientPid());
+        lr.freeBuffers();
+
+        lr = osdClient.xtreemfs_lock_acquire(serverID.getAddress(), RPCAuthentication.authNone,
+                RPCAuthentication.userService, fcred, lock.toBuilder().setClientPid(2).build());
+        try {
+            lr.get();
+            fail();
+        } catch (PBRPCException ex) {
+            assertEquals(POSIXErrno.POSIX_ERROR_EAGAIN, ex.getPOSIXErrno());
+        } finally {
+            lr.freeBuffers();
+        }
+
+        RPCResponse<?> r = osdClient.xtreemfs_lock_release(serverID.getAddress(), RPCAuthentication.authNone,
+                RPCAuthentication.userService, fcred, lock);
+        r.get();
+        r.freeBuffers();
+
+        r = osdClient.unlink(serverID.getAddress(), RPCAuthentication.authNone, RPCAuthentication.userService,
+                fcred, fileId);
+        r.get();
+        r.freeBuffers();
+    }
+
+    private FileCredentials getFileCredentials(String fileId) {
+
+        Capability cap = new Capability(fileId, SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_TRUNC.getNumber()
+                | SYSTEM_V_FCNTL.SYSTEM_V_FCNTL_H_O_RDWR.getNumber() | FileAccessManager.NON_POSIX_DELETE, 60,
+                System.currentTimeMillis(), "", 0, false, SnapConfig.SNAP_CONFIG_SNAPS_DISABLED, 0,
+                osdConfig.getCapabilitySecret());
+
+        Replica r = Replica.newBuilder().setReplicationFlags(0).setStripingPolicy(SetupUtils.getStripingPolicy(1, 2))
+                .addOsdUuids(serverID.toString()).build();
+        XLocSet xloc = XLocSet.newBuilder().setReadOnlyFileSize(0).setReplicaUpdatePolicy("").addReplicas(r)
+                .setVersion(1).build();
+
+        return FileCredentials.newBuilder().setXcap(cap.getXCap()).setXlocs(xloc).build();
+    }
+}
@@ -14,7 +14,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 
 import org.junit.After;
@@ -34,6 +36,7 @@ import org.xtreemfs.osd.OSDConfig;
 import org.xtreemfs.osd.replication.ObjectSet;
 import org.xtreemfs.osd.storage.FileMetadata;
 import org.xtreemfs.osd.storage.HashStorageLayout;
+import org.xtreemfs.osd.storage.MappedObjectCache;
 import org.xtreemfs.osd.storage.MetadataCache;
 import org.xtreemfs.osd.storage.ObjectInformation;
 import org.xtreemfs.osd.storage.SingleFileStorageLayout;
@@ -86,6 +89,227 @@ public class StorageLayoutTest {
         basicTests(layout);
     }
 
+    @Test
+    public void testHashStorageLayoutWithBlockChecksums() throws Exception {
+
+        JavaChecksumProvider j = new JavaChecksumProvider();
+        ChecksumFactory.getInstance().addProvider(j);
+        SetupUtils.CHECKSUMS_ON = true;
+        OSDConfig configCSUM = SetupUtils.createOSD1Config();
+        SetupUtils.CHECKSUMS_ON = false;
+        configCSUM.setChecksumBlockSize(4096);
+
+        HashStorageLayout layout = new HashStorageLayout(configCSUM, new MetadataCache());
+        assertFalse(layout.requiresNewVersionForChecksums());
+        basicTests(layout);
+
+        FSUtils.delTree(new File(config.getObjDir()));
+        layout = new HashStorageLayout(configCSUM, new MetadataCache());
+
+        final String fileId = "ABCDEFG:0003";
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, 64)).setReplicationFlags(0)
+                .build();
+        FileMetadata md = layout.getFileMetadata(StripingPolicyImpl.getPolicy(r, 0), fileId);
+
+        // write a full object and a partial one
+        ReusableBuffer data = BufferPool.allocate(65536);
+        for (int i = 0; i < 65536; i++)
+            data.put((byte) i);
+        data.flip();
+        layout.writeObject(fileId, md, data, 0l, 0, 1l, false, false);
+
+        data = BufferPool.allocate(1000);
+        layout.writeObject(fileId, md, data, 1l, 0, 1l, false, false);
+
+        // partial reads are verified
+        ObjectInformation oinfo = layout.readObject(fileId, md, 0l, 5000, 3000, 1l);
+        assertEquals(3000, oinfo.getData().capacity());
+        assertEquals((byte) 5000, oinfo.getData().get(0));
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // overwrite a few bytes in place
+        data = BufferPool.allocate(50);
+        for (int i = 0; i < 50; i++)
+            data.put((byte) 0xFF);
+        data.flip();
+        layout.writeObject(fileId, md, data, 0l, 8292, 1l, false, false);
+        oinfo = layout.readObject(fileId, md, 0l, 0, StorageLayout.FULL_OBJECT_LENGTH, 1l);
+        assertEquals((byte) 0xFF, oinfo.getData().get(8292));
+        assertEquals((byte) 8342, oinfo.getData().get(8342));
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // extend the partial object, leaving a gap
+        data = BufferPool.allocate(100);
+        layout.writeObject(fileId, md, data, 1l, 10000, 1l, false, false);
+        oinfo = layout.readObject(fileId, md, 1l, 0, StorageLayout.FULL_OBJECT_LENGTH, 1l);
+        assertEquals(10100, oinfo.getData().capacity());
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // truncate it
+        layout.truncateObject(fileId, md, 1l, 5000, 1l, false);
+        oinfo = layout.readObject(fileId, md, 1l, 4000, 1000, 1l);
+        assertEquals(1000, oinfo.getData().capacity());
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // a copy-on-write creates a new version with its own checksums
+        data = BufferPool.allocate(10);
+        for (int i = 0; i < 10; i++)
+            data.put((byte) 0xEE);
+        data.flip();
+        layout.writeObject(fileId, md, data, 0l, 20000, 2l, false, true);
+        oinfo = layout.readObject(fileId, md, 0l, 16384, 8192, 2l);
+        assertEquals((byte) 0xEE, oinfo.getData().get(20000 - 16384));
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // corrupt a block of the first object
+        File objFile = new File(layout.generateAbsoluteFilePath(fileId) + HashStorageLayout.createFileName(0, 1, 0));
+        RandomAccessFile raf = new RandomAccessFile(objFile, "rw");
+        raf.seek(40000);
+        raf.write(0x42);
+        raf.close();
+
+        oinfo = layout.readObject(fileId, md, 0l, 39000, 100, 1l);
+        assertTrue(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        oinfo = layout.readObject(fileId, md, 0l, 0, 4096, 1l);
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        // checksum files are replaced without leaving temporary files behind
+        assertEquals(0, new File(layout.generateAbsoluteFilePath(fileId)).list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".tmp");
+            }
+        }).length);
+
+        // a damaged checksum file fails the verification once the checksums
+        // are no longer cached
+        File csumFile = new File(layout.generateAbsoluteFilePath(fileId) + HashStorageLayout.BLOCK_CHECKSUMS_PREFIX
+            + HashStorageLayout.createFileName(1, 1, 0));
+        raf = new RandomAccessFile(csumFile, "rw");
+        raf.setLength(3);
+        raf.close();
+
+        oinfo = layout.readObject(fileId, md, 1l, 0, 100, 1l);
+        assertFalse(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        HashStorageLayout reloaded = new HashStorageLayout(configCSUM, new MetadataCache());
+        FileMetadata reloadedMd = reloaded.getFileMetadata(StripingPolicyImpl.getPolicy(r, 0), fileId);
+        oinfo = reloaded.readObject(fileId, reloadedMd, 1l, 0, 100, 1l);
+        assertTrue(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+        reloaded.closeFile(fileId, reloadedMd);
+
+        // the checksum files are deleted together with the data
+        layout.deleteFile(fileId, false);
+        assertEquals(0, new File(layout.generateAbsoluteFilePath(fileId)).list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(HashStorageLayout.BLOCK_CHECKSUMS_PREFIX);
+            }
+        }).length);
+    }
+
+    @Test
+    public void testHashStorageLayoutWithMappedObjects() throws Exception {
+
+        JavaChecksumProvider j = new JavaChecksumProvider();
+        ChecksumFactory.getInstance().addProvider(j);
+        SetupUtils.CHECKSUMS_ON = true;
+        OSDConfig configMapped = SetupUtils.createOSD1Config();
+        SetupUtils.CHECKSUMS_ON = false;
+        configMapped.setChecksumBlockSize(4096);
+        configMapped.setMappedObjectCacheSize(1024 * 1024);
+
+        HashStorageLayout layout = new HashStorageLayout(configMapped, new MetadataCache());
+        basicTests(layout);
+
+        FSUtils.delTree(new File(config.getObjDir()));
+        layout = new HashStorageLayout(configMapped, new MetadataCache());
+        MappedObjectCache mappedCache = layout.getMappedObjectCache();
+        assertTrue(mappedCache.isEnabled());
+
+        final String fileId = "ABCDEFG:0004";
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, 64)).setReplicationFlags(0)
+                .build();
+        FileMetadata md = layout.getFileMetadata(StripingPolicyImpl.getPolicy(r, 0), fileId);
+
+        ReusableBuffer data = BufferPool.allocate(20000);
+        for (int i = 0; i < 20000; i++)
+            data.put((byte) i);
+        data.flip();
+        layout.writeObject(fileId, md, data, 0l, 0, 1l, false, false);
+
+        // the object is mapped when it is read for the second time
+        for (int i = 0; i < 3; i++) {
+            ObjectInformation oinfo = layout.readObject(fileId, md, 0l, 5000, 3000, 1l);
+            assertEquals(3000, oinfo.getData().capacity());
+            assertEquals((byte) 5000, oinfo.getData().get(0));
+            assertFalse(oinfo.isChecksumInvalidOnOSD());
+            BufferPool.free(oinfo.getData());
+        }
+        assertEquals(1, mappedCache.getMappings());
+        assertEquals(1, mappedCache.getHits());
+        assertEquals(20000, mappedCache.getMappedBytes());
+
+        ObjectInformation oinfo = layout.readObject(fileId, md, 0l, 30000, 100, 1l);
+        assertEquals(0, oinfo.getData().capacity());
+        BufferPool.free(oinfo.getData());
+
+        // modifications drop the mapping
+        data = BufferPool.allocate(10);
+        for (int i = 0; i < 10; i++)
+            data.put((byte) 0xFF);
+        data.flip();
+        layout.writeObject(fileId, md, data, 0l, 25000, 1l, false, false);
+        assertEquals(0, mappedCache.getMappedBytes());
+        for (int i = 0; i < 3; i++) {
+            oinfo = layout.readObject(fileId, md, 0l, 0, StorageLayout.FULL_OBJECT_LENGTH, 1l);
+            assertEquals(25010, oinfo.getData().capacity());
+            assertEquals((byte) 0xFF, oinfo.getData().get(25009));
+            assertFalse(oinfo.isChecksumInvalidOnOSD());
+            BufferPool.free(oinfo.getData());
+        }
+        assertEquals(25010, mappedCache.getMappedBytes());
+
+        layout.truncateObject(fileId, md, 0l, 1000, 1l, false);
+        assertEquals(0, mappedCache.getMappedBytes());
+        for (int i = 0; i < 3; i++) {
+            oinfo = layout.readObject(fileId, md, 0l, 0, StorageLayout.FULL_OBJECT_LENGTH, 1l);
+            assertEquals(1000, oinfo.getData().capacity());
+            assertFalse(oinfo.isChecksumInvalidOnOSD());
+            BufferPool.free(oinfo.getData());
+        }
+
+        // closing the file drops its mappings
+        layout.closeFile(fileId, md);
+        assertEquals(0, mappedCache.getMappedBytes());
+        md = layout.getFileMetadata(StripingPolicyImpl.getPolicy(r, 0), fileId);
+
+        // mapped blocks are verified as well
+        File objFile = new File(layout.generateAbsoluteFilePath(fileId) + HashStorageLayout.createFileName(0, 1, 0));
+        RandomAccessFile raf = new RandomAccessFile(objFile, "rw");
+        raf.seek(500);
+        raf.write(0x42);
+        raf.close();
+        oinfo = layout.readObject(fileId, md, 0l, 0, 100, 1l);
+        assertTrue(oinfo.isChecksumInvalidOnOSD());
+        BufferPool.free(oinfo.getData());
+
+        layout.deleteFile(fileId, false);
+        assertEquals(0, mappedCache.getMappedBytes());
+        oinfo = layout.readObject(fileId, md, 0l, 0, 100, 1l);
+        assertEquals(ObjectInformation.ObjectStatus.DOES_NOT_EXIST, oinfo.getStatus());
+    }
+
     @Test
     public void testSingleFileLayout() throws Exception {
         SingleFileStorageLayout layout = new SingleFileStorageLayout(config, new MetadataCache());
@@ -125,6 +349,29 @@ public class StorageLayoutTest {
         getFileIDListTest(layout);
     }
 
+    @Test
+    public void testHashStorageLayoutSyncObjects() throws Exception {
+
+        HashStorageLayout layout = new HashStorageLayout(config, new MetadataCache());
+        assertTrue(layout.supportsGroupCommit());
+
+        final String fileId = "ABCDEFG:0002";
+        Replica r = Replica.newBuilder().setStripingPolicy(SetupUtils.getStripingPolicy(1, 64)).setReplicationFlags(0)
+                .build();
+        FileMetadata md = layout.getFileMetadata(StripingPolicyImpl.getPolicy(r, 0), fileId);
+
+        for (long objNo = 0; objNo < 3; objNo++)
+            layout.writeObject(fileId, md, BufferPool.allocate(64), objNo, 0, 1l, false, false);
+
+        // objects that do not exist are ignored
+        layout.syncObjects(fileId, md, new long[] { 0, 2, 5 }, true);
+        layout.syncObjects(fileId, md, new long[] { 1 }, false);
+
+        ObjectInformation oinfo = layout.readObject(fileId, md, 2l, 0, StorageLayout.FULL_OBJECT_LENGTH, 1l);
+        assertEquals(64, oinfo.getData().capacity());
+        BufferPool.free(oinfo.getData());
+    }
+
     @Test
     public void testSingleFileStorageLayoutGetFileIDList() throws Exception {
 
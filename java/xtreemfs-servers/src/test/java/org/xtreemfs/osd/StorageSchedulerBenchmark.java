@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.osd.stages.StorageScheduler;
+
+/**
+ * Runs a skewed workload, in which most requests are reads of a single hot file, on simulated storage threads with
+ * and without read offloading, and reports the elapsed time and the share of requests each thread has executed. The
+ * execution of a request is simulated by parking the thread. Not part of the regular test suite; run it manually.
+ */
+public class StorageSchedulerBenchmark {
+    @Rule
+    public final TestRule     testLog       = TestHelper.testLog;
+
+    private static final int  NUM_THREADS   = 4;
+
+    private static final int  NUM_FILES     = 64;
+
+    private static final int  NUM_REQUESTS  = 20000;
+
+    /** maximum number of outstanding requests, like with a fixed number of clients waiting for their responses */
+    private static final int  NUM_CLIENTS   = 16;
+
+    /** percentage of requests that refer to the hot file */
+    private static final int  HOT_PERCENT   = 80;
+
+    /** percentage of requests that are writes */
+    private static final int  WRITE_PERCENT = 5;
+
+    private static final long REQUEST_NANOS = 50000;
+
+    @Test
+    public void benchmarkSkewedWorkload() throws Exception {
+
+        Result hashed = run(false);
+        Result offloaded = run(true);
+
+        System.out.println(String.format("home threads only: %,6d ms, requests per thread: %s", hashed.millis,
+                Arrays.toString(hashed.executed)));
+        System.out.println(String.format("read offloading:   %,6d ms, requests per thread: %s", offloaded.millis,
+                Arrays.toString(offloaded.executed)));
+
+        assertEquals(0, hashed.violations);
+        assertEquals(0, offloaded.violations);
+
+        // with offloading, the busiest thread executes a smaller share of the
+        // requests
+        assertTrue(max(offloaded.executed) < max(hashed.executed));
+    }
+
+    private static final class Result {
+        long  millis;
+
+        int[] executed;
+
+        int   violations;
+    }
+
+    private static final class Request {
+        final String fileId;
+
+        final boolean read;
+
+        Request(String fileId, boolean read) {
+            this.fileId = fileId;
+            this.read = read;
+        }
+    }
+
+    private static Result run(boolean offloadReads) throws Exception {
+
+        @SuppressWarnings("unchecked")
+        final LinkedBlockingQueue<Request>[] queues = new LinkedBlockingQueue[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++)
+            queues[i] = new LinkedBlockingQueue<Request>();
+
+        final StorageScheduler<Request> scheduler = new StorageScheduler<Request>(NUM_THREADS, offloadReads,
+                new StorageScheduler.Executor<Request>() {
+                    @Override
+                    public boolean enqueue(int threadId, Request request) {
+                        return queues[threadId].offer(request);
+                    }
+
+                    @Override
+                    public void rejected(Request request) {
+                        throw new IllegalStateException("unbounded queues do not reject requests");
+                    }
+                });
+
+        // tracks the requests of each file being executed: readers count up,
+        // a writer is represented by -1
+        final ConcurrentHashMap<String, AtomicInteger> active = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger violations = new AtomicInteger();
+        final int[] executed = new int[NUM_THREADS];
+        final CountDownLatch done = new CountDownLatch(NUM_REQUESTS);
+        final Semaphore outstanding = new Semaphore(NUM_CLIENTS);
+
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (;;) {
+                            Request rq = queues[id].take();
+
+                            AtomicInteger a = active.get(rq.fileId);
+                            if (rq.read ? a.getAndIncrement() < 0 : !a.compareAndSet(0, -1))
+                                violations.incrementAndGet();
+
+                            LockSupport.parkNanos(REQUEST_NANOS);
+
+                            if (rq.read)
+                                a.decrementAndGet();
+                            else
+                                a.set(0);
+
+                            executed[id]++;
+                            scheduler.completed(id, rq.fileId, rq.read);
+                            outstanding.release();
+                            done.countDown();
+                        }
+                    } catch (InterruptedException exc) {
+                        // shut down
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < NUM_FILES; i++)
+            active.put(fileId(i), new AtomicInteger());
+
+        Random rnd = new Random(42);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            String fileId = rnd.nextInt(100) < HOT_PERCENT ? fileId(0) : fileId(1 + rnd.nextInt(NUM_FILES - 1));
+            boolean read = rnd.nextInt(100) >= WRITE_PERCENT;
+            outstanding.acquire();
+            scheduler.schedule(fileId, read, new Request(fileId, read));
+        }
+        done.await(5, TimeUnit.MINUTES);
+
+        Result result = new Result();
+        result.millis = (System.nanoTime() - t0) / 1000000;
+
+        for (Thread th : threads) {
+            th.interrupt();
+            th.join();
+        }
+
+        result.executed = executed;
+        result.violations = violations.get();
+        return result;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int v : values)
+            max = Math.max(max, v);
+        return max;
+    }
+
+    private static String fileId(int i) {
+        return "ABCDEFG:" + i;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2026 by Zuse Institute Berlin
+ *
+ * Licensed under the BSD License, see LICENSE file for details.
+ *
+ */
+
+package org.xtreemfs.osd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.xtreemfs.TestHelper;
+import org.xtreemfs.osd.stages.StorageScheduler;
+
+public class StorageSchedulerTest {
+    @Rule
+    public final TestRule testLog = TestHelper.testLog;
+
+    /**
+     * Records enqueued requests per thread without executing them.
+     */
+    private static class RecordingExecutor implements StorageScheduler.Executor<String> {
+
+        final List<List<String>> queues = new ArrayList<List<String>>();
+
+        final List<String>       rejected = new ArrayList<String>();
+
+        boolean                  reject;
+
+        RecordingExecutor(int numThreads) {
+            for (int i = 0; i < numThreads; i++)
+                queues.add(new ArrayList<String>());
+        }
+
+        @Override
+        public boolean enqueue(int threadId, String request) {
+            if (reject)
+                return false;
+            queues.get(threadId).add(request);
+            return true;
+        }
+
+        @Override
+        public void rejected(String request) {
+            rejected.add(request);
+        }
+    }
+
+    @Test
+    public void testWithoutOffloading() throws Exception {
+
+        RecordingExecutor ex = new RecordingExecutor(2);
+        StorageScheduler<String> s = new StorageScheduler<String>(2, false, ex);
+
+        final String fileId = "ABC:1";
+        final int home = s.getHomeThread(fileId);
+
+        for (int i = 0; i < 5; i++)
+            assertTrue(s.schedule(fileId, true, "r" + i));
+
+        assertEquals(5, ex.queues.get(home).size());
+        assertEquals(0, ex.queues.get(1 - home).size());
+        assertEquals(5, s.getQueueLengths()[home]);
+
+        s.completed(home, fileId, true);
+        assertEquals(4, s.getQueueLengths()[home]);
+        assertEquals(0, s.getNumOffloadedReads());
+    }
+
+    @Test
+    public void testOffloadReads() throws Exception {
+
+        RecordingExecutor ex = new RecordingExecutor(2);
+        StorageScheduler<String> s = new StorageScheduler<String>(2, true, ex);
+
+        final String fileId = "ABC:1";
+        final int home = s.getHomeThread(fileId);
+        final int other = 1 - home;
+
+        // the first read is executed by the home thread, the second one by the
+        // idle thread
+        s.schedule(fileId, true, "r1");
+        s.schedule(fileId, true, "r2");
+        s.schedule(fileId, true, "r3");
+        assertEquals(2, ex.queues.get(home).size());
+        assertEquals(1, ex.queues.get(other).size());
+        assertEquals("r2", ex.queues.get(other).get(0));
+        assertEquals(1, s.getNumOffloadedReads());
+
+        // a write has to wait for the offloaded read, and subsequent requests
+        // must not overtake it
+        s.schedule(fileId, false, "w1");
+        s.schedule(fileId, true, "r4");
+        assertEquals(2, ex.queues.get(home).size());
+        assertEquals(1, ex.queues.get(other).size());
+
+        s.completed(other, fileId, true);
+        assertEquals(4, ex.queues.get(home).size());
+        assertEquals("w1", ex.queues.get(home).get(2));
+        assertEquals("r4", ex.queues.get(home).get(3));
+        assertEquals(0, s.getQueueLengths()[other]);
+
+        // as long as the write is pending, reads are not offloaded
+        s.schedule(fileId, true, "r5");
+        assertEquals(5, ex.queues.get(home).size());
+        assertEquals(1, ex.queues.get(other).size());
+
+        s.completed(home, fileId, true);
+        s.completed(home, fileId, true);
+        s.completed(home, fileId, false);
+
+        // the write has completed; reads can be offloaded again
+        s.schedule(fileId, true, "r6");
+        assertEquals(2, ex.queues.get(other).size());
+        assertEquals("r6", ex.queues.get(other).get(1));
+
+        s.completed(home, fileId, true);
+        s.completed(home, fileId, true);
+        s.completed(other, fileId, true);
+        assertArrayEquals(new int[] { 0, 0 }, s.getQueueLengths());
+    }
+
+    @Test
+    public void testRejectedRequests() throws Exception {
+
+        RecordingExecutor ex = new RecordingExecutor(2);
+        StorageScheduler<String> s = new StorageScheduler<String>(2, true, ex);
+
+        final String fileId = "ABC:1";
+        final int home = s.getHomeThread(fileId);
+
+        ex.reject = true;
+        assertFalse(s.schedule(fileId, false, "w1"));
+        assertArrayEquals(new int[] { 0, 0 }, s.getQueueLengths());
+
+        // rejected requests must not block subsequent ones
+        ex.reject = false;
+        s.schedule(fileId, true, "r1");
+        s.schedule(fileId, true, "r2");
+        assertEquals(1, ex.queues.get(1 - home).size());
+
+        // deferred requests that are rejected when they are released are
+        // reported to the executor
+        s.schedule(fileId, false, "w2");
+        ex.reject = true;
+        s.completed(1 - home, fileId, true);
+        assertEquals(1, ex.rejected.size());
+        assertEquals("w2", ex.rejected.get(0));
+        assertEquals(1, s.getQueueLengths()[home]);
+        assertEquals(0, s.getQueueLengths()[1 - home]);
+    }
+}